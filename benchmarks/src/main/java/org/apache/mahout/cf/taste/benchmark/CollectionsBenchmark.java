@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.benchmark;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveArrayIterator;
+import org.apache.mahout.cf.taste.impl.recommender.TopItems;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Cost of the primitive collections that sit under every data model and recommender: lookups in
+ * {@link FastByIDMap} and {@link FastIDSet}, half of them misses, next to the boxed <code>java.util</code>
+ * equivalents as a baseline, and selecting the top 10 of all candidate items with {@link TopItems}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollectionsBenchmark {
+
+  /** Number of distinct IDs in each collection. */
+  @Param({"1000", "1000000"})
+  private int size;
+
+  private FastByIDMap<Integer> fastMap;
+  private FastIDSet fastSet;
+  private Map<Long,Integer> hashMap;
+  private Set<Long> hashSet;
+  private long[] ids;
+  private long[] candidateIDs;
+  private TopItems.Estimator<Long> estimator;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(size);
+    fastMap = new FastByIDMap<Integer>(size);
+    fastSet = new FastIDSet(size);
+    hashMap = new HashMap<Long,Integer>(size);
+    hashSet = new HashSet<Long>(size);
+    // Every other ID is present, so lookups hit half the time
+    ids = new long[2 * size];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = random.nextLong() >>> 1;
+      if (i % 2 == 0) {
+        fastMap.put(ids[i], i);
+        fastSet.add(ids[i]);
+        hashMap.put(ids[i], i);
+        hashSet.add(ids[i]);
+      }
+    }
+    candidateIDs = new long[size];
+    final double[] candidateValues = new double[size];
+    for (int i = 0; i < size; i++) {
+      candidateIDs[i] = i;
+      candidateValues[i] = random.nextDouble();
+    }
+    estimator = new TopItems.Estimator<Long>() {
+      @Override
+      public double estimate(Long itemID) {
+        return candidateValues[itemID.intValue()];
+      }
+    };
+  }
+
+  @State(Scope.Thread)
+  public static class IDs {
+    private int next;
+
+    long next(long[] ids) {
+      next = (next + 1) % ids.length;
+      return ids[next];
+    }
+  }
+
+  @Benchmark
+  public Integer fastByIDMapGet(IDs ids) {
+    return fastMap.get(ids.next(this.ids));
+  }
+
+  @Benchmark
+  public Integer hashMapGet(IDs ids) {
+    return hashMap.get(ids.next(this.ids));
+  }
+
+  @Benchmark
+  public boolean fastIDSetContains(IDs ids) {
+    return fastSet.contains(ids.next(this.ids));
+  }
+
+  @Benchmark
+  public boolean hashSetContains(IDs ids) {
+    return hashSet.contains(ids.next(this.ids));
+  }
+
+  @Benchmark
+  public FastByIDMap<Integer> fastByIDMapBuild() {
+    FastByIDMap<Integer> map = new FastByIDMap<Integer>();
+    for (int i = 0; i < ids.length; i += 2) {
+      map.put(ids[i], i);
+    }
+    return map;
+  }
+
+  @Benchmark
+  public FastIDSet fastIDSetBuild() {
+    FastIDSet set = new FastIDSet();
+    for (int i = 0; i < ids.length; i += 2) {
+      set.add(ids[i]);
+    }
+    return set;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<RecommendedItem> topItems() throws TasteException {
+    return TopItems.getTopItems(10, new LongPrimitiveArrayIterator(candidateIDs), null, estimator);
+  }
+
+}
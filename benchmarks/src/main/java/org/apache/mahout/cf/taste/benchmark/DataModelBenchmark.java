@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.model.CompactDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Cost of the {@link DataModel} accessors that recommenders and similarities call most: fetching a user's or
+ * an item's preferences, looking up one preference, and counting users who share two items, for the
+ * generic in-memory model and the {@link CompactDataModel} built from it.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DataModelBenchmark {
+
+  @Param("GROUPLENS")
+  private SyntheticDataSet dataSet;
+
+  /** "generic" for the generated {@link org.apache.mahout.cf.taste.impl.model.GenericDataModel}, or "compact" */
+  @Param({"generic", "compact"})
+  private String model;
+
+  private DataModel dataModel;
+  private long[] userIDs;
+  private long[] itemIDs;
+
+  @Setup
+  public void setUp() throws Exception {
+    dataModel = "compact".equals(model) ? new CompactDataModel(dataSet.getDataModel()) : dataSet.getDataModel();
+    userIDs = dataSet.getUserIDs();
+    itemIDs = dataSet.getItemIDs();
+  }
+
+  @State(Scope.Thread)
+  public static class IDs {
+    private final Random random = RandomUtils.getRandom(SyntheticDataSet.SEED);
+
+    long next(long[] ids) {
+      return ids[random.nextInt(ids.length)];
+    }
+  }
+
+  @Benchmark
+  public PreferenceArray getPreferencesFromUser(IDs ids) throws TasteException {
+    return dataModel.getPreferencesFromUser(ids.next(userIDs));
+  }
+
+  @Benchmark
+  public PreferenceArray getPreferencesForItem(IDs ids) throws TasteException {
+    return dataModel.getPreferencesForItem(ids.next(itemIDs));
+  }
+
+  @Benchmark
+  public Float getPreferenceValue(IDs ids) throws TasteException {
+    return dataModel.getPreferenceValue(ids.next(userIDs), ids.next(itemIDs));
+  }
+
+  @Benchmark
+  public int getNumUsersWithPreferenceFor(IDs ids) throws TasteException {
+    return dataModel.getNumUsersWithPreferenceFor(ids.next(itemIDs), ids.next(itemIDs));
+  }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.benchmark;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.AbstractIterator;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.recommender.GenericItemBasedRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.slopeone.SlopeOneRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.svd.ALSWRFactorizer;
+import org.apache.mahout.cf.taste.impl.recommender.svd.SVDRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.LogLikelihoodSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.TopKItemSimilarityIndex;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Latency of {@link Recommender#recommend(long, int)} for a random user, for each of the main recommender
+ * implementations in their usual configuration. Sample time mode reports percentiles as well as the mean,
+ * since the cost of a recommendation varies a lot between light and heavy users.
+ * </p>
+ *
+ * <p>
+ * Recommenders are built once per fork before measuring, including precomputing item similarities for the
+ * item-based recommender and factorizing for SVD, as they would be deployed. Slope one keeps a diff for
+ * each pair of items and item-based computes a similarity for each, so with the NETFLIX data set run only the
+ * others, with <code>-p dataSet=NETFLIX -p recommender=userBased,svd</code>.
+ * </p>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RecommenderBenchmark {
+
+  private static final int HOW_MANY = 10;
+
+  @Param("GROUPLENS")
+  private SyntheticDataSet dataSet;
+
+  @Param({"itemBased", "userBased", "slopeOne", "svd"})
+  private String recommender;
+
+  private Recommender delegate;
+  private long[] userIDs;
+
+  @Setup
+  public void setUp() throws Exception {
+    DataModel dataModel = dataSet.getDataModel();
+    userIDs = dataSet.getUserIDs();
+    delegate = buildRecommender(recommender, dataModel);
+  }
+
+  static Recommender buildRecommender(String name, DataModel dataModel) throws TasteException {
+    if ("itemBased".equals(name)) {
+      // As deployed: similarities precomputed, keeping the nearest neighbours of each item
+      TopKItemSimilarityIndex index =
+          new TopKItemSimilarityIndex(allItemSimilarities(new LogLikelihoodSimilarity(dataModel), dataModel), 100);
+      return new GenericItemBasedRecommender(dataModel, index, index, index);
+    }
+    if ("userBased".equals(name)) {
+      PearsonCorrelationSimilarity similarity = new PearsonCorrelationSimilarity(dataModel);
+      return new GenericUserBasedRecommender(dataModel,
+                                             new NearestNUserNeighborhood(50, similarity, dataModel),
+                                             similarity);
+    }
+    if ("slopeOne".equals(name)) {
+      return new SlopeOneRecommender(dataModel);
+    }
+    if ("svd".equals(name)) {
+      return new SVDRecommender(dataModel, new ALSWRFactorizer(dataModel, 20, 0.065, 5));
+    }
+    throw new IllegalArgumentException("Unknown recommender: " + name);
+  }
+
+  /**
+   * @return similarities between all pairs of items, computed lazily one item at a time
+   */
+  private static Iterable<GenericItemSimilarity.ItemItemSimilarity> allItemSimilarities(
+      final ItemSimilarity similarity, DataModel dataModel) throws TasteException {
+    final long[] itemIDs = new long[dataModel.getNumItems()];
+    LongPrimitiveIterator it = dataModel.getItemIDs();
+    for (int k = 0; k < itemIDs.length; k++) {
+      itemIDs[k] = it.nextLong();
+    }
+    return new Iterable<GenericItemSimilarity.ItemItemSimilarity>() {
+      @Override
+      public Iterator<GenericItemSimilarity.ItemItemSimilarity> iterator() {
+        return new AbstractIterator<GenericItemSimilarity.ItemItemSimilarity>() {
+          private int i;
+          private long[] otherItemIDs = new long[0];
+          private double[] similarities = new double[0];
+          private int j;
+
+          @Override
+          protected GenericItemSimilarity.ItemItemSimilarity computeNext() {
+            while (true) {
+              while (j < otherItemIDs.length) {
+                double value = similarities[j];
+                long otherItemID = otherItemIDs[j++];
+                if (!Double.isNaN(value)) {
+                  return new GenericItemSimilarity.ItemItemSimilarity(itemIDs[i - 1], otherItemID, value);
+                }
+              }
+              if (i == itemIDs.length) {
+                return endOfData();
+              }
+              otherItemIDs = Arrays.copyOfRange(itemIDs, i + 1, itemIDs.length);
+              try {
+                similarities = similarity.itemSimilarities(itemIDs[i], otherItemIDs);
+              } catch (TasteException te) {
+                throw new IllegalStateException(te);
+              }
+              i++;
+              j = 0;
+            }
+          }
+        };
+      }
+    };
+  }
+
+  @State(Scope.Thread)
+  public static class Users {
+    // Seeded, so that every run scores the same sequence of IDs
+    private final Random random = RandomUtils.getRandom(SyntheticDataSet.SEED);
+
+    long next(long[] userIDs) {
+      return userIDs[random.nextInt(userIDs.length)];
+    }
+  }
+
+  @Benchmark
+  public List<RecommendedItem> recommend(Users users) throws TasteException {
+    return delegate.recommend(users.next(userIDs), HOW_MANY);
+  }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.similarity.CityBlockSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.EuclideanDistanceSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.LogLikelihoodSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.SpearmanCorrelationSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.TanimotoCoefficientSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.UncenteredCosineSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Cost of computing similarities between random pairs of users and items, and of one batch
+ * {@link ItemSimilarity#itemSimilarities(long, long[])} call against {@value #BATCH_SIZE} items, for each
+ * similarity metric. The batch result divided by {@value #BATCH_SIZE} is comparable to the pairwise one.
+ * </p>
+ *
+ * <p>
+ * Spearman correlation only computes user similarities.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class SimilarityBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  @Param("GROUPLENS")
+  private SyntheticDataSet dataSet;
+
+  @Param({"pearson", "euclidean", "uncenteredCosine", "spearman", "tanimoto", "logLikelihood", "cityBlock"})
+  private String similarity;
+
+  private UserSimilarity userSimilarity;
+  private ItemSimilarity itemSimilarity;
+  private long[] userIDs;
+  private long[] itemIDs;
+
+  @Setup
+  public void setUp() throws Exception {
+    DataModel dataModel = dataSet.getDataModel();
+    userIDs = dataSet.getUserIDs();
+    itemIDs = dataSet.getItemIDs();
+    if ("pearson".equals(similarity)) {
+      PearsonCorrelationSimilarity pearson = new PearsonCorrelationSimilarity(dataModel);
+      userSimilarity = pearson;
+      itemSimilarity = pearson;
+    } else if ("euclidean".equals(similarity)) {
+      EuclideanDistanceSimilarity euclidean = new EuclideanDistanceSimilarity(dataModel);
+      userSimilarity = euclidean;
+      itemSimilarity = euclidean;
+    } else if ("uncenteredCosine".equals(similarity)) {
+      UncenteredCosineSimilarity cosine = new UncenteredCosineSimilarity(dataModel);
+      userSimilarity = cosine;
+      itemSimilarity = cosine;
+    } else if ("spearman".equals(similarity)) {
+      userSimilarity = new SpearmanCorrelationSimilarity(dataModel);
+    } else if ("tanimoto".equals(similarity)) {
+      TanimotoCoefficientSimilarity tanimoto = new TanimotoCoefficientSimilarity(dataModel);
+      userSimilarity = tanimoto;
+      itemSimilarity = tanimoto;
+    } else if ("logLikelihood".equals(similarity)) {
+      LogLikelihoodSimilarity logLikelihood = new LogLikelihoodSimilarity(dataModel);
+      userSimilarity = logLikelihood;
+      itemSimilarity = logLikelihood;
+    } else if ("cityBlock".equals(similarity)) {
+      CityBlockSimilarity cityBlock = new CityBlockSimilarity(dataModel);
+      userSimilarity = cityBlock;
+      itemSimilarity = cityBlock;
+    } else {
+      throw new IllegalArgumentException("Unknown similarity: " + similarity);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class IDs {
+    private final Random random = RandomUtils.getRandom(SyntheticDataSet.SEED);
+    private final long[] batch = new long[BATCH_SIZE];
+
+    long next(long[] ids) {
+      return ids[random.nextInt(ids.length)];
+    }
+
+    long[] nextBatch(long[] ids) {
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        batch[i] = next(ids);
+      }
+      return batch;
+    }
+  }
+
+  @Benchmark
+  public double userSimilarity(IDs ids) throws TasteException {
+    return userSimilarity.userSimilarity(ids.next(userIDs), ids.next(userIDs));
+  }
+
+  @Benchmark
+  public double itemSimilarity(IDs ids) throws TasteException {
+    return itemSimilarity == null ? Double.NaN : itemSimilarity.itemSimilarity(ids.next(itemIDs), ids.next(itemIDs));
+  }
+
+  @Benchmark
+  public double[] itemSimilarities(IDs ids) throws TasteException {
+    return itemSimilarity == null ? null : itemSimilarity.itemSimilarities(ids.next(itemIDs), ids.nextBatch(itemIDs));
+  }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.benchmark;
+
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+
+/**
+ * <p>
+ * Synthetic data sets with the shape of well-known public ones, so that benchmarks run anywhere without
+ * downloads and give comparable numbers from run to run. Each is generated from a fixed seed. Item popularity
+ * is skewed, as in real data: item <em>i</em> of <em>n</em> is about as popular as <em>i</em><sup>-1/2</sup>,
+ * and ratings are integers from 1 to 5.
+ * </p>
+ *
+ * <p>
+ * Data sets are generated once per JVM and shared by all benchmarks in it.
+ * </p>
+ */
+public enum SyntheticDataSet {
+
+  /** Shape of the GroupLens 1M data set: about 1M ratings by 6,040 users of 3,706 movies. */
+  GROUPLENS(6040, 3706, 1000209),
+  /** Shape of the Netflix Prize data set: about 100M ratings; needs a heap of 16GB or so. */
+  NETFLIX(480189, 17770, 100480507);
+
+  static final long SEED = 0xCAFEDEADBEEFL;
+
+  private final int numUsers;
+  private final int numItems;
+  private final long numPrefs;
+  private DataModel dataModel;
+
+  SyntheticDataSet(int numUsers, int numItems, long numPrefs) {
+    this.numUsers = numUsers;
+    this.numItems = numItems;
+    this.numPrefs = numPrefs;
+  }
+
+  public synchronized DataModel getDataModel() {
+    if (dataModel == null) {
+      dataModel = generate();
+    }
+    return dataModel;
+  }
+
+  /**
+   * @return all user IDs of {@link #getDataModel()}, for benchmarks to pick from
+   */
+  public long[] getUserIDs() throws Exception {
+    return toArray(getDataModel().getUserIDs(), getDataModel().getNumUsers());
+  }
+
+  /**
+   * @return all item IDs of {@link #getDataModel()}, for benchmarks to pick from
+   */
+  public long[] getItemIDs() throws Exception {
+    return toArray(getDataModel().getItemIDs(), getDataModel().getNumItems());
+  }
+
+  private static long[] toArray(LongPrimitiveIterator it, int size) {
+    long[] ids = new long[size];
+    for (int i = 0; i < size; i++) {
+      ids[i] = it.nextLong();
+    }
+    return ids;
+  }
+
+  private DataModel generate() {
+    Random random = new Random(SEED);
+    double meanPrefsPerUser = (double) numPrefs / numUsers;
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>(numUsers);
+    for (int user = 0; user < numUsers; user++) {
+      // Exponentially distributed activity, with at least one rating and at most half the items
+      int userNumPrefs = (int) (-meanPrefsPerUser * Math.log(1.0 - random.nextDouble()));
+      userNumPrefs = Math.max(1, Math.min(numItems / 2, userNumPrefs));
+      FastIDSet itemIDs = new FastIDSet(userNumPrefs);
+      while (itemIDs.size() < userNumPrefs) {
+        double r = random.nextDouble();
+        itemIDs.add((long) (r * r * numItems));
+      }
+      PreferenceArray prefs = new GenericUserPreferenceArray(userNumPrefs);
+      prefs.setUserID(0, user);
+      int i = 0;
+      LongPrimitiveIterator it = itemIDs.iterator();
+      while (it.hasNext()) {
+        prefs.setItemID(i, it.nextLong());
+        prefs.setValue(i, 1 + random.nextInt(5));
+        i++;
+      }
+      prefs.sortByItem();
+      userData.put(user, prefs);
+    }
+    return new GenericDataModel(userData);
+  }
+
+}
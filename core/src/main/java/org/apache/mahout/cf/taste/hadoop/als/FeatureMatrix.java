@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.hadoop.als;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileIterable;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.QRDecomposition;
+import org.apache.mahout.math.VarIntWritable;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.map.OpenIntIntHashMap;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>The fixed U or M matrix of one half-iteration of {@link ParallelALSFactorizationJob}, held in memory by each
+ * mapper when solving map-side. Feature vectors are packed one after another into a single primitive array,
+ * found through a hash map from row index to position, rather than held as one {@link Vector} per row.</p>
+ *
+ * <p>{@link #solve(Vector, double)} computes the same least-squares solution as
+ * {@link org.apache.mahout.math.als.AlternateLeastSquaresSolver}, accumulating the normal equations directly
+ * from the packed features into buffers which are reused from row to row. Instances are therefore not
+ * thread-safe.</p>
+ */
+final class FeatureMatrix {
+
+  private final int numFeatures;
+  private final OpenIntIntHashMap rowOffsets;
+  private double[] features;
+  private int numRows;
+
+  private final double[] ata;
+  private final double[] atr;
+
+  FeatureMatrix(int numFeatures) {
+    Preconditions.checkArgument(numFeatures >= 1, "numFeatures must be at least 1");
+    this.numFeatures = numFeatures;
+    rowOffsets = new OpenIntIntHashMap();
+    features = new double[16 * numFeatures];
+    ata = new double[numFeatures * numFeatures];
+    atr = new double[numFeatures];
+  }
+
+  /**
+   * Reads rows from sequence files in the format written by {@link ParallelALSFactorizationJob}.
+   */
+  void readFrom(Path path, Configuration conf) throws IOException {
+    for (Pair<VarIntWritable,FeatureVectorWithRatingWritable> record
+        : new SequenceFileIterable<VarIntWritable,FeatureVectorWithRatingWritable>(path, true, conf)) {
+      set(record.getFirst().get(), record.getSecond().getFeatureVector());
+    }
+  }
+
+  void set(int index, Vector featureVector) {
+    Preconditions.checkArgument(featureVector.size() >= numFeatures, "featureVector has too few features");
+    int offset;
+    if (rowOffsets.containsKey(index)) {
+      offset = rowOffsets.get(index);
+    } else {
+      offset = numRows * numFeatures;
+      if (offset + numFeatures > features.length) {
+        double[] newFeatures = new double[2 * features.length];
+        System.arraycopy(features, 0, newFeatures, 0, offset);
+        features = newFeatures;
+      }
+      rowOffsets.put(index, offset);
+      numRows++;
+    }
+    for (int n = 0; n < numFeatures; n++) {
+      features[offset + n] = featureVector.getQuick(n);
+    }
+  }
+
+  int numRows() {
+    return numRows;
+  }
+
+  int numFeatures() {
+    return numFeatures;
+  }
+
+  /**
+   * @return the given row, or null if there is none
+   */
+  Vector get(int index) {
+    if (!rowOffsets.containsKey(index)) {
+      return null;
+    }
+    double[] row = new double[numFeatures];
+    System.arraycopy(features, rowOffsets.get(index), row, 0, numFeatures);
+    return new DenseVector(row, true);
+  }
+
+  /**
+   * Solves for the feature vector of one user or item, given its ratings, keyed by the indexes of the rows of
+   * this matrix.
+   *
+   * @throws IllegalStateException if a rating refers to a row this matrix does not hold
+   */
+  Vector solve(Vector ratings, double lambda) {
+    Arrays.fill(ata, 0.0);
+    Arrays.fill(atr, 0.0);
+    int numRatings = 0;
+    Iterator<Vector.Element> it = ratings.iterateNonZero();
+    while (it.hasNext()) {
+      Vector.Element rating = it.next();
+      int index = rating.index();
+      if (!rowOffsets.containsKey(index)) {
+        throw new IllegalStateException("No feature vector for " + index);
+      }
+      int offset = rowOffsets.get(index);
+      double value = rating.get();
+      for (int i = 0; i < numFeatures; i++) {
+        double fi = features[offset + i];
+        atr[i] += fi * value;
+        int rowStart = i * numFeatures;
+        // the normal equations are symmetric, so only the lower triangle is accumulated
+        for (int j = 0; j <= i; j++) {
+          ata[rowStart + j] += fi * features[offset + j];
+        }
+      }
+      numRatings++;
+    }
+    Preconditions.checkArgument(numRatings > 0, "no ratings");
+
+    double lambdaTimesNui = lambda * numRatings;
+    Matrix ai = new DenseMatrix(numFeatures, numFeatures);
+    Matrix vi = new DenseMatrix(numFeatures, 1);
+    for (int i = 0; i < numFeatures; i++) {
+      for (int j = 0; j < i; j++) {
+        double value = ata[i * numFeatures + j];
+        ai.setQuick(i, j, value);
+        ai.setQuick(j, i, value);
+      }
+      ai.setQuick(i, i, ata[i * numFeatures + i] + lambdaTimesNui);
+      vi.setQuick(i, 0, atr[i]);
+    }
+    return new QRDecomposition(ai).solve(vi).getColumn(0);
+  }
+
+}
@@ -17,7 +17,10 @@
 
 package org.apache.mahout.cf.taste.hadoop.als;
 
+import com.google.common.base.Preconditions;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.FloatWritable;
 import org.apache.hadoop.io.IntWritable;
@@ -36,6 +39,7 @@ import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
 import org.apache.mahout.cf.taste.impl.common.RunningAverage;
 import org.apache.mahout.common.AbstractJob;
 import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.iterator.sequencefile.PathFilters;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.RandomAccessSparseVector;
 import org.apache.mahout.math.SequentialAccessSparseVector;
@@ -46,6 +50,7 @@ import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.math.als.AlternateLeastSquaresSolver;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -69,7 +74,15 @@ import java.util.Random;
  * <li>--lambda (double): regularization parameter to avoid overfitting</li>
  * <li>--numFeatures (int): number of features to use for decomposition </li>
 * <li>--numIterations (int): number of iterations to run</li>
+ * <li>--broadcastFeatures (flag): solve map-side, see below</li>
  * </ol>
+ *
+ * <p>By default, each half-iteration joins every rating with a copy of the fixed feature vector it refers to,
+ * and then solves for each user or item in a reducer. With --broadcastFeatures, the ratings of each user and
+ * item are instead collected into a vector once, up front. Each half-iteration is then a single map-only job,
+ * whose mappers read the whole fixed U or M matrix from the distributed cache into memory and solve for each
+ * row of ratings in turn. This shuffles nothing during iterations and needs half as many jobs, as long as
+ * mappers have memory for numFeatures doubles per user or item.</p>
  */
 public class ParallelALSFactorizationJob extends AbstractJob {
 
@@ -94,6 +107,7 @@ public class ParallelALSFactorizationJob extends AbstractJob {
     addOption("lambda", "l", "", true);
     addOption("numFeatures", "f", "", true);
     addOption("numIterations", "i", "", true);
+    addFlag("broadcastFeatures", "b", "solve map-side, against a copy of the fixed feature matrix in memory");
 
     Map<String,String> parsedArgs = parseArguments(args);
     if (parsedArgs == null) {
@@ -104,19 +118,13 @@ public class ParallelALSFactorizationJob extends AbstractJob {
     int numIterations = Integer.parseInt(parsedArgs.get("--numIterations"));
     double lambda = Double.parseDouble(parsedArgs.get("--lambda"));
     tempDir = parsedArgs.get("--tempDir");
+    boolean broadcastFeatures = parsedArgs.containsKey("--broadcastFeatures");
 
-    Job itemRatings = prepareJob(getInputPath(), pathToItemRatings(),
-        TextInputFormat.class, PrefsToRatingsMapper.class, VarIntWritable.class,
-        FeatureVectorWithRatingWritable.class, Reducer.class, VarIntWritable.class,
-        FeatureVectorWithRatingWritable.class, SequenceFileOutputFormat.class);
-    itemRatings.waitForCompletion(true);
-    
-    Job userRatings = prepareJob(getInputPath(), pathToUserRatings(),
-        TextInputFormat.class, PrefsToRatingsMapper.class, VarIntWritable.class,
-        FeatureVectorWithRatingWritable.class, Reducer.class, VarIntWritable.class,
-        FeatureVectorWithRatingWritable.class, SequenceFileOutputFormat.class);
-    userRatings.getConfiguration().setBoolean(MAP_TRANSPOSED, Boolean.TRUE);
-    userRatings.waitForCompletion(true);
+    if (broadcastFeatures) {
+      prepareRatingVectors();
+    } else {
+      prepareRatings();
+    }
 
     Job initializeM = prepareJob(getInputPath(), pathToM(-1), TextInputFormat.class, ItemIDRatingMapper.class,
         VarLongWritable.class, FloatWritable.class, InitializeMReducer.class, VarIntWritable.class,
@@ -125,7 +133,11 @@ public class ParallelALSFactorizationJob extends AbstractJob {
     initializeM.waitForCompletion(true);
 
     for (int n = 0; n < numIterations; n++) {
-      iterate(n, numFeatures, lambda);
+      if (broadcastFeatures) {
+        iterateMapSide(n, numFeatures, lambda);
+      } else {
+        iterate(n, numFeatures, lambda);
+      }
     }
 
     Job uAsMatrix = prepareJob(pathToU(numIterations - 1), new Path(getOutputPath(), "U"),
@@ -141,6 +153,36 @@ public class ParallelALSFactorizationJob extends AbstractJob {
     return 0;
   }
 
+  private void prepareRatings() throws IOException, ClassNotFoundException, InterruptedException {
+    Job itemRatings = prepareJob(getInputPath(), pathToItemRatings(),
+        TextInputFormat.class, PrefsToRatingsMapper.class, VarIntWritable.class,
+        FeatureVectorWithRatingWritable.class, Reducer.class, VarIntWritable.class,
+        FeatureVectorWithRatingWritable.class, SequenceFileOutputFormat.class);
+    itemRatings.waitForCompletion(true);
+    
+    Job userRatings = prepareJob(getInputPath(), pathToUserRatings(),
+        TextInputFormat.class, PrefsToRatingsMapper.class, VarIntWritable.class,
+        FeatureVectorWithRatingWritable.class, Reducer.class, VarIntWritable.class,
+        FeatureVectorWithRatingWritable.class, SequenceFileOutputFormat.class);
+    userRatings.getConfiguration().setBoolean(MAP_TRANSPOSED, Boolean.TRUE);
+    userRatings.waitForCompletion(true);
+  }
+
+  private void prepareRatingVectors() throws IOException, ClassNotFoundException, InterruptedException {
+    Job itemRatings = prepareJob(getInputPath(), pathToItemRatingVectors(),
+        TextInputFormat.class, PrefsToRatingsMapper.class, VarIntWritable.class,
+        FeatureVectorWithRatingWritable.class, RatingsToVectorReducer.class, VarIntWritable.class,
+        VectorWritable.class, SequenceFileOutputFormat.class);
+    itemRatings.waitForCompletion(true);
+
+    Job userRatings = prepareJob(getInputPath(), pathToUserRatingVectors(),
+        TextInputFormat.class, PrefsToRatingsMapper.class, VarIntWritable.class,
+        FeatureVectorWithRatingWritable.class, RatingsToVectorReducer.class, VarIntWritable.class,
+        VectorWritable.class, SequenceFileOutputFormat.class);
+    userRatings.getConfiguration().setBoolean(MAP_TRANSPOSED, Boolean.TRUE);
+    userRatings.waitForCompletion(true);
+  }
+
   static class ToMatrixMapper
       extends Mapper<VarIntWritable,FeatureVectorWithRatingWritable,IntWritable,VectorWritable> {
     @Override
@@ -161,6 +203,37 @@ public class ParallelALSFactorizationJob extends AbstractJob {
         lambda, currentIteration, STEP_TWO);
   }
 
+  private void iterateMapSide(int currentIteration, int numFeatures, double lambda)
+    throws IOException, ClassNotFoundException, InterruptedException {
+    /* fix M, compute U */
+    solveMapSide(pathToM(currentIteration - 1), pathToUserRatingVectors(), pathToU(currentIteration), numFeatures,
+        lambda);
+    /* fix U, compute M */
+    solveMapSide(pathToU(currentIteration), pathToItemRatingVectors(), pathToM(currentIteration), numFeatures,
+        lambda);
+  }
+
+  private void solveMapSide(Path featureMatrix, Path ratingVectors, Path outputPath, int numFeatures, double lambda)
+    throws IOException, ClassNotFoundException, InterruptedException {
+
+    Job solve = prepareJob(ratingVectors, outputPath, SequenceFileInputFormat.class, MapSideSolvingMapper.class,
+        VarIntWritable.class, FeatureVectorWithRatingWritable.class, Reducer.class, VarIntWritable.class,
+        FeatureVectorWithRatingWritable.class, SequenceFileOutputFormat.class);
+    solve.setNumReduceTasks(0);
+    Configuration solveConf = solve.getConfiguration();
+    solveConf.setInt(NUM_FEATURES, numFeatures);
+    solveConf.set(LAMBDA, String.valueOf(lambda));
+
+    FileStatus[] parts = featureMatrix.getFileSystem(solveConf).listStatus(featureMatrix, PathFilters.partFilter());
+    URI[] partURIs = new URI[parts.length];
+    for (int n = 0; n < parts.length; n++) {
+      partURIs[n] = parts[n].getPath().toUri();
+    }
+    DistributedCache.setCacheFiles(partURIs, solveConf);
+
+    solve.waitForCompletion(true);
+  }
+
   private void joinAndSolve(Path featureMatrix, Path ratingMatrix, Path outputPath, int numFeatures, double lambda,
       int currentIteration, String step) throws IOException, ClassNotFoundException, InterruptedException  {
 
@@ -263,6 +336,52 @@ public class ParallelALSFactorizationJob extends AbstractJob {
     }
   }
 
+  static class RatingsToVectorReducer
+      extends Reducer<VarIntWritable,FeatureVectorWithRatingWritable,VarIntWritable,VectorWritable> {
+
+    @Override
+    protected void reduce(VarIntWritable id, Iterable<FeatureVectorWithRatingWritable> ratings, Context ctx)
+      throws IOException, InterruptedException {
+      Vector ratingVector = new RandomAccessSparseVector(Integer.MAX_VALUE);
+      for (FeatureVectorWithRatingWritable rating : ratings) {
+        ratingVector.setQuick(rating.getIDIndex(), rating.getRating());
+      }
+      ctx.write(id, new VectorWritable(new SequentialAccessSparseVector(ratingVector)));
+    }
+  }
+
+  static class MapSideSolvingMapper
+      extends Mapper<VarIntWritable,VectorWritable,VarIntWritable,FeatureVectorWithRatingWritable> {
+
+    private double lambda;
+    private FeatureMatrix featureMatrix;
+
+    @Override
+    protected void setup(Context ctx) throws IOException, InterruptedException {
+      super.setup(ctx);
+      Configuration conf = ctx.getConfiguration();
+      lambda = Double.parseDouble(conf.get(LAMBDA));
+      int numFeatures = conf.getInt(NUM_FEATURES, -1);
+      if (numFeatures < 1) {
+        throw new IllegalStateException("numFeatures was not set correctly!");
+      }
+      URI[] cacheFiles = DistributedCache.getCacheFiles(conf);
+      Preconditions.checkArgument(cacheFiles != null && cacheFiles.length >= 1,
+          "missing paths from the DistributedCache");
+      featureMatrix = new FeatureMatrix(numFeatures);
+      for (URI cacheFile : cacheFiles) {
+        featureMatrix.readFrom(new Path(cacheFile.toString()), conf);
+      }
+    }
+
+    @Override
+    protected void map(VarIntWritable id, VectorWritable ratings, Context ctx)
+      throws IOException, InterruptedException {
+      Vector uiOrmj = featureMatrix.solve(ratings.get(), lambda);
+      ctx.write(id, new FeatureVectorWithRatingWritable(id.get(), uiOrmj));
+    }
+  }
+
   static class ItemIDRatingMapper extends Mapper<LongWritable,Text,VarLongWritable,FloatWritable> {
     @Override
     protected void map(LongWritable key, Text value, Context ctx) throws IOException, InterruptedException {
@@ -323,6 +442,14 @@ public class ParallelALSFactorizationJob extends AbstractJob {
     return new Path(tempDir, "itemsAsFeatureWithRatingWritable");
   }
 
+  private Path pathToItemRatingVectors() {
+    return new Path(tempDir, "itemRatingVectors");
+  }
+
+  private Path pathToUserRatingVectors() {
+    return new Path(tempDir, "userRatingVectors");
+  }
+
   private Path pathToUserRatings() {
     return new Path(tempDir, "usersAsFeatureWithRatingWritable");
   }
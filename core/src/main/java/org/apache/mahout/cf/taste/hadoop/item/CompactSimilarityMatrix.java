@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.cf.taste.hadoop.item;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileIterable;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.map.OpenIntIntHashMap;
+
+/**
+ * <p>The pruned item-item similarity matrix, held in memory by each mapper when {@link RecommenderJob} recommends
+ * map-side. Item indexes are renumbered to dense positions on load, and the rows are packed one after another into
+ * a primitive array of positions and one of similarity values, rather than held as one {@link Vector} per row.</p>
+ *
+ * <p>Dense positions let callers accumulate per-item scores in plain arrays of size {@link #numItems()}.</p>
+ */
+final class CompactSimilarityMatrix {
+
+  private final OpenIntIntHashMap positions;
+  private int[] itemIndexes;
+  private int numItems;
+
+  private int[] rowStarts;
+  private int[] rowEnds;
+
+  private int[] columns;
+  private float[] values;
+  private int numEntries;
+
+  CompactSimilarityMatrix() {
+    positions = new OpenIntIntHashMap();
+    itemIndexes = new int[16];
+    rowStarts = new int[16];
+    rowEnds = new int[16];
+    columns = new int[64];
+    values = new float[64];
+  }
+
+  /**
+   * Reads rows from sequence files in the format written by
+   * {@link org.apache.mahout.math.hadoop.similarity.RowSimilarityJob}.
+   */
+  void readFrom(Path path, Configuration conf) throws IOException {
+    for (Pair<IntWritable,VectorWritable> record
+        : new SequenceFileIterable<IntWritable,VectorWritable>(path, true, conf)) {
+      addRow(record.getFirst().get(), record.getSecond().get());
+    }
+  }
+
+  /**
+   * adds the similarities of the item with the given index, ignoring its similarity to itself and NaN entries
+   */
+  void addRow(int itemIndex, Vector similarities) {
+    int row = positionOf(itemIndex);
+    int start = numEntries;
+    Iterator<Vector.Element> it = similarities.iterateNonZero();
+    while (it.hasNext()) {
+      Vector.Element e = it.next();
+      double similarity = e.get();
+      if (e.index() != itemIndex && !Double.isNaN(similarity)) {
+        if (numEntries == columns.length) {
+          columns = Arrays.copyOf(columns, numEntries << 1);
+          values = Arrays.copyOf(values, numEntries << 1);
+        }
+        columns[numEntries] = positionOf(e.index());
+        values[numEntries] = (float) similarity;
+        numEntries++;
+      }
+    }
+    rowStarts[row] = start;
+    rowEnds[row] = numEntries;
+  }
+
+  private int positionOf(int itemIndex) {
+    if (positions.containsKey(itemIndex)) {
+      return positions.get(itemIndex);
+    }
+    if (numItems == itemIndexes.length) {
+      itemIndexes = Arrays.copyOf(itemIndexes, numItems << 1);
+      rowStarts = Arrays.copyOf(rowStarts, numItems << 1);
+      rowEnds = Arrays.copyOf(rowEnds, numItems << 1);
+    }
+    int position = numItems++;
+    positions.put(itemIndex, position);
+    itemIndexes[position] = itemIndex;
+    return position;
+  }
+
+  /**
+   * @return number of distinct items, appearing either as a row or within a row
+   */
+  int numItems() {
+    return numItems;
+  }
+
+  int numEntries() {
+    return numEntries;
+  }
+
+  /**
+   * @return the dense position of the item index, or -1 if the item is unknown
+   */
+  int position(int itemIndex) {
+    return positions.containsKey(itemIndex) ? positions.get(itemIndex) : -1;
+  }
+
+  int itemIndex(int position) {
+    return itemIndexes[position];
+  }
+
+  /** first entry of the row at the given position, entries up to {@link #rowEnd(int)} (exclusive) belong to it */
+  int rowStart(int position) {
+    return rowStarts[position];
+  }
+
+  int rowEnd(int position) {
+    return rowEnds[position];
+  }
+
+  /** dense position of the item of an entry */
+  int column(int entry) {
+    return columns[entry];
+  }
+
+  float value(int entry) {
+    return values[entry];
+  }
+
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.cf.taste.hadoop.item;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.mahout.cf.taste.hadoop.RecommendedItemsWritable;
+import org.apache.mahout.cf.taste.hadoop.TasteHadoopUtils;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.recommender.ByValueRecommendedItemComparator;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.common.iterator.FileLineIterable;
+import org.apache.mahout.math.VarLongWritable;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.map.OpenIntLongHashMap;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * <p>computes the recommendations of each user map-side, against the whole similarity matrix which is read from the
+ * distributed cache into a {@link CompactSimilarityMatrix}</p>
+ *
+ * <p>The predictions are computed as in {@link AggregateAndRecommendReducer}, with the per-item sums accumulated in
+ * primitive arrays that are reused from user to user. Items the user already rated are never recommended.</p>
+ */
+public final class MapSideRecommendMapper
+    extends Mapper<VarLongWritable,VectorWritable,VarLongWritable,RecommendedItemsWritable> {
+
+  private boolean booleanData;
+  private int recommendationsPerUser;
+  private int maxPrefsPerUserConsidered;
+  private FastIDSet usersToRecommendFor;
+  private FastIDSet itemsToRecommendFor;
+  private OpenIntLongHashMap indexItemIDMap;
+  private CompactSimilarityMatrix similarities;
+
+  /* scratch space, indexed by the dense positions of the similarity matrix */
+  private double[] numerators;
+  private double[] denominators;
+  private int[] numberOfSimilarItemsUsed;
+  private boolean[] rated;
+  private int[] touched;
+
+  @Override
+  protected void setup(Context context) throws IOException {
+    Configuration jobConf = context.getConfiguration();
+    recommendationsPerUser = jobConf.getInt(AggregateAndRecommendReducer.NUM_RECOMMENDATIONS,
+        AggregateAndRecommendReducer.DEFAULT_NUM_RECOMMENDATIONS);
+    booleanData = jobConf.getBoolean(RecommenderJob.BOOLEAN_DATA, false);
+    maxPrefsPerUserConsidered = jobConf.getInt(UserVectorSplitterMapper.MAX_PREFS_PER_USER_CONSIDERED,
+        UserVectorSplitterMapper.DEFAULT_MAX_PREFS_PER_USER_CONSIDERED);
+    indexItemIDMap = TasteHadoopUtils.readItemIDIndexMap(jobConf.get(AggregateAndRecommendReducer.ITEMID_INDEX_PATH),
+        jobConf);
+    usersToRecommendFor = readIDs(jobConf.get(UserVectorSplitterMapper.USERS_FILE), jobConf);
+    itemsToRecommendFor = readIDs(jobConf.get(AggregateAndRecommendReducer.ITEMS_FILE), jobConf);
+
+    URI[] cacheFiles = DistributedCache.getCacheFiles(jobConf);
+    Preconditions.checkArgument(cacheFiles != null && cacheFiles.length >= 1,
+        "missing paths from the DistributedCache");
+    similarities = new CompactSimilarityMatrix();
+    for (URI cacheFile : cacheFiles) {
+      similarities.readFrom(new Path(cacheFile.toString()), jobConf);
+    }
+
+    int numItems = similarities.numItems();
+    numerators = new double[numItems];
+    denominators = new double[numItems];
+    numberOfSimilarItemsUsed = new int[numItems];
+    rated = new boolean[numItems];
+    touched = new int[numItems];
+  }
+
+  private static FastIDSet readIDs(String pathString, Configuration jobConf) throws IOException {
+    if (pathString == null) {
+      return null;
+    }
+    FSDataInputStream in = null;
+    try {
+      Path unqualifiedPath = new Path(pathString);
+      FileSystem fs = FileSystem.get(unqualifiedPath.toUri(), jobConf);
+      FastIDSet ids = new FastIDSet();
+      in = fs.open(unqualifiedPath.makeQualified(fs));
+      for (String line : new FileLineIterable(in)) {
+        ids.add(Long.parseLong(line));
+      }
+      return ids;
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  @Override
+  protected void map(VarLongWritable userID,
+                     VectorWritable value,
+                     Context context) throws IOException, InterruptedException {
+    if (usersToRecommendFor != null && !usersToRecommendFor.contains(userID.get())) {
+      return;
+    }
+    Vector userVector = value.get();
+    float smallestLargeValue = userVector.getNumNondefaultElements() > maxPrefsPerUserConsidered
+        ? UserVectorSplitterMapper.findSmallestLargeValue(userVector, maxPrefsPerUserConsidered)
+        : 0.0f;
+
+    int numTouched = 0;
+    int numRated = 0;
+    int[] ratedPositions = new int[userVector.getNumNondefaultElements()];
+    Iterator<Vector.Element> prefs = userVector.iterateNonZero();
+    while (prefs.hasNext()) {
+      Vector.Element pref = prefs.next();
+      int itemPosition = similarities.position(pref.index());
+      if (itemPosition < 0) {
+        continue;
+      }
+      rated[itemPosition] = true;
+      ratedPositions[numRated++] = itemPosition;
+
+      float prefValue = (float) pref.get();
+      if (Float.isNaN(prefValue) || Math.abs(prefValue) < smallestLargeValue) {
+        continue;
+      }
+      int rowEnd = similarities.rowEnd(itemPosition);
+      for (int entry = similarities.rowStart(itemPosition); entry < rowEnd; entry++) {
+        int position = similarities.column(entry);
+        float similarity = similarities.value(entry);
+        if (numberOfSimilarItemsUsed[position]++ == 0) {
+          touched[numTouched++] = position;
+        }
+        numerators[position] += booleanData ? similarity : similarity * prefValue;
+        denominators[position] += Math.abs(similarity);
+      }
+    }
+
+    Queue<RecommendedItem> topItems =
+        new PriorityQueue<RecommendedItem>(recommendationsPerUser + 1,
+                                           Collections.reverseOrder(ByValueRecommendedItemComparator.getInstance()));
+    for (int n = 0; n < numTouched; n++) {
+      int position = touched[n];
+      double numerator = numerators[position];
+      /* with non-boolean data, preference estimations must be based on at least 2 datapoints */
+      if (!rated[position] && numerator != 0.0 && (booleanData || numberOfSimilarItemsUsed[position] > 1)) {
+        long itemID = indexItemIDMap.get(similarities.itemIndex(position));
+        float estimate = (float) (booleanData ? numerator : numerator / denominators[position]);
+        if ((itemsToRecommendFor == null || itemsToRecommendFor.contains(itemID)) && !Float.isNaN(estimate)) {
+          if (topItems.size() < recommendationsPerUser) {
+            topItems.add(new GenericRecommendedItem(itemID, estimate));
+          } else if (estimate > topItems.peek().getValue()) {
+            topItems.add(new GenericRecommendedItem(itemID, estimate));
+            topItems.poll();
+          }
+        }
+      }
+      numerators[position] = 0.0;
+      denominators[position] = 0.0;
+      numberOfSimilarItemsUsed[position] = 0;
+    }
+    for (int n = 0; n < numRated; n++) {
+      rated[ratedPositions[n]] = false;
+    }
+
+    if (!topItems.isEmpty()) {
+      List<RecommendedItem> recommendations = new ArrayList<RecommendedItem>(topItems);
+      Collections.sort(recommendations, ByValueRecommendedItemComparator.getInstance());
+      context.write(userID, new RecommendedItemsWritable(recommendations));
+    }
+  }
+
+}
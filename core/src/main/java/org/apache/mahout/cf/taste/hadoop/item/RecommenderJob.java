@@ -18,6 +18,8 @@
 package org.apache.mahout.cf.taste.hadoop.item;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
@@ -42,14 +44,18 @@ import org.apache.mahout.cf.taste.hadoop.similarity.item.CountUsersMapper;
 import org.apache.mahout.cf.taste.hadoop.similarity.item.CountUsersReducer;
 import org.apache.mahout.cf.taste.hadoop.similarity.item.ToItemVectorsReducer;
 import org.apache.mahout.common.AbstractJob;
+import org.apache.mahout.common.iterator.sequencefile.PathFilters;
 import org.apache.mahout.math.VarIntWritable;
 import org.apache.mahout.math.VarLongWritable;
 import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.math.hadoop.DistributedRowMatrix;
 import org.apache.mahout.math.hadoop.similarity.RowSimilarityJob;
 import org.apache.mahout.math.hadoop.similarity.SimilarityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
@@ -87,8 +93,18 @@ import java.util.regex.Pattern;
  *  final recommendation phase (10)</li>
  * <li>--maxSimilaritiesPerItem (integer): Maximum number of similarities considered per item (100)</li>
  * <li>--maxCooccurrencesPerItem (integer): Maximum number of cooccurrences considered per item (100)</li>
+ * <li>--broadcastSimilarities (flag): recommend map-side, see below</li>
+ * <li>--maxSimilarityMatrixMB (integer): largest size of the similarity matrix on disk, in megabytes, for which
+ *  --broadcastSimilarities is honored (64)</li>
  * </ol>
  *
+ * <p>By default, the final phases join every preference of a user with the similarity matrix column of the item, and
+ * send a copy of that column per preference to a reducer which computes the recommendations of the user. With
+ * --broadcastSimilarities, the pruned similarity matrix is instead read from the distributed cache into each mapper,
+ * which computes the recommendations of each user vector directly; only the top recommendations are written, and
+ * nothing is shuffled. The job falls back to the default path if the similarity matrix is larger than
+ * --maxSimilarityMatrixMB or if a --filterFile is given.</p>
+ *
  * <p>General command line options are documented in {@link AbstractJob}.</p>
  *
  * <p>Note that because of how Hadoop parses arguments, all "-D" arguments must appear before all other
@@ -101,6 +117,9 @@ public final class RecommenderJob extends AbstractJob {
   private static final int DEFAULT_MAX_SIMILARITIES_PER_ITEM = 100;
   private static final int DEFAULT_MAX_COOCCURRENCES_PER_ITEM = 100;
   private static final int DEFAULT_MIN_PREFS_PER_USER = 1;
+  private static final int DEFAULT_MAX_SIMILARITY_MATRIX_MB = 64;
+
+  private static final Logger log = LoggerFactory.getLogger(RecommenderJob.class);
 
   @Override
   public int run(String[] args) throws IOException, ClassNotFoundException, InterruptedException {
@@ -127,6 +146,10 @@ public final class RecommenderJob extends AbstractJob {
     addOption("similarityClassname", "s", "Name of distributed similarity class to instantiate, alternatively use "
         + "one of the predefined similarities (" + SimilarityType.listEnumNames() + ')',
         String.valueOf(SimilarityType.SIMILARITY_COOCCURRENCE));    
+    addFlag("broadcastSimilarities", "bs", "recommend map-side, against a copy of the similarity matrix in memory");
+    addOption("maxSimilarityMatrixMB", "ms", "largest size of the similarity matrix in megabytes for which "
+        + "--broadcastSimilarities is honored (default: " + DEFAULT_MAX_SIMILARITY_MATRIX_MB + ')',
+        String.valueOf(DEFAULT_MAX_SIMILARITY_MATRIX_MB));
 
     Map<String,String> parsedArgs = parseArguments(args);
     if (parsedArgs == null) {
@@ -146,6 +169,8 @@ public final class RecommenderJob extends AbstractJob {
     int maxSimilaritiesPerItem = Integer.parseInt(parsedArgs.get("--maxSimilaritiesPerItem"));
     int maxCooccurrencesPerItem = Integer.parseInt(parsedArgs.get("--maxCooccurrencesPerItem"));
     String similarityClassname = parsedArgs.get("--similarityClassname");
+    boolean broadcastSimilarities = parsedArgs.containsKey("--broadcastSimilarities");
+    long maxSimilarityMatrixBytes = Long.parseLong(parsedArgs.get("--maxSimilarityMatrixMB")) * 1024L * 1024L;
 
     Path userVectorPath = new Path(tempDirPath, "userVectors");
     Path itemIDIndexPath = new Path(tempDirPath, "itemIDIndex");
@@ -230,7 +255,14 @@ public final class RecommenderJob extends AbstractJob {
       }
     }
 
-    if (shouldRunNextPhase(parsedArgs, currentPhase)) {
+    boolean shouldRunPartialMultiplyPhase = shouldRunNextPhase(parsedArgs, currentPhase);
+    boolean shouldRunRecommendPhase = shouldRunNextPhase(parsedArgs, currentPhase);
+    /* the similarity matrix only has to exist if one of the phases depending on this decision runs */
+    if (broadcastSimilarities && (shouldRunPartialMultiplyPhase || shouldRunRecommendPhase)) {
+      broadcastSimilarities = canBroadcast(similarityMatrixPath, maxSimilarityMatrixBytes, filterFile);
+    }
+
+    if (shouldRunPartialMultiplyPhase && !broadcastSimilarities) {
       Job prePartialMultiply1 = prepareJob(
         similarityMatrixPath, prePartialMultiplyPath1, SequenceFileInputFormat.class,
         SimilarityMatrixRowWrapperMapper.class, VarIntWritable.class, VectorOrPrefWritable.class,
@@ -265,7 +297,35 @@ public final class RecommenderJob extends AbstractJob {
       partialMultiply.waitForCompletion(true);
     }
 
-    if (shouldRunNextPhase(parsedArgs, currentPhase)) {
+    if (shouldRunRecommendPhase && broadcastSimilarities) {
+      Job mapSideRecommend = prepareJob(
+          userVectorPath, outputPath, SequenceFileInputFormat.class,
+          MapSideRecommendMapper.class, VarLongWritable.class, RecommendedItemsWritable.class,
+          Reducer.class, VarLongWritable.class, RecommendedItemsWritable.class,
+          TextOutputFormat.class);
+      mapSideRecommend.setNumReduceTasks(0);
+      Configuration mapSideRecommendConf = mapSideRecommend.getConfiguration();
+      if (usersFile != null) {
+        mapSideRecommendConf.set(UserVectorSplitterMapper.USERS_FILE, usersFile);
+      }
+      if (itemsFile != null) {
+        mapSideRecommendConf.set(AggregateAndRecommendReducer.ITEMS_FILE, itemsFile);
+      }
+      mapSideRecommendConf.setInt(UserVectorSplitterMapper.MAX_PREFS_PER_USER_CONSIDERED, maxPrefsPerUser);
+      mapSideRecommendConf.set(AggregateAndRecommendReducer.ITEMID_INDEX_PATH, itemIDIndexPath.toString());
+      mapSideRecommendConf.setInt(AggregateAndRecommendReducer.NUM_RECOMMENDATIONS, numRecommendations);
+      mapSideRecommendConf.setBoolean(BOOLEAN_DATA, booleanData);
+
+      FileStatus[] parts = similarityMatrixPath.getFileSystem(mapSideRecommendConf)
+          .listStatus(similarityMatrixPath, PathFilters.partFilter());
+      URI[] partURIs = new URI[parts.length];
+      for (int n = 0; n < parts.length; n++) {
+        partURIs[n] = parts[n].getPath().toUri();
+      }
+      DistributedCache.setCacheFiles(partURIs, mapSideRecommendConf);
+
+      mapSideRecommend.waitForCompletion(true);
+    } else if (shouldRunRecommendPhase) {
 
       /* convert the user/item pairs to filter if a filterfile has been specified */
       if (filterFile != null) {
@@ -308,6 +368,35 @@ public final class RecommenderJob extends AbstractJob {
     return 0;
   }
 
+  /**
+   * decides whether the similarity matrix may be broadcast to the mappers, falling back to the reduce-side join if
+   * it is too large or if an explicit filter file has to be joined in
+   */
+  private boolean canBroadcast(Path similarityMatrixPath, long maxSimilarityMatrixBytes, String filterFile)
+    throws IOException {
+    if (filterFile != null) {
+      log.info("Not broadcasting the similarity matrix, as a filter file is given");
+      return false;
+    }
+    FileSystem fs = similarityMatrixPath.getFileSystem(getConf());
+    FileStatus[] parts =
+        fs.exists(similarityMatrixPath) ? fs.listStatus(similarityMatrixPath, PathFilters.partFilter()) : null;
+    if (parts == null) {
+      log.info("Not broadcasting the similarity matrix, as {} does not exist", similarityMatrixPath);
+      return false;
+    }
+    long similarityMatrixBytes = 0;
+    for (FileStatus part : parts) {
+      similarityMatrixBytes += part.getLen();
+    }
+    if (similarityMatrixBytes > maxSimilarityMatrixBytes) {
+      log.info("Not broadcasting the similarity matrix, as its {} bytes exceed the maximum of {} bytes",
+          similarityMatrixBytes, maxSimilarityMatrixBytes);
+      return false;
+    }
+    return true;
+  }
+
   private static void setIOSort(JobContext job) {
     Configuration conf = job.getConfiguration();
     conf.setInt("io.sort.factor", 100);
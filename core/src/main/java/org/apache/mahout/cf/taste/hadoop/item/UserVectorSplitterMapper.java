@@ -91,7 +91,7 @@ public final class UserVectorSplitterMapper extends
       return userVector;
     }
 
-    float smallestLargeValue = findSmallestLargeValue(userVector);
+    float smallestLargeValue = findSmallestLargeValue(userVector, maxPrefsPerUserConsidered);
 
     // "Blank out" small-sized prefs to reduce the amount of partial products
     // generated later. They're not zeroed, but NaN-ed, so they come through
@@ -108,7 +108,10 @@ public final class UserVectorSplitterMapper extends
     return userVector;
   }
 
-  private float findSmallestLargeValue(Vector userVector) {
+  /**
+   * @return the smallest absolute value among the maxPrefsPerUserConsidered largest absolute values in userVector
+   */
+  static float findSmallestLargeValue(Vector userVector, int maxPrefsPerUserConsidered) {
     PriorityQueue<Float> topPrefValues = new PriorityQueue<Float>(maxPrefsPerUserConsidered + 1);
     Iterator<Vector.Element> it = userVector.iterateNonZero();
     while (it.hasNext()) {
@@ -17,6 +17,9 @@
 
 package org.apache.mahout.cf.taste.hadoop.similarity.item;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -74,6 +77,11 @@ import org.apache.mahout.math.hadoop.similarity.SimilarityType;
  * <li>--maxSimilaritiesPerItem (integer): Maximum number of similarities considered per item (100)</li>
  * <li>--maxCooccurrencesPerItem (integer): Maximum number of cooccurrences considered per item (100)</li>
  * <li>--booleanData (boolean): Treat input data as having no pref values (false)</li>
+ * <li>--stripes (flag): let {@link RowSimilarityJob} compute the cooccurrences as stripes, which shuffles less data
+ *  for popular items</li>
+ * <li>--threshold (double): discard similarities below this value (optional)</li>
+ * <li>--maxOccurrencesPerColumn (integer): randomly down-sample the preferences of users with more preferences than
+ *  this when computing similarities, which approximates the similarities of items those users share (optional)</li>
  * </ol>
  *
  * <p>General command line options are documented in {@link AbstractJob}.</p>
@@ -109,6 +117,10 @@ public final class ItemSimilarityJob extends AbstractJob {
     addOption("minPrefsPerUser", "mp", "ignore users with less preferences than this "
         + "(default: " + DEFAULT_MIN_PREFS_PER_USER + ')', String.valueOf(DEFAULT_MIN_PREFS_PER_USER));
     addOption("booleanData", "b", "Treat input as without pref values", Boolean.FALSE.toString());
+    addFlag("stripes", "st", "compute the cooccurrences as stripes of partial sums per item instead of as pairs");
+    addOption("threshold", "tr", "discard similarities below this value (optional)", null);
+    addOption("maxOccurrencesPerColumn", "moc", "down-sample the preferences of users with more preferences than "
+        + "this when computing similarities (optional)", null);
 
     Map<String,String> parsedArgs = parseArguments(args);
     if (parsedArgs == null) {
@@ -120,6 +132,9 @@ public final class ItemSimilarityJob extends AbstractJob {
     int maxCooccurrencesPerItem = Integer.parseInt(parsedArgs.get("--maxCooccurrencesPerItem"));
     int minPrefsPerUser = Integer.parseInt(parsedArgs.get("--minPrefsPerUser"));
     boolean booleanData = Boolean.valueOf(parsedArgs.get("--booleanData"));
+    boolean stripes = parsedArgs.containsKey("--stripes");
+    String threshold = parsedArgs.get("--threshold");
+    String maxOccurrencesPerColumn = parsedArgs.get("--maxOccurrencesPerColumn");
 
     Path inputPath = getInputPath();
     Path outputPath = getOutputPath();
@@ -196,13 +211,25 @@ public final class ItemSimilarityJob extends AbstractJob {
 
     /* Once DistributedRowMatrix uses the hadoop 0.20 API, we should refactor this call to something like
      * new DistributedRowMatrix(...).rowSimilarity(...) */
-    ToolRunner.run(getConf(), new RowSimilarityJob(), new String[] {
+    List<String> rowSimilarityArgs = new ArrayList<String>(Arrays.asList(
       "-Dmapred.input.dir=" + itemUserMatrixPath,
       "-Dmapred.output.dir=" + similarityMatrixPath,
       "--numberOfColumns", String.valueOf(numberOfUsers),
       "--similarityClassname", similarityClassName,
       "--maxSimilaritiesPerRow", String.valueOf(maxSimilarItemsPerItem + 1),
-      "--tempDir", tempDirPath.toString() });
+      "--tempDir", tempDirPath.toString()));
+    if (stripes) {
+      rowSimilarityArgs.add("--stripes");
+    }
+    if (threshold != null) {
+      rowSimilarityArgs.add("--threshold");
+      rowSimilarityArgs.add(threshold);
+    }
+    if (maxOccurrencesPerColumn != null) {
+      rowSimilarityArgs.add("--maxOccurrencesPerColumn");
+      rowSimilarityArgs.add(maxOccurrencesPerColumn);
+    }
+    ToolRunner.run(getConf(), new RowSimilarityJob(), rowSimilarityArgs.toArray(new String[rowSimilarityArgs.size()]));
 
     if (shouldRunNextPhase(parsedArgs, currentPhase)) {
       Job mostSimilarItems = prepareJob(similarityMatrixPath,
@@ -0,0 +1,548 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+
+/**
+ * <p>
+ * A thread-safe alternative to {@link Cache} intended for recommenders which are queried by many threads at
+ * once. Like {@link Cache}, values are not "put" into the cache; they are loaded on demand from a
+ * {@link Retriever}.
+ * </p>
+ *
+ * <p>
+ * The key space is split into independently locked segments, so that concurrent lookups of different keys
+ * rarely contend. When a segment is full, an entry is evicted according to the configured
+ * {@link EvictionPolicy}. Concurrent misses on the same key are collapsed: only one thread calls the
+ * {@link Retriever}, and the others wait for and share its result.
+ * </p>
+ *
+ * <p>
+ * Hit, miss and eviction counts are kept so that the effectiveness of the cache can be monitored.
+ * </p>
+ *
+ * <p>
+ * The cache does not support <code>null</code> keys.
+ * </p>
+ */
+public final class ConcurrentCache<K,V> implements Retriever<K,V> {
+
+  /**
+   * Strategies for choosing the entry to evict from a full segment.
+   */
+  public enum EvictionPolicy {
+    /** Evicts the least recently accessed entry. */
+    LRU,
+    /**
+     * Evicts the least frequently accessed among the oldest few entries. Sampling only the oldest entries
+     * keeps eviction constant-time and lets stale, once-popular entries age out.
+     */
+    LFU,
+    /** "Second chance" eviction: evicts the oldest entry that has not been accessed since it was last passed over. */
+    CLOCK
+  }
+
+  public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+  private static final int LFU_SAMPLE_SIZE = 8;
+  private static final Object NULL = new Object();
+
+  private final Retriever<? super K,? extends V> retriever;
+  private final EvictionPolicy policy;
+  private final Segment<K>[] segments;
+  private final int segmentMask;
+
+  /**
+   * <p>
+   * Creates a new, unbounded cache based on the given {@link Retriever}.
+   * </p>
+   *
+   * @param retriever
+   *          object which can retrieve values for keys
+   */
+  public ConcurrentCache(Retriever<? super K,? extends V> retriever) {
+    this(retriever, FastMap.NO_MAX_SIZE);
+  }
+
+  /**
+   * <p>
+   * Creates a new cache based on the given {@link Retriever} and with given maximum size, using
+   * {@link EvictionPolicy#CLOCK} eviction like {@link Cache}.
+   * </p>
+   *
+   * @param retriever
+   *          object which can retrieve values for keys
+   * @param maxEntries
+   *          maximum number of entries the cache will store before evicting some
+   */
+  public ConcurrentCache(Retriever<? super K,? extends V> retriever, int maxEntries) {
+    this(retriever, maxEntries, EvictionPolicy.CLOCK);
+  }
+
+  public ConcurrentCache(Retriever<? super K,? extends V> retriever, int maxEntries, EvictionPolicy policy) {
+    this(retriever, maxEntries, policy, DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  /**
+   * @param retriever
+   *          object which can retrieve values for keys
+   * @param maxEntries
+   *          maximum number of entries the cache will store before evicting some
+   * @param policy
+   *          how to choose entries to evict
+   * @param concurrencyLevel
+   *          expected number of threads accessing the cache concurrently; determines the number of segments
+   */
+  public ConcurrentCache(Retriever<? super K,? extends V> retriever,
+                         int maxEntries,
+                         EvictionPolicy policy,
+                         int concurrencyLevel) {
+    Preconditions.checkArgument(retriever != null, "retriever is null");
+    Preconditions.checkArgument(maxEntries >= 1, "maxEntries must be at least 1");
+    Preconditions.checkArgument(policy != null, "policy is null");
+    Preconditions.checkArgument(concurrencyLevel >= 1, "concurrencyLevel must be at least 1");
+    this.retriever = retriever;
+    this.policy = policy;
+    int numSegments = 1;
+    while (numSegments < concurrencyLevel && numSegments < maxEntries) {
+      numSegments <<= 1;
+    }
+    // Rounding up the per-segment capacity may allow slightly more than maxEntries in total
+    int maxPerSegment = maxEntries == FastMap.NO_MAX_SIZE
+        ? FastMap.NO_MAX_SIZE
+        : (maxEntries + numSegments - 1) / numSegments;
+    @SuppressWarnings("unchecked")
+    Segment<K>[] newSegments = (Segment<K>[]) new Segment<?>[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      newSegments[i] = new Segment<K>(maxPerSegment, policy);
+    }
+    segments = newSegments;
+    segmentMask = numSegments - 1;
+  }
+
+  /**
+   * <p>
+   * Returns cached value for a key. If it does not exist, it is loaded using a {@link Retriever}. If another
+   * thread is already loading the value, this waits for that load instead of starting another.
+   * </p>
+   *
+   * @param key
+   *          cache key
+   * @return value for that key
+   * @throws TasteException
+   *           if an exception occurs while retrieving a new cached value
+   */
+  @Override
+  public V get(K key) throws TasteException {
+    Segment<K> segment = segmentFor(key);
+    PendingLoad pending;
+    boolean loadHere;
+    int generation;
+    segment.lock.lock();
+    try {
+      Entry entry = segment.map.get(key);
+      if (entry != null) {
+        entry.recordAccess();
+        segment.hits++;
+        return unmask(entry.value);
+      }
+      segment.misses++;
+      pending = segment.pending.get(key);
+      loadHere = pending == null;
+      if (loadHere) {
+        pending = new PendingLoad();
+        segment.pending.put(key, pending);
+      }
+      generation = segment.generation;
+    } finally {
+      segment.lock.unlock();
+    }
+
+    if (!loadHere) {
+      return unmask(pending.await());
+    }
+
+    Object value;
+    try {
+      value = retriever.get(key);
+    } catch (TasteException te) {
+      segment.abandon(key, pending, te);
+      throw te;
+    } catch (RuntimeException re) {
+      segment.abandon(key, pending, re);
+      throw re;
+    } catch (Error e) {
+      segment.abandon(key, pending, e);
+      throw e;
+    }
+    if (value == null) {
+      value = NULL;
+    }
+    segment.complete(key, pending, value, generation);
+    return unmask(value);
+  }
+
+  /**
+   * <p>
+   * Uncaches any existing value for a given key.
+   * </p>
+   *
+   * @param key
+   *          cache key
+   */
+  public void remove(K key) {
+    Segment<K> segment = segmentFor(key);
+    segment.lock.lock();
+    try {
+      segment.map.remove(key);
+      segment.generation++;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  /**
+   * Clears all cache entries whose key matches the given predicate.
+   */
+  public void removeKeysMatching(Cache.MatchPredicate<K> predicate) {
+    for (Segment<K> segment : segments) {
+      segment.lock.lock();
+      try {
+        Iterator<K> it = segment.map.keySet().iterator();
+        while (it.hasNext()) {
+          if (predicate.matches(it.next())) {
+            it.remove();
+          }
+        }
+        segment.generation++;
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Clears all cache entries whose value matches the given predicate.
+   */
+  public void removeValueMatching(Cache.MatchPredicate<V> predicate) {
+    for (Segment<K> segment : segments) {
+      segment.lock.lock();
+      try {
+        Iterator<Entry> it = segment.map.values().iterator();
+        while (it.hasNext()) {
+          if (predicate.matches(ConcurrentCache.<V>unmask(it.next().value))) {
+            it.remove();
+          }
+        }
+        segment.generation++;
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * Clears the cache. Statistics are not reset.
+   * </p>
+   */
+  public void clear() {
+    for (Segment<K> segment : segments) {
+      segment.lock.lock();
+      try {
+        segment.map.clear();
+        segment.generation++;
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return number of entries currently cached
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K> segment : segments) {
+      segment.lock.lock();
+      try {
+        size += segment.map.size();
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  public EvictionPolicy getEvictionPolicy() {
+    return policy;
+  }
+
+  /**
+   * @return number of lookups which found a cached value
+   */
+  public long getHitCount() {
+    long count = 0L;
+    for (Segment<K> segment : segments) {
+      segment.lock.lock();
+      try {
+        count += segment.hits;
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return number of lookups which did not find a cached value, including those which waited on another
+   *         thread's load
+   */
+  public long getMissCount() {
+    long count = 0L;
+    for (Segment<K> segment : segments) {
+      segment.lock.lock();
+      try {
+        count += segment.misses;
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return number of entries evicted to make room for new ones
+   */
+  public long getEvictionCount() {
+    long count = 0L;
+    for (Segment<K> segment : segments) {
+      segment.lock.lock();
+      try {
+        count += segment.evictions;
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return fraction of lookups which were hits, or {@link Double#NaN} if there have been no lookups
+   */
+  public double getHitRatio() {
+    long hits = getHitCount();
+    long total = hits + getMissCount();
+    return total == 0L ? Double.NaN : (double) hits / (double) total;
+  }
+
+  private Segment<K> segmentFor(K key) {
+    int h = key.hashCode();
+    // Spread bits so that keys differing only in high bits land in different segments
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return segments[h & segmentMask];
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> V unmask(Object value) {
+    return value == NULL ? null : (V) value;
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentCache[retriever:" + retriever + ", policy:" + policy + ']';
+  }
+
+  private static final class Entry {
+
+    private final Object value;
+    private int frequency;
+    private boolean referenced;
+
+    private Entry(Object value) {
+      this.value = value;
+    }
+
+    private void recordAccess() {
+      if (frequency < Integer.MAX_VALUE) {
+        frequency++;
+      }
+      referenced = true;
+    }
+  }
+
+  /**
+   * A value being loaded by one thread, which others may wait on.
+   */
+  private static final class PendingLoad {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Object value;
+    private Throwable failure;
+
+    private void set(Object value) {
+      this.value = value;
+      done.countDown();
+    }
+
+    private void fail(Throwable failure) {
+      this.failure = failure;
+      done.countDown();
+    }
+
+    private Object await() throws TasteException {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          done.await();
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (failure == null) {
+        return value;
+      }
+      if (failure instanceof TasteException) {
+        throw (TasteException) failure;
+      }
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      throw new TasteException(failure);
+    }
+  }
+
+  private static final class Segment<K> {
+
+    private final ReentrantLock lock;
+    private final LinkedHashMap<K,Entry> map;
+    private final Map<K,PendingLoad> pending;
+    private final int maxEntries;
+    private final EvictionPolicy policy;
+    /** Incremented on any removal, so that loads which started before it are not cached afterwards. */
+    private int generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private Segment(int maxEntries, EvictionPolicy policy) {
+      this.lock = new ReentrantLock();
+      // LRU keeps entries in access order; LFU and CLOCK keep them in insertion order
+      this.map = new LinkedHashMap<K,Entry>(16, 0.75f, policy == EvictionPolicy.LRU);
+      this.pending = new HashMap<K,PendingLoad>();
+      this.maxEntries = maxEntries;
+      this.policy = policy;
+    }
+
+    private void complete(K key, PendingLoad load, Object value, int startGeneration) {
+      lock.lock();
+      try {
+        if (startGeneration == generation) {
+          if (map.size() >= maxEntries && !map.containsKey(key)) {
+            evict();
+          }
+          map.put(key, new Entry(value));
+        }
+        pending.remove(key);
+      } finally {
+        lock.unlock();
+      }
+      load.set(value);
+    }
+
+    private void abandon(K key, PendingLoad load, Throwable failure) {
+      lock.lock();
+      try {
+        pending.remove(key);
+      } finally {
+        lock.unlock();
+      }
+      load.fail(failure);
+    }
+
+    private void evict() {
+      if (map.isEmpty()) {
+        return;
+      }
+      K victim;
+      switch (policy) {
+        case LRU:
+          victim = map.keySet().iterator().next();
+          break;
+        case LFU:
+          victim = leastFrequentlyUsedOfOldest();
+          break;
+        case CLOCK:
+          victim = nextUnreferenced();
+          break;
+        default:
+          throw new IllegalStateException();
+      }
+      map.remove(victim);
+      evictions++;
+    }
+
+    private K leastFrequentlyUsedOfOldest() {
+      K victim = null;
+      int lowest = Integer.MAX_VALUE;
+      Iterator<Map.Entry<K,Entry>> it = map.entrySet().iterator();
+      for (int i = 0; i < LFU_SAMPLE_SIZE && it.hasNext(); i++) {
+        Map.Entry<K,Entry> candidate = it.next();
+        int frequency = candidate.getValue().frequency;
+        if (frequency < lowest) {
+          lowest = frequency;
+          victim = candidate.getKey();
+        }
+      }
+      return victim;
+    }
+
+    private K nextUnreferenced() {
+      while (true) {
+        Map.Entry<K,Entry> head = map.entrySet().iterator().next();
+        Entry entry = head.getValue();
+        if (!entry.referenced) {
+          return head.getKey();
+        }
+        // Give it a second chance by moving it to the back of the queue
+        K key = head.getKey();
+        entry.referenced = false;
+        map.remove(key);
+        map.put(key, entry);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A point in time by which some computation should finish, measured with {@link System#nanoTime()}.
+ * Computations which accept a deadline check it as they go, and return the best result found so far once it
+ * has passed, rather than failing.
+ * </p>
+ *
+ * <p>
+ * A deadline remembers whether it, or any {@link #portion(double)} of it, was found to have passed, so that
+ * callers can tell afterwards whether any stage of a computation was cut short; see {@link #wasExceeded()}.
+ * </p>
+ */
+public final class Deadline {
+
+  /** A deadline which never passes. */
+  public static final Deadline NONE = new Deadline(0L, false, new AtomicBoolean());
+
+  private final long deadlineNanos;
+  private final boolean bounded;
+  /** Shared with the portions of this deadline. */
+  private final AtomicBoolean exceeded;
+
+  private Deadline(long deadlineNanos, boolean bounded, AtomicBoolean exceeded) {
+    this.deadlineNanos = deadlineNanos;
+    this.bounded = bounded;
+    this.exceeded = exceeded;
+  }
+
+  /**
+   * @return deadline the given time from now
+   * @throws IllegalArgumentException if duration is negative
+   */
+  public static Deadline after(long duration, TimeUnit unit) {
+    Preconditions.checkArgument(duration >= 0L, "duration is negative");
+    Preconditions.checkArgument(unit != null, "unit is null");
+    return new Deadline(System.nanoTime() + unit.toNanos(duration), true, new AtomicBoolean());
+  }
+
+  /**
+   * @return false for {@link #NONE}, true otherwise
+   */
+  public boolean isBounded() {
+    return bounded;
+  }
+
+  public boolean isExpired() {
+    // Compare the difference, not the values, since nanoTime() may overflow
+    if (bounded && System.nanoTime() - deadlineNanos >= 0L) {
+      if (!exceeded.get()) {
+        exceeded.set(true);
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return true if {@link #isExpired()} has returned true for this deadline, for the deadline it is a
+   *  {@link #portion(double)} of, or for any other portion of that deadline
+   */
+  public boolean wasExceeded() {
+    return exceeded.get();
+  }
+
+  /**
+   * @return nanoseconds until this deadline passes, 0 if it has passed, or {@link Long#MAX_VALUE} for
+   *  {@link #NONE}
+   */
+  public long remainingNanos() {
+    if (!bounded) {
+      return Long.MAX_VALUE;
+    }
+    long remaining = deadlineNanos - System.nanoTime();
+    return remaining > 0L ? remaining : 0L;
+  }
+
+  /**
+   * @return deadline which passes after the given fraction of the time remaining until this one, as when
+   *  reserving part of a time budget for a later stage of a computation; {@link #NONE} for {@link #NONE}
+   */
+  public Deadline portion(double fraction) {
+    Preconditions.checkArgument(fraction >= 0.0 && fraction <= 1.0, "fraction must be in [0,1]");
+    if (!bounded) {
+      return NONE;
+    }
+    return new Deadline(System.nanoTime() + (long) (fraction * remainingNanos()), true, exceeded);
+  }
+
+  /**
+   * @return whichever of this and the given deadline passes first
+   */
+  public Deadline min(Deadline other) {
+    Preconditions.checkArgument(other != null, "other is null");
+    if (!other.bounded) {
+      return this;
+    }
+    if (!bounded) {
+      return other;
+    }
+    return other.deadlineNanos - deadlineNanos < 0L ? other : this;
+  }
+
+  @Override
+  public String toString() {
+    return bounded ? "Deadline[remaining:" + remainingNanos() + "ns]" : "Deadline[none]";
+  }
+
+}
@@ -44,6 +44,20 @@ public final class LongPrimitiveArrayIterator implements LongPrimitiveIterator {
     this.position = 0;
     this.max = array.length;
   }
+
+  /**
+   * <p>
+   * Creates an iterator over the elements of an array from index <code>from</code>, inclusive, to <code>to</code>,
+   * exclusive.
+   * </p>
+   */
+  public LongPrimitiveArrayIterator(long[] array, int from, int to) {
+    Preconditions.checkArgument(array != null, "array is null");
+    Preconditions.checkArgument(from >= 0 && from <= to && to <= array.length, "bad range");
+    this.array = array;
+    this.position = from;
+    this.max = to;
+  }
   
   @Override
   public boolean hasNext() {
@@ -57,7 +71,7 @@ public final class LongPrimitiveArrayIterator implements LongPrimitiveIterator {
   
   @Override
   public long nextLong() {
-    if (position >= array.length) {
+    if (position >= max) {
       throw new NoSuchElementException();
     }
     return array[position++];
@@ -65,7 +79,7 @@ public final class LongPrimitiveArrayIterator implements LongPrimitiveIterator {
   
   @Override
   public long peek() {
-    if (position >= array.length) {
+    if (position >= max) {
       throw new NoSuchElementException();
     }
     return array[position];
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * A read-only, memory-mapped region of a file holding an array of <code>long</code>s or <code>float</code>s.
+ * A single {@link java.nio.MappedByteBuffer} can address at most 2GB, so larger regions are mapped as
+ * several consecutive chunks. Chunk boundaries are multiples of 8 bytes, so no element spans two chunks.
+ * </p>
+ *
+ * <p>
+ * Reads use absolute positions only, so instances may be shared by many threads.
+ * </p>
+ */
+public final class MappedSection {
+
+  private static final int CHUNK_SHIFT = 30;
+  private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = (int) (CHUNK_SIZE - 1);
+
+  private final ByteBuffer[] chunks;
+
+  public MappedSection(FileChannel channel, long position, long numBytes) throws IOException {
+    int numChunks = (int) ((numBytes + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+    chunks = new ByteBuffer[numChunks];
+    for (int i = 0; i < numChunks; i++) {
+      long chunkStart = (long) i << CHUNK_SHIFT;
+      long chunkSize = Math.min(CHUNK_SIZE, numBytes - chunkStart);
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + chunkStart, chunkSize);
+    }
+  }
+
+  public long getLong(long index) {
+    long byteOffset = index << 3;
+    return chunks[(int) (byteOffset >>> CHUNK_SHIFT)].getLong((int) byteOffset & CHUNK_MASK);
+  }
+
+  public float getFloat(long index) {
+    long byteOffset = index << 2;
+    return chunks[(int) (byteOffset >>> CHUNK_SHIFT)].getFloat((int) byteOffset & CHUNK_MASK);
+  }
+
+  /**
+   * @return index of the given value among the <code>long</code>s in [from,to), which must be sorted, or
+   *  <code>-(insertion point) - 1</code> if not present, as with {@link java.util.Arrays#binarySearch(long[], long)}
+   */
+  public long binarySearchLong(long from, long to, long value) {
+    long low = from;
+    long high = to - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      long midValue = getLong(mid);
+      if (midValue < value) {
+        low = mid + 1;
+      } else if (midValue > value) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import java.util.List;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.common.SamplingLongPrimitiveIterator;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Measures how well a {@link Recommender} which takes shortcuts, such as one which considers only candidate items
+ * found by an approximate index, reproduces the recommendations of an exact one, and how much faster it is.
+ * Both recommend to the same sample of users. Recall is the fraction of the exact recommendations which the
+ * approximate recommender also returns, averaged over users who got any exact recommendations.
+ * </p>
+ *
+ * <p>
+ * Users are evaluated one after another in the calling thread, so that times are comparable.
+ * </p>
+ */
+public final class ApproximateRecommenderEvaluator {
+
+  private static final Logger log = LoggerFactory.getLogger(ApproximateRecommenderEvaluator.class);
+
+  private ApproximateRecommenderEvaluator() { }
+
+  /**
+   * @param exact recommender whose recommendations are taken to be correct
+   * @param approximate recommender to evaluate, normally over the same data
+   * @param howMany number of recommendations to compare per user
+   * @param evaluationPercentage fraction of users to evaluate, in (0,1]
+   */
+  public static Result evaluate(Recommender exact,
+                                Recommender approximate,
+                                int howMany,
+                                double evaluationPercentage) throws TasteException {
+    Preconditions.checkArgument(exact != null, "exact is null");
+    Preconditions.checkArgument(approximate != null, "approximate is null");
+    Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
+    Preconditions.checkArgument(evaluationPercentage > 0.0 && evaluationPercentage <= 1.0,
+        "Invalid evaluationPercentage: %s", evaluationPercentage);
+
+    RunningAverage recall = new FullRunningAverage();
+    RunningAverage exactTime = new FullRunningAverage();
+    RunningAverage approximateTime = new FullRunningAverage();
+    LongPrimitiveIterator userIDs =
+        SamplingLongPrimitiveIterator.maybeWrapIterator(exact.getDataModel().getUserIDs(), evaluationPercentage);
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+
+      long start = System.nanoTime();
+      List<RecommendedItem> exactItems = exact.recommend(userID, howMany);
+      long middle = System.nanoTime();
+      List<RecommendedItem> approximateItems = approximate.recommend(userID, howMany);
+      long end = System.nanoTime();
+      exactTime.addDatum((middle - start) / 1000000.0);
+      approximateTime.addDatum((end - middle) / 1000000.0);
+
+      if (!exactItems.isEmpty()) {
+        FastIDSet approximateItemIDs = new FastIDSet(approximateItems.size());
+        for (RecommendedItem item : approximateItems) {
+          approximateItemIDs.add(item.getItemID());
+        }
+        int found = 0;
+        for (RecommendedItem item : exactItems) {
+          if (approximateItemIDs.contains(item.getItemID())) {
+            found++;
+          }
+        }
+        recall.addDatum((double) found / exactItems.size());
+      }
+    }
+
+    Result result = new Result(recall.getCount() == 0 ? Double.NaN : recall.getAverage(),
+                               exactTime.getAverage(),
+                               approximateTime.getAverage(),
+                               exactTime.getCount());
+    log.info("{}", result);
+    return result;
+  }
+
+  public static final class Result {
+
+    private final double recall;
+    private final double exactMillis;
+    private final double approximateMillis;
+    private final int numUsers;
+
+    Result(double recall, double exactMillis, double approximateMillis, int numUsers) {
+      this.recall = recall;
+      this.exactMillis = exactMillis;
+      this.approximateMillis = approximateMillis;
+      this.numUsers = numUsers;
+    }
+
+    /**
+     * @return average fraction of the exact recommendations also made by the approximate recommender, or
+     *  {@link Double#NaN} if no user got any exact recommendations
+     */
+    public double getRecall() {
+      return recall;
+    }
+
+    /**
+     * @return average time the exact recommender took per user, in milliseconds
+     */
+    public double getExactMillis() {
+      return exactMillis;
+    }
+
+    /**
+     * @return average time the approximate recommender took per user, in milliseconds
+     */
+    public double getApproximateMillis() {
+      return approximateMillis;
+    }
+
+    public int getNumUsers() {
+      return numUsers;
+    }
+
+    @Override
+    public String toString() {
+      return "ApproximateRecommenderEvaluator.Result[recall:" + recall + ", exactMillis:" + exactMillis
+          + ", approximateMillis:" + approximateMillis + ", numUsers:" + numUsers + ']';
+    }
+  }
+
+}
@@ -122,6 +122,8 @@ public final class GenericRecommenderIRStatsEvaluator implements RecommenderIRSt
       // List some most-preferred items that would count as (most) "relevant" results
       double theRelevanceThreshold = Double.isNaN(relevanceThreshold) ? computeThreshold(prefs) : relevanceThreshold;
 
+      // Sort a copy; the model's own array may be shared or read-only
+      prefs = prefs.clone();
       prefs.sortByValueReversed();
 
       for (int i = 0; (i < size) && (relevantItemIDs.size() < at); i++) {
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A thread-safe histogram of non-negative <code>long</code> values, such as latencies in nanoseconds or sizes
+ * of candidate item sets, from which percentiles like the median or 99.9th percentile can be read.
+ * </p>
+ *
+ * <p>
+ * Values are counted in buckets whose width grows with the value: each power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so a percentile is reported with a relative error of at most 1/8,
+ * whatever the scale. Recording a value is a few arithmetic operations and three atomic increments, with no
+ * locking or allocation, so histograms can be left on hot paths.
+ * </p>
+ */
+public final class Histogram {
+
+  static final int SUB_BUCKETS = 8;
+  private static final int SUB_BUCKET_BITS = 3;
+  /** enough buckets for any non-negative long */
+  private static final int NUM_BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts;
+  private final AtomicLong count;
+  private final AtomicLong total;
+  private final AtomicLong max;
+
+  public Histogram() {
+    counts = new AtomicLongArray(NUM_BUCKETS);
+    count = new AtomicLong();
+    total = new AtomicLong();
+    max = new AtomicLong();
+  }
+
+  /**
+   * @param value value to count; negative values, as from a clock going backwards, are counted as 0
+   */
+  public void record(long value) {
+    if (value < 0L) {
+      value = 0L;
+    }
+    counts.incrementAndGet(bucketIndex(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+    long currentMax = max.get();
+    while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+      currentMax = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @return mean of all recorded values, or {@link Double#NaN} if none were recorded
+   */
+  public double getMean() {
+    long n = count.get();
+    return n == 0L ? Double.NaN : (double) total.get() / n;
+  }
+
+  /**
+   * @param fraction percentile to compute, as a fraction in (0,1]: 0.5 for the median, 0.999 for the 99.9th
+   *  percentile
+   * @return an upper bound on the given percentile of recorded values, which is within 1/8 of it, or 0 if no
+   *  values were recorded
+   */
+  public long getPercentile(double fraction) {
+    Preconditions.checkArgument(fraction > 0.0 && fraction <= 1.0, "Illegal fraction: %s", fraction);
+    // Buckets are read one at a time while others may record; total them here so the rank is consistent
+    long[] snapshot = new long[NUM_BUCKETS];
+    long n = 0L;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      n += snapshot[i];
+    }
+    if (n == 0L) {
+      return 0L;
+    }
+    long rank = (long) Math.ceil(fraction * n);
+    long seen = 0L;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Forgets all recorded values. Values recorded concurrently with a reset may be partly forgotten.
+   */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts.set(i, 0L);
+    }
+    count.set(0L);
+    total.set(0L);
+    max.set(0L);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+    long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+    return lowerBound + (1L << shift) - 1L;
+  }
+
+  @Override
+  public String toString() {
+    return "Histogram[count:" + getCount() + ", mean:" + getMean() + ", p50:" + getPercentile(0.5)
+        + ", p99:" + getPercentile(0.99) + ", p999:" + getPercentile(0.999) + ", max:" + getMax() + ']';
+  }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
+import org.apache.mahout.cf.taste.recommender.MostSimilarItemsCandidateItemsStrategy;
+
+/**
+ * <p>
+ * Candidate item strategies which delegate to others, recording how long finding candidates takes in
+ * nanoseconds, in a histogram of a {@link MetricRegistry} named "<em>prefix</em>.candidateItems", and how many
+ * candidates are found, in "<em>prefix</em>.candidateItems.size". The number of candidates is usually what
+ * decides how long a recommendation takes.
+ * </p>
+ *
+ * <p>
+ * An instance wraps a {@link CandidateItemsStrategy}, a {@link MostSimilarItemsCandidateItemsStrategy}, or one
+ * object which is both, and may be used as whichever of these it wraps.
+ * </p>
+ */
+public final class InstrumentedCandidateItemsStrategy
+    implements CandidateItemsStrategy, MostSimilarItemsCandidateItemsStrategy {
+
+  private final CandidateItemsStrategy candidateItemsStrategy;
+  private final MostSimilarItemsCandidateItemsStrategy mostSimilarItemsCandidateItemsStrategy;
+  private final Histogram candidateItemsTimes;
+  private final Histogram candidateItemsSizes;
+
+  /**
+   * @param delegate a {@link CandidateItemsStrategy}, a {@link MostSimilarItemsCandidateItemsStrategy}, or both
+   */
+  public InstrumentedCandidateItemsStrategy(Object delegate, MetricRegistry registry, String prefix) {
+    Preconditions.checkArgument(delegate instanceof CandidateItemsStrategy
+                                || delegate instanceof MostSimilarItemsCandidateItemsStrategy,
+                                "Not a candidate items strategy: %s", delegate);
+    Preconditions.checkArgument(registry != null, "registry is null");
+    candidateItemsStrategy =
+        delegate instanceof CandidateItemsStrategy ? (CandidateItemsStrategy) delegate : null;
+    mostSimilarItemsCandidateItemsStrategy = delegate instanceof MostSimilarItemsCandidateItemsStrategy
+        ? (MostSimilarItemsCandidateItemsStrategy) delegate
+        : null;
+    candidateItemsTimes = registry.histogram(prefix + ".candidateItems");
+    candidateItemsSizes = registry.histogram(prefix + ".candidateItems.size");
+  }
+
+  @Override
+  public FastIDSet getCandidateItems(long userID, PreferenceArray preferencesFromUser, DataModel dataModel)
+    throws TasteException {
+    Preconditions.checkState(candidateItemsStrategy != null, "Not a CandidateItemsStrategy");
+    long start = System.nanoTime();
+    try {
+      FastIDSet candidateItemIDs = candidateItemsStrategy.getCandidateItems(userID, preferencesFromUser, dataModel);
+      candidateItemsSizes.record(candidateItemIDs.size());
+      return candidateItemIDs;
+    } finally {
+      candidateItemsTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public FastIDSet getCandidateItems(long[] itemIDs, DataModel dataModel) throws TasteException {
+    Preconditions.checkState(mostSimilarItemsCandidateItemsStrategy != null,
+                             "Not a MostSimilarItemsCandidateItemsStrategy");
+    long start = System.nanoTime();
+    try {
+      FastIDSet candidateItemIDs = mostSimilarItemsCandidateItemsStrategy.getCandidateItems(itemIDs, dataModel);
+      candidateItemsSizes.record(candidateItemIDs.size());
+      return candidateItemIDs;
+    } finally {
+      candidateItemsTimes.record(System.nanoTime() - start);
+    }
+  }
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.util.Collection;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+
+/**
+ * <p>
+ * A {@link DataModel} which delegates to another, recording the latency of each call in nanoseconds in
+ * histograms of a {@link MetricRegistry} named "<em>prefix</em>.getPreferencesFromUser",
+ * "<em>prefix</em>.getPreferenceValue" and so on, and the number of preferences returned by
+ * <code>getPreferencesFromUser()</code> and <code>getPreferencesForItem()</code> in histograms with suffix
+ * ".size". Calls to cheap accessors like {@link #hasPreferenceValues()} are not timed.
+ * </p>
+ *
+ * <p>
+ * Timing each call costs two reads of {@link System#nanoTime()}, which is noticeable next to a lookup in
+ * an in-memory model that takes tens of nanoseconds; wrap such models for diagnosis rather than permanently.
+ * </p>
+ */
+public final class InstrumentedDataModel implements DataModel {
+
+  private final DataModel delegate;
+  private final Histogram getUserIDsTimes;
+  private final Histogram getPreferencesFromUserTimes;
+  private final Histogram getPreferencesFromUserSizes;
+  private final Histogram getItemIDsFromUserTimes;
+  private final Histogram getItemIDsTimes;
+  private final Histogram getPreferencesForItemTimes;
+  private final Histogram getPreferencesForItemSizes;
+  private final Histogram getPreferenceValueTimes;
+  private final Histogram getPreferenceTimeTimes;
+  private final Histogram getNumItemsTimes;
+  private final Histogram getNumUsersTimes;
+  private final Histogram getNumUsersWithPreferenceForTimes;
+  private final Histogram setPreferenceTimes;
+  private final Histogram removePreferenceTimes;
+  private final Histogram refreshTimes;
+
+  public InstrumentedDataModel(DataModel delegate, MetricRegistry registry, String prefix) {
+    Preconditions.checkArgument(delegate != null, "delegate is null");
+    Preconditions.checkArgument(registry != null, "registry is null");
+    this.delegate = delegate;
+    getUserIDsTimes = registry.histogram(prefix + ".getUserIDs");
+    getPreferencesFromUserTimes = registry.histogram(prefix + ".getPreferencesFromUser");
+    getPreferencesFromUserSizes = registry.histogram(prefix + ".getPreferencesFromUser.size");
+    getItemIDsFromUserTimes = registry.histogram(prefix + ".getItemIDsFromUser");
+    getItemIDsTimes = registry.histogram(prefix + ".getItemIDs");
+    getPreferencesForItemTimes = registry.histogram(prefix + ".getPreferencesForItem");
+    getPreferencesForItemSizes = registry.histogram(prefix + ".getPreferencesForItem.size");
+    getPreferenceValueTimes = registry.histogram(prefix + ".getPreferenceValue");
+    getPreferenceTimeTimes = registry.histogram(prefix + ".getPreferenceTime");
+    getNumItemsTimes = registry.histogram(prefix + ".getNumItems");
+    getNumUsersTimes = registry.histogram(prefix + ".getNumUsers");
+    getNumUsersWithPreferenceForTimes = registry.histogram(prefix + ".getNumUsersWithPreferenceFor");
+    setPreferenceTimes = registry.histogram(prefix + ".setPreference");
+    removePreferenceTimes = registry.histogram(prefix + ".removePreference");
+    refreshTimes = registry.histogram(prefix + ".refresh");
+  }
+
+  @Override
+  public LongPrimitiveIterator getUserIDs() throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getUserIDs();
+    } finally {
+      getUserIDsTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public PreferenceArray getPreferencesFromUser(long userID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      PreferenceArray prefs = delegate.getPreferencesFromUser(userID);
+      getPreferencesFromUserSizes.record(prefs.length());
+      return prefs;
+    } finally {
+      getPreferencesFromUserTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public FastIDSet getItemIDsFromUser(long userID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getItemIDsFromUser(userID);
+    } finally {
+      getItemIDsFromUserTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public LongPrimitiveIterator getItemIDs() throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getItemIDs();
+    } finally {
+      getItemIDsTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public PreferenceArray getPreferencesForItem(long itemID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      PreferenceArray prefs = delegate.getPreferencesForItem(itemID);
+      getPreferencesForItemSizes.record(prefs.length());
+      return prefs;
+    } finally {
+      getPreferencesForItemTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public Float getPreferenceValue(long userID, long itemID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getPreferenceValue(userID, itemID);
+    } finally {
+      getPreferenceValueTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public Long getPreferenceTime(long userID, long itemID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getPreferenceTime(userID, itemID);
+    } finally {
+      getPreferenceTimeTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public int getNumItems() throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getNumItems();
+    } finally {
+      getNumItemsTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public int getNumUsers() throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getNumUsers();
+    } finally {
+      getNumUsersTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long... itemIDs) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.getNumUsersWithPreferenceFor(itemIDs);
+    } finally {
+      getNumUsersWithPreferenceForTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      delegate.setPreference(userID, itemID, value);
+    } finally {
+      setPreferenceTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      delegate.removePreference(userID, itemID);
+    } finally {
+      removePreferenceTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public boolean hasPreferenceValues() {
+    return delegate.hasPreferenceValues();
+  }
+
+  @Override
+  public float getMaxPreference() {
+    return delegate.getMaxPreference();
+  }
+
+  @Override
+  public float getMinPreference() {
+    return delegate.getMinPreference();
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    long start = System.nanoTime();
+    try {
+      delegate.refresh(alreadyRefreshed);
+    } finally {
+      refreshTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "InstrumentedDataModel[dataModel:" + delegate + ']';
+  }
+
+}
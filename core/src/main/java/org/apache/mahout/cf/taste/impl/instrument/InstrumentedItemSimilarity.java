@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.util.Collection;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.similarity.CachingItemSimilarity;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+
+/**
+ * <p>
+ * An {@link ItemSimilarity} which delegates to another, recording the latency of each call in nanoseconds in
+ * histograms of a {@link MetricRegistry} named "<em>prefix</em>.itemSimilarity",
+ * "<em>prefix</em>.itemSimilarities" and "<em>prefix</em>.allSimilarItemIDs", and the number of items per
+ * batch call in "<em>prefix</em>.itemSimilarities.size". If the delegate is a {@link CachingItemSimilarity},
+ * its cache hit ratio is registered as a gauge.
+ * </p>
+ */
+public final class InstrumentedItemSimilarity implements ItemSimilarity {
+
+  private final ItemSimilarity delegate;
+  private final Histogram itemSimilarityTimes;
+  private final Histogram itemSimilaritiesTimes;
+  private final Histogram itemSimilaritiesSizes;
+  private final Histogram allSimilarItemIDsTimes;
+
+  public InstrumentedItemSimilarity(ItemSimilarity delegate, MetricRegistry registry, String prefix) {
+    Preconditions.checkArgument(delegate != null, "delegate is null");
+    Preconditions.checkArgument(registry != null, "registry is null");
+    this.delegate = delegate;
+    itemSimilarityTimes = registry.histogram(prefix + ".itemSimilarity");
+    itemSimilaritiesTimes = registry.histogram(prefix + ".itemSimilarities");
+    itemSimilaritiesSizes = registry.histogram(prefix + ".itemSimilarities.size");
+    allSimilarItemIDsTimes = registry.histogram(prefix + ".allSimilarItemIDs");
+    if (delegate instanceof CachingItemSimilarity) {
+      final CachingItemSimilarity cachingSimilarity = (CachingItemSimilarity) delegate;
+      registry.register(prefix + ".cache.hitRatio", new Gauge() {
+        @Override
+        public double getValue() {
+          return cachingSimilarity.getCacheHitRatio();
+        }
+      });
+    }
+  }
+
+  @Override
+  public double itemSimilarity(long itemID1, long itemID2) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.itemSimilarity(itemID1, itemID2);
+    } finally {
+      itemSimilarityTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public double[] itemSimilarities(long itemID1, long[] itemID2s) throws TasteException {
+    itemSimilaritiesSizes.record(itemID2s.length);
+    long start = System.nanoTime();
+    try {
+      return delegate.itemSimilarities(itemID1, itemID2s);
+    } finally {
+      itemSimilaritiesTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public long[] allSimilarItemIDs(long itemID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.allSimilarItemIDs(itemID);
+    } finally {
+      allSimilarItemIDsTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    delegate.refresh(alreadyRefreshed);
+  }
+
+  @Override
+  public String toString() {
+    return "InstrumentedItemSimilarity[similarity:" + delegate + ']';
+  }
+
+}
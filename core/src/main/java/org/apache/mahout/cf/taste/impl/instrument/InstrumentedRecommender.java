@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.recommender.CachingRecommender;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+
+/**
+ * <p>
+ * A {@link Recommender} which delegates to another, recording the latency of each call in nanoseconds in
+ * histograms of a {@link MetricRegistry} named "<em>prefix</em>.recommend", "<em>prefix</em>.estimatePreference"
+ * and so on, and the number of items returned by <code>recommend()</code> in "<em>prefix</em>.recommend.size".
+ * If the delegate is a {@link CachingRecommender}, the hit ratios of its caches are registered as gauges.
+ * </p>
+ *
+ * <p>
+ * To also see where time goes within the recommender, build it over an {@link InstrumentedDataModel} and
+ * instrumented similarities and candidate item strategies.
+ * </p>
+ */
+public final class InstrumentedRecommender implements Recommender {
+
+  private final Recommender delegate;
+  private final Histogram recommendTimes;
+  private final Histogram recommendSizes;
+  private final Histogram estimatePreferenceTimes;
+  private final Histogram setPreferenceTimes;
+  private final Histogram removePreferenceTimes;
+  private final Histogram refreshTimes;
+
+  public InstrumentedRecommender(Recommender delegate, MetricRegistry registry, String prefix) {
+    Preconditions.checkArgument(delegate != null, "delegate is null");
+    Preconditions.checkArgument(registry != null, "registry is null");
+    this.delegate = delegate;
+    recommendTimes = registry.histogram(prefix + ".recommend");
+    recommendSizes = registry.histogram(prefix + ".recommend.size");
+    estimatePreferenceTimes = registry.histogram(prefix + ".estimatePreference");
+    setPreferenceTimes = registry.histogram(prefix + ".setPreference");
+    removePreferenceTimes = registry.histogram(prefix + ".removePreference");
+    refreshTimes = registry.histogram(prefix + ".refresh");
+    if (delegate instanceof CachingRecommender) {
+      final CachingRecommender cachingRecommender = (CachingRecommender) delegate;
+      registry.register(prefix + ".recommendationCache.hitRatio", new Gauge() {
+        @Override
+        public double getValue() {
+          return cachingRecommender.getRecommendationCacheHitRatio();
+        }
+      });
+      registry.register(prefix + ".estimatedPreferenceCache.hitRatio", new Gauge() {
+        @Override
+        public double getValue() {
+          return cachingRecommender.getEstimatedPreferenceCacheHitRatio();
+        }
+      });
+    }
+  }
+
+  @Override
+  public List<RecommendedItem> recommend(long userID, int howMany) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      List<RecommendedItem> recommendations = delegate.recommend(userID, howMany);
+      recommendSizes.record(recommendations.size());
+      return recommendations;
+    } finally {
+      recommendTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      List<RecommendedItem> recommendations = delegate.recommend(userID, howMany, rescorer);
+      recommendSizes.record(recommendations.size());
+      return recommendations;
+    } finally {
+      recommendTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public float estimatePreference(long userID, long itemID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.estimatePreference(userID, itemID);
+    } finally {
+      estimatePreferenceTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      delegate.setPreference(userID, itemID, value);
+    } finally {
+      setPreferenceTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      delegate.removePreference(userID, itemID);
+    } finally {
+      removePreferenceTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public DataModel getDataModel() {
+    return delegate.getDataModel();
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    long start = System.nanoTime();
+    try {
+      delegate.refresh(alreadyRefreshed);
+    } finally {
+      refreshTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "InstrumentedRecommender[recommender:" + delegate + ']';
+  }
+
+}
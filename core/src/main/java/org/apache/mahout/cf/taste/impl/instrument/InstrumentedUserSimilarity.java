@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.util.Collection;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.similarity.CachingUserSimilarity;
+import org.apache.mahout.cf.taste.similarity.PreferenceInferrer;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+
+/**
+ * <p>
+ * A {@link UserSimilarity} which delegates to another, recording the latency of each call in nanoseconds in a
+ * histogram of a {@link MetricRegistry} named "<em>prefix</em>.userSimilarity". If the delegate is a
+ * {@link CachingUserSimilarity}, its cache hit ratio is registered as a gauge.
+ * </p>
+ */
+public final class InstrumentedUserSimilarity implements UserSimilarity {
+
+  private final UserSimilarity delegate;
+  private final Histogram userSimilarityTimes;
+
+  public InstrumentedUserSimilarity(UserSimilarity delegate, MetricRegistry registry, String prefix) {
+    Preconditions.checkArgument(delegate != null, "delegate is null");
+    Preconditions.checkArgument(registry != null, "registry is null");
+    this.delegate = delegate;
+    userSimilarityTimes = registry.histogram(prefix + ".userSimilarity");
+    if (delegate instanceof CachingUserSimilarity) {
+      final CachingUserSimilarity cachingSimilarity = (CachingUserSimilarity) delegate;
+      registry.register(prefix + ".cache.hitRatio", new Gauge() {
+        @Override
+        public double getValue() {
+          return cachingSimilarity.getCacheHitRatio();
+        }
+      });
+    }
+  }
+
+  @Override
+  public double userSimilarity(long userID1, long userID2) throws TasteException {
+    long start = System.nanoTime();
+    try {
+      return delegate.userSimilarity(userID1, userID2);
+    } finally {
+      userSimilarityTimes.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void setPreferenceInferrer(PreferenceInferrer inferrer) {
+    delegate.setPreferenceInferrer(inferrer);
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    delegate.refresh(alreadyRefreshed);
+  }
+
+  @Override
+  public String toString() {
+    return "InstrumentedUserSimilarity[similarity:" + delegate + ']';
+  }
+
+}
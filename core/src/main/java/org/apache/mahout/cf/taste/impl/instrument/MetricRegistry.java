@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A named set of {@link Histogram}s and {@link Gauge}s, usually filled in by the <code>Instrumented*</code>
+ * wrappers in this package, such as {@link InstrumentedRecommender}.
+ * </p>
+ *
+ * <p>
+ * Metrics can be read directly, passed to a {@link MetricsReporter} with {@link #report(MetricsReporter)}
+ * (from a scheduled task, for example), or exposed over JMX with {@link #registerMBean(String)}.
+ * </p>
+ */
+public final class MetricRegistry {
+
+  static final String JMX_DOMAIN = "org.apache.mahout.cf.taste";
+
+  private final ConcurrentMap<String,Histogram> histograms;
+  private final ConcurrentMap<String,Gauge> gauges;
+
+  public MetricRegistry() {
+    histograms = new ConcurrentSkipListMap<String,Histogram>();
+    gauges = new ConcurrentSkipListMap<String,Gauge>();
+  }
+
+  /**
+   * @return the histogram with the given name, created if it does not exist yet
+   */
+  public Histogram histogram(String name) {
+    Preconditions.checkArgument(name != null, "name is null");
+    Histogram histogram = histograms.get(name);
+    if (histogram == null) {
+      Histogram newHistogram = new Histogram();
+      histogram = histograms.putIfAbsent(name, newHistogram);
+      if (histogram == null) {
+        histogram = newHistogram;
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * Registers a gauge under the given name, replacing any registered before under that name.
+   */
+  public void register(String name, Gauge gauge) {
+    Preconditions.checkArgument(name != null, "name is null");
+    Preconditions.checkArgument(gauge != null, "gauge is null");
+    gauges.put(name, gauge);
+  }
+
+  /**
+   * @return histograms by name, in name order
+   */
+  public Map<String,Histogram> getHistograms() {
+    return Collections.unmodifiableMap(histograms);
+  }
+
+  /**
+   * @return gauges by name, in name order
+   */
+  public Map<String,Gauge> getGauges() {
+    return Collections.unmodifiableMap(gauges);
+  }
+
+  public void report(MetricsReporter reporter) {
+    for (Map.Entry<String,Histogram> entry : histograms.entrySet()) {
+      reporter.reportHistogram(entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<String,Gauge> entry : gauges.entrySet()) {
+      reporter.reportGauge(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Forgets all values recorded in histograms, for example to start a new measurement period.
+   */
+  public void reset() {
+    for (Histogram histogram : histograms.values()) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Registers a view of these metrics with the platform MBean server. Each histogram appears as attributes
+   * named after it with suffixes ".count", ".mean", ".p50", ".p99", ".p999" and ".max", and each gauge as an
+   * attribute with its name. A "reset" operation calls {@link #reset()}.
+   *
+   * @param name value of the "name" key in the MBean's object name
+   * @return object name under which the MBean was registered
+   */
+  public ObjectName registerMBean(String name) throws JMException {
+    ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricRegistryMBean(this), objectName);
+    return objectName;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricRegistry[histograms:" + histograms.keySet() + ", gauges:" + gauges.keySet() + ']';
+  }
+
+}
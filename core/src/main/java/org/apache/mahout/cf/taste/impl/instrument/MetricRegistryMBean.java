@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Exposes a {@link MetricRegistry} over JMX. Attributes are read-only and are listed anew each time the
+ * {@link MBeanInfo} is requested, since metrics may be added at any time.
+ */
+final class MetricRegistryMBean implements DynamicMBean {
+
+  private static final String[] HISTOGRAM_SUFFIXES = {".count", ".mean", ".p50", ".p99", ".p999", ".max"};
+
+  private final MetricRegistry registry;
+
+  MetricRegistryMBean(MetricRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    Gauge gauge = registry.getGauges().get(attribute);
+    if (gauge != null) {
+      return gauge.getValue();
+    }
+    int dot = attribute.lastIndexOf('.');
+    if (dot > 0) {
+      Histogram histogram = registry.getHistograms().get(attribute.substring(0, dot));
+      if (histogram != null) {
+        String suffix = attribute.substring(dot);
+        if (".count".equals(suffix)) {
+          return histogram.getCount();
+        }
+        if (".mean".equals(suffix)) {
+          return histogram.getMean();
+        }
+        if (".p50".equals(suffix)) {
+          return histogram.getPercentile(0.5);
+        }
+        if (".p99".equals(suffix)) {
+          return histogram.getPercentile(0.99);
+        }
+        if (".p999".equals(suffix)) {
+          return histogram.getPercentile(0.999);
+        }
+        if (".max".equals(suffix)) {
+          return histogram.getMax();
+        }
+      }
+    }
+    throw new AttributeNotFoundException(attribute);
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList result = new AttributeList();
+    for (String attribute : attributes) {
+      try {
+        result.add(new Attribute(attribute, getAttribute(attribute)));
+      } catch (AttributeNotFoundException anfe) {
+        // Left out, as the JMX contract asks
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("Attributes are read-only: " + attribute.getName());
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+    if ("reset".equals(actionName)) {
+      registry.reset();
+      return null;
+    }
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = Lists.newArrayList();
+    for (String name : registry.getHistograms().keySet()) {
+      for (String suffix : HISTOGRAM_SUFFIXES) {
+        String type = ".mean".equals(suffix) ? Double.class.getName() : Long.class.getName();
+        attributes.add(new MBeanAttributeInfo(name + suffix, type, name + suffix, true, false, false));
+      }
+    }
+    for (Map.Entry<String,Gauge> entry : registry.getGauges().entrySet()) {
+      String name = entry.getKey();
+      attributes.add(new MBeanAttributeInfo(name, Double.class.getName(), name, true, false, false));
+    }
+    MBeanOperationInfo reset = new MBeanOperationInfo(
+        "reset", "Forgets all values recorded in histograms", null, "void", MBeanOperationInfo.ACTION);
+    return new MBeanInfo(getClass().getName(),
+                         "Taste metrics",
+                         attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                         null,
+                         new MBeanOperationInfo[] {reset},
+                         null);
+  }
+
+}
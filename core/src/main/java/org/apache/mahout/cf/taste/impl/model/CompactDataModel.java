@@ -0,0 +1,654 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveArrayIterator;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+
+/**
+ * <p>
+ * A read-only, in-memory {@link DataModel} which takes several times less memory than {@link GenericDataModel}
+ * for the same data, at the cost of decoding preferences when they are read. It is built once from another
+ * {@link DataModel}, such as a {@link org.apache.mahout.cf.taste.impl.model.file.FileDataModel}, which can then
+ * be discarded.
+ * </p>
+ *
+ * <p>
+ * Users and items are numbered by their position in sorted arrays of all user and item IDs. Each user's
+ * preferences are stored as the gaps between the numbers of successive items, which are small even when IDs
+ * themselves are large or sparse, written as variable-length integers into one large <code>byte[]</code>.
+ * Items' preferences are stored the same way, transposed. Preference values are stored in shared arrays in
+ * one of the {@link ValueEncoding}s: for typical ratings data, one byte per value loses nothing. In all, a
+ * preference takes about two to six bytes here, counting both directions, where {@link GenericDataModel}
+ * needs 24 plus object overhead.
+ * </p>
+ *
+ * <p>
+ * {@link PreferenceArray}s returned by this class are read-only views with IDs decoded into an array, and
+ * values read from the shared arrays as needed. {@link #setPreference(long, long, float)} and
+ * {@link #removePreference(long, long)} are not supported, and preference times are not stored.
+ * </p>
+ */
+public final class CompactDataModel extends AbstractDataModel {
+
+  /** How preference values are stored. */
+  public enum ValueEncoding {
+    /** No values; every preference has value 1.0, as in {@link GenericBooleanPrefDataModel}. */
+    NONE(0),
+    /** One byte per value: 256 evenly spaced levels between the least and greatest value. */
+    BYTE(1 << 8),
+    /** Two bytes per value: 65,536 evenly spaced levels between the least and greatest value. */
+    SHORT(1 << 16),
+    /** Four bytes per value: values are stored exactly. */
+    FLOAT(0);
+
+    private final int levels;
+
+    ValueEncoding(int levels) {
+      this.levels = levels;
+    }
+  }
+
+  /**
+   * Steps tried, largest first, to store values exactly as multiples of a step; this covers whole and half
+   * star ratings, and values with one or two decimal places.
+   */
+  private static final double[] EXACT_STEPS = {1.0, 0.5, 0.25, 0.1, 0.01};
+
+  private final long[] userIDs;
+  private final long[] itemIDs;
+  private final Runs userRuns;
+  private final Runs itemRuns;
+  private final boolean hasPrefValues;
+
+  /**
+   * Builds a model storing values in the smallest {@link ValueEncoding} which stores them exactly, or with
+   * {@link ValueEncoding#NONE} if the given model has no preference values.
+   */
+  public CompactDataModel(DataModel dataModel) throws TasteException {
+    this(dataModel, null);
+  }
+
+  /**
+   * @param valueEncoding how to store values; {@link ValueEncoding#BYTE} and {@link ValueEncoding#SHORT} round
+   *  each value to the nearest level unless all values fall exactly on fewer levels, and
+   *  {@link ValueEncoding#NONE} drops values. If null, picks the smallest encoding which is exact.
+   */
+  public CompactDataModel(DataModel dataModel, ValueEncoding valueEncoding) throws TasteException {
+    Preconditions.checkArgument(dataModel != null, "dataModel is null");
+
+    userIDs = toSortedArray(dataModel.getUserIDs(), dataModel.getNumUsers());
+    itemIDs = toSortedArray(dataModel.getItemIDs(), dataModel.getNumItems());
+    int numUsers = userIDs.length;
+    int numItems = itemIDs.length;
+
+    // First pass: count preferences per item, and find the range and granularity of values
+    int[] itemOffsets = new int[numItems + 1];
+    long numPrefs = 0L;
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    boolean[] exactSteps = new boolean[EXACT_STEPS.length];
+    Arrays.fill(exactSteps, true);
+    for (long userID : userIDs) {
+      PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+      int length = prefs.length();
+      for (int i = 0; i < length; i++) {
+        itemOffsets[itemIndex(prefs.getItemID(i)) + 1]++;
+        float value = prefs.getValue(i);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        for (int s = 0; s < EXACT_STEPS.length; s++) {
+          exactSteps[s] &= (float) (EXACT_STEPS[s] * Math.rint(value / EXACT_STEPS[s])) == value;
+        }
+      }
+      numPrefs += length;
+    }
+    Preconditions.checkArgument(numPrefs <= Integer.MAX_VALUE, "Too many preferences: %s", numPrefs);
+    for (int i = 0; i < numItems; i++) {
+      itemOffsets[i + 1] += itemOffsets[i];
+    }
+
+    if (!dataModel.hasPreferenceValues()) {
+      valueEncoding = ValueEncoding.NONE;
+    }
+    hasPrefValues = valueEncoding != ValueEncoding.NONE;
+    Values userValues = newValues(valueEncoding, (int) numPrefs, min, max, exactSteps);
+    Values itemValues = userValues.newLike();
+    // Like GenericBooleanPrefDataModel, leave the range unset when there are no values
+    if (hasPrefValues && numPrefs > 0L) {
+      setMinPreference(min);
+      setMaxPreference(max);
+    }
+
+    // Second pass: encode users' preferences, and transpose them into items' order
+    int[] userOffsets = new int[numUsers + 1];
+    VarIntWriter userGaps = new VarIntWriter((int) numPrefs);
+    int[] itemPrefUserIndexes = new int[(int) numPrefs];
+    int[] itemCursors = itemOffsets.clone();
+    int[] itemIndexes = new int[0];
+    float[] values = new float[0];
+    for (int u = 0; u < numUsers; u++) {
+      PreferenceArray prefs = dataModel.getPreferencesFromUser(userIDs[u]);
+      int length = prefs.length();
+      if (itemIndexes.length < length) {
+        itemIndexes = new int[length];
+        values = new float[length];
+      }
+      for (int i = 0; i < length; i++) {
+        itemIndexes[i] = itemIndex(prefs.getItemID(i));
+        values[i] = prefs.getValue(i);
+      }
+      if (!isSorted(itemIndexes, length)) {
+        PreferenceArray sorted = prefs.clone();
+        sorted.sortByItem();
+        for (int i = 0; i < length; i++) {
+          itemIndexes[i] = itemIndex(sorted.getItemID(i));
+          values[i] = sorted.getValue(i);
+        }
+      }
+      int start = userOffsets[u];
+      userGaps.startRun();
+      for (int i = 0; i < length; i++) {
+        userGaps.writeNext(itemIndexes[i]);
+        userValues.set(start + i, values[i]);
+        int itemPosition = itemCursors[itemIndexes[i]]++;
+        itemPrefUserIndexes[itemPosition] = u;
+        itemValues.set(itemPosition, values[i]);
+      }
+      userOffsets[u + 1] = start + length;
+      userGaps.endRun();
+    }
+    userRuns = new Runs(userOffsets, userGaps.getRunOffsets(), userGaps.toByteArray(), userValues);
+
+    // Users were visited in order, so each item's user indexes are already sorted
+    VarIntWriter itemGaps = new VarIntWriter((int) numPrefs);
+    for (int i = 0; i < numItems; i++) {
+      itemGaps.startRun();
+      for (int p = itemOffsets[i]; p < itemOffsets[i + 1]; p++) {
+        itemGaps.writeNext(itemPrefUserIndexes[p]);
+      }
+      itemGaps.endRun();
+    }
+    itemRuns = new Runs(itemOffsets, itemGaps.getRunOffsets(), itemGaps.toByteArray(), itemValues);
+  }
+
+  private static long[] toSortedArray(LongPrimitiveIterator it, int size) {
+    long[] ids = new long[size];
+    int i = 0;
+    while (it.hasNext()) {
+      ids[i++] = it.nextLong();
+    }
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  private static boolean isSorted(int[] indexes, int length) {
+    for (int i = 1; i < length; i++) {
+      if (indexes[i] <= indexes[i - 1]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int itemIndex(long itemID) {
+    return Arrays.binarySearch(itemIDs, itemID);
+  }
+
+  private int userIndex(long userID) {
+    return Arrays.binarySearch(userIDs, userID);
+  }
+
+  private static Values newValues(ValueEncoding encoding,
+                                  int size,
+                                  float min,
+                                  float max,
+                                  boolean[] exactSteps) {
+    if (encoding == ValueEncoding.NONE || encoding == ValueEncoding.FLOAT) {
+      return new Values(encoding, size, 0, 0.0, 0.0);
+    }
+    ValueEncoding[] candidates = encoding == null
+        ? new ValueEncoding[] {ValueEncoding.BYTE, ValueEncoding.SHORT}
+        : new ValueEncoding[] {encoding};
+    for (ValueEncoding candidate : candidates) {
+      for (int s = 0; s < EXACT_STEPS.length; s++) {
+        double step = EXACT_STEPS[s];
+        if (exactSteps[s] && Math.rint(max / step) - Math.rint(min / step) < candidate.levels) {
+          return new Values(candidate, size, (int) Math.rint(min / step), 0.0, step);
+        }
+      }
+    }
+    if (encoding == null) {
+      return new Values(ValueEncoding.FLOAT, size, 0, 0.0, 0.0);
+    }
+    double step = max > min ? ((double) max - min) / (encoding.levels - 1) : 1.0;
+    return new Values(encoding, size, 0, min, step);
+  }
+
+  /**
+   * @return how values are stored
+   */
+  public ValueEncoding getValueEncoding() {
+    return userRuns.values.encoding;
+  }
+
+  /**
+   * @return approximate number of bytes of heap this model takes
+   */
+  public long getSizeInBytes() {
+    return 8L * (userIDs.length + itemIDs.length) + userRuns.getSizeInBytes() + itemRuns.getSizeInBytes();
+  }
+
+  @Override
+  public LongPrimitiveIterator getUserIDs() {
+    return new LongPrimitiveArrayIterator(userIDs);
+  }
+
+  @Override
+  public PreferenceArray getPreferencesFromUser(long userID) throws TasteException {
+    int u = userIndex(userID);
+    if (u < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return new CompactPreferenceArray(true, userID, userRuns.decode(u, itemIDs), userRuns.values,
+        userRuns.prefOffsets[u]);
+  }
+
+  @Override
+  public FastIDSet getItemIDsFromUser(long userID) throws TasteException {
+    int u = userIndex(userID);
+    if (u < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    FastIDSet result = new FastIDSet(userRuns.length(u));
+    RunCursor cursor = userRuns.cursor(u);
+    while (cursor.hasNext()) {
+      result.add(itemIDs[cursor.next()]);
+    }
+    return result;
+  }
+
+  @Override
+  public LongPrimitiveIterator getItemIDs() {
+    return new LongPrimitiveArrayIterator(itemIDs);
+  }
+
+  @Override
+  public PreferenceArray getPreferencesForItem(long itemID) throws TasteException {
+    int i = itemIndex(itemID);
+    if (i < 0) {
+      throw new NoSuchItemException(itemID);
+    }
+    return new CompactPreferenceArray(false, itemID, itemRuns.decode(i, userIDs), itemRuns.values,
+        itemRuns.prefOffsets[i]);
+  }
+
+  @Override
+  public Float getPreferenceValue(long userID, long itemID) throws TasteException {
+    int u = userIndex(userID);
+    if (u < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    int i = itemIndex(itemID);
+    if (i < 0) {
+      return null;
+    }
+    // Scan whichever of the two runs is shorter
+    if (userRuns.length(u) <= itemRuns.length(i)) {
+      return userRuns.findValue(u, i);
+    }
+    return itemRuns.findValue(i, u);
+  }
+
+  @Override
+  public Long getPreferenceTime(long userID, long itemID) throws TasteException {
+    if (userIndex(userID) < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return null;
+  }
+
+  @Override
+  public int getNumItems() {
+    return itemIDs.length;
+  }
+
+  @Override
+  public int getNumUsers() {
+    return userIDs.length;
+  }
+
+  /**
+   * @return total number of preferences in the model
+   */
+  public int getNumPreferences() {
+    return userRuns.prefOffsets[userIDs.length];
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long... itemIDs) {
+    Preconditions.checkArgument(itemIDs != null, "itemIDs is null");
+    int length = itemIDs.length;
+    Preconditions.checkArgument(length == 1 || length == 2, "Illegal number of IDs: %s", length);
+    int i1 = itemIndex(itemIDs[0]);
+    if (i1 < 0) {
+      return 0;
+    }
+    if (length == 1) {
+      return itemRuns.length(i1);
+    }
+    int i2 = itemIndex(itemIDs[1]);
+    if (i2 < 0) {
+      return 0;
+    }
+    // Both runs of user indexes are sorted, so merge them
+    RunCursor cursor1 = itemRuns.cursor(i1);
+    RunCursor cursor2 = itemRuns.cursor(i2);
+    if (!cursor1.hasNext() || !cursor2.hasNext()) {
+      return 0;
+    }
+    int count = 0;
+    int u1 = cursor1.next();
+    int u2 = cursor2.next();
+    while (true) {
+      if (u1 < u2) {
+        if (!cursor1.hasNext()) {
+          break;
+        }
+        u1 = cursor1.next();
+      } else if (u1 > u2) {
+        if (!cursor2.hasNext()) {
+          break;
+        }
+        u2 = cursor2.next();
+      } else {
+        count++;
+        if (!cursor1.hasNext() || !cursor2.hasNext()) {
+          break;
+        }
+        u1 = cursor1.next();
+        u2 = cursor2.next();
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean hasPreferenceValues() {
+    return hasPrefValues;
+  }
+
+  /**
+   * Does nothing, since the model does not change once built.
+   */
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    // do nothing
+  }
+
+  @Override
+  public String toString() {
+    return "CompactDataModel[users:" + userIDs.length + ", items:" + itemIDs.length
+        + ", prefs:" + getNumPreferences() + ", encoding:" + getValueEncoding() + ']';
+  }
+
+  /**
+   * Preference values stored in one of the {@link ValueEncoding}s. A quantized value at <em>level</em> decodes
+   * to <code>offset + step * (base + level)</code>; when values are exact multiples of the step, offset is 0.
+   */
+  static final class Values implements Serializable {
+
+    private final ValueEncoding encoding;
+    private final int base;
+    private final double offset;
+    private final double step;
+    private final byte[] bytes;
+    private final short[] shorts;
+    private final float[] floats;
+
+    private Values(ValueEncoding encoding, int size, int base, double offset, double step) {
+      this.encoding = encoding;
+      this.base = base;
+      this.offset = offset;
+      this.step = step;
+      bytes = encoding == ValueEncoding.BYTE ? new byte[size] : null;
+      shorts = encoding == ValueEncoding.SHORT ? new short[size] : null;
+      floats = encoding == ValueEncoding.FLOAT ? new float[size] : null;
+    }
+
+    Values newLike() {
+      int size = bytes != null ? bytes.length : shorts != null ? shorts.length : floats != null ? floats.length : 0;
+      return new Values(encoding, size, base, offset, step);
+    }
+
+    float get(int i) {
+      switch (encoding) {
+        case BYTE:
+          return (float) (offset + step * (base + (bytes[i] & 0xFF)));
+        case SHORT:
+          return (float) (offset + step * (base + (shorts[i] & 0xFFFF)));
+        case FLOAT:
+          return floats[i];
+        default:
+          return 1.0f;
+      }
+    }
+
+    void set(int i, float value) {
+      switch (encoding) {
+        case BYTE:
+          bytes[i] = (byte) level(value);
+          break;
+        case SHORT:
+          shorts[i] = (short) level(value);
+          break;
+        case FLOAT:
+          floats[i] = value;
+          break;
+        default:
+          break;
+      }
+    }
+
+    private int level(float value) {
+      int level = (int) Math.rint((value - offset) / step) - base;
+      return Math.max(0, Math.min(encoding.levels - 1, level));
+    }
+
+    long getSizeInBytes() {
+      if (bytes != null) {
+        return bytes.length;
+      }
+      if (shorts != null) {
+        return 2L * shorts.length;
+      }
+      return floats != null ? 4L * floats.length : 0L;
+    }
+
+  }
+
+  /**
+   * Runs of sorted user or item indexes, one per item or user, stored as variable-length gaps.
+   */
+  private static final class Runs implements Serializable {
+
+    /** Index of the first preference of each run, plus the total number of preferences. */
+    private final int[] prefOffsets;
+    /** Offset of the first byte of each run in gaps, plus the total number of bytes. */
+    private final int[] byteOffsets;
+    private final byte[] gaps;
+    private final Values values;
+
+    private Runs(int[] prefOffsets, int[] byteOffsets, byte[] gaps, Values values) {
+      this.prefOffsets = prefOffsets;
+      this.byteOffsets = byteOffsets;
+      this.gaps = gaps;
+      this.values = values;
+    }
+
+    int length(int run) {
+      return prefOffsets[run + 1] - prefOffsets[run];
+    }
+
+    RunCursor cursor(int run) {
+      return new RunCursor(gaps, byteOffsets[run], length(run));
+    }
+
+    long[] decode(int run, long[] ids) {
+      long[] result = new long[length(run)];
+      RunCursor cursor = cursor(run);
+      for (int i = 0; i < result.length; i++) {
+        result[i] = ids[cursor.next()];
+      }
+      return result;
+    }
+
+    Float findValue(int run, int index) {
+      RunCursor cursor = cursor(run);
+      for (int i = 0; cursor.hasNext(); i++) {
+        int next = cursor.next();
+        if (next == index) {
+          return values.get(prefOffsets[run] + i);
+        }
+        if (next > index) {
+          break;
+        }
+      }
+      return null;
+    }
+
+    long getSizeInBytes() {
+      return 4L * (prefOffsets.length + byteOffsets.length) + gaps.length + values.getSizeInBytes();
+    }
+
+  }
+
+  /**
+   * Decodes one run of indexes. Each is written as the gap from the previous one, less one, in 7-bit groups,
+   * least significant first, with the high bit set on all but the last byte.
+   */
+  private static final class RunCursor {
+
+    private final byte[] gaps;
+    private int position;
+    private int remaining;
+    private int previous;
+
+    private RunCursor(byte[] gaps, int position, int length) {
+      this.gaps = gaps;
+      this.position = position;
+      this.remaining = length;
+      previous = -1;
+    }
+
+    boolean hasNext() {
+      return remaining > 0;
+    }
+
+    int next() {
+      int gap = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = gaps[position++];
+        gap |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      remaining--;
+      previous += gap + 1;
+      return previous;
+    }
+
+  }
+
+  /**
+   * Encodes runs of sorted indexes as read by {@link RunCursor}.
+   */
+  private static final class VarIntWriter {
+
+    private byte[] bytes;
+    private int size;
+    private int[] runOffsets;
+    private int numRuns;
+    private int previous;
+
+    private VarIntWriter(int expectedIndexes) {
+      bytes = new byte[Math.max(16, expectedIndexes)];
+      runOffsets = new int[16];
+    }
+
+    void startRun() {
+      previous = -1;
+    }
+
+    void writeNext(int index) {
+      int gap = index - previous - 1;
+      previous = index;
+      if (size + 5 > bytes.length) {
+        long newLength = Math.min(Integer.MAX_VALUE, (long) bytes.length << 1);
+        Preconditions.checkState(newLength >= size + 5, "Too much data to encode");
+        bytes = Arrays.copyOf(bytes, (int) newLength);
+      }
+      while ((gap & ~0x7F) != 0) {
+        bytes[size++] = (byte) ((gap & 0x7F) | 0x80);
+        gap >>>= 7;
+      }
+      bytes[size++] = (byte) gap;
+    }
+
+    void endRun() {
+      numRuns++;
+      if (numRuns == runOffsets.length) {
+        runOffsets = Arrays.copyOf(runOffsets, runOffsets.length << 1);
+      }
+      runOffsets[numRuns] = size;
+    }
+
+    int[] getRunOffsets() {
+      return Arrays.copyOf(runOffsets, numRuns + 1);
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+
+  }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.iterator.CountingIterator;
+
+/**
+ * <p>
+ * A read-only {@link PreferenceArray} view over one user's or one item's preferences in a
+ * {@link CompactDataModel}. IDs are decoded into an array when the view is created; values are read from the
+ * model's shared arrays. {@link #clone()} returns an ordinary, modifiable {@link GenericUserPreferenceArray} or
+ * {@link GenericItemPreferenceArray}.
+ * </p>
+ */
+final class CompactPreferenceArray implements PreferenceArray {
+
+  private final boolean byUser;
+  private final long id;
+  private final long[] otherIDs;
+  private final CompactDataModel.Values values;
+  private final int start;
+
+  /**
+   * @param byUser if true, this holds the preferences of user <code>id</code>, and <code>otherIDs</code> are
+   *  sorted item IDs; otherwise this holds the preferences for item <code>id</code>
+   */
+  CompactPreferenceArray(boolean byUser, long id, long[] otherIDs, CompactDataModel.Values values, int start) {
+    this.byUser = byUser;
+    this.id = id;
+    this.otherIDs = otherIDs;
+    this.values = values;
+    this.start = start;
+  }
+
+  @Override
+  public int length() {
+    return otherIDs.length;
+  }
+
+  @Override
+  public Preference get(int i) {
+    return new PreferenceView(i);
+  }
+
+  @Override
+  public void set(int i, Preference pref) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getUserID(int i) {
+    return byUser ? id : otherIDs[i];
+  }
+
+  @Override
+  public void setUserID(int i, long userID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getItemID(int i) {
+    return byUser ? otherIDs[i] : id;
+  }
+
+  @Override
+  public void setItemID(int i, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return item IDs if this holds one user's preferences, or user IDs otherwise; callers must not modify it
+   */
+  @Override
+  public long[] getIDs() {
+    return otherIDs;
+  }
+
+  @Override
+  public float getValue(int i) {
+    return values.get(start + i);
+  }
+
+  @Override
+  public void setValue(int i, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public PreferenceArray clone() {
+    int length = otherIDs.length;
+    PreferenceArray copy = byUser ? new GenericUserPreferenceArray(length) : new GenericItemPreferenceArray(length);
+    for (int i = 0; i < length; i++) {
+      copy.setUserID(i, getUserID(i));
+      copy.setItemID(i, getItemID(i));
+      copy.setValue(i, getValue(i));
+    }
+    return copy;
+  }
+
+  /**
+   * Does nothing: preferences for an item are stored sorted by user, and those of a user trivially are.
+   */
+  @Override
+  public void sortByUser() { }
+
+  /**
+   * Does nothing: preferences of a user are stored sorted by item, and those for an item trivially are.
+   */
+  @Override
+  public void sortByItem() { }
+
+  @Override
+  public void sortByValue() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void sortByValueReversed() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean hasPrefWithUserID(long userID) {
+    return byUser ? id == userID : Arrays.binarySearch(otherIDs, userID) >= 0;
+  }
+
+  @Override
+  public boolean hasPrefWithItemID(long itemID) {
+    return byUser ? Arrays.binarySearch(otherIDs, itemID) >= 0 : id == itemID;
+  }
+
+  @Override
+  public Iterator<Preference> iterator() {
+    return Iterators.transform(new CountingIterator(otherIDs.length),
+                               new Function<Integer, Preference>() {
+                                 @Override
+                                 public Preference apply(Integer from) {
+                                   return new PreferenceView(from);
+                                 }
+                               });
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(20 * otherIDs.length + 40);
+    result.append("CompactPreferenceArray[").append(byUser ? "userID:" : "itemID:").append(id).append(",{");
+    for (int i = 0; i < otherIDs.length; i++) {
+      if (i > 0) {
+        result.append(',');
+      }
+      result.append(otherIDs[i]);
+      result.append('=');
+      result.append(getValue(i));
+    }
+    result.append("}]");
+    return result.toString();
+  }
+
+  private final class PreferenceView implements Preference {
+
+    private final int i;
+
+    private PreferenceView(int i) {
+      this.i = i;
+    }
+
+    @Override
+    public long getUserID() {
+      return CompactPreferenceArray.this.getUserID(i);
+    }
+
+    @Override
+    public long getItemID() {
+      return CompactPreferenceArray.this.getItemID(i);
+    }
+
+    @Override
+    public float getValue() {
+      return CompactPreferenceArray.this.getValue(i);
+    }
+
+    @Override
+    public void setValue(float value) {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+}
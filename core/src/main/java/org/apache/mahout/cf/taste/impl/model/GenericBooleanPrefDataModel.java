@@ -106,7 +106,44 @@ public final class GenericBooleanPrefDataModel extends AbstractDataModel {
 
     this.timestamps = timestamps;
   }
-  
+
+  /**
+   * <p>
+   * Creates a new {@link GenericBooleanPrefDataModel} from user and item data which have already been built
+   * and agree with each other. Unlike {@link #GenericBooleanPrefDataModel(FastByIDMap, FastByIDMap)} this does
+   * not derive item data from user data, so it is much cheaper when the maps were copied from another
+   * instance and only a few entries replaced.
+   * </p>
+   *
+   * @param userData users to include
+   * @param itemData the same associations as <code>userData</code>, by item
+   * @param timestamps optionally, provided timestamps of preferences as milliseconds since the epoch.
+   *  User IDs are mapped to maps of item IDs to Long timestamps.
+   */
+  public GenericBooleanPrefDataModel(FastByIDMap<FastIDSet> userData,
+                                     FastByIDMap<FastIDSet> itemData,
+                                     FastByIDMap<FastByIDMap<Long>> timestamps) {
+    Preconditions.checkArgument(userData != null, "userData is null");
+    Preconditions.checkArgument(itemData != null, "itemData is null");
+
+    this.preferenceFromUsers = userData;
+    this.preferenceForItems = itemData;
+    this.userIDs = sortedKeys(userData);
+    this.itemIDs = sortedKeys(itemData);
+    this.timestamps = timestamps;
+  }
+
+  private static long[] sortedKeys(FastByIDMap<FastIDSet> data) {
+    long[] keys = new long[data.size()];
+    int i = 0;
+    LongPrimitiveIterator it = data.keySetIterator();
+    while (it.hasNext()) {
+      keys[i++] = it.nextLong();
+    }
+    Arrays.sort(keys);
+    return keys;
+  }
+
   /**
    * <p>
    * Creates a new {@link GenericDataModel} containing an immutable copy of the data from another given
@@ -57,7 +57,7 @@ public final class GenericDataModel extends AbstractDataModel {
   
   /**
    * <p>
-   * Creates a new  from the given users (and their preferences). This
+   * Creates a new {@link GenericDataModel} from the given users (and their preferences). This
    * {@link DataModel} retains all this information in memory and is effectively immutable.
    * </p>
    * 
@@ -69,7 +69,7 @@ public final class GenericDataModel extends AbstractDataModel {
 
   /**
    * <p>
-   * Creates a new  from the given users (and their preferences). This
+   * Creates a new {@link GenericDataModel} from the given users (and their preferences). This
    * {@link DataModel} retains all this information in memory and is effectively immutable.
    * </p>
    *
@@ -138,7 +138,52 @@ public final class GenericDataModel extends AbstractDataModel {
 
   /**
    * <p>
-   * Creates a new containing an immutable copy of the data from another given
+   * Creates a new {@link GenericDataModel} from user and item data which have already been built and agree
+   * with each other. Each user's preferences must be sorted by item, and each item's by user. Unlike
+   * {@link #GenericDataModel(FastByIDMap, FastByIDMap)} this neither derives item data from user data nor scans
+   * the preferences for their minimum and maximum, so it is much cheaper when the maps were copied from
+   * another instance and only a few entries replaced.
+   * </p>
+   *
+   * @param userData users to include
+   * @param itemData the same preferences as <code>userData</code>, by item
+   * @param timestamps optionally, provided timestamps of preferences as milliseconds since the epoch.
+   *  User IDs are mapped to maps of item IDs to Long timestamps.
+   * @param minPreference lower bound on the preference values, such as the previous instance's minimum
+   *  widened by the values that changed since
+   * @param maxPreference upper bound on the preference values, likewise
+   */
+  public GenericDataModel(FastByIDMap<PreferenceArray> userData,
+                          FastByIDMap<PreferenceArray> itemData,
+                          FastByIDMap<FastByIDMap<Long>> timestamps,
+                          float minPreference,
+                          float maxPreference) {
+    Preconditions.checkArgument(userData != null, "userData is null");
+    Preconditions.checkArgument(itemData != null, "itemData is null");
+
+    this.preferenceFromUsers = userData;
+    this.preferenceForItems = itemData;
+    setMinPreference(minPreference);
+    setMaxPreference(maxPreference);
+    this.userIDs = sortedKeys(userData);
+    this.itemIDs = sortedKeys(itemData);
+    this.timestamps = timestamps;
+  }
+
+  private static long[] sortedKeys(FastByIDMap<?> data) {
+    long[] keys = new long[data.size()];
+    int i = 0;
+    LongPrimitiveIterator it = data.keySetIterator();
+    while (it.hasNext()) {
+      keys[i++] = it.nextLong();
+    }
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  /**
+   * <p>
+   * Creates a new {@link GenericDataModel} containing an immutable copy of the data from another given
    * {@link DataModel}.
    * </p>
    *
@@ -22,9 +22,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
@@ -36,9 +40,11 @@ import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.model.AbstractDataModel;
 import org.apache.mahout.cf.taste.impl.model.GenericBooleanPrefDataModel;
 import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
 import org.apache.mahout.cf.taste.impl.model.GenericPreference;
 import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.DataModelChangeListener;
 import org.apache.mahout.cf.taste.model.Preference;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.common.iterator.FileLineIterator;
@@ -94,6 +100,12 @@ import com.google.common.base.Preconditions;
  * </p>
  *
  * <p>
+ * When only new update files have appeared, {@link #refresh(Collection)} applies just those to the data in
+ * memory rather than reading everything again, and tells any registered {@link DataModelChangeListener}s
+ * which users and items changed.
+ * </p>
+ *
+ * <p>
  * One small format difference exists. Update files must also be able to express deletes.
  * This is done by ending with a blank preference value, as in "123,456,".
  * </p>
@@ -121,14 +133,35 @@ public class FileDataModel extends AbstractDataModel {
   public static final long DEFAULT_MIN_RELOAD_INTERVAL_MS = 60 * 1000L; // 1 minute?
   private static final char COMMENT_CHAR = '#';
   private static final char[] DELIMIETERS = {',', '\t'};
+  private static final Comparator<File> UPDATE_FILE_ORDER = new Comparator<File>() {
+    @Override
+    public int compare(File a, File b) {
+      long aModified = a.lastModified();
+      long bModified = b.lastModified();
+      if (aModified < bModified) {
+        return -1;
+      }
+      if (aModified > bModified) {
+        return 1;
+      }
+      return a.getName().compareTo(b.getName());
+    }
+  };
 
   private final File dataFile;
   private long lastModified;
-  private long lastUpdateFileModified;
   private final char delimiter;
   private final Pattern delimiterPattern;
   private final boolean hasPrefValues;
-  private DataModel delegate;
+  private volatile DataModel delegate;
+  private FastByIDMap<FastByIDMap<Long>> timestamps;
+  private final Map<String,Long> appliedUpdateFiles;
+  private FastByIDMap<?> priorUserData;
+  private FastByIDMap<FastByIDMap<Long>> priorTimestamps;
+  private FastIDSet updatedUserIDs;
+  private FastIDSet changedUserIDs;
+  private FastIDSet changedItemIDs;
+  private final List<DataModelChangeListener> changeListeners;
   private final ReentrantLock reloadLock;
   private final boolean transpose;
   private final long minReloadIntervalMS;
@@ -166,7 +199,8 @@ public class FileDataModel extends AbstractDataModel {
 
     this.dataFile = dataFile.getAbsoluteFile();
     this.lastModified = dataFile.lastModified();
-    this.lastUpdateFileModified = readLastUpdateFileModified();
+    this.appliedUpdateFiles = new ConcurrentHashMap<String,Long>();
+    this.changeListeners = new CopyOnWriteArrayList<DataModelChangeListener>();
 
     FileLineIterator iterator = new FileLineIterator(dataFile, false);
     String firstLine = iterator.peek();
@@ -197,115 +231,391 @@ public class FileDataModel extends AbstractDataModel {
     return delimiter;
   }
 
+  /**
+   * Registers a listener which is told which users and items changed each time update files are applied
+   * to the data already in memory, or that anything may have changed after a full reload.
+   */
+  public void addDataModelChangeListener(DataModelChangeListener listener) {
+    Preconditions.checkArgument(listener != null, "listener is null");
+    changeListeners.add(listener);
+  }
+
+  public void removeDataModelChangeListener(DataModelChangeListener listener) {
+    changeListeners.remove(listener);
+  }
+
   protected void reload() {
     if (reloadLock.tryLock()) {
       try {
+        DataModel oldDelegate = delegate;
+        changedUserIDs = null;
+        changedItemIDs = null;
         delegate = buildModel();
+        if (oldDelegate != null && delegate != oldDelegate) {
+          for (DataModelChangeListener listener : changeListeners) {
+            listener.dataModelChanged(this, changedUserIDs, changedItemIDs);
+          }
+        }
       } catch (IOException ioe) {
         log.warn("Exception while reloading", ioe);
       } finally {
+        changedUserIDs = null;
+        changedItemIDs = null;
         reloadLock.unlock();
       }
     }
   }
 
+  /**
+   * Reads the data file and all update files when first called, or when the data file has changed since.
+   * Otherwise, only applies update files that have appeared or changed since the last call to the data
+   * already in memory, and returns a new {@link DataModel} which shares everything that did not change with
+   * the current one. The current one is never modified, so it may keep serving requests meanwhile.
+   */
   protected DataModel buildModel() throws IOException {
 
     long newLastModified = dataFile.lastModified();
-    long newLastUpdateFileModified = readLastUpdateFileModified();
-
     boolean loadFreshData = (delegate == null) || (newLastModified > lastModified + minReloadIntervalMS);
 
-    long oldLastUpdateFileModifieid = lastUpdateFileModified;
+    if (!loadFreshData) {
+      List<File> newUpdateFiles = findNewUpdateFiles();
+      if (newUpdateFiles.isEmpty()) {
+        return delegate;
+      }
+      DataModel newModel = applyUpdateFiles(newUpdateFiles);
+      markApplied(newUpdateFiles);
+      return newModel;
+    }
+
     lastModified = newLastModified;
-    lastUpdateFileModified = newLastUpdateFileModified;
+    // Update files older than the data file are assumed to be reflected in it already
+    List<File> updateFiles = findUpdateFiles();
+    appliedUpdateFiles.clear();
+    markApplied(updateFiles);
 
-    FastByIDMap<FastByIDMap<Long>> timestamps = new FastByIDMap<FastByIDMap<Long>>();
+    FastByIDMap<FastByIDMap<Long>> newTimestamps = new FastByIDMap<FastByIDMap<Long>>();
+    DataModel newModel;
 
     if (hasPrefValues) {
 
-      if (loadFreshData) {
+      FastByIDMap<Collection<Preference>> data = new FastByIDMap<Collection<Preference>>();
+      FileLineIterator iterator = new FileLineIterator(dataFile, false);
+      processFile(iterator, data, newTimestamps, false);
+
+      for (File updateFile : updateFiles) {
+        if (updateFile.lastModified() >= newLastModified) {
+          processFile(new FileLineIterator(updateFile, false), data, newTimestamps, false);
+        }
+      }
+
+      newModel = new GenericDataModel(GenericDataModel.toDataMap(data, true), newTimestamps);
+
+    } else {
+
+      FastByIDMap<FastIDSet> data = new FastByIDMap<FastIDSet>();
+      FileLineIterator iterator = new FileLineIterator(dataFile, false);
+      processFileWithoutID(iterator, data, newTimestamps);
+
+      for (File updateFile : updateFiles) {
+        if (updateFile.lastModified() >= newLastModified) {
+          processFileWithoutID(new FileLineIterator(updateFile, false), data, newTimestamps);
+        }
+      }
 
-        FastByIDMap<Collection<Preference>> data = new FastByIDMap<Collection<Preference>>();
-        FileLineIterator iterator = new FileLineIterator(dataFile, false);
-        processFile(iterator, data, timestamps, false);
+      newModel = new GenericBooleanPrefDataModel(data, newTimestamps);
+
+    }
 
-        for (File updateFile : findUpdateFilesAfter(newLastModified)) {
-          processFile(new FileLineIterator(updateFile, false), data, timestamps, false);
+    timestamps = newTimestamps;
+    return newModel;
+  }
+
+  /**
+   * Applies the given update files on top of the current model. The current model's maps are copied, but not
+   * the preferences in them; {@link #processLine(String, FastByIDMap, FastByIDMap, boolean)} and
+   * {@link #processLineWithoutID(String, FastByIDMap, FastByIDMap)} copy a user's data before first changing
+   * it, and note each user they read through {@link #noteUserUpdated(long)}. Only those users' entries are then
+   * compared with the originals to find the users that changed, and from them the items whose data must be
+   * rebuilt, so the work done per update is proportional to its size. Copying the maps themselves copies their
+   * arrays, but looks at no entries.
+   */
+  private DataModel applyUpdateFiles(Iterable<File> updateFiles) throws IOException {
+    FastByIDMap<FastByIDMap<Long>> newTimestamps = timestamps.clone();
+    priorTimestamps = timestamps;
+    updatedUserIDs = new FastIDSet();
+    changedUserIDs = new FastIDSet();
+    changedItemIDs = new FastIDSet();
+    try {
+
+      if (hasPrefValues) {
+
+        GenericDataModel current = (GenericDataModel) delegate;
+        FastByIDMap<PreferenceArray> oldUserData = current.getRawUserData();
+        FastByIDMap<PreferenceArray> userData = oldUserData.clone();
+        priorUserData = oldUserData;
+
+        for (File updateFile : updateFiles) {
+          processFile(new FileLineIterator(updateFile, false), userData, newTimestamps, true);
         }
 
-        return new GenericDataModel(GenericDataModel.toDataMap(data, true), timestamps);
+        FastByIDMap<PreferenceArray> itemData = updateItemData(oldUserData, userData, current.getRawItemData());
+        log.info("Updated {} users and {} items", changedUserIDs.size(), changedItemIDs.size());
+        timestamps = newTimestamps;
+        // Bounds can only widen by values in rebuilt items; they are not narrowed when extreme values go away
+        float minPrefValue = current.getMinPreference();
+        float maxPrefValue = current.getMaxPreference();
+        LongPrimitiveIterator it = changedItemIDs.iterator();
+        while (it.hasNext()) {
+          PreferenceArray prefs = itemData.get(it.nextLong());
+          if (prefs != null) {
+            int length = prefs.length();
+            for (int i = 0; i < length; i++) {
+              float value = prefs.getValue(i);
+              if (value > maxPrefValue) {
+                maxPrefValue = value;
+              }
+              if (value < minPrefValue) {
+                minPrefValue = value;
+              }
+            }
+          }
+        }
+        return new GenericDataModel(userData, itemData, newTimestamps, minPrefValue, maxPrefValue);
 
       } else {
 
-        FastByIDMap<PreferenceArray> rawData = ((GenericDataModel) delegate).getRawUserData();
+        GenericBooleanPrefDataModel current = (GenericBooleanPrefDataModel) delegate;
+        FastByIDMap<FastIDSet> oldUserData = current.getRawUserData();
+        FastByIDMap<FastIDSet> userData = oldUserData.clone();
+        priorUserData = oldUserData;
 
-        for (File updateFile : findUpdateFilesAfter(Math.max(oldLastUpdateFileModifieid, newLastModified))) {
-          processFile(new FileLineIterator(updateFile, false), rawData, timestamps, true);
+        for (File updateFile : updateFiles) {
+          processFileWithoutID(new FileLineIterator(updateFile, false), userData, newTimestamps);
         }
 
-        return new GenericDataModel(rawData, timestamps);
+        FastByIDMap<FastIDSet> itemData = updateItemIDData(oldUserData, userData, current.getRawItemData());
+        log.info("Updated {} users and {} items", changedUserIDs.size(), changedItemIDs.size());
+        timestamps = newTimestamps;
+        return new GenericBooleanPrefDataModel(userData, itemData, newTimestamps);
 
       }
 
-    } else {
-
-      if (loadFreshData) {
+    } finally {
+      priorUserData = null;
+      priorTimestamps = null;
+      updatedUserIDs = null;
+    }
+  }
 
-        FastByIDMap<FastIDSet> data = new FastByIDMap<FastIDSet>();
-        FileLineIterator iterator = new FileLineIterator(dataFile, false);
-        processFileWithoutID(iterator, data, timestamps);
+  /**
+   * @return copy of <code>oldItemData</code> in which the preferences of items touched by any updated user whose
+   *  {@link PreferenceArray} was replaced in <code>userData</code> are rebuilt
+   */
+  private FastByIDMap<PreferenceArray> updateItemData(FastByIDMap<PreferenceArray> oldUserData,
+                                                      FastByIDMap<PreferenceArray> userData,
+                                                      FastByIDMap<PreferenceArray> oldItemData) {
+    // Maps item IDs to user IDs to new preference values, or NaN where the preference was removed
+    FastByIDMap<FastByIDMap<Float>> itemChanges = new FastByIDMap<FastByIDMap<Float>>();
+    LongPrimitiveIterator userIDs = updatedUserIDs.iterator();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      PreferenceArray oldPrefs = oldUserData.get(userID);
+      PreferenceArray newPrefs = userData.get(userID);
+      if (newPrefs != oldPrefs) {
+        recordItemChanges(userID, oldPrefs, newPrefs, itemChanges);
+      }
+    }
 
-        for (File updateFile : findUpdateFilesAfter(newLastModified)) {
-          processFileWithoutID(new FileLineIterator(updateFile, false), data, timestamps);
+    FastByIDMap<PreferenceArray> itemData = oldItemData.clone();
+    for (Map.Entry<Long,FastByIDMap<Float>> entry : itemChanges.entrySet()) {
+      long itemID = entry.getKey();
+      FastByIDMap<Float> changes = entry.getValue();
+      changedItemIDs.add(itemID);
+      List<Preference> prefs = new ArrayList<Preference>();
+      PreferenceArray oldPrefs = oldItemData.get(itemID);
+      if (oldPrefs != null) {
+        for (int i = 0; i < oldPrefs.length(); i++) {
+          long userID = oldPrefs.getUserID(i);
+          if (!changes.containsKey(userID)) {
+            prefs.add(new GenericPreference(userID, itemID, oldPrefs.getValue(i)));
+          }
         }
+      }
+      for (Map.Entry<Long,Float> change : changes.entrySet()) {
+        float value = change.getValue();
+        if (!Float.isNaN(value)) {
+          prefs.add(new GenericPreference(change.getKey(), itemID, value));
+        }
+      }
+      if (prefs.isEmpty()) {
+        itemData.remove(itemID);
+      } else {
+        PreferenceArray newPrefs = new GenericItemPreferenceArray(prefs);
+        newPrefs.sortByUser();
+        itemData.put(itemID, newPrefs);
+      }
+    }
+    return itemData;
+  }
 
-        return new GenericBooleanPrefDataModel(data, timestamps);
-
+  private void recordItemChanges(long userID,
+                                 PreferenceArray oldPrefs,
+                                 PreferenceArray newPrefs,
+                                 FastByIDMap<FastByIDMap<Float>> itemChanges) {
+    changedUserIDs.add(userID);
+    // Both are sorted by item ID, so walk them together
+    int oldLength = oldPrefs == null ? 0 : oldPrefs.length();
+    int newLength = 0;
+    if (newPrefs != null) {
+      newPrefs.sortByItem();
+      newLength = newPrefs.length();
+    }
+    int i = 0;
+    int j = 0;
+    while (i < oldLength || j < newLength) {
+      if (j >= newLength || (i < oldLength && oldPrefs.getItemID(i) < newPrefs.getItemID(j))) {
+        recordItemChange(oldPrefs.getItemID(i), userID, Float.NaN, itemChanges);
+        i++;
+      } else if (i >= oldLength || newPrefs.getItemID(j) < oldPrefs.getItemID(i)) {
+        recordItemChange(newPrefs.getItemID(j), userID, newPrefs.getValue(j), itemChanges);
+        j++;
       } else {
+        if (oldPrefs.getValue(i) != newPrefs.getValue(j)) {
+          recordItemChange(newPrefs.getItemID(j), userID, newPrefs.getValue(j), itemChanges);
+        }
+        i++;
+        j++;
+      }
+    }
+  }
 
-        FastByIDMap<FastIDSet> rawData = ((GenericBooleanPrefDataModel) delegate).getRawUserData();
+  private static void recordItemChange(long itemID,
+                                       long userID,
+                                       float value,
+                                       FastByIDMap<FastByIDMap<Float>> itemChanges) {
+    FastByIDMap<Float> changes = itemChanges.get(itemID);
+    if (changes == null) {
+      changes = new FastByIDMap<Float>(2);
+      itemChanges.put(itemID, changes);
+    }
+    changes.put(userID, value);
+  }
 
-        for (File updateFile : findUpdateFilesAfter(Math.max(oldLastUpdateFileModifieid, newLastModified))) {
-          processFileWithoutID(new FileLineIterator(updateFile, false), rawData, timestamps);
+  /**
+   * Like {@link #updateItemData(FastByIDMap, FastByIDMap, FastByIDMap)}, for data without preference values.
+   */
+  private FastByIDMap<FastIDSet> updateItemIDData(FastByIDMap<FastIDSet> oldUserData,
+                                                  FastByIDMap<FastIDSet> userData,
+                                                  FastByIDMap<FastIDSet> oldItemData) {
+    FastByIDMap<FastIDSet> itemData = oldItemData.clone();
+    LongPrimitiveIterator userIDs = updatedUserIDs.iterator();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      FastIDSet oldItemIDs = oldUserData.get(userID);
+      FastIDSet newItemIDs = userData.get(userID);
+      if (newItemIDs == oldItemIDs) {
+        continue;
+      }
+      changedUserIDs.add(userID);
+      if (oldItemIDs != null) {
+        LongPrimitiveIterator it = oldItemIDs.iterator();
+        while (it.hasNext()) {
+          long itemID = it.nextLong();
+          if (newItemIDs == null || !newItemIDs.contains(itemID)) {
+            userIDsForUpdate(itemID, itemData, oldItemData).remove(userID);
+          }
+        }
+      }
+      if (newItemIDs != null) {
+        LongPrimitiveIterator it = newItemIDs.iterator();
+        while (it.hasNext()) {
+          long itemID = it.nextLong();
+          if (oldItemIDs == null || !oldItemIDs.contains(itemID)) {
+            userIDsForUpdate(itemID, itemData, oldItemData).add(userID);
+          }
         }
+      }
+    }
+    LongPrimitiveIterator it = changedItemIDs.iterator();
+    while (it.hasNext()) {
+      long itemID = it.nextLong();
+      if (itemData.get(itemID).isEmpty()) {
+        itemData.remove(itemID);
+      }
+    }
+    return itemData;
+  }
 
-        return new GenericBooleanPrefDataModel(rawData, timestamps);
+  private FastIDSet userIDsForUpdate(long itemID, FastByIDMap<FastIDSet> itemData, FastByIDMap<FastIDSet> oldItemData) {
+    if (changedItemIDs.add(itemID)) {
+      FastIDSet oldUserIDs = oldItemData.get(itemID);
+      FastIDSet userIDs = oldUserIDs == null ? new FastIDSet(2) : oldUserIDs.clone();
+      itemData.put(itemID, userIDs);
+      return userIDs;
+    }
+    return itemData.get(itemID);
+  }
 
-      }
+  /**
+   * Notes that an update file names the given user, whose data may therefore have changed. Subclasses which
+   * override {@link #processLine(String, FastByIDMap, FastByIDMap, boolean)} or
+   * {@link #processLineWithoutID(String, FastByIDMap, FastByIDMap)} without calling them must call this for each
+   * user whose data they change, or the change will not be seen when update files are applied.
+   */
+  protected final void noteUserUpdated(long userID) {
+    if (updatedUserIDs != null) {
+      updatedUserIDs.add(userID);
+    }
+  }
 
+  /**
+   * @return true if the given user data are still shared with the model currently being served, and so must be
+   *  copied before being changed
+   */
+  private boolean isPriorData(long userID, Object userData) {
+    return priorUserData != null && priorUserData.get(userID) == userData;
+  }
+
+  private void markApplied(Iterable<File> updateFiles) {
+    for (File updateFile : updateFiles) {
+      appliedUpdateFiles.put(updateFile.getName(), updateFile.lastModified());
+    }
+  }
+
+  /**
+   * @return update files which have not been read yet, or have been modified since
+   */
+  private List<File> findNewUpdateFiles() {
+    List<File> newUpdateFiles = new ArrayList<File>();
+    for (File updateFile : findUpdateFiles()) {
+      Long applied = appliedUpdateFiles.get(updateFile.getName());
+      if (applied == null || applied != updateFile.lastModified()) {
+        newUpdateFiles.add(updateFile);
+      }
     }
+    return newUpdateFiles;
   }
 
   /**
    * Finds update delta files in the same directory as the data file. This finds any file whose name starts
    * the same way as the data file (up to first period) but isn't the data file itself. For example, if the
    * data file is /foo/data.txt.gz, you might place update files at /foo/data.1.txt.gz, /foo/data.2.txt.gz,
-   * etc.
+   * etc. They are returned in order of modification time, then name.
    */
-  private Iterable<File> findUpdateFilesAfter(long minimumLastModified) {
+  private List<File> findUpdateFiles() {
     String dataFileName = dataFile.getName();
     int period = dataFileName.indexOf('.');
     String startName = period < 0 ? dataFileName : dataFileName.substring(0, period);
     File parentDir = dataFile.getParentFile();
-    Map<Long, File> modTimeToUpdateFile = new TreeMap<Long,File>();
+    List<File> updateFiles = new ArrayList<File>();
     for (File updateFile : parentDir.listFiles()) {
       String updateFileName = updateFile.getName();
-      if (updateFileName.startsWith(startName)
-          && !updateFileName.equals(dataFileName)
-          && updateFile.lastModified() >= minimumLastModified) {
-        modTimeToUpdateFile.put(updateFile.lastModified(), updateFile);
+      if (updateFileName.startsWith(startName) && !updateFileName.equals(dataFileName)) {
+        updateFiles.add(updateFile);
       }
     }
-    return modTimeToUpdateFile.values();
-  }
-
-  private long readLastUpdateFileModified() {
-    long mostRecentModification = Long.MIN_VALUE;
-    for (File updateFile : findUpdateFilesAfter(0L)) {
-      mostRecentModification = Math.max(mostRecentModification, updateFile.lastModified());
-    }
-    return mostRecentModification;
+    Collections.sort(updateFiles, UPDATE_FILE_ORDER);
+    return updateFiles;
   }
 
   public static char determineDelimiter(String line) {
@@ -356,7 +666,9 @@ public class FileDataModel extends AbstractDataModel {
    *  {@link PreferenceArray} since the framework is attempting to read and update raw
    *  data that is already in memory. Otherwise it maps to {@link Collection}s of
    *  {@link Preference}s, since it's reading fresh data. Subclasses must be prepared
-   *  to handle this wrinkle.
+   *  to handle this wrinkle. In the former case the arrays may still be in use by the model being
+   *  served, and must be replaced in <code>data</code> rather than modified in place; see
+   *  {@link #buildModel()}.
    */
   protected void processLine(String line,
                              FastByIDMap<?> data, 
@@ -387,6 +699,8 @@ public class FileDataModel extends AbstractDataModel {
       itemID = tmp;
     }
 
+    noteUserUpdated(userID);
+
     // This is kind of gross but need to handle two types of storage
     Object maybePrefs = data.get(userID);
     if (fromPriorData) {
@@ -416,6 +730,7 @@ public class FileDataModel extends AbstractDataModel {
                   newPrefs.set(j, prefs.get(i));
                 }
               }
+              ((FastByIDMap<PreferenceArray>) data).put(userID, newPrefs);
             }
           }
         }
@@ -431,6 +746,10 @@ public class FileDataModel extends AbstractDataModel {
           for (int i = 0; i < prefs.length(); i++) {
             if (prefs.getItemID(i) == itemID) {
               exists = true;
+              if (isPriorData(userID, prefs)) {
+                prefs = prefs.clone();
+                ((FastByIDMap<PreferenceArray>) data).put(userID, prefs);
+              }
               prefs.setValue(i, preferenceValue);
               break;
             }
@@ -532,7 +851,8 @@ public class FileDataModel extends AbstractDataModel {
       return;
     }
 
-    String[] tokens = delimiterPattern.split(line);
+    // Keep a trailing empty preference value, which marks a removal
+    String[] tokens = delimiterPattern.split(line, 5);
     Preconditions.checkArgument(tokens.length >= 2, "Bad line: %s", line);
     String userIDString = tokens[0];
     String itemIDString = tokens[1];
@@ -548,11 +868,17 @@ public class FileDataModel extends AbstractDataModel {
       itemID = tmp;
     }
 
+    noteUserUpdated(userID);
+
     if (tokens.length == 3 && preferenceValueString.length() == 0) {
       // Then line is of form "userID,itemID,", meaning remove
 
       FastIDSet itemIDs = data.get(userID);
-      if (itemIDs != null) {
+      if (itemIDs != null && itemIDs.contains(itemID)) {
+        if (isPriorData(userID, itemIDs)) {
+          itemIDs = itemIDs.clone();
+          data.put(userID, itemIDs);
+        }
         itemIDs.remove(itemID);
       }
 
@@ -564,6 +890,9 @@ public class FileDataModel extends AbstractDataModel {
       if (itemIDs == null) {
         itemIDs = new FastIDSet(2);
         data.put(userID, itemIDs);
+      } else if (isPriorData(userID, itemIDs) && !itemIDs.contains(itemID)) {
+        itemIDs = itemIDs.clone();
+        data.put(userID, itemIDs);
       }
       itemIDs.add(itemID);
 
@@ -581,21 +910,32 @@ public class FileDataModel extends AbstractDataModel {
       if (itemTimestamps == null) {
         itemTimestamps = new FastByIDMap<Long>();
         timestamps.put(userID, itemTimestamps);
+      } else if (isPriorTimestamps(userID, itemTimestamps)) {
+        itemTimestamps = itemTimestamps.clone();
+        timestamps.put(userID, itemTimestamps);
       }
       long timestamp = readTimestampFromString(timestampString);
       itemTimestamps.put(itemID, timestamp);
     }
   }
 
-  private static void removeTimestamp(long userID,
-                                      long itemID,
-                                      FastByIDMap<FastByIDMap<Long>> timestamps) {
+  private void removeTimestamp(long userID,
+                               long itemID,
+                               FastByIDMap<FastByIDMap<Long>> timestamps) {
     FastByIDMap<Long> itemTimestamps = timestamps.get(userID);
-    if (itemTimestamps != null) {
+    if (itemTimestamps != null && itemTimestamps.containsKey(itemID)) {
+      if (isPriorTimestamps(userID, itemTimestamps)) {
+        itemTimestamps = itemTimestamps.clone();
+        timestamps.put(userID, itemTimestamps);
+      }
       itemTimestamps.remove(itemID);
     }
   }
 
+  private boolean isPriorTimestamps(long userID, FastByIDMap<Long> itemTimestamps) {
+    return priorTimestamps != null && priorTimestamps.get(userID) == itemTimestamps;
+  }
+
   /**
    * Subclasses may wish to override this if ID values in the file are not numeric. This provides a hook by
    * which subclasses can inject an {@link org.apache.mahout.cf.taste.model.IDMigrator} to perform
@@ -689,12 +1029,19 @@ public class FileDataModel extends AbstractDataModel {
     delegate.removePreference(userID, itemID);
   }
 
+  /**
+   * Reloads all data if the data file has changed, or else applies any new update files to the data already
+   * in memory. Either way, a new underlying {@link DataModel} is built and then swapped in; callers never see
+   * a partly updated one. {@link DataModelChangeListener}s are then told which users and items changed.
+   */
   @Override
   public void refresh(Collection<Refreshable> alreadyRefreshed) {
-    if ((dataFile.lastModified() > lastModified + minReloadIntervalMS)
-        || (readLastUpdateFileModified() > lastUpdateFileModified + minReloadIntervalMS)) {
+    if (dataFile.lastModified() > lastModified + minReloadIntervalMS) {
       log.debug("File has changed; reloading...");
       reload();
+    } else if (!findNewUpdateFiles().isEmpty()) {
+      log.debug("Found new update files; applying...");
+      reload();
     }
   }
 
@@ -0,0 +1,358 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.AbstractLongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.MappedSection;
+import org.apache.mahout.cf.taste.impl.model.AbstractDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A read-only {@link DataModel} over a compact binary file which is memory-mapped rather than read into the
+ * heap. Opening it only maps the file, so startup takes about as long regardless of the size of the data, and
+ * the operating system pages data in and out as it is used. The file is written by
+ * {@link MemoryMappedDataModelConverter}, typically from the same input a {@link FileDataModel} reads.
+ * </p>
+ *
+ * <p>
+ * The file holds a header followed by, in this order:
+ * </p>
+ *
+ * <ul>
+ *  <li>sorted user IDs, as <code>long</code>s</li>
+ *  <li>for each user, the offset of its first preference, plus one final offset equal to the number of
+ *   preferences, as <code>long</code>s</li>
+ *  <li>item IDs of all preferences, grouped by user and then sorted, as <code>long</code>s</li>
+ *  <li>values of all preferences in the same order, as <code>float</code>s</li>
+ *  <li>the same four sections again, transposed: sorted item IDs, their offsets, and the user IDs and values of
+ *   preferences grouped by item</li>
+ * </ul>
+ *
+ * <p>
+ * Each section starts on an 8-byte boundary. {@link PreferenceArray}s returned by this class are views over the
+ * mapped file, and do not support modification. Neither do {@link #setPreference(long, long, float)} or
+ * {@link #removePreference(long, long)}. Preference times are not stored.
+ * </p>
+ */
+public final class MemoryMappedDataModel extends AbstractDataModel {
+
+  /** only the data file is serialized; the mappings are recreated on deserialization */
+  private static final long serialVersionUID = 1L;
+
+  static final int MAGIC = 0x4D4D444D;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+
+  private final File dataFile;
+  private transient int numUsers;
+  private transient int numItems;
+  private transient long numPrefs;
+  private transient boolean hasPrefValues;
+  private transient MappedSection userIDs;
+  private transient MappedSection userOffsets;
+  private transient MappedSection userPrefItemIDs;
+  private transient MappedSection userPrefValues;
+  private transient MappedSection itemIDs;
+  private transient MappedSection itemOffsets;
+  private transient MappedSection itemPrefUserIDs;
+  private transient MappedSection itemPrefValues;
+
+  /**
+   * @param dataFile file written by {@link MemoryMappedDataModelConverter}
+   * @throws IOException if the file can't be read or is not in the expected format
+   */
+  public MemoryMappedDataModel(File dataFile) throws IOException {
+    Preconditions.checkArgument(dataFile != null, "dataFile is null");
+    this.dataFile = dataFile.getAbsoluteFile();
+    map();
+  }
+
+  private void map() throws IOException {
+    RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a memory-mapped data model file: " + dataFile);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version " + version + " in " + dataFile);
+      }
+      numUsers = (int) header.getLong();
+      numItems = (int) header.getLong();
+      numPrefs = header.getLong();
+      hasPrefValues = header.getInt() != 0;
+      setMinPreference(header.getFloat());
+      setMaxPreference(header.getFloat());
+
+      long position = HEADER_SIZE;
+      userIDs = new MappedSection(channel, position, 8L * numUsers);
+      position += 8L * numUsers;
+      userOffsets = new MappedSection(channel, position, 8L * (numUsers + 1));
+      position += 8L * (numUsers + 1);
+      userPrefItemIDs = new MappedSection(channel, position, 8L * numPrefs);
+      position += 8L * numPrefs;
+      userPrefValues = new MappedSection(channel, position, 4L * numPrefs);
+      position += paddedFloatBytes(numPrefs);
+      itemIDs = new MappedSection(channel, position, 8L * numItems);
+      position += 8L * numItems;
+      itemOffsets = new MappedSection(channel, position, 8L * (numItems + 1));
+      position += 8L * (numItems + 1);
+      itemPrefUserIDs = new MappedSection(channel, position, 8L * numPrefs);
+      position += 8L * numPrefs;
+      itemPrefValues = new MappedSection(channel, position, 4L * numPrefs);
+      position += paddedFloatBytes(numPrefs);
+      if (position != channel.size()) {
+        throw new IOException("Expected " + position + " bytes but found " + channel.size() + " in " + dataFile);
+      }
+    } finally {
+      // Mappings remain valid after the channel is closed
+      file.close();
+    }
+  }
+
+  static long paddedFloatBytes(long numFloats) {
+    return ((4L * numFloats) + 7L) & ~7L;
+  }
+
+  public File getDataFile() {
+    return dataFile;
+  }
+
+  @Override
+  public LongPrimitiveIterator getUserIDs() {
+    return new MappedIDIterator(userIDs, numUsers);
+  }
+
+  @Override
+  public PreferenceArray getPreferencesFromUser(long userID) throws TasteException {
+    long index = userIDs.binarySearchLong(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException();
+    }
+    long start = userOffsets.getLong(index);
+    int length = (int) (userOffsets.getLong(index + 1) - start);
+    return new MemoryMappedPreferenceArray(true, userID, userPrefItemIDs, userPrefValues, start, length);
+  }
+
+  @Override
+  public FastIDSet getItemIDsFromUser(long userID) throws TasteException {
+    long index = userIDs.binarySearchLong(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException();
+    }
+    long start = userOffsets.getLong(index);
+    long end = userOffsets.getLong(index + 1);
+    FastIDSet result = new FastIDSet((int) (end - start));
+    for (long i = start; i < end; i++) {
+      result.add(userPrefItemIDs.getLong(i));
+    }
+    return result;
+  }
+
+  @Override
+  public LongPrimitiveIterator getItemIDs() {
+    return new MappedIDIterator(itemIDs, numItems);
+  }
+
+  @Override
+  public PreferenceArray getPreferencesForItem(long itemID) throws TasteException {
+    long index = itemIDs.binarySearchLong(0, numItems, itemID);
+    if (index < 0) {
+      throw new NoSuchItemException();
+    }
+    long start = itemOffsets.getLong(index);
+    int length = (int) (itemOffsets.getLong(index + 1) - start);
+    return new MemoryMappedPreferenceArray(false, itemID, itemPrefUserIDs, itemPrefValues, start, length);
+  }
+
+  @Override
+  public Float getPreferenceValue(long userID, long itemID) throws TasteException {
+    long index = userIDs.binarySearchLong(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException();
+    }
+    long prefIndex = userPrefItemIDs.binarySearchLong(userOffsets.getLong(index), userOffsets.getLong(index + 1),
+        itemID);
+    return prefIndex < 0 ? null : userPrefValues.getFloat(prefIndex);
+  }
+
+  @Override
+  public Long getPreferenceTime(long userID, long itemID) throws TasteException {
+    if (userIDs.binarySearchLong(0, numUsers, userID) < 0) {
+      throw new NoSuchUserException();
+    }
+    return null;
+  }
+
+  @Override
+  public int getNumItems() {
+    return numItems;
+  }
+
+  @Override
+  public int getNumUsers() {
+    return numUsers;
+  }
+
+  /**
+   * @return total number of preferences in the model
+   */
+  public long getNumPreferences() {
+    return numPrefs;
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long... itemIDs) throws TasteException {
+    Preconditions.checkArgument(itemIDs != null, "itemIDs is null");
+    int length = itemIDs.length;
+    Preconditions.checkArgument(length == 1 || length == 2, "Illegal number of IDs: %s", length);
+    long index1 = this.itemIDs.binarySearchLong(0, numItems, itemIDs[0]);
+    if (index1 < 0) {
+      return 0;
+    }
+    long start1 = itemOffsets.getLong(index1);
+    long end1 = itemOffsets.getLong(index1 + 1);
+    if (length == 1) {
+      return (int) (end1 - start1);
+    }
+    long index2 = this.itemIDs.binarySearchLong(0, numItems, itemIDs[1]);
+    if (index2 < 0) {
+      return 0;
+    }
+    long start2 = itemOffsets.getLong(index2);
+    long end2 = itemOffsets.getLong(index2 + 1);
+    // Both runs of user IDs are sorted, so merge them
+    int count = 0;
+    long i = start1;
+    long j = start2;
+    while (i < end1 && j < end2) {
+      long userID1 = itemPrefUserIDs.getLong(i);
+      long userID2 = itemPrefUserIDs.getLong(j);
+      if (userID1 < userID2) {
+        i++;
+      } else if (userID1 > userID2) {
+        j++;
+      } else {
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean hasPreferenceValues() {
+    return hasPrefValues;
+  }
+
+  /**
+   * Does nothing, since the underlying file is not expected to change while mapped.
+   */
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    // do nothing
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    map();
+  }
+
+  @Override
+  public String toString() {
+    return "MemoryMappedDataModel[dataFile:" + dataFile + ']';
+  }
+
+  private static final class MappedIDIterator extends AbstractLongPrimitiveIterator {
+
+    private final MappedSection ids;
+    private final long size;
+    private long position;
+
+    private MappedIDIterator(MappedSection ids, long size) {
+      this.ids = ids;
+      this.size = size;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return position < size;
+    }
+
+    @Override
+    public long nextLong() {
+      if (position >= size) {
+        throw new NoSuchElementException();
+      }
+      return ids.getLong(position++);
+    }
+
+    @Override
+    public long peek() {
+      if (position >= size) {
+        throw new NoSuchElementException();
+      }
+      return ids.getLong(position);
+    }
+
+    @Override
+    public void skip(int n) {
+      if (n > 0) {
+        position += n;
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
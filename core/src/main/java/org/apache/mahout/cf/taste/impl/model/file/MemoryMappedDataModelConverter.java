@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Writes the file read by {@link MemoryMappedDataModel}, either from any {@link DataModel}, or from a file in
+ * the format read by {@link FileDataModel}. The source model must fit in memory while converting, but the
+ * result can then be served from a machine with far less heap.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>MemoryMappedDataModelConverter inputFile outputFile</code>
+ * </p>
+ */
+public final class MemoryMappedDataModelConverter {
+
+  private static final Logger log = LoggerFactory.getLogger(MemoryMappedDataModelConverter.class);
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private MemoryMappedDataModelConverter() { }
+
+  public static void main(String[] args) throws IOException, TasteException {
+    if (args.length != 2) {
+      System.err.println("Usage: MemoryMappedDataModelConverter inputFile outputFile");
+      return;
+    }
+    convert(new File(args[0]), new File(args[1]));
+  }
+
+  /**
+   * Reads the given file as a {@link FileDataModel}, including any update files next to it, and writes it in
+   * the format of {@link MemoryMappedDataModel}.
+   */
+  public static void convert(File inputFile, File outputFile) throws IOException, TasteException {
+    writeDataModel(new FileDataModel(inputFile), outputFile);
+  }
+
+  public static void writeDataModel(DataModel dataModel, File outputFile) throws IOException, TasteException {
+    int numUsers = dataModel.getNumUsers();
+    int numItems = dataModel.getNumItems();
+    long numPrefs = 0L;
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      numPrefs += dataModel.getPreferencesFromUser(userIDs.nextLong()).length();
+    }
+    log.info("Writing {} users, {} items and {} preferences to {}",
+             new Object[] {numUsers, numItems, numPrefs, outputFile});
+
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), BUFFER_SIZE));
+    try {
+      out.writeInt(MemoryMappedDataModel.MAGIC);
+      out.writeInt(MemoryMappedDataModel.VERSION);
+      out.writeLong(numUsers);
+      out.writeLong(numItems);
+      out.writeLong(numPrefs);
+      out.writeInt(dataModel.hasPreferenceValues() ? 1 : 0);
+      out.writeFloat(dataModel.getMinPreference());
+      out.writeFloat(dataModel.getMaxPreference());
+      pad(out, MemoryMappedDataModel.HEADER_SIZE - out.size());
+
+      writeSections(dataModel, true, numPrefs, out);
+      writeSections(dataModel, false, numPrefs, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes IDs, offsets, other IDs and values sections, by user or by item. {@link MemoryMappedDataModel}
+   * binary-searches all of these, so IDs are written in ascending order and each user's preferences by item,
+   * each item's by user, whatever order the source {@link DataModel} returns them in.
+   */
+  private static void writeSections(DataModel dataModel,
+                                    boolean byUser,
+                                    long numPrefs,
+                                    DataOutputStream out) throws IOException, TasteException {
+    long[] ids = sortedIDs(byUser ? dataModel.getUserIDs() : dataModel.getItemIDs());
+    for (long id : ids) {
+      out.writeLong(id);
+    }
+
+    long offset = 0L;
+    for (long id : ids) {
+      out.writeLong(offset);
+      offset += preferences(dataModel, byUser, id).length();
+    }
+    out.writeLong(offset);
+    if (offset != numPrefs) {
+      throw new IllegalStateException("Found " + offset + " preferences by "
+                                      + (byUser ? "user" : "item") + " but expected " + numPrefs);
+    }
+
+    for (long id : ids) {
+      PreferenceArray prefs = sortedPreferences(dataModel, byUser, id);
+      int length = prefs.length();
+      for (int i = 0; i < length; i++) {
+        out.writeLong(byUser ? prefs.getItemID(i) : prefs.getUserID(i));
+      }
+    }
+
+    for (long id : ids) {
+      PreferenceArray prefs = sortedPreferences(dataModel, byUser, id);
+      int length = prefs.length();
+      for (int i = 0; i < length; i++) {
+        out.writeFloat(prefs.getValue(i));
+      }
+    }
+    pad(out, (int) (MemoryMappedDataModel.paddedFloatBytes(numPrefs) - 4L * numPrefs));
+  }
+
+  private static long[] sortedIDs(LongPrimitiveIterator it) {
+    FastIDSet ids = new FastIDSet();
+    while (it.hasNext()) {
+      ids.add(it.nextLong());
+    }
+    long[] result = ids.toArray();
+    Arrays.sort(result);
+    return result;
+  }
+
+  private static PreferenceArray preferences(DataModel dataModel, boolean byUser, long id) throws TasteException {
+    return byUser ? dataModel.getPreferencesFromUser(id) : dataModel.getPreferencesForItem(id);
+  }
+
+  /**
+   * @return preferences of the given user sorted by item, or of the given item sorted by user; a sorted copy if
+   *  the source {@link DataModel}'s are not sorted already, so that it is never modified
+   */
+  private static PreferenceArray sortedPreferences(DataModel dataModel, boolean byUser, long id)
+    throws TasteException {
+    PreferenceArray prefs = preferences(dataModel, byUser, id);
+    int length = prefs.length();
+    for (int i = 1; i < length; i++) {
+      boolean inOrder = byUser
+          ? prefs.getItemID(i - 1) < prefs.getItemID(i)
+          : prefs.getUserID(i - 1) < prefs.getUserID(i);
+      if (!inOrder) {
+        PreferenceArray sorted = prefs.clone();
+        if (byUser) {
+          sorted.sortByItem();
+        } else {
+          sorted.sortByUser();
+        }
+        return sorted;
+      }
+    }
+    return prefs;
+  }
+
+  private static void pad(DataOutputStream out, int numBytes) throws IOException {
+    for (int i = 0; i < numBytes; i++) {
+      out.writeByte(0);
+    }
+  }
+
+}
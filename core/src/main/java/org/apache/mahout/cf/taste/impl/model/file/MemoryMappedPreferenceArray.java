@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.util.Iterator;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import org.apache.mahout.cf.taste.impl.common.MappedSection;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.iterator.CountingIterator;
+
+/**
+ * <p>
+ * A read-only {@link PreferenceArray} view over a run of preferences stored in a {@link MemoryMappedDataModel}.
+ * It holds either one user's preferences, ordered by item ID, or one item's, ordered by user ID. Nothing is
+ * copied onto the heap except by {@link #getIDs()} and {@link #clone()}; the latter returns an ordinary,
+ * modifiable {@link GenericUserPreferenceArray} or {@link GenericItemPreferenceArray}.
+ * </p>
+ */
+final class MemoryMappedPreferenceArray implements PreferenceArray {
+
+  private final boolean byUser;
+  private final long id;
+  private final MappedSection otherIDs;
+  private final MappedSection values;
+  private final long start;
+  private final int length;
+  private long[] idsCopy;
+
+  /**
+   * @param byUser if true, this holds the preferences of user <code>id</code>, and <code>otherIDs</code> are
+   *  item IDs; otherwise this holds the preferences for item <code>id</code>
+   */
+  MemoryMappedPreferenceArray(boolean byUser,
+                              long id,
+                              MappedSection otherIDs,
+                              MappedSection values,
+                              long start,
+                              int length) {
+    this.byUser = byUser;
+    this.id = id;
+    this.otherIDs = otherIDs;
+    this.values = values;
+    this.start = start;
+    this.length = length;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public Preference get(int i) {
+    return new PreferenceView(i);
+  }
+
+  @Override
+  public void set(int i, Preference pref) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getUserID(int i) {
+    return byUser ? id : otherIDs.getLong(start + i);
+  }
+
+  @Override
+  public void setUserID(int i, long userID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getItemID(int i) {
+    return byUser ? otherIDs.getLong(start + i) : id;
+  }
+
+  @Override
+  public void setItemID(int i, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return item IDs if this holds one user's preferences, or user IDs otherwise. The array is copied out of
+   *  the mapped file on first use only.
+   */
+  @Override
+  public long[] getIDs() {
+    long[] result = idsCopy;
+    if (result == null) {
+      result = new long[length];
+      for (int i = 0; i < length; i++) {
+        result[i] = otherIDs.getLong(start + i);
+      }
+      idsCopy = result;
+    }
+    return result;
+  }
+
+  @Override
+  public float getValue(int i) {
+    return values.getFloat(start + i);
+  }
+
+  @Override
+  public void setValue(int i, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public PreferenceArray clone() {
+    PreferenceArray copy = byUser ? new GenericUserPreferenceArray(length) : new GenericItemPreferenceArray(length);
+    for (int i = 0; i < length; i++) {
+      long otherID = otherIDs.getLong(start + i);
+      if (byUser) {
+        copy.setUserID(i, id);
+        copy.setItemID(i, otherID);
+      } else {
+        copy.setUserID(i, otherID);
+        copy.setItemID(i, id);
+      }
+      copy.setValue(i, values.getFloat(start + i));
+    }
+    return copy;
+  }
+
+  /**
+   * Does nothing: preferences for an item are stored sorted by user, and those of a user trivially are.
+   */
+  @Override
+  public void sortByUser() { }
+
+  /**
+   * Does nothing: preferences of a user are stored sorted by item, and those for an item trivially are.
+   */
+  @Override
+  public void sortByItem() { }
+
+  @Override
+  public void sortByValue() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void sortByValueReversed() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean hasPrefWithUserID(long userID) {
+    return byUser ? id == userID : otherIDs.binarySearchLong(start, start + length, userID) >= 0;
+  }
+
+  @Override
+  public boolean hasPrefWithItemID(long itemID) {
+    return byUser ? otherIDs.binarySearchLong(start, start + length, itemID) >= 0 : id == itemID;
+  }
+
+  @Override
+  public Iterator<Preference> iterator() {
+    return Iterators.transform(new CountingIterator(length),
+                               new Function<Integer, Preference>() {
+                                 @Override
+                                 public Preference apply(Integer from) {
+                                   return new PreferenceView(from);
+                                 }
+                               });
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(20 * length + 40);
+    result.append("MemoryMappedPreferenceArray[").append(byUser ? "userID:" : "itemID:").append(id).append(",{");
+    for (int i = 0; i < length; i++) {
+      if (i > 0) {
+        result.append(',');
+      }
+      result.append(otherIDs.getLong(start + i));
+      result.append('=');
+      result.append(values.getFloat(start + i));
+    }
+    result.append("}]");
+    return result.toString();
+  }
+
+  private final class PreferenceView implements Preference {
+
+    private final int i;
+
+    private PreferenceView(int i) {
+      this.i = i;
+    }
+
+    @Override
+    public long getUserID() {
+      return MemoryMappedPreferenceArray.this.getUserID(i);
+    }
+
+    @Override
+    public long getItemID() {
+      return MemoryMappedPreferenceArray.this.getItemID(i);
+    }
+
+    @Override
+    public float getValue() {
+      return MemoryMappedPreferenceArray.this.getValue(i);
+    }
+
+    @Override
+    public void setValue(float value) {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+}
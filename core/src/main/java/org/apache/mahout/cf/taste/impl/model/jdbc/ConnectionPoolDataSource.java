@@ -95,6 +95,10 @@ public final class ConnectionPoolDataSource implements DataSource {
     return delegate.isWrapperFor(iface);
   }
   
+  public java.util.logging.Logger getParentLogger() throws java.sql.SQLFeatureNotSupportedException {
+    throw new java.sql.SQLFeatureNotSupportedException();
+  }
+
   private static class ConfiguringConnectionFactory implements ConnectionFactory {
     
     private final DataSource underlyingDataSource;
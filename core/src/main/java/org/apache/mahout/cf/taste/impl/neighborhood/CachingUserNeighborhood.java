@@ -21,7 +21,7 @@ import java.util.Collection;
 
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
-import org.apache.mahout.cf.taste.impl.common.Cache;
+import org.apache.mahout.cf.taste.impl.common.ConcurrentCache;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.Retriever;
 import org.apache.mahout.cf.taste.model.DataModel;
@@ -33,13 +33,13 @@ import com.google.common.base.Preconditions;
 public final class CachingUserNeighborhood implements UserNeighborhood {
   
   private final UserNeighborhood neighborhood;
-  private final Cache<Long,long[]> neighborhoodCache;
+  private final ConcurrentCache<Long,long[]> neighborhoodCache;
   
   public CachingUserNeighborhood(UserNeighborhood neighborhood, DataModel dataModel) throws TasteException {
     Preconditions.checkArgument(neighborhood != null, "neighborhood is null");
     this.neighborhood = neighborhood;
     int maxCacheSize = dataModel.getNumUsers(); // just a dumb heuristic for sizing
-    this.neighborhoodCache = new Cache<Long,long[]>(new NeighborhoodRetriever(neighborhood), maxCacheSize);
+    this.neighborhoodCache = new ConcurrentCache<Long,long[]>(new NeighborhoodRetriever(neighborhood), maxCacheSize);
   }
   
   @Override
@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.neighborhood;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.SamplingLongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.recommender.ParallelTopItems;
+import org.apache.mahout.cf.taste.impl.recommender.TopItems;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Like {@link NearestNUserNeighborhood}, computes a neighborhood of the nearest n users to a given user, but
+ * is meant for large data sets and online use:
+ * </p>
+ *
+ * <ul>
+ * <li>Only users who share at least one item with the given user are candidates. These are found through
+ * {@link DataModel#getPreferencesForItem(long)}, starting with the given user's least popular items, and
+ * optionally limited to a maximum number. Users with nothing in common would mostly not have a defined
+ * similarity anyway.</li>
+ * <li>Candidates are scored on several threads, through {@link ParallelTopItems}.</li>
+ * <li>An optional timeout bounds the time spent. Once it passes, the nearest users found so far are
+ * returned.</li>
+ * </ul>
+ *
+ * <p>
+ * Results may therefore differ from {@link NearestNUserNeighborhood}'s for similarity metrics which are
+ * defined for users with no items in common, or when candidates are limited or time runs out.
+ * </p>
+ */
+public final class IndexedNearestNUserNeighborhood extends AbstractUserNeighborhood {
+
+  private static final Logger log = LoggerFactory.getLogger(IndexedNearestNUserNeighborhood.class);
+
+  private static final long[] NO_IDS = new long[0];
+
+  private final int n;
+  private final double minSimilarity;
+  private final int maxCandidates;
+  private final long timeoutNanos;
+  private final AtomicLong numRequests;
+  private final AtomicLong numTimedOut;
+
+  /**
+   * @param n neighborhood size; capped at the number of users in the data model
+   * @throws IllegalArgumentException
+   *           if n &lt; 1, or userSimilarity or dataModel are <code>null</code>
+   */
+  public IndexedNearestNUserNeighborhood(int n,
+                                         UserSimilarity userSimilarity,
+                                         DataModel dataModel) throws TasteException {
+    this(n, Double.NEGATIVE_INFINITY, userSimilarity, dataModel, 1.0, Integer.MAX_VALUE, 0L, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param n neighborhood size; capped at the number of users in the data model
+   * @param timeout time after which to return the nearest users found so far
+   * @throws IllegalArgumentException
+   *           if n &lt; 1 or timeout is negative, or userSimilarity or dataModel are <code>null</code>
+   */
+  public IndexedNearestNUserNeighborhood(int n,
+                                         UserSimilarity userSimilarity,
+                                         DataModel dataModel,
+                                         long timeout,
+                                         TimeUnit unit) throws TasteException {
+    this(n, Double.NEGATIVE_INFINITY, userSimilarity, dataModel, 1.0, Integer.MAX_VALUE, timeout, unit);
+  }
+
+  /**
+   * @param n neighborhood size; capped at the number of users in the data model
+   * @param minSimilarity minimal similarity required for neighbors
+   * @param samplingRate percentage of candidate users to consider when building neighborhood -- decrease to
+   *   trade quality for performance
+   * @param maxCandidates maximum number of candidate users to consider, before sampling
+   * @param timeout time after which to return the nearest users found so far, or 0 for no limit
+   * @throws IllegalArgumentException
+   *           if n &lt; 1 or maxCandidates &lt; 1, samplingRate is NaN or not in (0,1], timeout is negative,
+   *           or userSimilarity or dataModel are <code>null</code>
+   */
+  public IndexedNearestNUserNeighborhood(int n,
+                                         double minSimilarity,
+                                         UserSimilarity userSimilarity,
+                                         DataModel dataModel,
+                                         double samplingRate,
+                                         int maxCandidates,
+                                         long timeout,
+                                         TimeUnit unit) throws TasteException {
+    super(userSimilarity, dataModel, samplingRate);
+    Preconditions.checkArgument(n >= 1, "n must be at least 1");
+    Preconditions.checkArgument(maxCandidates >= 1, "maxCandidates must be at least 1");
+    Preconditions.checkArgument(timeout >= 0L, "timeout must not be negative");
+    Preconditions.checkArgument(unit != null, "unit is null");
+    int numUsers = dataModel.getNumUsers();
+    this.n = n > numUsers ? numUsers : n;
+    this.minSimilarity = minSimilarity;
+    this.maxCandidates = maxCandidates;
+    this.timeoutNanos = unit.toNanos(timeout);
+    this.numRequests = new AtomicLong();
+    this.numTimedOut = new AtomicLong();
+  }
+
+  @Override
+  public long[] getUserNeighborhood(long userID) throws TasteException {
+    return getUserNeighborhood(userID, Deadline.NONE);
+  }
+
+  /**
+   * Like {@link #getUserNeighborhood(long)}, but returns the nearest users found so far once either the given
+   * {@link Deadline} or this neighborhood's own timeout passes, whichever comes first.
+   */
+  public long[] getUserNeighborhood(long userID, Deadline callerDeadline) throws TasteException {
+    Preconditions.checkArgument(callerDeadline != null, "callerDeadline is null");
+    numRequests.incrementAndGet();
+    Deadline deadline = timeoutNanos > 0L
+        ? Deadline.after(timeoutNanos, TimeUnit.NANOSECONDS).min(callerDeadline)
+        : callerDeadline;
+
+    long[] candidateUserIDs = getCandidateUserIDs(userID, deadline);
+    long[] neighborhood = candidateUserIDs.length == 0 ? NO_IDS
+        : ParallelTopItems.getTopUsers(n, candidateUserIDs, null,
+                                       new Estimator(getUserSimilarity(), userID, minSimilarity), deadline);
+
+    if (deadline.isExpired()) {
+      numTimedOut.incrementAndGet();
+      log.debug("Timed out computing neighborhood of user {} from {} candidates", userID, candidateUserIDs.length);
+    }
+    return neighborhood;
+  }
+
+  /**
+   * @return number of neighborhoods computed
+   */
+  public long getNumRequests() {
+    return numRequests.get();
+  }
+
+  /**
+   * @return number of neighborhoods for which the timeout, or the caller's deadline, passed, so that only the
+   *  nearest users found by then were returned
+   */
+  public long getNumTimedOut() {
+    return numTimedOut.get();
+  }
+
+  /**
+   * @return users who share at least one item with the given user, found from the user's least popular items
+   *  first, up to {@link #maxCandidates}, and sampled
+   */
+  private long[] getCandidateUserIDs(long userID, Deadline deadline) throws TasteException {
+    DataModel dataModel = getDataModel();
+    PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+    int length = prefs.length();
+    List<PreferenceArray> itemPrefs = new ArrayList<PreferenceArray>(length);
+    for (int i = 0; i < length; i++) {
+      if (deadline.isExpired()) {
+        break;
+      }
+      try {
+        itemPrefs.add(dataModel.getPreferencesForItem(prefs.getItemID(i)));
+      } catch (NoSuchItemException nsie) {
+        // removed since the user's preferences were read; skip it
+      }
+    }
+    // Users sharing rarer items are likelier to be near
+    Collections.sort(itemPrefs, BY_LENGTH);
+
+    FastIDSet candidates = new FastIDSet();
+    for (PreferenceArray forItem : itemPrefs) {
+      if (deadline.isExpired()) {
+        break;
+      }
+      int numUsers = forItem.length();
+      for (int j = 0; j < numUsers && candidates.size() < maxCandidates; j++) {
+        candidates.add(forItem.getUserID(j));
+      }
+      if (candidates.size() >= maxCandidates) {
+        break;
+      }
+    }
+    candidates.remove(userID);
+
+    LongPrimitiveIterator it = SamplingLongPrimitiveIterator.maybeWrapIterator(candidates.iterator(),
+      getSamplingRate());
+    long[] candidateUserIDs = new long[candidates.size()];
+    int numCandidates = 0;
+    while (it.hasNext()) {
+      candidateUserIDs[numCandidates++] = it.nextLong();
+    }
+    if (numCandidates < candidateUserIDs.length) {
+      long[] sampled = new long[numCandidates];
+      System.arraycopy(candidateUserIDs, 0, sampled, 0, numCandidates);
+      return sampled;
+    }
+    return candidateUserIDs;
+  }
+
+  @Override
+  public String toString() {
+    return "IndexedNearestNUserNeighborhood";
+  }
+
+  private static final Comparator<PreferenceArray> BY_LENGTH = new Comparator<PreferenceArray>() {
+    @Override
+    public int compare(PreferenceArray a, PreferenceArray b) {
+      return a.length() < b.length() ? -1 : a.length() > b.length() ? 1 : 0;
+    }
+  };
+
+  private static final class Estimator implements TopItems.IDEstimator {
+    private final UserSimilarity userSimilarityImpl;
+    private final long theUserID;
+    private final double minSim;
+
+    private Estimator(UserSimilarity userSimilarityImpl, long theUserID, double minSim) {
+      this.userSimilarityImpl = userSimilarityImpl;
+      this.theUserID = theUserID;
+      this.minSim = minSim;
+    }
+
+    @Override
+    public double estimate(long userID) throws TasteException {
+      if (userID == theUserID) {
+        return Double.NaN;
+      }
+      double sim = userSimilarityImpl.userSimilarity(theUserID, userID);
+      return sim >= minSim ? sim : Double.NaN;
+    }
+  }
+}
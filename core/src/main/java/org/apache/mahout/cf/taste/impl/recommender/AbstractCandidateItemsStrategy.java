@@ -18,6 +18,7 @@
 package org.apache.mahout.cf.taste.impl.recommender;
 
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
@@ -41,5 +42,24 @@ public abstract class AbstractCandidateItemsStrategy implements CandidateItemsSt
     return doGetCandidateItems(itemIDs, dataModel);
   }
 
+  /**
+   * Like {@link #getCandidateItems(long, PreferenceArray, DataModel)}, but stops looking for further candidates
+   * once the given {@link Deadline} has passed, and returns those found so far.
+   */
+  public FastIDSet getCandidateItems(long userID,
+                                     PreferenceArray preferencesFromUser,
+                                     DataModel dataModel,
+                                     Deadline deadline) throws TasteException {
+    return doGetCandidateItems(preferencesFromUser.getIDs(), dataModel, deadline);
+  }
+
   abstract FastIDSet doGetCandidateItems(long[] preferredItemIDs, DataModel dataModel) throws TasteException;
+
+  /**
+   * Strategies which can stop early override this; by default the deadline is ignored.
+   */
+  FastIDSet doGetCandidateItems(long[] preferredItemIDs, DataModel dataModel, Deadline deadline)
+    throws TasteException {
+    return doGetCandidateItems(preferredItemIDs, dataModel);
+  }
 }
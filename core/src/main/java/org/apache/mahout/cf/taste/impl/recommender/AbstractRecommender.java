@@ -20,10 +20,14 @@ package org.apache.mahout.cf.taste.impl.recommender;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
 import org.apache.mahout.cf.taste.recommender.Recommender;
 import org.slf4j.Logger;
@@ -34,15 +38,25 @@ import com.google.common.base.Preconditions;
 public abstract class AbstractRecommender implements Recommender {
   
   private static final Logger log = LoggerFactory.getLogger(AbstractRecommender.class);
+
+  /**
+   * Portion of a time budget which {@link #doRecommend(long, int, IDRescorer, Deadline)} implementations spend
+   * finding candidate items, leaving the rest for scoring them.
+   */
+  protected static final double CANDIDATES_BUDGET_FRACTION = 0.5;
   
   private final DataModel dataModel;
   private final CandidateItemsStrategy candidateItemsStrategy;
+  private final AtomicLong numBudgeted;
+  private final AtomicLong numDegraded;
   
   protected AbstractRecommender(DataModel dataModel, CandidateItemsStrategy candidateItemsStrategy) {
     Preconditions.checkArgument(dataModel != null, "dataModel is null");
 
     this.dataModel = dataModel;
     this.candidateItemsStrategy = candidateItemsStrategy;
+    this.numBudgeted = new AtomicLong();
+    this.numDegraded = new AtomicLong();
   }
 
   protected AbstractRecommender(DataModel dataModel) {
@@ -65,6 +79,61 @@ public abstract class AbstractRecommender implements Recommender {
     return recommend(userID, howMany, null);
   }
   
+  /**
+   * <p>
+   * Like {@link #recommend(long, int, IDRescorer)}, but within a time budget. Recommenders which support this
+   * limit how many candidate items they consider and score as the budget runs out, and then return the best
+   * items found so far, so that results may be partial. Others compute recommendations as usual. Either way,
+   * requests which use up their budget, or the part of it set aside for any stage, are counted; see
+   * {@link #getNumDegraded()}.
+   * </p>
+   *
+   * @param timeout time budget; the result may take slightly longer than this to return
+   */
+  public List<RecommendedItem> recommend(long userID,
+                                         int howMany,
+                                         IDRescorer rescorer,
+                                         long timeout,
+                                         TimeUnit unit) throws TasteException {
+    Deadline deadline = Deadline.after(timeout, unit);
+    List<RecommendedItem> recommended = doRecommend(userID, howMany, rescorer, deadline);
+    numBudgeted.incrementAndGet();
+    if (deadline.isExpired() || deadline.wasExceeded()) {
+      numDegraded.incrementAndGet();
+      log.debug("Time budget ran out recommending for user {}", userID);
+    }
+    return recommended;
+  }
+
+  /**
+   * <p>
+   * Computes recommendations, stopping early with the best items found so far once the given {@link Deadline}
+   * has passed. This default implementation ignores the deadline and calls
+   * {@link #recommend(long, int, IDRescorer)}; subclasses which can stop early override it.
+   * </p>
+   */
+  protected List<RecommendedItem> doRecommend(long userID,
+                                              int howMany,
+                                              IDRescorer rescorer,
+                                              Deadline deadline) throws TasteException {
+    return recommend(userID, howMany, rescorer);
+  }
+
+  /**
+   * @return number of calls to {@link #recommend(long, int, IDRescorer, long, TimeUnit)}
+   */
+  public long getNumBudgeted() {
+    return numBudgeted.get();
+  }
+
+  /**
+   * @return number of calls to {@link #recommend(long, int, IDRescorer, long, TimeUnit)} which used up their
+   *  time budget, or the part of it for some stage, and so may have returned partial results
+   */
+  public long getNumDegraded() {
+    return numDegraded.get();
+  }
+
   /**
    * <p>
    * Default implementation which just calls {@link DataModel#setPreference(long, long, float)}.
@@ -112,5 +181,20 @@ public abstract class AbstractRecommender implements Recommender {
   protected FastIDSet getAllOtherItems(long userID, PreferenceArray preferencesFromUser) throws TasteException {
     return candidateItemsStrategy.getCandidateItems(userID, preferencesFromUser, dataModel);
   }
+
+  /**
+   * Like {@link #getAllOtherItems(long, PreferenceArray)}, but stops looking for candidates once the given
+   * {@link Deadline} has passed, if the {@link CandidateItemsStrategy} supports it. Strategies extending
+   * {@link AbstractCandidateItemsStrategy} do.
+   */
+  protected FastIDSet getAllOtherItems(long userID,
+                                       PreferenceArray preferencesFromUser,
+                                       Deadline deadline) throws TasteException {
+    if (deadline.isBounded() && candidateItemsStrategy instanceof AbstractCandidateItemsStrategy) {
+      return ((AbstractCandidateItemsStrategy) candidateItemsStrategy).getCandidateItems(userID,
+          preferencesFromUser, dataModel, deadline);
+    }
+    return getAllOtherItems(userID, preferencesFromUser);
+  }
   
 }
@@ -19,6 +19,7 @@ package org.apache.mahout.cf.taste.impl.recommender;
 
 import com.google.common.base.Preconditions;
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
@@ -37,8 +38,17 @@ public class AllSimilarItemsCandidateItemsStrategy extends AbstractCandidateItem
 
   @Override
   FastIDSet doGetCandidateItems(long[] preferredItemIDs, DataModel dataModel) throws TasteException {
+    return doGetCandidateItems(preferredItemIDs, dataModel, Deadline.NONE);
+  }
+
+  @Override
+  FastIDSet doGetCandidateItems(long[] preferredItemIDs, DataModel dataModel, Deadline deadline)
+    throws TasteException {
     FastIDSet candidateItemIDs = new FastIDSet();
     for (long itemID : preferredItemIDs) {
+      if (deadline.isExpired()) {
+        break;
+      }
       candidateItemIDs.addAll(similarity.allSimilarItemIDs(itemID));
     }
     candidateItemIDs.removeAll(preferredItemIDs);
@@ -17,7 +17,6 @@
 
 package org.apache.mahout.cf.taste.impl.recommender;
 
-import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
@@ -49,9 +48,7 @@ public final class GenericBooleanPrefItemBasedRecommender extends GenericItemBas
    * sum of similarities.
    */
   @Override
-  protected float doEstimatePreference(long userID, PreferenceArray preferencesFromUser, long itemID)
-    throws TasteException {
-    double[] similarities = getSimilarity().itemSimilarities(itemID, preferencesFromUser.getIDs());
+  protected float estimateFromSimilarities(PreferenceArray preferencesFromUser, double[] similarities) {
     boolean foundAPref = false;
     double totalSimilarity = 0.0;
     for (double theSimilarity : similarities) {
@@ -23,12 +23,16 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.similarity.AbstractItemSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.IDRescorer;
@@ -73,7 +77,9 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   private final ItemSimilarity similarity;
   private final MostSimilarItemsCandidateItemsStrategy mostSimilarItemsCandidateItemsStrategy;
   private final RefreshHelper refreshHelper;
+  private final boolean estimatesFromSimilarities;
   private EstimatedPreferenceCapper capper;
+  private volatile int parallelScoringThreshold = Integer.MAX_VALUE;
 
   private static final boolean EXCLUDE_ITEM_IF_NOT_SIMILAR_TO_ALL_BY_DEFAULT = true;
 
@@ -87,6 +93,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     Preconditions.checkArgument(mostSimilarItemsCandidateItemsStrategy != null,
         "mostSimilarItemsCandidateItemsStrategy is null");
     this.mostSimilarItemsCandidateItemsStrategy = mostSimilarItemsCandidateItemsStrategy;
+    this.estimatesFromSimilarities = !overridesDoEstimatePreference(getClass());
     this.refreshHelper = new RefreshHelper(new Callable<Void>() {
       @Override
       public Void call() {
@@ -113,9 +120,36 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   public ItemSimilarity getSimilarity() {
     return similarity;
   }
+
+  /**
+   * Enables scoring candidate items on several threads at once in {@link #recommend(long, int, IDRescorer)},
+   * for users with at least the given number of candidate items. Smaller candidate sets are still scored in
+   * the calling thread, since handing them off costs more than it saves. This only pays off when the
+   * underlying {@link ItemSimilarity} can be queried concurrently without contention.
+   *
+   * @param minCandidates number of candidate items at which to start scoring in parallel, or
+   *  {@link Integer#MAX_VALUE} to always score in the calling thread, which is the default
+   * @see ParallelTopItems
+   */
+  public void setParallelScoringThreshold(int minCandidates) {
+    Preconditions.checkArgument(minCandidates >= 1, "minCandidates must be at least 1");
+    this.parallelScoringThreshold = minCandidates;
+  }
+
+  public int getParallelScoringThreshold() {
+    return parallelScoringThreshold;
+  }
   
   @Override
   public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer) throws TasteException {
+    return doRecommend(userID, howMany, rescorer, Deadline.NONE);
+  }
+
+  @Override
+  protected List<RecommendedItem> doRecommend(long userID,
+                                              int howMany,
+                                              IDRescorer rescorer,
+                                              Deadline deadline) throws TasteException {
     Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
     log.debug("Recommending items for user ID '{}'", userID);
 
@@ -124,12 +158,19 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
       return Collections.emptyList();
     }
 
-    FastIDSet possibleItemIDs = getAllOtherItems(userID, preferencesFromUser);
+    FastIDSet possibleItemIDs =
+        getAllOtherItems(userID, preferencesFromUser, deadline.portion(CANDIDATES_BUDGET_FRACTION));
 
-    TopItems.Estimator<Long> estimator = new Estimator(userID, preferencesFromUser);
+    TopItems.IDEstimator estimator = newEstimator(userID, preferencesFromUser);
 
-    List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer,
-      estimator);
+    List<RecommendedItem> topItems;
+    if (possibleItemIDs.size() >= parallelScoringThreshold) {
+      topItems = ParallelTopItems.getTopItems(howMany, possibleItemIDs.toArray(), rescorer, estimator, deadline);
+    } else {
+      TopIDHeap heap = new TopIDHeap(howMany);
+      TopItems.addTopItems(heap, possibleItemIDs.iterator(), rescorer, estimator, deadline);
+      topItems = heap.toRecommendedItems();
+    }
 
     log.debug("Recommendations are: {}", topItems);
     return topItems;
@@ -163,13 +204,47 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   @Override
   public List<RecommendedItem> mostSimilarItems(long itemID, int howMany,
                                                 Rescorer<LongPair> rescorer) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MostSimilarEstimator(itemID, similarity, rescorer);
-    return doMostSimilarItems(new long[] {itemID}, howMany, estimator);
+    long[] toItemIDs = {itemID};
+    FastIDSet possibleItemIDs = mostSimilarItemsCandidateItemsStrategy.getCandidateItems(toItemIDs, getDataModel());
+    long[] candidateItemIDs = filterCandidates(itemID, possibleItemIDs, rescorer);
+    double[] similarities;
+    try {
+      // One batch call reads the item's own preferences once, rather than once per candidate
+      similarities = similarity.itemSimilarities(itemID, candidateItemIDs);
+    } catch (NoSuchItemException nsie) {
+      // Score item by item, skipping those which fail, as the estimator would
+      TopItems.IDEstimator estimator = new MostSimilarEstimator(itemID, similarity, rescorer);
+      return doMostSimilarItems(toItemIDs, howMany, estimator);
+    }
+    TopIDHeap topItems = new TopIDHeap(howMany);
+    for (int i = 0; i < candidateItemIDs.length; i++) {
+      double estimate = similarities[i];
+      if (rescorer != null) {
+        estimate = rescorer.rescore(new LongPair(itemID, candidateItemIDs[i]), estimate);
+      }
+      topItems.offer(candidateItemIDs[i], (float) estimate);
+    }
+    return topItems.toRecommendedItems();
+  }
+
+  private static long[] filterCandidates(long itemID, FastIDSet possibleItemIDs, Rescorer<LongPair> rescorer) {
+    if (rescorer == null) {
+      return possibleItemIDs.toArray();
+    }
+    FastIDSet candidateItemIDs = new FastIDSet(possibleItemIDs.size());
+    LongPrimitiveIterator it = possibleItemIDs.iterator();
+    while (it.hasNext()) {
+      long possibleItemID = it.nextLong();
+      if (!rescorer.isFiltered(new LongPair(itemID, possibleItemID))) {
+        candidateItemIDs.add(possibleItemID);
+      }
+    }
+    return candidateItemIDs.toArray();
   }
   
   @Override
   public List<RecommendedItem> mostSimilarItems(long[] itemIDs, int howMany) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MultiMostSimilarEstimator(itemIDs, similarity, null,
+    TopItems.IDEstimator estimator = new MultiMostSimilarEstimator(itemIDs, similarity, null,
         EXCLUDE_ITEM_IF_NOT_SIMILAR_TO_ALL_BY_DEFAULT);
     return doMostSimilarItems(itemIDs, howMany, estimator);
   }
@@ -177,7 +252,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   @Override
   public List<RecommendedItem> mostSimilarItems(long[] itemIDs, int howMany,
                                                 Rescorer<LongPair> rescorer) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MultiMostSimilarEstimator(itemIDs, similarity, rescorer,
+    TopItems.IDEstimator estimator = new MultiMostSimilarEstimator(itemIDs, similarity, rescorer,
         EXCLUDE_ITEM_IF_NOT_SIMILAR_TO_ALL_BY_DEFAULT);
     return doMostSimilarItems(itemIDs, howMany, estimator);
   }
@@ -186,7 +261,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   public List<RecommendedItem> mostSimilarItems(long[] itemIDs,
                                                 int howMany,
                                                 boolean excludeItemIfNotSimilarToAll) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MultiMostSimilarEstimator(itemIDs, similarity, null,
+    TopItems.IDEstimator estimator = new MultiMostSimilarEstimator(itemIDs, similarity, null,
         excludeItemIfNotSimilarToAll);
     return doMostSimilarItems(itemIDs, howMany, estimator);
   }
@@ -195,7 +270,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   public List<RecommendedItem> mostSimilarItems(long[] itemIDs, int howMany,
                                                 Rescorer<LongPair> rescorer,
                                                 boolean excludeItemIfNotSimilarToAll) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MultiMostSimilarEstimator(itemIDs, similarity, rescorer,
+    TopItems.IDEstimator estimator = new MultiMostSimilarEstimator(itemIDs, similarity, rescorer,
         excludeItemIfNotSimilarToAll);
     return doMostSimilarItems(itemIDs, howMany, estimator);
   }
@@ -205,7 +280,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
 
     DataModel model = getDataModel();
-    TopItems.Estimator<Long> estimator = new RecommendedBecauseEstimator(userID, itemID);
+    TopItems.IDEstimator estimator = new RecommendedBecauseEstimator(userID, itemID);
 
     PreferenceArray prefs = model.getPreferencesFromUser(userID);
     int size = prefs.length();
@@ -220,17 +295,25 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   
   private List<RecommendedItem> doMostSimilarItems(long[] itemIDs,
                                                    int howMany,
-                                                   TopItems.Estimator<Long> estimator) throws TasteException {
+                                                   TopItems.IDEstimator estimator) throws TasteException {
     FastIDSet possibleItemIDs = mostSimilarItemsCandidateItemsStrategy.getCandidateItems(itemIDs, getDataModel());
     return TopItems.getTopItems(howMany, possibleItemIDs.iterator(), null, estimator);
   }
   
   protected float doEstimatePreference(long userID, PreferenceArray preferencesFromUser, long itemID)
     throws TasteException {
+    return estimateFromSimilarities(preferencesFromUser,
+                                    similarity.itemSimilarities(itemID, preferencesFromUser.getIDs()));
+  }
+
+  /**
+   * @return estimated preference for an item, from the user's preferences and their items' similarities to it,
+   *  in the same order
+   */
+  protected float estimateFromSimilarities(PreferenceArray preferencesFromUser, double[] similarities) {
     double preference = 0.0;
     double totalSimilarity = 0.0;
     int count = 0;
-    double[] similarities = similarity.itemSimilarities(itemID, preferencesFromUser.getIDs());
     for (int i = 0; i < similarities.length; i++) {
       double theSimilarity = similarities[i];
       if (!Double.isNaN(theSimilarity)) {
@@ -255,6 +338,22 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     return estimate;
   }
 
+  /**
+   * @return estimator of the given user's preferences for the candidate items considered by
+   *  {@link #recommend(long, int, IDRescorer)}. If the {@link ItemSimilarity} is an
+   *  {@link AbstractItemSimilarity}, and {@link #doEstimatePreference(long, PreferenceArray, long)} is not
+   *  overridden, the preferences for the user's items are read once here rather than again for every candidate,
+   *  and estimates are made by {@link #estimateFromSimilarities(PreferenceArray, double[])}. Otherwise each
+   *  candidate is estimated by {@link #doEstimatePreference(long, PreferenceArray, long)}.
+   */
+  protected TopItems.IDEstimator newEstimator(long userID, PreferenceArray preferencesFromUser)
+    throws TasteException {
+    if (estimatesFromSimilarities && similarity instanceof AbstractItemSimilarity) {
+      return new SharedVectorsEstimator((AbstractItemSimilarity) similarity, preferencesFromUser);
+    }
+    return new Estimator(userID, preferencesFromUser);
+  }
+
   @Override
   public void refresh(Collection<Refreshable> alreadyRefreshed) {
     refreshHelper.refresh(alreadyRefreshed);
@@ -265,6 +364,22 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     return "GenericItemBasedRecommender[similarity:" + similarity + ']';
   }
 
+  /**
+   * @return true if the given subclass, or any class between it and this one, overrides
+   *  {@link #doEstimatePreference(long, PreferenceArray, long)}
+   */
+  private static boolean overridesDoEstimatePreference(Class<?> recommenderClass) {
+    for (Class<?> c = recommenderClass; c != GenericItemBasedRecommender.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("doEstimatePreference", long.class, PreferenceArray.class, long.class);
+        return true;
+      } catch (NoSuchMethodException nsme) {
+        // not declared here; look further up
+      }
+    }
+    return false;
+  }
+
   private EstimatedPreferenceCapper buildCapper() {
     DataModel dataModel = getDataModel();
     if (Float.isNaN(dataModel.getMinPreference()) && Float.isNaN(dataModel.getMaxPreference())) {
@@ -274,7 +389,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  public static class MostSimilarEstimator implements TopItems.Estimator<Long> {
+  public static class MostSimilarEstimator implements TopItems.IDEstimator {
     
     private final long toItemID;
     private final ItemSimilarity similarity;
@@ -287,7 +402,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       LongPair pair = new LongPair(toItemID, itemID);
       if ((rescorer != null) && rescorer.isFiltered(pair)) {
         return Double.NaN;
@@ -297,7 +412,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
     
     private final long userID;
     private final PreferenceArray preferencesFromUser;
@@ -308,12 +423,31 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       return doEstimatePreference(userID, preferencesFromUser, itemID);
     }
   }
   
-  private static final class MultiMostSimilarEstimator implements TopItems.Estimator<Long> {
+  private final class SharedVectorsEstimator implements TopItems.IDEstimator {
+
+    private final AbstractItemSimilarity itemSimilarity;
+    private final PreferenceArray preferencesFromUser;
+    private final AbstractItemSimilarity.ItemVectors userItemVectors;
+
+    private SharedVectorsEstimator(AbstractItemSimilarity itemSimilarity, PreferenceArray preferencesFromUser)
+      throws TasteException {
+      this.itemSimilarity = itemSimilarity;
+      this.preferencesFromUser = preferencesFromUser;
+      this.userItemVectors = itemSimilarity.itemVectors(preferencesFromUser.getIDs());
+    }
+
+    @Override
+    public double estimate(long itemID) throws TasteException {
+      return estimateFromSimilarities(preferencesFromUser, itemSimilarity.itemSimilarities(itemID, userItemVectors));
+    }
+  }
+
+  private static final class MultiMostSimilarEstimator implements TopItems.IDEstimator {
     
     private final long[] toItemIDs;
     private final ItemSimilarity similarity;
@@ -329,7 +463,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       RunningAverage average = new FullRunningAverage();
       double[] similarities = similarity.itemSimilarities(itemID, toItemIDs);
       for (int i = 0; i < toItemIDs.length; i++) {
@@ -351,7 +485,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private final class RecommendedBecauseEstimator implements TopItems.Estimator<Long> {
+  private final class RecommendedBecauseEstimator implements TopItems.IDEstimator {
     
     private final long userID;
     private final long recommendedItemID;
@@ -362,7 +496,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       Float pref = getDataModel().getPreferenceValue(userID, itemID);
       if (pref == null) {
         return Float.NaN;
@@ -24,8 +24,10 @@ import java.util.concurrent.Callable;
 
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
+import org.apache.mahout.cf.taste.impl.neighborhood.IndexedNearestNUserNeighborhood;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
 import org.apache.mahout.cf.taste.recommender.IDRescorer;
@@ -48,6 +50,12 @@ import com.google.common.base.Preconditions;
 public class GenericUserBasedRecommender extends AbstractRecommender implements UserBasedRecommender {
   
   private static final Logger log = LoggerFactory.getLogger(GenericUserBasedRecommender.class);
+
+  /**
+   * Portion of a time budget spent computing the neighborhood, which is usually the most expensive stage.
+   * Candidates and scoring then share what is left.
+   */
+  private static final double NEIGHBORHOOD_BUDGET_FRACTION = 0.5;
   
   private final UserNeighborhood neighborhood;
   private final UserSimilarity similarity;
@@ -80,27 +88,48 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
   
   @Override
   public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer) throws TasteException {
+    return doRecommend(userID, howMany, rescorer, Deadline.NONE);
+  }
+
+  @Override
+  protected List<RecommendedItem> doRecommend(long userID,
+                                              int howMany,
+                                              IDRescorer rescorer,
+                                              Deadline deadline) throws TasteException {
     Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
 
     log.debug("Recommending items for user ID '{}'", userID);
 
-    long[] theNeighborhood = neighborhood.getUserNeighborhood(userID);
+    long[] theNeighborhood = getUserNeighborhood(userID, deadline.portion(NEIGHBORHOOD_BUDGET_FRACTION));
 
     if (theNeighborhood.length == 0) {
       return Collections.emptyList();
     }
 
-    FastIDSet allItemIDs = getAllOtherItems(theNeighborhood, userID);
+    FastIDSet allItemIDs =
+        getAllOtherItems(theNeighborhood, userID, deadline.portion(CANDIDATES_BUDGET_FRACTION));
 
-    TopItems.Estimator<Long> estimator = new Estimator(userID, theNeighborhood);
+    TopItems.IDEstimator estimator = new Estimator(userID, theNeighborhood);
 
-    List<RecommendedItem> topItems = TopItems
-        .getTopItems(howMany, allItemIDs.iterator(), rescorer, estimator);
+    TopIDHeap heap = new TopIDHeap(howMany);
+    TopItems.addTopItems(heap, allItemIDs.iterator(), rescorer, estimator, deadline);
+    List<RecommendedItem> topItems = heap.toRecommendedItems();
 
     log.debug("Recommendations are: {}", topItems);
     return topItems;
   }
   
+  /**
+   * Computes the neighborhood within the given {@link Deadline}, if the {@link UserNeighborhood} supports it.
+   * {@link IndexedNearestNUserNeighborhood} does.
+   */
+  private long[] getUserNeighborhood(long userID, Deadline deadline) throws TasteException {
+    if (deadline.isBounded() && neighborhood instanceof IndexedNearestNUserNeighborhood) {
+      return ((IndexedNearestNUserNeighborhood) neighborhood).getUserNeighborhood(userID, deadline);
+    }
+    return neighborhood.getUserNeighborhood(userID);
+  }
+
   @Override
   public float estimatePreference(long userID, long itemID) throws TasteException {
     DataModel model = getDataModel();
@@ -119,11 +148,11 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
   
   @Override
   public long[] mostSimilarUserIDs(long userID, int howMany, Rescorer<LongPair> rescorer) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MostSimilarEstimator(userID, similarity, rescorer);
+    TopItems.IDEstimator estimator = new MostSimilarEstimator(userID, similarity, rescorer);
     return doMostSimilarUsers(howMany, estimator);
   }
   
-  private long[] doMostSimilarUsers(int howMany, TopItems.Estimator<Long> estimator) throws TasteException {
+  private long[] doMostSimilarUsers(int howMany, TopItems.IDEstimator estimator) throws TasteException {
     DataModel model = getDataModel();
     return TopItems.getTopUsers(howMany, model.getUserIDs(), null, estimator);
   }
@@ -174,6 +203,27 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     possibleItemIDs.removeAll(dataModel.getItemIDsFromUser(theUserID));
     return possibleItemIDs;
   }
+
+  /**
+   * Like {@link #getAllOtherItems(long[], long)}, but stops adding the items of further neighbors, which come
+   * most similar first, once the given {@link Deadline} has passed.
+   */
+  protected FastIDSet getAllOtherItems(long[] theNeighborhood, long theUserID, Deadline deadline)
+    throws TasteException {
+    if (!deadline.isBounded()) {
+      return getAllOtherItems(theNeighborhood, theUserID);
+    }
+    DataModel dataModel = getDataModel();
+    FastIDSet possibleItemIDs = new FastIDSet();
+    for (long userID : theNeighborhood) {
+      if (deadline.isExpired()) {
+        break;
+      }
+      possibleItemIDs.addAll(dataModel.getItemIDsFromUser(userID));
+    }
+    possibleItemIDs.removeAll(dataModel.getItemIDsFromUser(theUserID));
+    return possibleItemIDs;
+  }
   
   @Override
   public void refresh(Collection<Refreshable> alreadyRefreshed) {
@@ -194,7 +244,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private static final class MostSimilarEstimator implements TopItems.Estimator<Long> {
+  private static final class MostSimilarEstimator implements TopItems.IDEstimator {
     
     private final long toUserID;
     private final UserSimilarity similarity;
@@ -207,7 +257,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long userID) throws TasteException {
+    public double estimate(long userID) throws TasteException {
       // Don't consider the user itself as a possible most similar user
       if (userID == toUserID) {
         return Double.NaN;
@@ -225,7 +275,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
     
     private final long theUserID;
     private final long[] theNeighborhood;
@@ -236,7 +286,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       return doEstimatePreference(theUserID, theNeighborhood, itemID);
     }
   }
@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveArrayIterator;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Multi-threaded counterpart to {@link TopItems#getTopItems(int, LongPrimitiveIterator, IDRescorer,
+ * TopItems.IDEstimator)}, and to {@link TopItems#getTopUsers(int, LongPrimitiveIterator, IDRescorer,
+ * TopItems.IDEstimator)}. Candidate IDs are split into contiguous partitions which are scored concurrently,
+ * each into its own {@link TopIDHeap}, and the partial results are then merged.
+ * </p>
+ *
+ * <p>
+ * Partitions run on a pool of daemon threads shared by all callers, with one thread fewer than there are
+ * processors, since the calling thread scores one partition itself rather than sitting idle. When the pool is
+ * busy, partitions may wait in its queue; with a {@link Deadline}, those which have not finished by the time
+ * it passes are cancelled and left out of the result.
+ * </p>
+ */
+public final class ParallelTopItems {
+
+  /** Fewest candidates worth handing to a separate thread. */
+  private static final int MIN_PARTITION_SIZE = 64;
+
+  private ParallelTopItems() { }
+
+  /**
+   * @return number of threads available for scoring, including the caller's
+   */
+  public static int getParallelism() {
+    return SharedExecutorHolder.NUM_THREADS + 1;
+  }
+
+  public static List<RecommendedItem> getTopItems(int howMany,
+                                                  long[] possibleItemIDs,
+                                                  IDRescorer rescorer,
+                                                  TopItems.IDEstimator estimator) throws TasteException {
+    return getTopItems(howMany, possibleItemIDs, rescorer, estimator, Deadline.NONE);
+  }
+
+  /**
+   * Like {@link #getTopItems(int, long[], IDRescorer, TopItems.IDEstimator)}, but each partition stops scoring
+   * once the given {@link Deadline} has passed, and the best items found by then are returned.
+   */
+  public static List<RecommendedItem> getTopItems(int howMany,
+                                                  long[] possibleItemIDs,
+                                                  IDRescorer rescorer,
+                                                  TopItems.IDEstimator estimator,
+                                                  Deadline deadline) throws TasteException {
+    return getTop(howMany, possibleItemIDs, rescorer, estimator, deadline, false).toRecommendedItems();
+  }
+
+  /**
+   * Multi-threaded counterpart to {@link TopItems#getTopUsers(int, LongPrimitiveIterator, IDRescorer,
+   * TopItems.IDEstimator)}, which stops scoring once the given {@link Deadline} has passed.
+   *
+   * @return IDs of the most similar users found, most similar first
+   */
+  public static long[] getTopUsers(int howMany,
+                                   long[] possibleUserIDs,
+                                   IDRescorer rescorer,
+                                   TopItems.IDEstimator estimator,
+                                   Deadline deadline) throws TasteException {
+    return getTop(howMany, possibleUserIDs, rescorer, estimator, deadline, true).getIDsDescending();
+  }
+
+  private static TopIDHeap getTop(int howMany,
+                                  long[] possibleIDs,
+                                  IDRescorer rescorer,
+                                  TopItems.IDEstimator estimator,
+                                  Deadline deadline,
+                                  boolean users) throws TasteException {
+    Preconditions.checkArgument(possibleIDs != null, "argument is null");
+    Preconditions.checkArgument(estimator != null, "argument is null");
+    Preconditions.checkArgument(deadline != null, "argument is null");
+
+    int numCandidates = possibleIDs.length;
+    int numPartitions = Math.min(getParallelism(), numCandidates / MIN_PARTITION_SIZE);
+    if (numPartitions <= 1) {
+      return new PartitionScorer(howMany, possibleIDs, 0, numCandidates, rescorer, estimator, deadline, users)
+          .call();
+    }
+
+    int partitionSize = (numCandidates + numPartitions - 1) / numPartitions;
+    List<Future<TopIDHeap>> futures = new ArrayList<Future<TopIDHeap>>(numPartitions - 1);
+    ExecutorService executor = SharedExecutorHolder.EXECUTOR;
+    // The first partition is left for this thread
+    for (int start = partitionSize; start < numCandidates; start += partitionSize) {
+      int end = Math.min(start + partitionSize, numCandidates);
+      futures.add(executor.submit(
+          new PartitionScorer(howMany, possibleIDs, start, end, rescorer, estimator, deadline, users)));
+    }
+
+    boolean succeeded = false;
+    try {
+      TopIDHeap top =
+          new PartitionScorer(howMany, possibleIDs, 0, partitionSize, rescorer, estimator, deadline, users).call();
+      for (Future<TopIDHeap> future : futures) {
+        TopIDHeap partial = getBefore(future, deadline);
+        if (partial != null) {
+          top.addAll(partial);
+        }
+      }
+      succeeded = true;
+      return top;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new TasteException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof TasteException) {
+        throw (TasteException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new TasteException(cause);
+    } finally {
+      // Whatever went wrong, including in this thread's own partition, the other partitions are no longer needed
+      if (!succeeded) {
+        cancelAll(futures);
+      }
+    }
+  }
+
+  /**
+   * @return the partition's result, or null if it did not finish before the deadline, in which case it is
+   *  cancelled
+   */
+  private static TopIDHeap getBefore(Future<TopIDHeap> future, Deadline deadline)
+    throws InterruptedException, ExecutionException {
+    if (!deadline.isBounded()) {
+      return future.get();
+    }
+    try {
+      return future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException te) {
+      // Not started yet, or still scoring; it would stop soon anyway, but the caller's time is up
+      future.cancel(false);
+      return null;
+    }
+  }
+
+  private static void cancelAll(Iterable<Future<TopIDHeap>> futures) {
+    for (Future<TopIDHeap> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  private static final class PartitionScorer implements Callable<TopIDHeap> {
+
+    private final int howMany;
+    private final long[] possibleIDs;
+    private final int start;
+    private final int end;
+    private final IDRescorer rescorer;
+    private final TopItems.IDEstimator estimator;
+    private final Deadline deadline;
+    private final boolean users;
+
+    private PartitionScorer(int howMany,
+                            long[] possibleIDs,
+                            int start,
+                            int end,
+                            IDRescorer rescorer,
+                            TopItems.IDEstimator estimator,
+                            Deadline deadline,
+                            boolean users) {
+      this.howMany = howMany;
+      this.possibleIDs = possibleIDs;
+      this.start = start;
+      this.end = end;
+      this.rescorer = rescorer;
+      this.estimator = estimator;
+      this.deadline = deadline;
+      this.users = users;
+    }
+
+    @Override
+    public TopIDHeap call() throws TasteException {
+      TopIDHeap top = new TopIDHeap(howMany);
+      LongPrimitiveIterator ids = new LongPrimitiveArrayIterator(possibleIDs, start, end);
+      if (users) {
+        TopItems.addTopUsers(top, ids, rescorer, estimator, deadline);
+      } else {
+        TopItems.addTopItems(top, ids, rescorer, estimator, deadline);
+      }
+      return top;
+    }
+  }
+
+  /**
+   * Lazily creates the shared pool the first time parallel scoring is actually used.
+   */
+  private static final class SharedExecutorHolder {
+
+    private static final int NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger();
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "ParallelTopItems-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    private SharedExecutorHolder() { }
+  }
+
+}
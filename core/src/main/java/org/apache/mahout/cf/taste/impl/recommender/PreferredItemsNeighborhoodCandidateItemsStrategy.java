@@ -18,6 +18,7 @@
 package org.apache.mahout.cf.taste.impl.recommender;
 
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
@@ -30,11 +31,21 @@ public final class PreferredItemsNeighborhoodCandidateItemsStrategy extends Abst
    */
   @Override
   protected FastIDSet doGetCandidateItems(long[] preferredItemIDs, DataModel dataModel) throws TasteException {
+    return doGetCandidateItems(preferredItemIDs, dataModel, Deadline.NONE);
+  }
+
+  @Override
+  FastIDSet doGetCandidateItems(long[] preferredItemIDs, DataModel dataModel, Deadline deadline)
+    throws TasteException {
     FastIDSet possibleItemsIDs = new FastIDSet();
+    expansion:
     for (long itemID : preferredItemIDs) {
       PreferenceArray prefs2 = dataModel.getPreferencesForItem(itemID);
       int size2 = prefs2.length();
       for (int j = 0; j < size2; j++) {
+        if (deadline.isExpired()) {
+          break expansion;
+        }
         possibleItemsIDs.addAll(dataModel.getItemIDsFromUser(prefs2.getUserID(j)));
       }
     }
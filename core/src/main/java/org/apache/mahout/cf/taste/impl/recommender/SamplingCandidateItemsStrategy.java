@@ -18,6 +18,7 @@
 package org.apache.mahout.cf.taste.impl.recommender;
 
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.Preference;
@@ -66,14 +67,24 @@ public class SamplingCandidateItemsStrategy extends AbstractCandidateItemsStrate
 
   @Override
   protected FastIDSet doGetCandidateItems(long[] preferredItemIDs, DataModel dataModel) throws TasteException {
+    return doGetCandidateItems(preferredItemIDs, dataModel, Deadline.NONE);
+  }
+
+  @Override
+  FastIDSet doGetCandidateItems(long[] preferredItemIDs, DataModel dataModel, Deadline deadline)
+    throws TasteException {
     int maxPrefsPerItemConsidered = (int) Math.max(defaultMaxPrefsPerItemConsidered,
         userItemCountMultiplier * Math.log(Math.max(dataModel.getNumUsers(), dataModel.getNumItems())));
     FastIDSet possibleItemsIDs = new FastIDSet();
+    sampling:
     for (long itemID : preferredItemIDs) {
       PreferenceArray prefs = dataModel.getPreferencesForItem(itemID);
       int prefsConsidered = Math.min(prefs.length(), maxPrefsPerItemConsidered);
       Iterator<Preference> sampledPrefs = new FixedSizeSamplingIterator(prefsConsidered, prefs.iterator());
       while (sampledPrefs.hasNext()) {
+        if (deadline.isExpired()) {
+          break sampling;
+        }
         possibleItemsIDs.addAll(dataModel.getItemIDsFromUser(sampledPrefs.next().getUserID()));
       }
     }
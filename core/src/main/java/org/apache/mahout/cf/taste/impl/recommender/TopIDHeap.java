@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A fixed-capacity min-heap of (ID, value) pairs held in primitive arrays, which retains the IDs with the
+ * highest values offered to it. This is the allocation-free core of {@link TopItems}: nothing is created per
+ * candidate, and {@link RecommendedItem}s are only built for the final results.
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public final class TopIDHeap {
+
+  private final long[] ids;
+  private final double[] values;
+  private int size;
+
+  /**
+   * @param capacity maximum number of IDs to retain
+   */
+  public TopIDHeap(int capacity) {
+    Preconditions.checkArgument(capacity >= 1, "capacity must be at least 1");
+    ids = new long[capacity];
+    values = new double[capacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return ids.length;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean isFull() {
+    return size == ids.length;
+  }
+
+  /**
+   * @return lowest value retained, or {@link Double#NEGATIVE_INFINITY} if the heap is not yet full, meaning
+   *  that any value would be accepted
+   */
+  public double lowestTopValue() {
+    return size < ids.length ? Double.NEGATIVE_INFINITY : values[0];
+  }
+
+  /**
+   * @return true iff {@link #offer(long, double)} would retain an ID with this value
+   */
+  public boolean wouldAccept(double value) {
+    return !Double.isNaN(value) && (size < ids.length || value >= values[0]);
+  }
+
+  /**
+   * Retains the given ID if its value is among the highest seen so far. <code>NaN</code> values are ignored.
+   * When the heap is full, an ID whose value ties the lowest retained value replaces it.
+   *
+   * @return true iff the ID was retained
+   */
+  public boolean offer(long id, double value) {
+    if (Double.isNaN(value)) {
+      return false;
+    }
+    if (size < ids.length) {
+      int i = size++;
+      // sift up
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (values[parent] <= value) {
+          break;
+        }
+        ids[i] = ids[parent];
+        values[i] = values[parent];
+        i = parent;
+      }
+      ids[i] = id;
+      values[i] = value;
+      return true;
+    }
+    if (value >= values[0]) {
+      siftDown(ids, values, size, id, value);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Offers all of another heap's entries to this one, as when merging partial results.
+   */
+  public void addAll(TopIDHeap other) {
+    for (int i = 0; i < other.size; i++) {
+      offer(other.ids[i], other.values[i]);
+    }
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * @return retained IDs, ordered from highest to lowest value
+   */
+  public long[] getIDsDescending() {
+    long[] sortedIDs = new long[size];
+    double[] sortedValues = new double[size];
+    sortDescending(sortedIDs, sortedValues);
+    return sortedIDs;
+  }
+
+  /**
+   * @return retained IDs as {@link RecommendedItem}s, ordered from highest to lowest value
+   */
+  public List<RecommendedItem> toRecommendedItems() {
+    if (size == 0) {
+      return Collections.emptyList();
+    }
+    long[] sortedIDs = new long[size];
+    double[] sortedValues = new double[size];
+    sortDescending(sortedIDs, sortedValues);
+    List<RecommendedItem> result = new ArrayList<RecommendedItem>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(new GenericRecommendedItem(sortedIDs[i], (float) sortedValues[i]));
+    }
+    return result;
+  }
+
+  /**
+   * Heap-sorts a copy of the heap into the given arrays, highest value first. This leaves the heap itself
+   * unchanged.
+   *
+   * @param sortedIDs receives retained IDs; must have room for at least {@link #size()} entries
+   * @param sortedValues receives the values of those IDs, in the same order
+   */
+  public void sortDescending(long[] sortedIDs, double[] sortedValues) {
+    long[] heapIDs = new long[size];
+    double[] heapValues = new double[size];
+    System.arraycopy(ids, 0, heapIDs, 0, size);
+    System.arraycopy(values, 0, heapValues, 0, size);
+    for (int remaining = size; remaining > 0; remaining--) {
+      // The root is the lowest remaining value, so it goes at the end
+      sortedIDs[remaining - 1] = heapIDs[0];
+      sortedValues[remaining - 1] = heapValues[0];
+      int last = remaining - 1;
+      siftDown(heapIDs, heapValues, last, heapIDs[last], heapValues[last]);
+    }
+  }
+
+  /**
+   * Places the given entry at the root of a heap of the given size and restores heap order.
+   */
+  private static void siftDown(long[] ids, double[] values, int size, long id, double value) {
+    int i = 0;
+    int half = size >>> 1;
+    while (i < half) {
+      int child = (i << 1) + 1;
+      int right = child + 1;
+      if (right < size && values[right] < values[child]) {
+        child = right;
+      }
+      if (value <= values[child]) {
+        break;
+      }
+      ids[i] = ids[child];
+      values[i] = values[child];
+      i = child;
+    }
+    if (size > 0) {
+      ids[i] = id;
+      values[i] = value;
+    }
+  }
+
+}
@@ -27,6 +27,7 @@ import java.util.Queue;
 import org.apache.mahout.cf.taste.common.NoSuchItemException;
 import org.apache.mahout.cf.taste.common.NoSuchUserException;
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
 import org.apache.mahout.cf.taste.impl.similarity.GenericUserSimilarity;
@@ -89,6 +90,63 @@ public final class TopItems {
     return result;
   }
   
+  /**
+   * Like {@link #getTopItems(int, LongPrimitiveIterator, IDRescorer, Estimator)}, but takes an
+   * {@link IDEstimator} so that candidate IDs are never boxed, and keeps the running top items in a
+   * {@link TopIDHeap}, so that {@link RecommendedItem}s are created only for the results.
+   */
+  public static List<RecommendedItem> getTopItems(int howMany,
+                                                  LongPrimitiveIterator possibleItemIDs,
+                                                  IDRescorer rescorer,
+                                                  IDEstimator estimator) throws TasteException {
+    Preconditions.checkArgument(possibleItemIDs != null, "argument is null");
+    Preconditions.checkArgument(estimator != null, "argument is null");
+    TopIDHeap topItems = new TopIDHeap(howMany);
+    addTopItems(topItems, possibleItemIDs, rescorer, estimator);
+    return topItems.toRecommendedItems();
+  }
+
+  /**
+   * Offers the estimates for the given candidate item IDs to the given {@link TopIDHeap}. Values are rounded
+   * to <code>float</code>, as they would be in a {@link RecommendedItem}, before being compared.
+   */
+  public static void addTopItems(TopIDHeap topItems,
+                                 LongPrimitiveIterator possibleItemIDs,
+                                 IDRescorer rescorer,
+                                 IDEstimator estimator) throws TasteException {
+    addTopItems(topItems, possibleItemIDs, rescorer, estimator, Deadline.NONE);
+  }
+
+  /**
+   * Like {@link #addTopItems(TopIDHeap, LongPrimitiveIterator, IDRescorer, IDEstimator)}, but stops once the
+   * given {@link Deadline} has passed, leaving the best items found so far in the heap.
+   *
+   * @return true if all candidates were considered, false if the deadline passed first
+   */
+  public static boolean addTopItems(TopIDHeap topItems,
+                                    LongPrimitiveIterator possibleItemIDs,
+                                    IDRescorer rescorer,
+                                    IDEstimator estimator,
+                                    Deadline deadline) throws TasteException {
+    while (possibleItemIDs.hasNext()) {
+      if (deadline.isExpired()) {
+        return false;
+      }
+      long itemID = possibleItemIDs.nextLong();
+      if ((rescorer == null) || !rescorer.isFiltered(itemID)) {
+        double preference;
+        try {
+          preference = estimator.estimate(itemID);
+        } catch (NoSuchItemException nsie) {
+          continue;
+        }
+        double rescoredPref = rescorer == null ? preference : rescorer.rescore(itemID, preference);
+        topItems.offer(itemID, (float) rescoredPref);
+      }
+    }
+    return true;
+  }
+
   public static long[] getTopUsers(int howMany,
                                    LongPrimitiveIterator allUserIDs,
                                    IDRescorer rescorer,
@@ -134,6 +192,50 @@ public final class TopItems {
     return result;
   }
   
+  /**
+   * Like {@link #getTopUsers(int, LongPrimitiveIterator, IDRescorer, Estimator)}, but without boxing
+   * candidate user IDs or creating an object per candidate.
+   */
+  public static long[] getTopUsers(int howMany,
+                                   LongPrimitiveIterator allUserIDs,
+                                   IDRescorer rescorer,
+                                   IDEstimator estimator) throws TasteException {
+    TopIDHeap topUsers = new TopIDHeap(howMany);
+    addTopUsers(topUsers, allUserIDs, rescorer, estimator, Deadline.NONE);
+    return topUsers.isEmpty() ? NO_IDS : topUsers.getIDsDescending();
+  }
+
+  /**
+   * Offers the similarities of the given candidate user IDs to the given {@link TopIDHeap}, until the given
+   * {@link Deadline} passes.
+   *
+   * @return true if all candidates were considered, false if the deadline passed first
+   */
+  public static boolean addTopUsers(TopIDHeap topUsers,
+                                    LongPrimitiveIterator allUserIDs,
+                                    IDRescorer rescorer,
+                                    IDEstimator estimator,
+                                    Deadline deadline) throws TasteException {
+    while (allUserIDs.hasNext()) {
+      if (deadline.isExpired()) {
+        return false;
+      }
+      long userID = allUserIDs.nextLong();
+      if ((rescorer != null) && rescorer.isFiltered(userID)) {
+        continue;
+      }
+      double similarity;
+      try {
+        similarity = estimator.estimate(userID);
+      } catch (NoSuchUserException nsue) {
+        continue;
+      }
+      double rescoredSimilarity = rescorer == null ? similarity : rescorer.rescore(userID, similarity);
+      topUsers.offer(userID, rescoredSimilarity);
+    }
+    return true;
+  }
+
   /**
    * <p>
    * Thanks to tsmorton for suggesting this functionality and writing part of the code.
@@ -210,5 +312,12 @@ public final class TopItems {
   public interface Estimator<T> {
     double estimate(T thing) throws TasteException;
   }
+
+  /**
+   * An {@link Estimator} over IDs, which avoids boxing each ID.
+   */
+  public interface IDEstimator {
+    double estimate(long id) throws TasteException;
+  }
   
 }
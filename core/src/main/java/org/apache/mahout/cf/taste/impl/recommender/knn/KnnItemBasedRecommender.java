@@ -67,7 +67,7 @@ public final class KnnItemBasedRecommender extends GenericItemBasedRecommender {
                                                  LongPrimitiveIterator possibleItemIDs,
                                                  int howMany,
                                                  Rescorer<LongPair> rescorer) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MostSimilarEstimator(itemID, getSimilarity(), rescorer);
+    TopItems.IDEstimator estimator = new MostSimilarEstimator(itemID, getSimilarity(), rescorer);
     return TopItems.getTopItems(howMany, possibleItemIDs, null, estimator);
   }
   
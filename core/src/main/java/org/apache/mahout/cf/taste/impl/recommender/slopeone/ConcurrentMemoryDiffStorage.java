@@ -0,0 +1,394 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.slopeone;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.common.Weighting;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.InvertedRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.InvertedRunningAverageAndStdDev;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
+import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.common.RunningAverageAndStdDev;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.slopeone.DiffStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * An in-memory {@link DiffStorage} like {@link MemoryDiffStorage}, but built for concurrent use: reads take no
+ * locks, so recommendations are never blocked by preferences being added, updated or removed at the same time,
+ * and updates lock only the part of the table they touch. The initial build, and rebuilds on refresh, run on
+ * several threads.
+ * </p>
+ *
+ * <p>
+ * Diffs are kept in a {@link StripedDiffTable} keyed by pairs of item IDs rather than in a map of maps, with
+ * no object per pair. Sums are kept as <code>float</code>s, which hold sums of whole star rating differences
+ * exactly only while they stay within 2<sup>24</sup> in magnitude, and of half star differences within
+ * 2<sup>23</sup>; past that, and for other values, sums are rounded, and averages may drift slightly as
+ * data are added. Diffs returned are snapshots which do not change as data are added.
+ * </p>
+ *
+ * <p>
+ * Updates wait while the diffs are rebuilt on refresh; reads continue against the old diffs until the new
+ * ones are complete. As with {@link MemoryDiffStorage}, {@link #updateItemPref(long, float)} is not supported
+ * when weighting by standard deviation.
+ * </p>
+ */
+public final class ConcurrentMemoryDiffStorage implements DiffStorage {
+
+  private static final Logger log = LoggerFactory.getLogger(ConcurrentMemoryDiffStorage.class);
+
+  private static final int STRIPES_PER_THREAD = 16;
+  private static final int MIN_STRIPES = 64;
+
+  private final DataModel dataModel;
+  private final boolean stdDevWeighted;
+  private final long maxEntries;
+  private final int numThreads;
+  private volatile Diffs diffs;
+  private final ReadWriteLock rebuildLock;
+  private final RefreshHelper refreshHelper;
+
+  /**
+   * Builds diffs using one thread per processor.
+   *
+   * @see MemoryDiffStorage#MemoryDiffStorage(DataModel, Weighting, long)
+   */
+  public ConcurrentMemoryDiffStorage(DataModel dataModel,
+                                     Weighting stdDevWeighted,
+                                     long maxEntries) throws TasteException {
+    this(dataModel, stdDevWeighted, maxEntries, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param maxEntries maximum number of item-item diffs to track, as in
+   *  {@link MemoryDiffStorage#MemoryDiffStorage(DataModel, Weighting, long)}; when building with several threads,
+   *  which pairs are first observed is not deterministic, and the limit may be exceeded by a few entries
+   * @param numThreads number of threads to build diffs with
+   */
+  public ConcurrentMemoryDiffStorage(DataModel dataModel,
+                                     Weighting stdDevWeighted,
+                                     long maxEntries,
+                                     int numThreads) throws TasteException {
+    Preconditions.checkArgument(dataModel != null, "dataModel is null");
+    Preconditions.checkArgument(dataModel.getNumItems() >= 1, "dataModel has no items");
+    Preconditions.checkArgument(maxEntries > 0L, "maxEntries must be positive");
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    this.dataModel = dataModel;
+    this.stdDevWeighted = stdDevWeighted == Weighting.WEIGHTED;
+    this.maxEntries = maxEntries;
+    this.numThreads = numThreads;
+    this.rebuildLock = new ReentrantReadWriteLock();
+    this.refreshHelper = new RefreshHelper(new Callable<Object>() {
+      @Override
+      public Object call() throws TasteException {
+        buildAverageDiffs();
+        return null;
+      }
+    });
+    refreshHelper.addDependency(dataModel);
+    buildAverageDiffs();
+  }
+
+  @Override
+  public RunningAverage getDiff(long itemID1, long itemID2) {
+    if (itemID1 <= itemID2) {
+      return diffs.pairs.get(itemID1, itemID2);
+    }
+    RunningAverage average = diffs.pairs.get(itemID2, itemID1);
+    if (average == null) {
+      return null;
+    }
+    return stdDevWeighted ? new InvertedRunningAverageAndStdDev((RunningAverageAndStdDev) average)
+        : new InvertedRunningAverage(average);
+  }
+
+  @Override
+  public RunningAverage[] getDiffs(long userID, long itemID, PreferenceArray prefs) {
+    int size = prefs.length();
+    RunningAverage[] result = new RunningAverage[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = getDiff(prefs.getItemID(i), itemID);
+    }
+    return result;
+  }
+
+  @Override
+  public RunningAverage getAverageItemPref(long itemID) {
+    return diffs.itemAverages.get(itemID, itemID);
+  }
+
+  @Override
+  public void addItemPref(long userID, long itemIDA, float prefValue) throws TasteException {
+    PreferenceArray userPreferences = dataModel.getPreferencesFromUser(userID);
+    rebuildLock.readLock().lock();
+    try {
+      Diffs current = diffs;
+      int length = userPreferences.length();
+      for (int i = 0; i < length; i++) {
+        long itemIDB = userPreferences.getItemID(i);
+        float bValue = userPreferences.getValue(i);
+        boolean create = current.numEntries.get() < maxEntries;
+        boolean created;
+        if (itemIDA < itemIDB) {
+          created = current.pairs.add(itemIDA, itemIDB, bValue - prefValue, create);
+        } else if (itemIDA > itemIDB) {
+          created = current.pairs.add(itemIDB, itemIDA, prefValue - bValue, create);
+        } else {
+          continue;
+        }
+        if (created) {
+          current.numEntries.incrementAndGet();
+          current.addRecommendableItemIDs(itemIDA, itemIDB);
+        }
+      }
+      current.itemAverages.add(itemIDA, itemIDA, prefValue, true);
+    } finally {
+      rebuildLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void updateItemPref(long itemID, float prefDelta) {
+    if (stdDevWeighted) {
+      throw new UnsupportedOperationException("Can't update only when stdDevWeighted is set");
+    }
+    rebuildLock.readLock().lock();
+    try {
+      Diffs current = diffs;
+      current.pairs.changeAll(itemID, prefDelta);
+      // Item averages are keyed (itemID, itemID), so this changes them by prefDelta
+      current.itemAverages.changeAll(itemID, -prefDelta);
+    } finally {
+      rebuildLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void removeItemPref(long userID, long itemIDA, float prefValue) throws TasteException {
+    PreferenceArray userPreferences = dataModel.getPreferencesFromUser(userID);
+    rebuildLock.readLock().lock();
+    try {
+      Diffs current = diffs;
+      int length = userPreferences.length();
+      for (int i = 0; i < length; i++) {
+        long itemIDB = userPreferences.getItemID(i);
+        float bValue = userPreferences.getValue(i);
+        if (itemIDA < itemIDB) {
+          current.pairs.remove(itemIDA, itemIDB, bValue - prefValue);
+        } else if (itemIDA > itemIDB) {
+          current.pairs.remove(itemIDB, itemIDA, prefValue - bValue);
+        }
+      }
+      current.itemAverages.remove(itemIDA, itemIDA, prefValue);
+    } finally {
+      rebuildLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public FastIDSet getRecommendableItemIDs(long userID) throws TasteException {
+    FastIDSet result = diffs.recommendableItemIDs.clone();
+    PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+    int length = prefs.length();
+    for (int i = 0; i < length; i++) {
+      result.remove(prefs.getItemID(i));
+    }
+    return result;
+  }
+
+  /**
+   * @return number of item-item diffs tracked
+   */
+  public long getNumDiffs() {
+    return diffs.pairs.size();
+  }
+
+  private void buildAverageDiffs() throws TasteException {
+    log.info("Building average diffs with {} threads...", numThreads);
+    rebuildLock.writeLock().lock();
+    try {
+      int numStripes = MIN_STRIPES;
+      while (numStripes < STRIPES_PER_THREAD * numThreads) {
+        numStripes <<= 1;
+      }
+      Diffs newDiffs = new Diffs(new StripedDiffTable(numStripes, stdDevWeighted),
+                                 new StripedDiffTable(numStripes, false));
+      if (numThreads == 1) {
+        new Builder(newDiffs, 0).call();
+      } else {
+        build(newDiffs);
+      }
+      // Prune inconsequential diffs: those with only one data point, so possibly unreliable
+      newDiffs.pairs.prune(2);
+      newDiffs.numEntries.set(newDiffs.pairs.size());
+      newDiffs.recommendableItemIDs = newDiffs.pairs.getItemIDs();
+      diffs = newDiffs;
+      log.info("Built {} average diffs", newDiffs.numEntries.get());
+    } finally {
+      rebuildLock.writeLock().unlock();
+    }
+  }
+
+  private void build(Diffs newDiffs) throws TasteException {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(numThreads);
+      for (int thread = 0; thread < numThreads; thread++) {
+        futures.add(executor.submit(new Builder(newDiffs, thread)));
+      }
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new TasteException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof TasteException) {
+        throw (TasteException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new TasteException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    refreshHelper.refresh(alreadyRefreshed);
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentMemoryDiffStorage";
+  }
+
+  /**
+   * One complete set of diffs; replaced as a whole when rebuilt.
+   */
+  private static final class Diffs {
+
+    private final StripedDiffTable pairs;
+    /** Average preference of each item, keyed by the pair (item, item), which never occurs in pairs. */
+    private final StripedDiffTable itemAverages;
+    private final AtomicLong numEntries;
+    /** Replaced, never modified, once published. */
+    private volatile FastIDSet recommendableItemIDs;
+
+    private Diffs(StripedDiffTable pairs, StripedDiffTable itemAverages) {
+      this.pairs = pairs;
+      this.itemAverages = itemAverages;
+      numEntries = new AtomicLong();
+      recommendableItemIDs = new FastIDSet();
+    }
+
+    private synchronized void addRecommendableItemIDs(long itemIDA, long itemIDB) {
+      FastIDSet current = recommendableItemIDs;
+      if (!current.contains(itemIDA) || !current.contains(itemIDB)) {
+        FastIDSet updated = current.clone();
+        updated.add(itemIDA);
+        updated.add(itemIDB);
+        recommendableItemIDs = updated;
+      }
+    }
+  }
+
+  /**
+   * Adds the diffs of all users for the pairs whose first item falls in the stripes owned by one thread. Each
+   * stripe is owned by exactly one thread, so threads do not contend.
+   */
+  private final class Builder implements Callable<Object> {
+
+    private final Diffs newDiffs;
+    private final int thread;
+
+    private Builder(Diffs newDiffs, int thread) {
+      this.newDiffs = newDiffs;
+      this.thread = thread;
+    }
+
+    @Override
+    public Object call() throws TasteException {
+      StripedDiffTable pairs = newDiffs.pairs;
+      StripedDiffTable itemAverages = newDiffs.itemAverages;
+      AtomicLong numEntries = newDiffs.numEntries;
+      LongPrimitiveIterator it = dataModel.getUserIDs();
+      while (it.hasNext()) {
+        PreferenceArray userPreferences = dataModel.getPreferencesFromUser(it.nextLong());
+        if (!isSortedByItem(userPreferences)) {
+          userPreferences = userPreferences.clone();
+          userPreferences.sortByItem();
+        }
+        int length = userPreferences.length();
+        for (int i = 0; i < length; i++) {
+          long itemIDA = userPreferences.getItemID(i);
+          if (pairs.stripeOf(itemIDA) % numThreads != thread) {
+            continue;
+          }
+          float prefAValue = userPreferences.getValue(i);
+          for (int j = i + 1; j < length; j++) {
+            // This is a performance-critical block
+            boolean create = numEntries.get() < maxEntries;
+            if (pairs.add(itemIDA, userPreferences.getItemID(j), userPreferences.getValue(j) - prefAValue, create)) {
+              numEntries.incrementAndGet();
+            }
+          }
+          itemAverages.add(itemIDA, itemIDA, prefAValue, true);
+        }
+      }
+      return null;
+    }
+
+    private boolean isSortedByItem(PreferenceArray prefs) {
+      int length = prefs.length();
+      for (int i = 1; i < length; i++) {
+        if (prefs.getItemID(i) <= prefs.getItemID(i - 1)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+}
@@ -24,11 +24,13 @@ import org.apache.mahout.cf.taste.common.NoSuchUserException;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.common.Weighting;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.RunningAverage;
 import org.apache.mahout.cf.taste.impl.common.RunningAverageAndStdDev;
 import org.apache.mahout.cf.taste.impl.recommender.AbstractRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.TopIDHeap;
 import org.apache.mahout.cf.taste.impl.recommender.TopItems;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
@@ -105,15 +107,24 @@ public final class SlopeOneRecommender extends AbstractRecommender {
   
   @Override
   public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer) throws TasteException {
+    return doRecommend(userID, howMany, rescorer, Deadline.NONE);
+  }
+
+  @Override
+  protected List<RecommendedItem> doRecommend(long userID,
+                                              int howMany,
+                                              IDRescorer rescorer,
+                                              Deadline deadline) throws TasteException {
     Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
     log.debug("Recommending items for user ID '{}'", userID);
 
     FastIDSet possibleItemIDs = diffStorage.getRecommendableItemIDs(userID);
 
-    TopItems.Estimator<Long> estimator = new Estimator(userID);
+    TopItems.IDEstimator estimator = new Estimator(userID);
 
-    List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer,
-      estimator);
+    TopIDHeap heap = new TopIDHeap(howMany);
+    TopItems.addTopItems(heap, possibleItemIDs.iterator(), rescorer, estimator, deadline);
+    List<RecommendedItem> topItems = heap.toRecommendedItems();
 
     log.debug("Recommendations are: {}", topItems);
     return topItems;
@@ -209,7 +220,7 @@ public final class SlopeOneRecommender extends AbstractRecommender {
            + ", diffStorage:" + diffStorage + ']';
   }
   
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
     
     private final long userID;
     
@@ -218,7 +229,7 @@ public final class SlopeOneRecommender extends AbstractRecommender {
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       return doEstimatePreference(userID, itemID);
     }
   }
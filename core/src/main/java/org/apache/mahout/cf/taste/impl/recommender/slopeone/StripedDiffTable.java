@@ -0,0 +1,340 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.slopeone;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.FixedRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.FixedRunningAverageAndStdDev;
+import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+
+/**
+ * <p>
+ * A hash table from pairs of item IDs to running averages, for {@link ConcurrentMemoryDiffStorage}. It is split
+ * into stripes by the first item ID of a pair. Writers lock one stripe; readers take no lock at all.
+ * </p>
+ *
+ * <p>
+ * Each stripe is an open-addressing table of parallel arrays. An entry's count and sum are packed into one
+ * <code>long</code>, the count in the high half and the sum as a <code>float</code> in the low half, so one
+ * volatile read gives a consistent count and sum. The sum of squares, if kept, is packed with the count the
+ * same way into a second array, written before the first, so a reader can tell whether it read both halves of
+ * the same update. The keys of an entry are written before its first value, and so are visible to any reader
+ * which sees the value. A stripe which fills up is copied into larger arrays, which are then swapped in;
+ * readers still on the old arrays see a consistent, slightly stale view.
+ * </p>
+ *
+ * <p>
+ * Entries are never removed in place. An entry whose count drops to 0 reads as absent, and is dropped when
+ * the stripe is next copied, or by {@link #prune(int)}.
+ * </p>
+ */
+final class StripedDiffTable {
+
+  private static final long OCCUPIED = 1L << 63;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Stripe[] stripes;
+  private final int stripeMask;
+  private final boolean withSquares;
+
+  /**
+   * @param numStripes number of stripes; must be a power of two
+   * @param withSquares whether to keep sums of squares, for standard deviations
+   */
+  StripedDiffTable(int numStripes, boolean withSquares) {
+    stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new Stripe(new Slots(INITIAL_CAPACITY, withSquares));
+    }
+    stripeMask = numStripes - 1;
+    this.withSquares = withSquares;
+  }
+
+  int getNumStripes() {
+    return stripes.length;
+  }
+
+  /**
+   * @return stripe holding pairs whose first item is <code>itemIDA</code>
+   */
+  int stripeOf(long itemIDA) {
+    return (int) (mix(itemIDA) >>> 40) & stripeMask;
+  }
+
+  /**
+   * @return count and average, and standard deviation if sums of squares are kept, of the pair, or null if the
+   *  pair has no data
+   */
+  RunningAverage get(long itemIDA, long itemIDB) {
+    Slots slots = stripes[stripeOf(itemIDA)].slots;
+    int slot = find(slots, itemIDA, itemIDB);
+    if (slot < 0) {
+      return null;
+    }
+    while (true) {
+      long value = slots.values.get(slot);
+      int count = count(value);
+      if (count == 0) {
+        return null;
+      }
+      double sum = sum(value);
+      double average = sum / count;
+      if (!withSquares) {
+        return new FixedRunningAverage(average, count);
+      }
+      long squares = slots.squares.get(slot);
+      if (count(squares) == count) {
+        double stdDev = Double.NaN;
+        if (count > 1) {
+          double variance = (sum(squares) - sum * average) / (count - 1);
+          stdDev = variance > 0.0 ? Math.sqrt(variance) : 0.0;
+        }
+        return new FixedRunningAverageAndStdDev(average, stdDev, count);
+      }
+      // else read between the writes of one update; read again
+    }
+  }
+
+  /**
+   * Adds a datum to a pair.
+   *
+   * @param create whether to create the pair if it does not exist yet
+   * @return true if the pair was created
+   */
+  boolean add(long itemIDA, long itemIDB, double datum, boolean create) {
+    Stripe stripe = stripes[stripeOf(itemIDA)];
+    synchronized (stripe) {
+      Slots slots = stripe.slots;
+      int slot = find(slots, itemIDA, itemIDB);
+      if (slot >= 0) {
+        update(slots, slot, 1, datum);
+        return false;
+      }
+      if (!create) {
+        return false;
+      }
+      if (2 * (stripe.size + 1) > slots.capacity()) {
+        slots = stripe.copy(2 * slots.capacity(), 1);
+        slot = find(slots, itemIDA, itemIDB);
+      }
+      slot = -slot - 1;
+      slots.keysA[slot] = itemIDA;
+      slots.keysB[slot] = itemIDB;
+      if (withSquares) {
+        slots.squares.set(slot, pack(1, datum * datum));
+      }
+      slots.values.set(slot, pack(1, datum));
+      stripe.size++;
+      return true;
+    }
+  }
+
+  /**
+   * Removes a datum from a pair, if it exists.
+   */
+  void remove(long itemIDA, long itemIDB, double datum) {
+    Stripe stripe = stripes[stripeOf(itemIDA)];
+    synchronized (stripe) {
+      Slots slots = stripe.slots;
+      int slot = find(slots, itemIDA, itemIDB);
+      if (slot >= 0 && count(slots.values.get(slot)) > 0) {
+        update(slots, slot, -1, -datum);
+      }
+    }
+  }
+
+  /**
+   * Changes one datum of every pair whose first item is <code>itemID</code> by <code>-delta</code> and of every
+   * pair whose second item is <code>itemID</code> by <code>delta</code>, as when a preference for
+   * <code>itemID</code> changes by <code>delta</code>. Not supported when sums of squares are kept.
+   */
+  void changeAll(long itemID, double delta) {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        Slots slots = stripe.slots;
+        for (int slot = 0; slot < slots.capacity(); slot++) {
+          long value = slots.values.get(slot);
+          if (count(value) > 0) {
+            if (slots.keysA[slot] == itemID) {
+              update(slots, slot, 0, -delta);
+            } else if (slots.keysB[slot] == itemID) {
+              update(slots, slot, 0, delta);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops pairs with fewer than <code>minCount</code> data, and shrinks stripes to fit.
+   */
+  void prune(int minCount) {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        int live = 0;
+        Slots slots = stripe.slots;
+        for (int slot = 0; slot < slots.capacity(); slot++) {
+          if (count(slots.values.get(slot)) >= minCount) {
+            live++;
+          }
+        }
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * live) {
+          capacity <<= 1;
+        }
+        stripe.copy(capacity, minCount);
+      }
+    }
+  }
+
+  /**
+   * @return IDs of all items in pairs with data
+   */
+  FastIDSet getItemIDs() {
+    FastIDSet itemIDs = new FastIDSet();
+    for (Stripe stripe : stripes) {
+      Slots slots = stripe.slots;
+      for (int slot = 0; slot < slots.capacity(); slot++) {
+        if (count(slots.values.get(slot)) > 0) {
+          itemIDs.add(slots.keysA[slot]);
+          itemIDs.add(slots.keysB[slot]);
+        }
+      }
+    }
+    return itemIDs;
+  }
+
+  /**
+   * @return number of pairs with data
+   */
+  long size() {
+    long size = 0L;
+    for (Stripe stripe : stripes) {
+      Slots slots = stripe.slots;
+      for (int slot = 0; slot < slots.capacity(); slot++) {
+        if (count(slots.values.get(slot)) > 0) {
+          size++;
+        }
+      }
+    }
+    return size;
+  }
+
+  private void update(Slots slots, int slot, int countDelta, double datum) {
+    long value = slots.values.get(slot);
+    int count = count(value) + countDelta;
+    if (withSquares) {
+      double squareDelta = countDelta < 0 ? -datum * datum : datum * datum;
+      slots.squares.set(slot, pack(count, sum(slots.squares.get(slot)) + squareDelta));
+    }
+    slots.values.set(slot, pack(count, sum(value) + datum));
+  }
+
+  private static int find(Slots slots, long itemIDA, long itemIDB) {
+    int mask = slots.capacity() - 1;
+    int slot = (int) mix(itemIDA * 31L + itemIDB) & mask;
+    while (true) {
+      if (slots.values.get(slot) == 0L) {
+        return -slot - 1;
+      }
+      if (slots.keysA[slot] == itemIDA && slots.keysB[slot] == itemIDB) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private static long mix(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 29);
+  }
+
+  private static long pack(int count, double sum) {
+    return OCCUPIED | ((long) count << 32) | (Float.floatToRawIntBits((float) sum) & 0xFFFFFFFFL);
+  }
+
+  private static int count(long packed) {
+    return (int) (packed >>> 32) & 0x7FFFFFFF;
+  }
+
+  private static float sum(long packed) {
+    return Float.intBitsToFloat((int) packed);
+  }
+
+  private static final class Stripe {
+
+    private volatile Slots slots;
+    /** Number of occupied slots; guarded by this. */
+    private int size;
+
+    private Stripe(Slots slots) {
+      this.slots = slots;
+    }
+
+    /**
+     * Copies entries with at least <code>minCount</code> data into new slots, and swaps them in.
+     * Must hold the lock on this.
+     */
+    private Slots copy(int capacity, int minCount) {
+      Slots oldSlots = slots;
+      Slots newSlots = new Slots(capacity, oldSlots.squares != null);
+      int newSize = 0;
+      for (int slot = 0; slot < oldSlots.capacity(); slot++) {
+        long value = oldSlots.values.get(slot);
+        if (count(value) >= minCount) {
+          long itemIDA = oldSlots.keysA[slot];
+          long itemIDB = oldSlots.keysB[slot];
+          int newSlot = -find(newSlots, itemIDA, itemIDB) - 1;
+          newSlots.keysA[newSlot] = itemIDA;
+          newSlots.keysB[newSlot] = itemIDB;
+          if (newSlots.squares != null) {
+            newSlots.squares.set(newSlot, oldSlots.squares.get(slot));
+          }
+          newSlots.values.set(newSlot, value);
+          newSize++;
+        }
+      }
+      size = newSize;
+      slots = newSlots;
+      return newSlots;
+    }
+  }
+
+  private static final class Slots {
+
+    private final long[] keysA;
+    private final long[] keysB;
+    private final AtomicLongArray values;
+    private final AtomicLongArray squares;
+
+    private Slots(int capacity, boolean withSquares) {
+      keysA = new long[capacity];
+      keysB = new long[capacity];
+      values = new AtomicLongArray(capacity);
+      squares = withSquares ? new AtomicLongArray(capacity) : null;
+    }
+
+    private int capacity() {
+      return keysA.length;
+    }
+  }
+
+}
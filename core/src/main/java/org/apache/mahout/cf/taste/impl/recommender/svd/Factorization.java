@@ -48,6 +48,16 @@ public class Factorization {
     this.itemFeatures = itemFeatures;
   }
 
+  /**
+   * for subclasses which store ID mappings and features themselves; they must override all public methods
+   */
+  protected Factorization() {
+    this.userIDMapping = null;
+    this.itemIDMapping = null;
+    this.userFeatures = null;
+    this.itemFeatures = null;
+  }
+
   public double[] getUserFeatures(long userID) throws NoSuchUserException {
     Integer index = userIDMapping.get(userID);
     if (index == null) {
@@ -64,6 +74,18 @@ public class Factorization {
     return itemFeatures[index];
   }
 
+  /**
+   * @return dot product of the given user features and the features of the given item
+   */
+  public double dotItemFeatures(double[] userFeatures, long itemID) throws NoSuchItemException {
+    double[] itemFeatures = getItemFeatures(itemID);
+    double dot = 0;
+    for (int feature = 0; feature < userFeatures.length; feature++) {
+      dot += userFeatures[feature] * itemFeatures[feature];
+    }
+    return dot;
+  }
+
   public Iterable<Map.Entry<Long,Integer>> getUserIDMappings() {
     return userIDMapping.entrySet();
   }
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+
+/**
+ * Helpers shared by the multithreaded {@link Factorizer}s to run chunks of work on a pool which lives for one call
+ * to {@link Factorizer#factorize()}.
+ */
+final class FactorizerTasks {
+
+  private FactorizerTasks() { }
+
+  /**
+   * @return a fixed pool of daemon threads, which the caller must shut down once it has run all its tasks
+   */
+  static ExecutorService newExecutor(final String name, int numThreads) {
+    return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger();
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name + '-' + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * runs all tasks on the executor and waits for their results, cancelling the remaining tasks if one fails
+   */
+  static <T> List<T> runAll(ExecutorService executor, List<Callable<T>> tasks) throws TasteException {
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(executor.submit(task));
+    }
+    List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException ie) {
+      cancelAll(futures);
+      Thread.currentThread().interrupt();
+      throw new TasteException(ie);
+    } catch (ExecutionException ee) {
+      cancelAll(futures);
+      Throwable cause = ee.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new TasteException(cause);
+    }
+    return results;
+  }
+
+  private static <T> void cancelAll(Iterable<Future<T>> futures) {
+    for (Future<T> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+}
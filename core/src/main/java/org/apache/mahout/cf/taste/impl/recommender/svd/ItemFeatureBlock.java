@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.MappedSection;
+import org.apache.mahout.cf.taste.impl.recommender.TopIDHeap;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+
+/**
+ * <p>
+ * All item features of a {@link Factorization}, copied into one contiguous row-major array ordered by item ID.
+ * Scoring a user against a run of rows is then a simple loop over an array, which the JIT compiles far better
+ * than a lookup and a separate small array per item. Rows are scored a tile of {@link #TILE_SIZE} at a time
+ * so that, when scoring several users, a tile is read from memory once and then reused from cache.
+ * </p>
+ *
+ * <p>
+ * A {@link MappedFactorization} already stores its item features this way, so they are read in place from the
+ * mapped file rather than copied onto the heap; only the item IDs are copied.
+ * </p>
+ */
+final class ItemFeatureBlock {
+
+  /** number of rows scored at a time; 256 rows of 100 features take 200KB */
+  static final int TILE_SIZE = 256;
+
+  private final Factorization factorization;
+  private final int numFeatures;
+  private final long[] itemIDs;
+  /** item features on the heap, or null if read from {@link #mappedFeatures} */
+  private final double[] features;
+  private final MappedSection mappedFeatures;
+
+  ItemFeatureBlock(Factorization factorization) throws TasteException {
+    this.factorization = factorization;
+    numFeatures = factorization.numFeatures();
+    int numItems = factorization.numItems();
+    itemIDs = new long[numItems];
+    int i = 0;
+    for (Map.Entry<Long,Integer> mapping : factorization.getItemIDMappings()) {
+      itemIDs[i++] = mapping.getKey();
+    }
+    if (factorization instanceof MappedFactorization) {
+      // IDs are already in ascending order, the same as the rows of features
+      features = null;
+      mappedFeatures = ((MappedFactorization) factorization).getItemFeatureSection();
+    } else {
+      Preconditions.checkArgument((long) numItems * numFeatures <= Integer.MAX_VALUE,
+          "Too many item features to hold in one array: %s", (long) numItems * numFeatures);
+      Arrays.sort(itemIDs);
+      features = new double[numItems * numFeatures];
+      for (int row = 0; row < numItems; row++) {
+        System.arraycopy(factorization.getItemFeatures(itemIDs[row]), 0, features, row * numFeatures, numFeatures);
+      }
+      mappedFeatures = null;
+    }
+  }
+
+  /**
+   * @return true iff this holds the item features of the given {@link Factorization}
+   */
+  boolean isFrom(Factorization factorization) {
+    return this.factorization == factorization;
+  }
+
+  int numItems() {
+    return itemIDs.length;
+  }
+
+  /**
+   * Offers every candidate item to each user's heap, scored as the dot product of user and item features and
+   * then rescored.
+   *
+   * @param userFeatures features of each user
+   * @param candidateItemIDs items which may be recommended to each user
+   * @param rescorer optional rescorer, shared by all users
+   * @param topItems heap for each user
+   */
+  void addTopItems(double[][] userFeatures,
+                   FastIDSet[] candidateItemIDs,
+                   IDRescorer rescorer,
+                   TopIDHeap[] topItems) {
+    int numItems = itemIDs.length;
+    double[] scores = new double[TILE_SIZE];
+    for (int from = 0; from < numItems; from += TILE_SIZE) {
+      int to = Math.min(from + TILE_SIZE, numItems);
+      for (int user = 0; user < userFeatures.length; user++) {
+        dot(userFeatures[user], from, to, scores);
+        offer(from, to, scores, candidateItemIDs[user], rescorer, topItems[user]);
+      }
+    }
+  }
+
+  /**
+   * Sets <code>scores[row - from]</code> to the dot product of the given user features with each row in
+   * [from,to).
+   */
+  void dot(double[] userFeatures, int from, int to, double[] scores) {
+    if (mappedFeatures != null) {
+      dotMapped(userFeatures, from, to, scores);
+      return;
+    }
+    int offset = from * numFeatures;
+    for (int row = from; row < to; row++) {
+      double score = 0.0;
+      for (int feature = 0; feature < numFeatures; feature++) {
+        score += userFeatures[feature] * features[offset + feature];
+      }
+      scores[row - from] = score;
+      offset += numFeatures;
+    }
+  }
+
+  private void dotMapped(double[] userFeatures, int from, int to, double[] scores) {
+    long offset = (long) from * numFeatures;
+    for (int row = from; row < to; row++) {
+      double score = 0.0;
+      for (int feature = 0; feature < numFeatures; feature++) {
+        score += userFeatures[feature] * mappedFeatures.getFloat(offset + feature);
+      }
+      scores[row - from] = score;
+      offset += numFeatures;
+    }
+  }
+
+  private void offer(int from,
+                     int to,
+                     double[] scores,
+                     FastIDSet candidateItemIDs,
+                     IDRescorer rescorer,
+                     TopIDHeap topItems) {
+    for (int row = from; row < to; row++) {
+      long itemID = itemIDs[row];
+      if (!candidateItemIDs.contains(itemID)) {
+        continue;
+      }
+      // Estimates are floats, as in SVDRecommender.estimatePreference()
+      double score = (float) scores[row - from];
+      if (rescorer != null) {
+        if (rescorer.isFiltered(itemID)) {
+          continue;
+        }
+        score = rescorer.rescore(itemID, score);
+      }
+      topItems.offer(itemID, (float) score);
+    }
+  }
+
+}
@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.common.MappedSection;
+
+/**
+ * <p>
+ * A {@link Factorization} which reads features straight from a memory-mapped file written by
+ * {@link MappedFilePersistenceStrategy}, rather than holding them on the heap. Opening it takes about as long
+ * regardless of the size of the factorization, since nothing is read until used.
+ * </p>
+ *
+ * <p>
+ * IDs are stored sorted, and found by binary search; the index of an ID is its position in that order. Features
+ * are stored as <code>float</code>s, one row after another, in the same order. {@link #getUserFeatures(long)}
+ * and {@link #getItemFeatures(long)} return a new copy of the row each time;
+ * {@link #dotItemFeatures(double[], long)} reads the item's row in place.
+ * </p>
+ */
+public final class MappedFactorization extends Factorization {
+
+  static final int MAGIC = 0x4D4D4654;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+
+  private final File file;
+  private final int numFeatures;
+  private final int numUsers;
+  private final int numItems;
+  private final MappedSection userIDs;
+  private final MappedSection userFeatures;
+  private final MappedSection itemIDs;
+  private final MappedSection itemFeatures;
+
+  /**
+   * @param file file written by {@link MappedFilePersistenceStrategy}
+   * @throws IOException if the file can't be read or is not in the expected format
+   */
+  public MappedFactorization(File file) throws IOException {
+    this.file = Preconditions.checkNotNull(file).getAbsoluteFile();
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a mapped factorization file: " + file);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version " + version + " in " + file);
+      }
+      numFeatures = header.getInt();
+      numUsers = header.getInt();
+      numItems = header.getInt();
+
+      long position = HEADER_SIZE;
+      userIDs = new MappedSection(channel, position, 8L * numUsers);
+      position += 8L * numUsers;
+      userFeatures = new MappedSection(channel, position, 4L * numUsers * numFeatures);
+      position += paddedFloatBytes((long) numUsers * numFeatures);
+      itemIDs = new MappedSection(channel, position, 8L * numItems);
+      position += 8L * numItems;
+      itemFeatures = new MappedSection(channel, position, 4L * numItems * numFeatures);
+      position += paddedFloatBytes((long) numItems * numFeatures);
+      if (position != channel.size()) {
+        throw new IOException("Expected " + position + " bytes but found " + channel.size() + " in " + file);
+      }
+    } finally {
+      // Mappings remain valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  static long paddedFloatBytes(long numFloats) {
+    return ((4L * numFloats) + 7L) & ~7L;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public double[] getUserFeatures(long userID) throws NoSuchUserException {
+    long index = userIDs.binarySearchLong(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return readRow(userFeatures, index);
+  }
+
+  @Override
+  public double[] getItemFeatures(long itemID) throws NoSuchItemException {
+    long index = itemIDs.binarySearchLong(0, numItems, itemID);
+    if (index < 0) {
+      throw new NoSuchItemException(itemID);
+    }
+    return readRow(itemFeatures, index);
+  }
+
+  /**
+   * Reads the item's features straight from the mapped file, without copying them.
+   */
+  @Override
+  public double dotItemFeatures(double[] userFeatures, long itemID) throws NoSuchItemException {
+    long index = itemIDs.binarySearchLong(0, numItems, itemID);
+    if (index < 0) {
+      throw new NoSuchItemException(itemID);
+    }
+    long offset = index * numFeatures;
+    double dot = 0;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      dot += userFeatures[feature] * itemFeatures.getFloat(offset + feature);
+    }
+    return dot;
+  }
+
+  /**
+   * @return the mapped item features, one row of {@link #numFeatures()} <code>float</code>s per item, in
+   *  ascending order of item ID
+   */
+  MappedSection getItemFeatureSection() {
+    return itemFeatures;
+  }
+
+  private double[] readRow(MappedSection features, long index) {
+    double[] row = new double[numFeatures];
+    long offset = index * numFeatures;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      row[feature] = features.getFloat(offset + feature);
+    }
+    return row;
+  }
+
+  @Override
+  public Iterable<Map.Entry<Long,Integer>> getUserIDMappings() {
+    return new IDMappings(userIDs, numUsers);
+  }
+
+  @Override
+  public Iterable<Map.Entry<Long,Integer>> getItemIDMappings() {
+    return new IDMappings(itemIDs, numItems);
+  }
+
+  @Override
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  @Override
+  public int numUsers() {
+    return numUsers;
+  }
+
+  @Override
+  public int numItems() {
+    return numItems;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof MappedFactorization && file.equals(((MappedFactorization) o).file);
+  }
+
+  @Override
+  public int hashCode() {
+    return file.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "MappedFactorization[file:" + file + ']';
+  }
+
+  private static final class IDMappings implements Iterable<Map.Entry<Long,Integer>> {
+
+    private final MappedSection ids;
+    private final int size;
+
+    private IDMappings(MappedSection ids, int size) {
+      this.ids = ids;
+      this.size = size;
+    }
+
+    @Override
+    public Iterator<Map.Entry<Long,Integer>> iterator() {
+      return new Iterator<Map.Entry<Long,Integer>>() {
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+          return index < size;
+        }
+
+        @Override
+        public Map.Entry<Long,Integer> next() {
+          if (index >= size) {
+            throw new NoSuchElementException();
+          }
+          Map.Entry<Long,Integer> entry = Maps.immutableEntry(ids.getLong(index), index);
+          index++;
+          return entry;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+}
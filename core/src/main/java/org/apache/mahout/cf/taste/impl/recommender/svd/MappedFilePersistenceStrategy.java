@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <p>
+ * Provides a file-based persistent store whose {@link #load()} maps the file into memory as a
+ * {@link MappedFactorization} instead of reading it onto the heap, so that even a very large factorization is
+ * available almost immediately. Features are stored as <code>float</code>s, which halves the size of the file
+ * compared to {@link FilePersistenceStrategy}, at the cost of some precision.
+ * </p>
+ *
+ * <p>
+ * A new factorization is written to a temporary file next to the given one, which then replaces it. A
+ * {@link MappedFactorization} already loaded from the old file keeps working.
+ * </p>
+ */
+public class MappedFilePersistenceStrategy implements PersistenceStrategy {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedFilePersistenceStrategy.class);
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final File file;
+
+  /**
+   * @param file the file to use for storage. If the file does not exist it will be created when required.
+   */
+  public MappedFilePersistenceStrategy(File file) {
+    this.file = Preconditions.checkNotNull(file).getAbsoluteFile();
+  }
+
+  @Override
+  public Factorization load() throws IOException {
+    if (!file.exists()) {
+      log.info("{} does not yet exist, no factorization found", file);
+      return null;
+    }
+    log.info("Mapping factorization from {}...", file);
+    return new MappedFactorization(file);
+  }
+
+  @Override
+  public void maybePersist(Factorization factorization) throws IOException {
+    if (factorization instanceof MappedFactorization && file.equals(((MappedFactorization) factorization).getFile())) {
+      log.info("Factorization is already stored in {}", file);
+      return;
+    }
+    File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+    log.info("Writing factorization to {}...", tempFile);
+    DataOutputStream out = null;
+    boolean succeeded = false;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE));
+      writeBinary(factorization, out);
+      out.close();
+      succeeded = true;
+    } finally {
+      if (!succeeded) {
+        Closeables.closeQuietly(out);
+        if (!tempFile.delete()) {
+          log.warn("Unable to delete {}", tempFile);
+        }
+      }
+    }
+    // Renaming over an existing file fails on some platforms
+    if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+      throw new IOException("Unable to rename " + tempFile + " to " + file);
+    }
+  }
+
+  static void writeBinary(Factorization factorization, DataOutputStream out) throws IOException {
+    int numFeatures = factorization.numFeatures();
+    int numUsers = factorization.numUsers();
+    int numItems = factorization.numItems();
+    out.writeInt(MappedFactorization.MAGIC);
+    out.writeInt(MappedFactorization.VERSION);
+    out.writeInt(numFeatures);
+    out.writeInt(numUsers);
+    out.writeInt(numItems);
+    pad(out, MappedFactorization.HEADER_SIZE - out.size());
+
+    long[] userIDs = sortedIDs(factorization.getUserIDMappings(), numUsers);
+    for (long userID : userIDs) {
+      out.writeLong(userID);
+    }
+    try {
+      for (long userID : userIDs) {
+        writeFeatures(factorization.getUserFeatures(userID), numFeatures, out);
+      }
+    } catch (TasteException te) {
+      throw new IOException("Unable to persist factorization", te);
+    }
+    pad(out, (int) (MappedFactorization.paddedFloatBytes((long) numUsers * numFeatures) - 4L * numUsers * numFeatures));
+
+    long[] itemIDs = sortedIDs(factorization.getItemIDMappings(), numItems);
+    for (long itemID : itemIDs) {
+      out.writeLong(itemID);
+    }
+    try {
+      for (long itemID : itemIDs) {
+        writeFeatures(factorization.getItemFeatures(itemID), numFeatures, out);
+      }
+    } catch (TasteException te) {
+      throw new IOException("Unable to persist factorization", te);
+    }
+    pad(out, (int) (MappedFactorization.paddedFloatBytes((long) numItems * numFeatures) - 4L * numItems * numFeatures));
+  }
+
+  private static long[] sortedIDs(Iterable<Map.Entry<Long,Integer>> mappings, int size) throws IOException {
+    long[] ids = new long[size];
+    int i = 0;
+    for (Map.Entry<Long,Integer> mapping : mappings) {
+      if (i == size) {
+        throw new IOException("More IDs than expected: " + size);
+      }
+      ids[i++] = mapping.getKey();
+    }
+    if (i != size) {
+      throw new IOException("Expected " + size + " IDs but found " + i);
+    }
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  private static void writeFeatures(double[] features, int numFeatures, DataOutputStream out) throws IOException {
+    for (int feature = 0; feature < numFeatures; feature++) {
+      out.writeFloat((float) features[feature]);
+    }
+  }
+
+  private static void pad(DataOutputStream out, int numBytes) throws IOException {
+    for (int i = 0; i < numBytes; i++) {
+      out.writeByte(0);
+    }
+  }
+
+}
@@ -0,0 +1,431 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A multithreaded in-memory implementation of "Alternating-Least-Squares with Weighted-λ-Regularization",
+ * computing the same factorization as {@link ALSWRFactorizer} but tuned for large rating matrices.</p>
+ *
+ * <p>The ratings are copied once into compact row-oriented arrays, indexed both by user and by item. Each
+ * half-iteration splits the users (or items) into contiguous chunks which are processed by a pool of threads that
+ * is created at the start and shut down at the end of every call to {@link #factorize()}. Every thread accumulates
+ * the normal equations of a row in its own primitive buffers and solves them in place with a Cholesky decomposition,
+ * so no {@link org.apache.mahout.math.Vector}s or {@link org.apache.mahout.math.Matrix}s are created per solve.</p>
+ *
+ * <p>Optionally the ratings can be treated as implicit feedback, as described in "Collaborative Filtering for
+ * Implicit Feedback Datasets" by Hu, Koren and Volinsky: every rating r gets a confidence of 1 + alpha * |r| and a
+ * preference of 1 if r is positive or 0 otherwise, while all missing entries count as preference 0 with
+ * confidence 1. The contribution of the missing entries is folded into a precomputed Y'Y per half-iteration.</p>
+ *
+ * <p>The duration of every iteration is logged and available from {@link #getIterationTimes()}.</p>
+ */
+public class ParallelALSFactorizer extends AbstractFactorizer {
+
+  private static final Logger log = LoggerFactory.getLogger(ParallelALSFactorizer.class);
+
+  /** number of chunks per thread, to balance rows with very different numbers of ratings */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private final DataModel dataModel;
+
+  /** number of features used to compute this factorization */
+  private final int numFeatures;
+  /** parameter to control the regularization */
+  private final double lambda;
+  /** number of iterations */
+  private final int numIterations;
+  /** whether the ratings are interpreted as implicit feedback */
+  private final boolean usesImplicitFeedback;
+  /** confidence weight of a rating when using implicit feedback */
+  private final double alpha;
+
+  private final int numThreads;
+  private final ThreadLocal<NormalEquations> normalEquations;
+
+  private volatile long[] iterationTimes;
+
+  public ParallelALSFactorizer(DataModel dataModel, int numFeatures, double lambda, int numIterations)
+    throws TasteException {
+    this(dataModel, numFeatures, lambda, numIterations, false, 0.0, Runtime.getRuntime().availableProcessors());
+  }
+
+  public ParallelALSFactorizer(DataModel dataModel, int numFeatures, double lambda, int numIterations,
+      boolean usesImplicitFeedback, double alpha, int numThreads) throws TasteException {
+    super(dataModel);
+    Preconditions.checkArgument(numFeatures > 0, "numFeatures must be greater than 0");
+    Preconditions.checkArgument(lambda > 0.0, "lambda must be greater than 0");
+    Preconditions.checkArgument(numIterations > 0, "numIterations must be greater than 0");
+    Preconditions.checkArgument(alpha >= 0.0, "alpha must not be negative");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater than 0");
+    this.dataModel = dataModel;
+    this.numFeatures = numFeatures;
+    this.lambda = lambda;
+    this.numIterations = numIterations;
+    this.usesImplicitFeedback = usesImplicitFeedback;
+    this.alpha = alpha;
+    this.numThreads = numThreads;
+    final int k = numFeatures;
+    this.normalEquations = new ThreadLocal<NormalEquations>() {
+      @Override
+      protected NormalEquations initialValue() {
+        return new NormalEquations(k);
+      }
+    };
+    this.iterationTimes = new long[0];
+  }
+
+  /**
+   * @return duration in milliseconds of every iteration of the last call to {@link #factorize()}
+   */
+  public long[] getIterationTimes() {
+    return iterationTimes.clone();
+  }
+
+  @Override
+  public Factorization factorize() throws TasteException {
+    log.info("starting to compute the factorization...");
+    int numUsers = dataModel.getNumUsers();
+    int numItems = dataModel.getNumItems();
+    RatingRows[] ratings = indexRatings(numUsers, numItems);
+    RatingRows userRatings = ratings[0];
+    RatingRows itemRatings = ratings[1];
+
+    double[][] U = new double[numUsers][numFeatures];
+    double[][] M = initialItemFeatures(itemRatings);
+
+    long[] times = new long[numIterations];
+    ExecutorService executor = FactorizerTasks.newExecutor("ParallelALSFactorizer", numThreads);
+    try {
+      for (int iteration = 0; iteration < numIterations; iteration++) {
+        long start = System.currentTimeMillis();
+        /* fix M - compute U */
+        solveAll(executor, userRatings, M, U);
+        /* fix U - compute M */
+        solveAll(executor, itemRatings, U, M);
+        times[iteration] = System.currentTimeMillis() - start;
+        log.info("iteration {} took {}ms", iteration, times[iteration]);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    iterationTimes = times;
+
+    log.info("finished computation of the factorization...");
+    return createFactorization(U, M);
+  }
+
+  /**
+   * copies all ratings into two {@link RatingRows}, the first one indexed by user, the second one by item
+   */
+  private RatingRows[] indexRatings(int numUsers, int numItems) throws TasteException {
+    PreferenceArray[] prefsOfUsers = new PreferenceArray[numUsers];
+    int[] userOffsets = new int[numUsers + 1];
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      int userIndex = userIndex(userID);
+      PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+      prefsOfUsers[userIndex] = prefs;
+      userOffsets[userIndex + 1] = prefs.length();
+    }
+    for (int n = 0; n < numUsers; n++) {
+      userOffsets[n + 1] += userOffsets[n];
+    }
+    int numRatings = userOffsets[numUsers];
+
+    int[] userColumns = new int[numRatings];
+    float[] userValues = new float[numRatings];
+    int[] itemOffsets = new int[numItems + 1];
+    for (int userIndex = 0; userIndex < numUsers; userIndex++) {
+      PreferenceArray prefs = prefsOfUsers[userIndex];
+      prefsOfUsers[userIndex] = null;
+      int offset = userOffsets[userIndex];
+      for (int n = 0; n < prefs.length(); n++) {
+        int itemIndex = itemIndex(prefs.getItemID(n));
+        userColumns[offset + n] = itemIndex;
+        userValues[offset + n] = prefs.getValue(n);
+        itemOffsets[itemIndex + 1]++;
+      }
+    }
+    for (int n = 0; n < numItems; n++) {
+      itemOffsets[n + 1] += itemOffsets[n];
+    }
+
+    /* transpose */
+    int[] itemColumns = new int[numRatings];
+    float[] itemValues = new float[numRatings];
+    int[] nextPositions = new int[numItems];
+    System.arraycopy(itemOffsets, 0, nextPositions, 0, numItems);
+    for (int userIndex = 0; userIndex < numUsers; userIndex++) {
+      for (int n = userOffsets[userIndex]; n < userOffsets[userIndex + 1]; n++) {
+        int position = nextPositions[userColumns[n]]++;
+        itemColumns[position] = userIndex;
+        itemValues[position] = userValues[n];
+      }
+    }
+
+    return new RatingRows[] { new RatingRows(userOffsets, userColumns, userValues),
+                              new RatingRows(itemOffsets, itemColumns, itemValues) };
+  }
+
+  /**
+   * initializes the first feature of every item with its average rating and the other ones with small random values
+   */
+  private double[][] initialItemFeatures(RatingRows itemRatings) throws TasteException {
+    Random random = RandomUtils.getRandom();
+    double[][] M = new double[itemRatings.numRows()][numFeatures];
+    LongPrimitiveIterator itemIDs = dataModel.getItemIDs();
+    while (itemIDs.hasNext()) {
+      int itemIndex = itemIndex(itemIDs.nextLong());
+      M[itemIndex][0] = itemRatings.average(itemIndex);
+      for (int feature = 1; feature < numFeatures; feature++) {
+        M[itemIndex][feature] = random.nextDouble() * 0.1;
+      }
+    }
+    return M;
+  }
+
+  /**
+   * solves the rows of {@code target} given the fixed features of the other side, one chunk of rows per task
+   */
+  private void solveAll(ExecutorService executor,
+                        final RatingRows rows,
+                        final double[][] fixed,
+                        final double[][] target) throws TasteException {
+    final double[] fixedGramian = usesImplicitFeedback ? gramian(executor, fixed) : null;
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    int numRows = rows.numRows();
+    int chunkSize = Math.max(1, (numRows + numThreads * CHUNKS_PER_THREAD - 1) / (numThreads * CHUNKS_PER_THREAD));
+    for (int start = 0; start < numRows; start += chunkSize) {
+      final int from = start;
+      final int to = Math.min(start + chunkSize, numRows);
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          NormalEquations equations = normalEquations.get();
+          for (int row = from; row < to; row++) {
+            equations.solve(rows, row, fixed, fixedGramian, target[row]);
+          }
+          return null;
+        }
+      });
+    }
+    FactorizerTasks.runAll(executor, tasks);
+  }
+
+  /**
+   * computes the lower triangle of Y'Y for the given feature matrix Y, partial sums are computed in parallel
+   */
+  private double[] gramian(ExecutorService executor, final double[][] features) throws TasteException {
+    List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+    int chunkSize = Math.max(1, (features.length + numThreads - 1) / numThreads);
+    for (int start = 0; start < features.length; start += chunkSize) {
+      final int from = start;
+      final int to = Math.min(start + chunkSize, features.length);
+      tasks.add(new Callable<double[]>() {
+        @Override
+        public double[] call() {
+          double[] partial = new double[numFeatures * numFeatures];
+          for (int row = from; row < to; row++) {
+            addOuterProduct(partial, features[row], 1.0, numFeatures);
+          }
+          return partial;
+        }
+      });
+    }
+    double[] gramian = new double[numFeatures * numFeatures];
+    for (double[] partial : FactorizerTasks.runAll(executor, tasks)) {
+      for (int n = 0; n < gramian.length; n++) {
+        gramian[n] += partial[n];
+      }
+    }
+    return gramian;
+  }
+
+  /**
+   * adds weight * x * x' to the lower triangle of the row-major k x k matrix a
+   */
+  static void addOuterProduct(double[] a, double[] x, double weight, int k) {
+    for (int i = 0; i < k; i++) {
+      double wxi = weight * x[i];
+      int rowOffset = i * k;
+      for (int j = 0; j <= i; j++) {
+        a[rowOffset + j] += wxi * x[j];
+      }
+    }
+  }
+
+  /**
+   * solves a * x = b in place for a symmetric positive definite row-major k x k matrix a, of which only the lower
+   * triangle is read. a is overwritten with its Cholesky factor, b with the solution.
+   */
+  static void choleskySolve(double[] a, double[] b, int k) {
+    for (int j = 0; j < k; j++) {
+      int jOffset = j * k;
+      double sum = a[jOffset + j];
+      for (int m = 0; m < j; m++) {
+        sum -= a[jOffset + m] * a[jOffset + m];
+      }
+      if (sum <= 0.0) {
+        throw new IllegalStateException("Matrix is not positive definite");
+      }
+      double pivot = Math.sqrt(sum);
+      a[jOffset + j] = pivot;
+      for (int i = j + 1; i < k; i++) {
+        int iOffset = i * k;
+        double s = a[iOffset + j];
+        for (int m = 0; m < j; m++) {
+          s -= a[iOffset + m] * a[jOffset + m];
+        }
+        a[iOffset + j] = s / pivot;
+      }
+    }
+    /* forward substitution L * y = b */
+    for (int i = 0; i < k; i++) {
+      int iOffset = i * k;
+      double s = b[i];
+      for (int m = 0; m < i; m++) {
+        s -= a[iOffset + m] * b[m];
+      }
+      b[i] = s / a[iOffset + i];
+    }
+    /* back substitution L' * x = y */
+    for (int i = k - 1; i >= 0; i--) {
+      double s = b[i];
+      for (int m = i + 1; m < k; m++) {
+        s -= a[m * k + i] * b[m];
+      }
+      b[i] = s / a[i * k + i];
+    }
+  }
+
+  /**
+   * ratings in compressed row format: the columns and values of row r are stored at [offsets[r], offsets[r + 1])
+   */
+  static final class RatingRows {
+
+    private final int[] offsets;
+    private final int[] columns;
+    private final float[] values;
+
+    RatingRows(int[] offsets, int[] columns, float[] values) {
+      this.offsets = offsets;
+      this.columns = columns;
+      this.values = values;
+    }
+
+    int numRows() {
+      return offsets.length - 1;
+    }
+
+    double average(int row) {
+      int from = offsets[row];
+      int to = offsets[row + 1];
+      if (from == to) {
+        return 0.0;
+      }
+      double sum = 0.0;
+      for (int n = from; n < to; n++) {
+        sum += values[n];
+      }
+      return sum / (to - from);
+    }
+  }
+
+  /**
+   * per-thread buffers to accumulate and solve the normal equations of a single row
+   */
+  private final class NormalEquations {
+
+    private final int k;
+    private final double[] a;
+    private final double[] b;
+
+    NormalEquations(int k) {
+      this.k = k;
+      a = new double[k * k];
+      b = new double[k];
+    }
+
+    void solve(RatingRows rows, int row, double[][] fixed, double[] fixedGramian, double[] target) {
+      int from = rows.offsets[row];
+      int to = rows.offsets[row + 1];
+      if (from == to) {
+        /* without ratings, both the explicit and the implicit solution is the zero vector */
+        Arrays.fill(target, 0.0);
+        return;
+      }
+
+      double regularization;
+      if (fixedGramian == null) {
+        Arrays.fill(a, 0.0);
+        regularization = lambda * (to - from);
+      } else {
+        System.arraycopy(fixedGramian, 0, a, 0, a.length);
+        regularization = lambda;
+      }
+      Arrays.fill(b, 0.0);
+
+      for (int n = from; n < to; n++) {
+        double[] y = fixed[rows.columns[n]];
+        double value = rows.values[n];
+        double weight;
+        double rhs;
+        if (fixedGramian == null) {
+          weight = 1.0;
+          rhs = value;
+        } else {
+          /* Y'CY = Y'Y + Y'(C - I)Y, the confidence of missing entries being 1 */
+          double confidence = 1.0 + alpha * Math.abs(value);
+          weight = confidence - 1.0;
+          rhs = value > 0.0 ? confidence : 0.0;
+        }
+        if (weight != 0.0) {
+          addOuterProduct(a, y, weight, k);
+        }
+        if (rhs != 0.0) {
+          for (int i = 0; i < k; i++) {
+            b[i] += rhs * y[i];
+          }
+        }
+      }
+      for (int i = 0; i < k; i++) {
+        a[i * k + i] += regularization;
+      }
+
+      choleskySolve(a, b, k);
+      System.arraycopy(b, 0, target, 0, k);
+    }
+  }
+
+}
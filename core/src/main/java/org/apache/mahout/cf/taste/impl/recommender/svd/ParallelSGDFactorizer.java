@@ -0,0 +1,362 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Factorizes the rating matrix with stochastic gradient descent, running the epochs on all cores at once.</p>
+ *
+ * <p>The ratings are copied into shuffled primitive arrays. Every epoch splits them into one slice per thread, and the
+ * threads update the shared user and item vectors without any locking, as described in "Hogwild!: A Lock-Free
+ * Approach to Parallelizing Stochastic Gradient Descent" by Niu, Recht, Ré and Wright. Since most ratings touch
+ * different users and items, lost updates are rare and do not hurt convergence.</p>
+ *
+ * <p>The model includes a global average and user and item biases. They are folded into the resulting
+ * {@link Factorization} so that the dot product of a user and an item vector is the full estimate: a user vector is
+ * (average, user bias, 1, features...) and an item vector is (1, 1, item bias, features...). The learning rate is
+ * multiplied by a decay factor after every epoch. If a holdout fraction is given, these ratings are not trained on,
+ * and training stops as soon as the RMSE on them stops improving, keeping the best vectors seen so far. A
+ * {@link TasteException} is thrown if the holdout RMSE is not even finite after the first epoch.</p>
+ */
+public class ParallelSGDFactorizer extends AbstractFactorizer {
+
+  private static final Logger log = LoggerFactory.getLogger(ParallelSGDFactorizer.class);
+
+  private static final int AVERAGE_INDEX = 0;
+  private static final int USER_BIAS_INDEX = 1;
+  private static final int ITEM_BIAS_INDEX = 2;
+  private static final int FEATURE_OFFSET = 3;
+
+  private final DataModel dataModel;
+
+  /** number of features used to compute this factorization */
+  private final int numFeatures;
+  /** initial learning rate */
+  private final double learningRate;
+  /** factor the learning rate is multiplied with after every epoch */
+  private final double learningRateDecay;
+  /** parameter to control the regularization */
+  private final double lambda;
+  /** standard deviation of the random initial feature values */
+  private final double randomNoise;
+  /** maximum number of passes over the ratings */
+  private final int numEpochs;
+  /** fraction of the ratings used to decide when to stop */
+  private final double holdoutFraction;
+
+  private final int numThreads;
+
+  private volatile long[] epochTimes;
+
+  public ParallelSGDFactorizer(DataModel dataModel, int numFeatures, double lambda, int numEpochs)
+    throws TasteException {
+    this(dataModel, numFeatures, 0.01, 0.95, lambda, 0.01, numEpochs, 0.0, Runtime.getRuntime().availableProcessors());
+  }
+
+  public ParallelSGDFactorizer(DataModel dataModel, int numFeatures, double learningRate, double learningRateDecay,
+      double lambda, double randomNoise, int numEpochs, double holdoutFraction, int numThreads)
+    throws TasteException {
+    super(dataModel);
+    Preconditions.checkArgument(numFeatures > 0, "numFeatures must be greater than 0");
+    Preconditions.checkArgument(learningRate > 0.0, "learningRate must be greater than 0");
+    Preconditions.checkArgument(learningRateDecay > 0.0 && learningRateDecay <= 1.0,
+        "learningRateDecay must be in (0,1]");
+    Preconditions.checkArgument(lambda >= 0.0, "lambda must not be negative");
+    Preconditions.checkArgument(numEpochs > 0, "numEpochs must be greater than 0");
+    Preconditions.checkArgument(holdoutFraction >= 0.0 && holdoutFraction < 1.0, "holdoutFraction must be in [0,1)");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater than 0");
+    this.dataModel = dataModel;
+    this.numFeatures = numFeatures;
+    this.learningRate = learningRate;
+    this.learningRateDecay = learningRateDecay;
+    this.lambda = lambda;
+    this.randomNoise = randomNoise;
+    this.numEpochs = numEpochs;
+    this.holdoutFraction = holdoutFraction;
+    this.numThreads = numThreads;
+    this.epochTimes = new long[0];
+  }
+
+  /**
+   * @return duration in milliseconds of every epoch run by the last call to {@link #factorize()}
+   */
+  public long[] getEpochTimes() {
+    return epochTimes.clone();
+  }
+
+  @Override
+  public Factorization factorize() throws TasteException {
+    log.info("starting to compute the factorization...");
+    Random random = RandomUtils.getRandom();
+    Ratings ratings = shuffledRatings(random);
+    int numTraining = ratings.size() - (int) (ratings.size() * holdoutFraction);
+
+    double[][] userVectors = new double[dataModel.getNumUsers()][FEATURE_OFFSET + numFeatures];
+    double[][] itemVectors = new double[dataModel.getNumItems()][FEATURE_OFFSET + numFeatures];
+    double average = ratings.average(0, numTraining);
+    for (double[] userVector : userVectors) {
+      userVector[AVERAGE_INDEX] = average;
+      userVector[ITEM_BIAS_INDEX] = 1.0;
+      for (int feature = FEATURE_OFFSET; feature < userVector.length; feature++) {
+        userVector[feature] = random.nextGaussian() * randomNoise;
+      }
+    }
+    for (double[] itemVector : itemVectors) {
+      itemVector[AVERAGE_INDEX] = 1.0;
+      itemVector[USER_BIAS_INDEX] = 1.0;
+      for (int feature = FEATURE_OFFSET; feature < itemVector.length; feature++) {
+        itemVector[feature] = random.nextGaussian() * randomNoise;
+      }
+    }
+
+    double[][] bestUserVectors = null;
+    double[][] bestItemVectors = null;
+    double bestRmse = Double.POSITIVE_INFINITY;
+    double currentLearningRate = learningRate;
+    long[] times = new long[numEpochs];
+    int epoch = 0;
+    ExecutorService executor = FactorizerTasks.newExecutor("ParallelSGDFactorizer", numThreads);
+    try {
+      for (; epoch < numEpochs; epoch++) {
+        long start = System.currentTimeMillis();
+        double trainingRmse = trainEpoch(executor, ratings, numTraining, userVectors, itemVectors, currentLearningRate);
+        currentLearningRate *= learningRateDecay;
+
+        if (numTraining == ratings.size()) {
+          times[epoch] = System.currentTimeMillis() - start;
+          log.info("epoch {} took {}ms, training RMSE {}", new Object[] { epoch, times[epoch], trainingRmse });
+          continue;
+        }
+        double holdoutRmse = rmse(executor, ratings, numTraining, ratings.size(), userVectors, itemVectors);
+        times[epoch] = System.currentTimeMillis() - start;
+        log.info("epoch {} took {}ms, training RMSE {}, holdout RMSE {}",
+            new Object[] { epoch, times[epoch], trainingRmse, holdoutRmse });
+        if (!(holdoutRmse < bestRmse)) {
+          if (bestUserVectors == null) {
+            throw new TasteException("holdout RMSE is " + holdoutRmse + " after the first epoch, the factorization "
+                + "diverged; try a lower learning rate");
+          }
+          log.info("holdout RMSE stopped improving, stopping after epoch {}", epoch);
+          userVectors = bestUserVectors;
+          itemVectors = bestItemVectors;
+          epoch++;
+          break;
+        }
+        bestRmse = holdoutRmse;
+        bestUserVectors = copy(userVectors, bestUserVectors);
+        bestItemVectors = copy(itemVectors, bestItemVectors);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    long[] epochTimesRun = new long[epoch];
+    System.arraycopy(times, 0, epochTimesRun, 0, epoch);
+    epochTimes = epochTimesRun;
+
+    log.info("finished computation of the factorization...");
+    return createFactorization(userVectors, itemVectors);
+  }
+
+  /**
+   * copies all ratings into primitive arrays and shuffles them
+   */
+  private Ratings shuffledRatings(Random random) throws TasteException {
+    List<PreferenceArray> prefsOfUsers = new ArrayList<PreferenceArray>(dataModel.getNumUsers());
+    int numRatings = 0;
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      PreferenceArray prefs = dataModel.getPreferencesFromUser(userIDs.nextLong());
+      prefsOfUsers.add(prefs);
+      numRatings += prefs.length();
+    }
+
+    Ratings ratings = new Ratings(numRatings);
+    int index = 0;
+    for (PreferenceArray prefs : prefsOfUsers) {
+      if (prefs.length() == 0) {
+        continue;
+      }
+      int userIndex = userIndex(prefs.getUserID(0));
+      for (int n = 0; n < prefs.length(); n++) {
+        ratings.userIndexes[index] = userIndex;
+        ratings.itemIndexes[index] = itemIndex(prefs.getItemID(n));
+        ratings.values[index] = prefs.getValue(n);
+        index++;
+      }
+    }
+    ratings.shuffle(random);
+    return ratings;
+  }
+
+  /**
+   * runs one epoch of SGD over the first numTraining ratings, one slice per thread, without any locking
+   *
+   * @return the RMSE of the training ratings as seen during the epoch
+   */
+  private double trainEpoch(ExecutorService executor, final Ratings ratings, int numTraining,
+      final double[][] userVectors, final double[][] itemVectors, final double rate) throws TasteException {
+    List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(numThreads);
+    int sliceSize = (numTraining + numThreads - 1) / numThreads;
+    for (int start = 0; start < numTraining; start += sliceSize) {
+      final int from = start;
+      final int to = Math.min(start + sliceSize, numTraining);
+      tasks.add(new Callable<Double>() {
+        @Override
+        public Double call() {
+          double squaredErrors = 0.0;
+          for (int n = from; n < to; n++) {
+            double err = update(userVectors[ratings.userIndexes[n]], itemVectors[ratings.itemIndexes[n]],
+                ratings.values[n], rate);
+            squaredErrors += err * err;
+          }
+          return squaredErrors;
+        }
+      });
+    }
+    double squaredErrors = 0.0;
+    for (Double partial : FactorizerTasks.runAll(executor, tasks)) {
+      squaredErrors += partial;
+    }
+    return Math.sqrt(squaredErrors / numTraining);
+  }
+
+  /**
+   * one SGD step for a single rating
+   *
+   * @return the error of the estimate before the step
+   */
+  private double update(double[] userVector, double[] itemVector, double value, double rate) {
+    double err = value - dot(userVector, itemVector);
+    userVector[USER_BIAS_INDEX] += rate * (err - lambda * userVector[USER_BIAS_INDEX]);
+    itemVector[ITEM_BIAS_INDEX] += rate * (err - lambda * itemVector[ITEM_BIAS_INDEX]);
+    for (int feature = FEATURE_OFFSET; feature < userVector.length; feature++) {
+      double userFeature = userVector[feature];
+      double itemFeature = itemVector[feature];
+      userVector[feature] += rate * (err * itemFeature - lambda * userFeature);
+      itemVector[feature] += rate * (err * userFeature - lambda * itemFeature);
+    }
+    return err;
+  }
+
+  private double rmse(ExecutorService executor, final Ratings ratings, int from, int to, final double[][] userVectors,
+      final double[][] itemVectors) throws TasteException {
+    List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(numThreads);
+    int sliceSize = Math.max(1, (to - from + numThreads - 1) / numThreads);
+    for (int start = from; start < to; start += sliceSize) {
+      final int sliceFrom = start;
+      final int sliceTo = Math.min(start + sliceSize, to);
+      tasks.add(new Callable<Double>() {
+        @Override
+        public Double call() {
+          double squaredErrors = 0.0;
+          for (int n = sliceFrom; n < sliceTo; n++) {
+            double err = ratings.values[n]
+                - dot(userVectors[ratings.userIndexes[n]], itemVectors[ratings.itemIndexes[n]]);
+            squaredErrors += err * err;
+          }
+          return squaredErrors;
+        }
+      });
+    }
+    double squaredErrors = 0.0;
+    for (Double partial : FactorizerTasks.runAll(executor, tasks)) {
+      squaredErrors += partial;
+    }
+    return Math.sqrt(squaredErrors / (to - from));
+  }
+
+  private static double dot(double[] userVector, double[] itemVector) {
+    double sum = 0.0;
+    for (int n = 0; n < userVector.length; n++) {
+      sum += userVector[n] * itemVector[n];
+    }
+    return sum;
+  }
+
+  private static double[][] copy(double[][] source, double[][] target) {
+    if (target == null) {
+      target = new double[source.length][];
+    }
+    for (int n = 0; n < source.length; n++) {
+      if (target[n] == null) {
+        target[n] = source[n].clone();
+      } else {
+        System.arraycopy(source[n], 0, target[n], 0, source[n].length);
+      }
+    }
+    return target;
+  }
+
+  /**
+   * all ratings as parallel primitive arrays
+   */
+  private static final class Ratings {
+
+    private final int[] userIndexes;
+    private final int[] itemIndexes;
+    private final float[] values;
+
+    Ratings(int size) {
+      userIndexes = new int[size];
+      itemIndexes = new int[size];
+      values = new float[size];
+    }
+
+    int size() {
+      return values.length;
+    }
+
+    double average(int from, int to) {
+      double sum = 0.0;
+      for (int n = from; n < to; n++) {
+        sum += values[n];
+      }
+      return to > from ? sum / (to - from) : 0.0;
+    }
+
+    /* Fisher-Yates */
+    void shuffle(Random random) {
+      for (int n = values.length - 1; n > 0; n--) {
+        int swapWith = random.nextInt(n + 1);
+        int userIndex = userIndexes[n];
+        userIndexes[n] = userIndexes[swapWith];
+        userIndexes[swapWith] = userIndex;
+        int itemIndex = itemIndexes[n];
+        itemIndexes[n] = itemIndexes[swapWith];
+        itemIndexes[swapWith] = itemIndex;
+        float value = values[n];
+        values[n] = values[swapWith];
+        values[swapWith] = value;
+      }
+    }
+  }
+
+}
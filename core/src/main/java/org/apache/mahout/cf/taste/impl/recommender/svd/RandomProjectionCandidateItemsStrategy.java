@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
+import org.apache.mahout.cf.taste.recommender.MostSimilarItemsCandidateItemsStrategy;
+
+/**
+ * <p>
+ * Returns as candidates only the items a {@link RandomProjectionItemIndex} finds likely to have a large inner
+ * product with the user's features, or with the features of the given items, instead of all items. With an
+ * {@link SVDRecommender} over the same {@link Factorization}, this trades a little recall for scoring far fewer
+ * items. Use {@link org.apache.mahout.cf.taste.impl.eval.ApproximateRecommenderEvaluator} to measure how much.
+ * </p>
+ *
+ * <p>
+ * The index is built over one fixed factorization. If the recommender computes a new one, for example on
+ * refresh, build a new index and strategy for it.
+ * </p>
+ */
+public final class RandomProjectionCandidateItemsStrategy
+    implements CandidateItemsStrategy, MostSimilarItemsCandidateItemsStrategy {
+
+  private final RandomProjectionItemIndex index;
+  private final int probesPerTable;
+
+  public RandomProjectionCandidateItemsStrategy(RandomProjectionItemIndex index) {
+    this(index, 1);
+  }
+
+  /**
+   * @param probesPerTable number of buckets to look in per hash table; more finds more of the best items, but
+   *  returns more candidates. See {@link RandomProjectionItemIndex#getCandidateItems(double[], int)}.
+   */
+  public RandomProjectionCandidateItemsStrategy(RandomProjectionItemIndex index, int probesPerTable) {
+    Preconditions.checkArgument(index != null, "index is null");
+    Preconditions.checkArgument(probesPerTable >= 1, "probesPerTable must be at least 1");
+    this.index = index;
+    this.probesPerTable = probesPerTable;
+  }
+
+  @Override
+  public FastIDSet getCandidateItems(long userID, PreferenceArray preferencesFromUser, DataModel dataModel)
+    throws TasteException {
+    double[] userFeatures = index.getFactorization().getUserFeatures(userID);
+    FastIDSet candidateItemIDs = index.getCandidateItems(userFeatures, probesPerTable);
+    candidateItemIDs.removeAll(preferencesFromUser.getIDs());
+    return candidateItemIDs;
+  }
+
+  @Override
+  public FastIDSet getCandidateItems(long[] itemIDs, DataModel dataModel) throws TasteException {
+    FastIDSet candidateItemIDs = new FastIDSet();
+    for (long itemID : itemIDs) {
+      double[] itemFeatures = index.getFactorization().getItemFeatures(itemID);
+      candidateItemIDs.addAll(index.getCandidateItems(itemFeatures, probesPerTable));
+    }
+    candidateItemIDs.removeAll(itemIDs);
+    return candidateItemIDs;
+  }
+
+}
@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.common.RandomUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * An approximate index over the item features of a {@link Factorization}, which quickly finds items likely to
+ * have a large inner product with a given user's (or item's) features, without scoring every item. This is
+ * locality-sensitive hashing with random hyperplanes: each item falls into one bucket per hash table, according
+ * to which side of each of the table's hyperplanes its features lie on, and a query looks only at the buckets
+ * it falls into itself.
+ * </p>
+ *
+ * <p>
+ * Random hyperplanes find vectors at a small angle, not with a large inner product. So item features are first
+ * scaled so that the largest has length 1, and extended with one more component which brings each to length
+ * 1; queries are normalized and extended with 0. The inner product of two such vectors is then proportional
+ * to that of the originals, and their angle is smaller the larger it is.
+ * </p>
+ *
+ * <p>
+ * More hash tables find more of the true best items, at the cost of more memory and more candidates per query.
+ * More bits per table make buckets smaller, so queries are faster but find fewer of them. Probing more than one
+ * bucket per table, see {@link #getCandidateItems(double[], int)}, raises recall without rebuilding.
+ * </p>
+ */
+public final class RandomProjectionItemIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(RandomProjectionItemIndex.class);
+
+  private final Factorization factorization;
+  private final int numFeatures;
+  /** hyperplane normals, by table, then bit, then dimension (one more than the number of features) */
+  private final double[][][] hyperplanes;
+  /** distinct hash codes by table, sorted */
+  private final long[][] bucketCodes;
+  /** start of each bucket in bucketItemIDs by table, plus one final offset equal to the number of items */
+  private final int[][] bucketOffsets;
+  /** item IDs by table, grouped by bucket */
+  private final long[][] bucketItemIDs;
+
+  /**
+   * @param factorization factorization whose item features are indexed
+   * @param numHashTables number of independent hash tables, at least 1
+   * @param numHashBits number of hyperplanes per table, from 1 to 31
+   */
+  public RandomProjectionItemIndex(Factorization factorization, int numHashTables, int numHashBits)
+    throws TasteException {
+    this(factorization, numHashTables, numHashBits, RandomUtils.getRandom());
+  }
+
+  RandomProjectionItemIndex(Factorization factorization, int numHashTables, int numHashBits, Random random)
+    throws TasteException {
+    Preconditions.checkArgument(factorization != null, "factorization is null");
+    Preconditions.checkArgument(numHashTables >= 1, "numHashTables must be at least 1");
+    Preconditions.checkArgument(numHashBits >= 1 && numHashBits <= 31, "numHashBits must be from 1 to 31");
+    this.factorization = factorization;
+    numFeatures = factorization.numFeatures();
+
+    int numItems = factorization.numItems();
+    long[] itemIDs = new long[numItems];
+    double[][] itemFeatures = new double[numItems][];
+    double maxNorm = 0.0;
+    int i = 0;
+    for (Map.Entry<Long,Integer> mapping : factorization.getItemIDMappings()) {
+      itemIDs[i] = mapping.getKey();
+      itemFeatures[i] = factorization.getItemFeatures(itemIDs[i]);
+      maxNorm = Math.max(maxNorm, norm(itemFeatures[i]));
+      i++;
+    }
+
+    hyperplanes = new double[numHashTables][numHashBits][numFeatures + 1];
+    for (double[][] table : hyperplanes) {
+      for (double[] hyperplane : table) {
+        for (int dimension = 0; dimension <= numFeatures; dimension++) {
+          hyperplane[dimension] = random.nextGaussian();
+        }
+      }
+    }
+
+    bucketCodes = new long[numHashTables][];
+    bucketOffsets = new int[numHashTables][];
+    bucketItemIDs = new long[numHashTables][];
+    double[] augmented = new double[numFeatures + 1];
+    double[] projections = new double[numHashBits];
+    for (int table = 0; table < numHashTables; table++) {
+      // Pack code and item index into one long, so that sorting groups items by bucket
+      long[] codesAndIndices = new long[numItems];
+      for (int item = 0; item < numItems; item++) {
+        augmentItem(itemFeatures[item], maxNorm, augmented);
+        int code = hash(table, augmented, projections);
+        codesAndIndices[item] = ((long) code << 32) | item;
+      }
+      Arrays.sort(codesAndIndices);
+
+      long[] codes = new long[numItems];
+      int[] offsets = new int[numItems + 1];
+      long[] ids = new long[numItems];
+      int numBuckets = 0;
+      for (int item = 0; item < numItems; item++) {
+        long code = codesAndIndices[item] >>> 32;
+        if (numBuckets == 0 || codes[numBuckets - 1] != code) {
+          codes[numBuckets] = code;
+          offsets[numBuckets] = item;
+          numBuckets++;
+        }
+        ids[item] = itemIDs[(int) codesAndIndices[item]];
+      }
+      offsets[numBuckets] = numItems;
+      bucketCodes[table] = Arrays.copyOf(codes, numBuckets);
+      bucketOffsets[table] = Arrays.copyOf(offsets, numBuckets + 1);
+      bucketItemIDs[table] = ids;
+    }
+    log.info("Indexed {} items in {} hash tables of {} bits", new Object[] {numItems, numHashTables, numHashBits});
+  }
+
+  public Factorization getFactorization() {
+    return factorization;
+  }
+
+  /**
+   * @param features user or item features to find items for
+   * @param probesPerTable number of buckets to look in per hash table, at least 1. Beyond the query's own bucket,
+   *  these are the buckets across each of the hyperplanes nearest to the query.
+   * @return IDs of items in the same bucket as the query in any hash table, and optionally nearby buckets
+   */
+  public FastIDSet getCandidateItems(double[] features, int probesPerTable) {
+    Preconditions.checkArgument(features.length == numFeatures, "Expected %s features", numFeatures);
+    Preconditions.checkArgument(probesPerTable >= 1, "probesPerTable must be at least 1");
+    int numHashBits = hyperplanes[0].length;
+    double[] augmented = new double[numFeatures + 1];
+    augmentQuery(features, augmented);
+    double[] projections = new double[numHashBits];
+    FastIDSet candidates = new FastIDSet();
+    for (int table = 0; table < hyperplanes.length; table++) {
+      int code = hash(table, augmented, projections);
+      addBucket(table, code, candidates);
+      int extraProbes = Math.min(probesPerTable - 1, numHashBits);
+      if (extraProbes > 0) {
+        for (int bit : closestHyperplanes(projections, extraProbes)) {
+          addBucket(table, code ^ (1 << bit), candidates);
+        }
+      }
+    }
+    return candidates;
+  }
+
+  private void addBucket(int table, long code, FastIDSet candidates) {
+    int bucket = Arrays.binarySearch(bucketCodes[table], code);
+    if (bucket >= 0) {
+      long[] ids = bucketItemIDs[table];
+      int end = bucketOffsets[table][bucket + 1];
+      for (int i = bucketOffsets[table][bucket]; i < end; i++) {
+        candidates.add(ids[i]);
+      }
+    }
+  }
+
+  /**
+   * @return hash code of the given vector in the given table; also leaves its projection onto each hyperplane in
+   *  <code>projections</code>
+   */
+  private int hash(int table, double[] vector, double[] projections) {
+    double[][] tableHyperplanes = hyperplanes[table];
+    int code = 0;
+    for (int bit = 0; bit < tableHyperplanes.length; bit++) {
+      double[] hyperplane = tableHyperplanes[bit];
+      double projection = 0.0;
+      for (int dimension = 0; dimension < vector.length; dimension++) {
+        projection += hyperplane[dimension] * vector[dimension];
+      }
+      projections[bit] = projection;
+      if (projection >= 0.0) {
+        code |= 1 << bit;
+      }
+    }
+    return code;
+  }
+
+  /**
+   * @return indices of the <code>howMany</code> projections of smallest magnitude, that is, the hyperplanes the
+   *  query is closest to
+   */
+  private static int[] closestHyperplanes(double[] projections, int howMany) {
+    int[] closest = new int[howMany];
+    boolean[] taken = new boolean[projections.length];
+    for (int i = 0; i < howMany; i++) {
+      int best = -1;
+      for (int bit = 0; bit < projections.length; bit++) {
+        if (!taken[bit] && (best < 0 || Math.abs(projections[bit]) < Math.abs(projections[best]))) {
+          best = bit;
+        }
+      }
+      taken[best] = true;
+      closest[i] = best;
+    }
+    return closest;
+  }
+
+  private void augmentItem(double[] features, double maxNorm, double[] augmented) {
+    double squaredLength = 0.0;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      double scaled = maxNorm > 0.0 ? features[feature] / maxNorm : 0.0;
+      augmented[feature] = scaled;
+      squaredLength += scaled * scaled;
+    }
+    augmented[numFeatures] = Math.sqrt(Math.max(0.0, 1.0 - squaredLength));
+  }
+
+  private void augmentQuery(double[] features, double[] augmented) {
+    double norm = norm(features);
+    for (int feature = 0; feature < numFeatures; feature++) {
+      augmented[feature] = norm > 0.0 ? features[feature] / norm : 0.0;
+    }
+    augmented[numFeatures] = 0.0;
+  }
+
+  private static double norm(double[] vector) {
+    double squaredLength = 0.0;
+    for (double value : vector) {
+      squaredLength += value * value;
+    }
+    return Math.sqrt(squaredLength);
+  }
+
+}
@@ -18,6 +18,7 @@
 package org.apache.mahout.cf.taste.impl.recommender.svd;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -28,6 +29,7 @@ import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.recommender.AbstractRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.TopIDHeap;
 import org.apache.mahout.cf.taste.impl.recommender.TopItems;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
@@ -44,6 +46,8 @@ import org.slf4j.LoggerFactory;
 public final class SVDRecommender extends AbstractRecommender {
 
   private Factorization factorization;
+  private volatile ItemFeatureBlock itemFeatureBlock;
+  private volatile int batchScoringThreshold = Integer.MAX_VALUE;
   private final Factorizer factorizer;
   private final PersistenceStrategy persistenceStrategy;
   private final RefreshHelper refreshHelper;
@@ -121,6 +125,7 @@ public final class SVDRecommender extends AbstractRecommender {
 
   private void train() throws TasteException {
     factorization = factorizer.factorize();
+    itemFeatureBlock = null;
     try {
       persistenceStrategy.maybePersist(factorization);
     } catch (IOException e) {
@@ -136,38 +141,110 @@ public final class SVDRecommender extends AbstractRecommender {
     PreferenceArray preferencesFromUser = getDataModel().getPreferencesFromUser(userID);
     FastIDSet possibleItemIDs = getAllOtherItems(userID, preferencesFromUser);
 
-    List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer,
-        new Estimator(userID));
+    List<RecommendedItem> topItems;
+    if (possibleItemIDs.size() >= batchScoringThreshold) {
+      TopIDHeap heap = new TopIDHeap(howMany);
+      getItemFeatureBlock().addTopItems(new double[][] {factorization.getUserFeatures(userID)},
+                                        new FastIDSet[] {possibleItemIDs},
+                                        rescorer,
+                                        new TopIDHeap[] {heap});
+      topItems = heap.toRecommendedItems();
+    } else {
+      topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer, new Estimator(userID));
+    }
     log.debug("Recommendations are: {}", topItems);
 
     return topItems;
   }
 
+  /**
+   * <p>
+   * Recommends items to many users at once, as when generating recommendations offline. Item features are
+   * copied into one contiguous array the first time this is called after each factorization, unless they are
+   * read in place from a {@link MappedFactorization}, and then scored against all the given users a block of
+   * items at a time, so that each block is read from memory only once per call. Callers with very many users
+   * should pass them in batches of, say, a few hundred to a few thousand, since a candidate set is held for each
+   * user at once.
+   * </p>
+   *
+   * @return recommendations for each user, in the same order as <code>userIDs</code>
+   */
+  public List<List<RecommendedItem>> recommend(long[] userIDs, int howMany, IDRescorer rescorer)
+    throws TasteException {
+    Preconditions.checkArgument(userIDs != null, "userIDs is null");
+    Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
+
+    int numUsers = userIDs.length;
+    double[][] userFeatures = new double[numUsers][];
+    FastIDSet[] possibleItemIDs = new FastIDSet[numUsers];
+    TopIDHeap[] heaps = new TopIDHeap[numUsers];
+    for (int i = 0; i < numUsers; i++) {
+      long userID = userIDs[i];
+      userFeatures[i] = factorization.getUserFeatures(userID);
+      possibleItemIDs[i] = getAllOtherItems(userID, getDataModel().getPreferencesFromUser(userID));
+      heaps[i] = new TopIDHeap(howMany);
+    }
+
+    getItemFeatureBlock().addTopItems(userFeatures, possibleItemIDs, rescorer, heaps);
+
+    List<List<RecommendedItem>> result = new ArrayList<List<RecommendedItem>>(numUsers);
+    for (TopIDHeap heap : heaps) {
+      result.add(heap.toRecommendedItems());
+    }
+    return result;
+  }
+
+  /**
+   * Makes {@link #recommend(long, int, IDRescorer)} score users with at least the given number of candidate
+   * items against all item features at once, as {@link #recommend(long[], int, IDRescorer)} does, rather than
+   * looking up each candidate item's features in turn. This is faster when candidates are a large part of all
+   * items, but holds a copy of all item features in memory unless the factorization is a
+   * {@link MappedFactorization}.
+   *
+   * @param minCandidates number of candidate items at which to start scoring in a batch, or
+   *  {@link Integer#MAX_VALUE} to always score items one by one, which is the default
+   */
+  public void setBatchScoringThreshold(int minCandidates) {
+    Preconditions.checkArgument(minCandidates >= 1, "minCandidates must be at least 1");
+    this.batchScoringThreshold = minCandidates;
+  }
+
+  public int getBatchScoringThreshold() {
+    return batchScoringThreshold;
+  }
+
+  private ItemFeatureBlock getItemFeatureBlock() throws TasteException {
+    Factorization currentFactorization = factorization;
+    ItemFeatureBlock block = itemFeatureBlock;
+    if (block == null || !block.isFrom(currentFactorization)) {
+      block = new ItemFeatureBlock(currentFactorization);
+      itemFeatureBlock = block;
+    }
+    return block;
+  }
+
   /**
    * a preference is estimated by computing the dot-product of the user and item feature vectors
    */
   @Override
   public float estimatePreference(long userID, long itemID) throws TasteException {
-    double[] userFeatures = factorization.getUserFeatures(userID);
-    double[] itemFeatures = factorization.getItemFeatures(itemID);
-    double estimate = 0;
-    for (int feature = 0; feature < userFeatures.length; feature++) {
-      estimate += userFeatures[feature] * itemFeatures[feature];
-    }
-    return (float) estimate;
+    return (float) factorization.dotItemFeatures(factorization.getUserFeatures(userID), itemID);
   }
 
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
 
-    private final long theUserID;
+    private final Factorization theFactorization;
+    private final double[] userFeatures;
 
-    private Estimator(long theUserID) {
-      this.theUserID = theUserID;
+    private Estimator(long userID) throws TasteException {
+      // Look up the user's features once, and read each candidate item's features in place
+      theFactorization = factorization;
+      userFeatures = theFactorization.getUserFeatures(userID);
     }
 
     @Override
-    public double estimate(Long itemID) throws TasteException {
-      return estimatePreference(theUserID, itemID);
+    public double estimate(long itemID) throws TasteException {
+      return (float) theFactorization.dotItemFeatures(userFeatures, itemID);
     }
   }
 
@@ -18,12 +18,14 @@
 package org.apache.mahout.cf.taste.impl.similarity;
 
 import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
 
 import java.util.Collection;
@@ -44,6 +46,15 @@ public abstract class AbstractItemSimilarity implements ItemSimilarity {
     return dataModel;
   }
 
+  /**
+   * @return true if the similarity of two items, or of two users, depends only on the preferences of those two,
+   *  and so changes only when theirs do; false, the default, if it may depend on other data as well, such as the
+   *  number of all users
+   */
+  public boolean dependsOnlyOnPair() {
+    return false;
+  }
+
   @Override
   public long[] allSimilarItemIDs(long itemID) throws TasteException {
     FastIDSet allSimilarItemIDs = new FastIDSet();
@@ -57,8 +68,137 @@ public abstract class AbstractItemSimilarity implements ItemSimilarity {
     return allSimilarItemIDs.toArray();
   }
 
+  /**
+   * Reads the preferences for the given items once, so that they can be compared with many other items by
+   * {@link #itemSimilarities(long, ItemVectors)}, such as a user's items with every candidate item when
+   * recommending. Unknown items have no preferences.
+   */
+  public final ItemVectors itemVectors(long[] itemIDs) throws TasteException {
+    int length = itemIDs.length;
+    long[][] userIDs = new long[length][];
+    double[][] values = new double[length][];
+    for (int i = 0; i < length; i++) {
+      PreferenceArray prefs = preferencesForItem(itemIDs[i]);
+      int numPrefs = prefs == null ? 0 : prefs.length();
+      userIDs[i] = new long[numPrefs];
+      values[i] = new double[numPrefs];
+      for (int j = 0; j < numPrefs; j++) {
+        userIDs[i][j] = prefs.getUserID(j);
+        values[i][j] = prefs.getValue(j);
+      }
+    }
+    return new ItemVectors(itemIDs, userIDs, values);
+  }
+
+  /**
+   * Like {@link #itemSimilarities(long, long[])} for the items of the given {@link ItemVectors}, but without
+   * reading their preferences again. This implementation just calls that method; subclasses which can use the
+   * vectors override it.
+   */
+  public double[] itemSimilarities(long itemID1, ItemVectors itemVectors) throws TasteException {
+    return itemSimilarities(itemID1, itemVectors.getItemIDs());
+  }
+
+  /**
+   * For each of several items, counts the users who expressed a preference for it, and how many of those also
+   * did for one other item, through {@link DataModel#getNumUsersWithPreferenceFor(long...)}.
+   *
+   * @param preferring2 receives, for each of itemID2s, the number of users who prefer it
+   * @param preferring1and2 receives, for each of itemID2s, the number of users who prefer it and itemID1
+   * @return number of users who prefer itemID1
+   */
+  final int countUsersWithPreferenceFor(long itemID1,
+                                        long[] itemID2s,
+                                        int[] preferring2,
+                                        int[] preferring1and2) throws TasteException {
+    int preferring1 = dataModel.getNumUsersWithPreferenceFor(itemID1);
+    for (int i = 0; i < itemID2s.length; i++) {
+      long itemID2 = itemID2s[i];
+      preferring2[i] = dataModel.getNumUsersWithPreferenceFor(itemID2);
+      preferring1and2[i] = preferring1 == 0 ? 0 : dataModel.getNumUsersWithPreferenceFor(itemID1, itemID2);
+    }
+    return preferring1;
+  }
+
+  /**
+   * Like {@link #countUsersWithPreferenceFor(long, long[], int[], int[])}, for the items of the given
+   * {@link ItemVectors}. Their users are already at hand, so the users of the other item are read once and
+   * intersected with each of them, rather than counted pair by pair.
+   */
+  final int countUsersWithPreferenceFor(long itemID1,
+                                        ItemVectors itemVectors,
+                                        int[] preferring2,
+                                        int[] preferring1and2) throws TasteException {
+    FastIDSet userIDs1 = userIDs(preferencesForItem(itemID1));
+    int preferring1 = userIDs1.size();
+    for (int i = 0; i < itemVectors.size(); i++) {
+      long[] userIDs2 = itemVectors.getUserIDs(i);
+      int intersection = 0;
+      if (preferring1 > 0) {
+        for (long userID2 : userIDs2) {
+          if (userIDs1.contains(userID2)) {
+            intersection++;
+          }
+        }
+      }
+      preferring2[i] = userIDs2.length;
+      preferring1and2[i] = intersection;
+    }
+    return preferring1;
+  }
+
+  private static FastIDSet userIDs(PreferenceArray prefs) {
+    int length = prefs == null ? 0 : prefs.length();
+    FastIDSet userIDs = new FastIDSet(length);
+    for (int i = 0; i < length; i++) {
+      userIDs.add(prefs.getUserID(i));
+    }
+    return userIDs;
+  }
+
+  private PreferenceArray preferencesForItem(long itemID) throws TasteException {
+    try {
+      return dataModel.getPreferencesForItem(itemID);
+    } catch (NoSuchItemException nsie) {
+      return null;
+    }
+  }
+
   @Override
   public void refresh(Collection<Refreshable> alreadyRefreshed) {
     refreshHelper.refresh(alreadyRefreshed);
   }
+
+  /**
+   * Preferences for several items, each sorted by user, as read by {@link AbstractItemSimilarity#itemVectors(long[])}.
+   */
+  public static final class ItemVectors {
+
+    private final long[] itemIDs;
+    private final long[][] userIDs;
+    private final double[][] values;
+
+    private ItemVectors(long[] itemIDs, long[][] userIDs, double[][] values) {
+      this.itemIDs = itemIDs;
+      this.userIDs = userIDs;
+      this.values = values;
+    }
+
+    public long[] getItemIDs() {
+      return itemIDs;
+    }
+
+    public int size() {
+      return itemIDs.length;
+    }
+
+    long[] getUserIDs(int index) {
+      return userIDs[index];
+    }
+
+    double[] getValues(int index) {
+      return values[index];
+    }
+  }
+
 }
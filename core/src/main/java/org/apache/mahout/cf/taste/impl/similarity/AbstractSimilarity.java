@@ -17,6 +17,7 @@
 
 package org.apache.mahout.cf.taste.impl.similarity;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.Callable;
 
@@ -101,6 +102,15 @@ abstract class AbstractSimilarity extends AbstractItemSimilarity implements User
   final boolean isWeighted() {
     return weighted;
   }
+
+  /**
+   * Weighting uses the number of all users or items, and inferrers and transforms may use any data, so only an
+   * unweighted similarity without them depends only on the pair.
+   */
+  @Override
+  public boolean dependsOnlyOnPair() {
+    return !weighted && inferrer == null && prefTransform == null && similarityTransform == null;
+  }
   
   /**
    * <p>
@@ -262,18 +272,95 @@ abstract class AbstractSimilarity extends AbstractItemSimilarity implements User
   
   @Override
   public final double itemSimilarity(long itemID1, long itemID2) throws TasteException {
+    return itemSimilarities(itemID1, new long[] {itemID2})[0];
+  }
+
+  /**
+   * Reads the first item's preferences once, into primitive arrays, and then streams each other item's
+   * preferences against them.
+   */
+  @Override
+  public final double[] itemSimilarities(long itemID1, long[] itemID2s) throws TasteException {
     DataModel dataModel = getDataModel();
     PreferenceArray xPrefs = dataModel.getPreferencesForItem(itemID1);
-    PreferenceArray yPrefs = dataModel.getPreferencesForItem(itemID2);
-    int xLength = xPrefs.length();
-    int yLength = yPrefs.length();
+    long[] xUserIDs = userIDs(xPrefs, null);
+    double[] xValues = values(xPrefs, null);
+    long[] yUserIDs = null;
+    double[] yValues = null;
+    int length = itemID2s.length;
+    double[] result = new double[length];
+    for (int i = 0; i < length; i++) {
+      long itemID2 = itemID2s[i];
+      PreferenceArray yPrefs = dataModel.getPreferencesForItem(itemID2);
+      // Reuse the arrays for the other items, as each is only needed for one comparison
+      yUserIDs = userIDs(yPrefs, yUserIDs);
+      yValues = values(yPrefs, yValues);
+      result[i] = doItemSimilarity(itemID1, xUserIDs, xValues, itemID2, yUserIDs, yValues, yPrefs.length());
+    }
+    return result;
+  }
+
+  /**
+   * Like {@link #itemSimilarities(long, long[])}, but compares the first item's preferences with those already
+   * read into the given {@link ItemVectors}.
+   */
+  @Override
+  public final double[] itemSimilarities(long itemID1, ItemVectors itemVectors) throws TasteException {
+    PreferenceArray xPrefs = getDataModel().getPreferencesForItem(itemID1);
+    long[] xUserIDs = userIDs(xPrefs, null);
+    double[] xValues = values(xPrefs, null);
+    long[] itemID2s = itemVectors.getItemIDs();
+    int length = itemID2s.length;
+    double[] result = new double[length];
+    for (int i = 0; i < length; i++) {
+      long[] yUserIDs = itemVectors.getUserIDs(i);
+      result[i] = doItemSimilarity(itemID1, xUserIDs, xValues,
+                                   itemID2s[i], yUserIDs, itemVectors.getValues(i), yUserIDs.length);
+    }
+    return result;
+  }
+
+  /**
+   * @return the user IDs of the given preferences, in <code>reuse</code> if that is long enough
+   */
+  private static long[] userIDs(PreferenceArray prefs, long[] reuse) {
+    int length = prefs.length();
+    long[] userIDs = reuse == null || reuse.length < length ? new long[length] : reuse;
+    for (int i = 0; i < length; i++) {
+      userIDs[i] = prefs.getUserID(i);
+    }
+    return userIDs;
+  }
+
+  /**
+   * @return the values of the given preferences, in <code>reuse</code> if that is long enough
+   */
+  private static double[] values(PreferenceArray prefs, double[] reuse) {
+    int length = prefs.length();
+    double[] values = reuse == null || reuse.length < length ? new double[length] : reuse;
+    for (int i = 0; i < length; i++) {
+      values[i] = prefs.getValue(i);
+    }
+    return values;
+  }
+
+  /**
+   * Compares the preferences of two items, each given as arrays of user IDs sorted ascending and of values. Only
+   * the first <code>yLength</code> entries of the second item's arrays are used.
+   */
+  private double doItemSimilarity(long itemID1,
+                                  long[] xUserIDs,
+                                  double[] xValues,
+                                  long itemID2,
+                                  long[] yUserIDs,
+                                  double[] yValues,
+                                  int yLength) {
+    int xLength = xUserIDs.length;
     
     if ((xLength == 0) || (yLength == 0)) {
       return Double.NaN;
     }
     
-    long xIndex = xPrefs.getUserID(0);
-    long yIndex = yPrefs.getUserID(0);
     int xPrefIndex = 0;
     int yPrefIndex = 0;
     
@@ -287,12 +374,13 @@ abstract class AbstractSimilarity extends AbstractItemSimilarity implements User
     
     // No, pref inferrers and transforms don't appy here. I think.
     
-    while (true) {
-      int compare = xIndex < yIndex ? -1 : xIndex > yIndex ? 1 : 0;
-      if (compare == 0) {
+    while (xPrefIndex < xLength && yPrefIndex < yLength) {
+      long xIndex = xUserIDs[xPrefIndex];
+      long yIndex = yUserIDs[yPrefIndex];
+      if (xIndex == yIndex) {
         // Both users expressed a preference for the item
-        double x = xPrefs.getValue(xPrefIndex);
-        double y = yPrefs.getValue(yPrefIndex);
+        double x = xValues[xPrefIndex];
+        double y = yValues[yPrefIndex];
         sumXY += x * y;
         sumX += x;
         sumX2 += x * x;
@@ -301,18 +389,12 @@ abstract class AbstractSimilarity extends AbstractItemSimilarity implements User
         double diff = x - y;
         sumXYdiff2 += diff * diff;
         count++;
-      }
-      if (compare <= 0) {
-        if (++xPrefIndex == xLength) {
-          break;
-        }
-        xIndex = xPrefs.getUserID(xPrefIndex);
-      }
-      if (compare >= 0) {
-        if (++yPrefIndex == yLength) {
-          break;
-        }
-        yIndex = yPrefs.getUserID(yPrefIndex);
+        xPrefIndex++;
+        yPrefIndex++;
+      } else if (xIndex < yIndex) {
+        xPrefIndex = advance(xUserIDs, xPrefIndex + 1, yIndex);
+      } else {
+        yPrefIndex++;
       }
     }
 
@@ -343,14 +425,23 @@ abstract class AbstractSimilarity extends AbstractItemSimilarity implements User
     return result;
   }
 
-  @Override
-  public double[] itemSimilarities(long itemID1, long[] itemID2s) throws TasteException {
-    int length = itemID2s.length;
-    double[] result = new double[length];
-    for (int i = 0; i < length; i++) {
-      result[i] = itemSimilarity(itemID1, itemID2s[i]);
+  /**
+   * @return index of the first ID at or after <code>from</code> which is not less than <code>target</code>,
+   *  found by galloping, so that skipping far ahead in a long item costs only logarithmic time
+   */
+  private static int advance(long[] ids, int from, long target) {
+    int length = ids.length;
+    int bound = 1;
+    int low = from;
+    while (low + bound < length && ids[low + bound] < target) {
+      low += bound;
+      bound <<= 1;
     }
-    return result;
+    if (low >= length || ids[low] >= target) {
+      return low;
+    }
+    int found = Arrays.binarySearch(ids, low + 1, Math.min(low + bound + 1, length), target);
+    return found >= 0 ? found : -found - 1;
   }
   
   final double normalizeWeightResult(double result, int count, int num) {
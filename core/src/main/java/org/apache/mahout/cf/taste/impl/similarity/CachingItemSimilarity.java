@@ -23,9 +23,13 @@ import java.util.concurrent.Callable;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.Cache;
+import org.apache.mahout.cf.taste.impl.common.ConcurrentCache;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.Retriever;
+import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.DataModelChangeListener;
 import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
 import org.apache.mahout.common.LongPair;
 import com.google.common.base.Preconditions;
@@ -36,15 +40,31 @@ import com.google.common.base.Preconditions;
 public final class CachingItemSimilarity implements ItemSimilarity {
 
   private final ItemSimilarity similarity;
-  private final Cache<LongPair,Double> similarityCache;
+  private final ConcurrentCache<LongPair,Double> similarityCache;
   private final RefreshHelper refreshHelper;
+  private FileDataModel listenedModel;
+  private volatile DataModelChangeListener changeListener;
 
   /**
    * Creates this on top of the given {@link ItemSimilarity}.
-   * The cache is sized according to properties of the given {@link DataModel}.
+   * The cache is sized according to properties of the given {@link DataModel}. If that is a
+   * {@link FileDataModel} and the similarity {@link AbstractItemSimilarity#dependsOnlyOnPair() depends only on
+   * the pair}, only similarities involving the items the model reports as changed are dropped from the cache when
+   * it is refreshed, rather than all of them. Call {@link #stopListeningForChanges()} when done with this, so that
+   * the model no longer refers to it.
    */
   public CachingItemSimilarity(ItemSimilarity similarity, DataModel dataModel) throws TasteException {
     this(similarity, dataModel.getNumItems());
+    if (dataModel instanceof FileDataModel && similarity instanceof AbstractItemSimilarity) {
+      changeListener = new DataModelChangeListener() {
+        @Override
+        public void dataModelChanged(DataModel changed, FastIDSet changedUserIDs, FastIDSet changedItemIDs) {
+          clearCacheForItems(changedItemIDs);
+        }
+      };
+      listenedModel = (FileDataModel) dataModel;
+      listenedModel.addDataModelChangeListener(changeListener);
+    }
   }
 
   /**
@@ -52,13 +72,27 @@ public final class CachingItemSimilarity implements ItemSimilarity {
    * The cache size is capped by the given size.
    */
   public CachingItemSimilarity(ItemSimilarity similarity, int maxCacheSize) {
+    this(similarity, maxCacheSize, ConcurrentCache.EvictionPolicy.CLOCK);
+  }
+
+  /**
+   * Creates this on top of the given {@link ItemSimilarity}.
+   * The cache size is capped by the given size, and entries are evicted according to the given policy.
+   */
+  public CachingItemSimilarity(ItemSimilarity similarity,
+                               int maxCacheSize,
+                               ConcurrentCache.EvictionPolicy evictionPolicy) {
     Preconditions.checkArgument(similarity != null, "similarity is null");
     this.similarity = similarity;
-    this.similarityCache = new Cache<LongPair,Double>(new SimilarityRetriever(similarity), maxCacheSize);
+    this.similarityCache =
+        new ConcurrentCache<LongPair,Double>(new SimilarityRetriever(similarity), maxCacheSize, evictionPolicy);
     this.refreshHelper = new RefreshHelper(new Callable<Void>() {
       @Override
       public Void call() {
-        similarityCache.clear();
+        // Pairs whose preferences changed were dropped as the data model reported them, and no others can change
+        if (!isInvalidatedByPair()) {
+          similarityCache.clear();
+        }
         return null;
       }
     });
@@ -94,6 +128,45 @@ public final class CachingItemSimilarity implements ItemSimilarity {
   public void clearCacheForItem(long itemID) {
     similarityCache.removeKeysMatching(new LongPairMatchPredicate(itemID));
   }
+
+  /**
+   * Stops dropping similarities from the cache as the {@link DataModel} given to the constructor reports changes,
+   * and removes this from its listeners. After this, refreshing clears the whole cache.
+   */
+  public void stopListeningForChanges() {
+    DataModelChangeListener listener = changeListener;
+    if (listener != null) {
+      changeListener = null;
+      listenedModel.removeDataModelChangeListener(listener);
+    }
+  }
+
+  private boolean isInvalidatedByPair() {
+    return changeListener != null && ((AbstractItemSimilarity) similarity).dependsOnlyOnPair();
+  }
+
+  /**
+   * @param itemIDs items whose similarities should be dropped from the cache, or <code>null</code> to drop all
+   */
+  private void clearCacheForItems(final FastIDSet itemIDs) {
+    if (itemIDs == null) {
+      similarityCache.clear();
+    } else if (!itemIDs.isEmpty()) {
+      similarityCache.removeKeysMatching(new Cache.MatchPredicate<LongPair>() {
+        @Override
+        public boolean matches(LongPair pair) {
+          return itemIDs.contains(pair.getFirst()) || itemIDs.contains(pair.getSecond());
+        }
+      });
+    }
+  }
+
+  /**
+   * @return fraction of similarity lookups answered from the cache
+   */
+  public double getCacheHitRatio() {
+    return similarityCache.getHitRatio();
+  }
   
   private static final class SimilarityRetriever implements Retriever<LongPair,Double> {
     private final ItemSimilarity similarity;
@@ -23,9 +23,13 @@ import java.util.concurrent.Callable;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.Cache;
+import org.apache.mahout.cf.taste.impl.common.ConcurrentCache;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.Retriever;
+import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.DataModelChangeListener;
 import org.apache.mahout.cf.taste.similarity.PreferenceInferrer;
 import org.apache.mahout.cf.taste.similarity.UserSimilarity;
 import org.apache.mahout.common.LongPair;
@@ -38,15 +42,31 @@ import com.google.common.base.Preconditions;
 public final class CachingUserSimilarity implements UserSimilarity {
   
   private final UserSimilarity similarity;
-  private final Cache<LongPair,Double> similarityCache;
+  private final ConcurrentCache<LongPair,Double> similarityCache;
   private final RefreshHelper refreshHelper;
+  private FileDataModel listenedModel;
+  private volatile DataModelChangeListener changeListener;
 
   /**
    * Creates this on top of the given {@link UserSimilarity}.
-   * The cache is sized according to properties of the given {@link DataModel}.
+   * The cache is sized according to properties of the given {@link DataModel}. If that is a
+   * {@link FileDataModel} and the similarity {@link AbstractItemSimilarity#dependsOnlyOnPair() depends only on
+   * the pair}, only similarities involving the users the model reports as changed are dropped from the cache when
+   * it is refreshed, rather than all of them. Call {@link #stopListeningForChanges()} when done with this, so that
+   * the model no longer refers to it.
    */
   public CachingUserSimilarity(UserSimilarity similarity, DataModel dataModel) throws TasteException {
     this(similarity, dataModel.getNumUsers());
+    if (dataModel instanceof FileDataModel && similarity instanceof AbstractItemSimilarity) {
+      changeListener = new DataModelChangeListener() {
+        @Override
+        public void dataModelChanged(DataModel changed, FastIDSet changedUserIDs, FastIDSet changedItemIDs) {
+          clearCacheForUsers(changedUserIDs);
+        }
+      };
+      listenedModel = (FileDataModel) dataModel;
+      listenedModel.addDataModelChangeListener(changeListener);
+    }
   }
 
   /**
@@ -54,13 +74,27 @@ public final class CachingUserSimilarity implements UserSimilarity {
    * The cache size is capped by the given size.
    */
   public CachingUserSimilarity(UserSimilarity similarity, int maxCacheSize) {
+    this(similarity, maxCacheSize, ConcurrentCache.EvictionPolicy.CLOCK);
+  }
+
+  /**
+   * Creates this on top of the given {@link UserSimilarity}.
+   * The cache size is capped by the given size, and entries are evicted according to the given policy.
+   */
+  public CachingUserSimilarity(UserSimilarity similarity,
+                               int maxCacheSize,
+                               ConcurrentCache.EvictionPolicy evictionPolicy) {
     Preconditions.checkArgument(similarity != null, "similarity is null");
     this.similarity = similarity;
-    this.similarityCache = new Cache<LongPair,Double>(new SimilarityRetriever(similarity), maxCacheSize);
+    this.similarityCache =
+        new ConcurrentCache<LongPair,Double>(new SimilarityRetriever(similarity), maxCacheSize, evictionPolicy);
     this.refreshHelper = new RefreshHelper(new Callable<Void>() {
       @Override
       public Void call() {
-        similarityCache.clear();
+        // Pairs whose preferences changed were dropped as the data model reported them, and no others can change
+        if (!isInvalidatedByPair()) {
+          similarityCache.clear();
+        }
         return null;
       }
     });
@@ -82,6 +116,45 @@ public final class CachingUserSimilarity implements UserSimilarity {
   public void clearCacheForUser(long userID) {
     similarityCache.removeKeysMatching(new LongPairMatchPredicate(userID));
   }
+
+  /**
+   * Stops dropping similarities from the cache as the {@link DataModel} given to the constructor reports changes,
+   * and removes this from its listeners. After this, refreshing clears the whole cache.
+   */
+  public void stopListeningForChanges() {
+    DataModelChangeListener listener = changeListener;
+    if (listener != null) {
+      changeListener = null;
+      listenedModel.removeDataModelChangeListener(listener);
+    }
+  }
+
+  private boolean isInvalidatedByPair() {
+    return changeListener != null && ((AbstractItemSimilarity) similarity).dependsOnlyOnPair();
+  }
+
+  /**
+   * @param userIDs users whose similarities should be dropped from the cache, or <code>null</code> to drop all
+   */
+  private void clearCacheForUsers(final FastIDSet userIDs) {
+    if (userIDs == null) {
+      similarityCache.clear();
+    } else if (!userIDs.isEmpty()) {
+      similarityCache.removeKeysMatching(new Cache.MatchPredicate<LongPair>() {
+        @Override
+        public boolean matches(LongPair pair) {
+          return userIDs.contains(pair.getFirst()) || userIDs.contains(pair.getSecond());
+        }
+      });
+    }
+  }
+
+  /**
+   * @return fraction of similarity lookups answered from the cache
+   */
+  public double getCacheHitRatio() {
+    return similarityCache.getHitRatio();
+  }
   
   @Override
   public void refresh(Collection<Refreshable> alreadyRefreshed) {
@@ -50,6 +50,11 @@ public final class CityBlockSimilarity extends AbstractItemSimilarity implements
     RefreshHelper.maybeRefresh(alreadyRefreshed, getDataModel());
   }
 
+  @Override
+  public boolean dependsOnlyOnPair() {
+    return true;
+  }
+
   @Override
   public double itemSimilarity(long itemID1, long itemID2) throws TasteException {
     DataModel dataModel = getDataModel();
@@ -61,13 +66,26 @@ public final class CityBlockSimilarity extends AbstractItemSimilarity implements
 
   @Override
   public double[] itemSimilarities(long itemID1, long[] itemID2s) throws TasteException {
-    DataModel dataModel = getDataModel();
-    int preferring1 = dataModel.getNumUsersWithPreferenceFor(itemID1);
-    double[] distance = new double[itemID2s.length];
-    for (int i = 0; i < itemID2s.length; ++i) {
-      int preferring2 = dataModel.getNumUsersWithPreferenceFor(itemID2s[i]);
-      int intersection = dataModel.getNumUsersWithPreferenceFor(itemID1, itemID2s[i]);
-      distance[i] = doSimilarity(preferring1, preferring2, intersection);
+    int length = itemID2s.length;
+    int[] preferring2 = new int[length];
+    int[] intersection = new int[length];
+    int preferring1 = countUsersWithPreferenceFor(itemID1, itemID2s, preferring2, intersection);
+    double[] distance = new double[length];
+    for (int i = 0; i < length; ++i) {
+      distance[i] = doSimilarity(preferring1, preferring2[i], intersection[i]);
+    }
+    return distance;
+  }
+
+  @Override
+  public double[] itemSimilarities(long itemID1, ItemVectors itemVectors) throws TasteException {
+    int length = itemVectors.size();
+    int[] preferring2 = new int[length];
+    int[] intersection = new int[length];
+    int preferring1 = countUsersWithPreferenceFor(itemID1, itemVectors, preferring2, intersection);
+    double[] distance = new double[length];
+    for (int i = 0; i < length; ++i) {
+      distance[i] = doSimilarity(preferring1, preferring2[i], intersection[i]);
     }
     return distance;
   }
@@ -81,13 +81,28 @@ public final class LogLikelihoodSimilarity extends AbstractItemSimilarity implem
 
   @Override
   public double[] itemSimilarities(long itemID1, long[] itemID2s) throws TasteException {
-    DataModel dataModel = getDataModel();
-    int preferring1 = dataModel.getNumUsersWithPreferenceFor(itemID1);
-    int numUsers = dataModel.getNumUsers();
     int length = itemID2s.length;
+    int[] preferring2 = new int[length];
+    int[] preferring1and2 = new int[length];
+    int preferring1 = countUsersWithPreferenceFor(itemID1, itemID2s, preferring2, preferring1and2);
+    int numUsers = getDataModel().getNumUsers();
     double[] result = new double[length];
     for (int i = 0; i < length; i++) {
-      result[i] = doItemSimilarity(itemID1, itemID2s[i], preferring1, numUsers);
+      result[i] = doItemSimilarity(preferring1, preferring2[i], preferring1and2[i], numUsers);
+    }
+    return result;
+  }
+
+  @Override
+  public double[] itemSimilarities(long itemID1, ItemVectors itemVectors) throws TasteException {
+    int length = itemVectors.size();
+    int[] preferring2 = new int[length];
+    int[] preferring1and2 = new int[length];
+    int preferring1 = countUsersWithPreferenceFor(itemID1, itemVectors, preferring2, preferring1and2);
+    int numUsers = getDataModel().getNumUsers();
+    double[] result = new double[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = doItemSimilarity(preferring1, preferring2[i], preferring1and2[i], numUsers);
     }
     return result;
   }
@@ -95,10 +110,14 @@ public final class LogLikelihoodSimilarity extends AbstractItemSimilarity implem
   private double doItemSimilarity(long itemID1, long itemID2, int preferring1, int numUsers) throws TasteException {
     DataModel dataModel = getDataModel();
     int preferring1and2 = dataModel.getNumUsersWithPreferenceFor(itemID1, itemID2);
+    int preferring2 = dataModel.getNumUsersWithPreferenceFor(itemID2);
+    return doItemSimilarity(preferring1, preferring2, preferring1and2, numUsers);
+  }
+
+  private static double doItemSimilarity(int preferring1, int preferring2, int preferring1and2, int numUsers) {
     if (preferring1and2 == 0) {
       return Double.NaN;
     }
-    int preferring2 = dataModel.getNumUsersWithPreferenceFor(itemID2);
     double logLikelihood =
         LogLikelihood.logLikelihoodRatio(preferring1and2,
                                          preferring2 - preferring1and2,
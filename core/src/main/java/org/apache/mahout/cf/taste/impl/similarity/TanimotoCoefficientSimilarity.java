@@ -90,11 +90,26 @@ public final class TanimotoCoefficientSimilarity extends AbstractItemSimilarity
 
   @Override
   public double[] itemSimilarities(long itemID1, long[] itemID2s) throws TasteException {
-    int preferring1 = getDataModel().getNumUsersWithPreferenceFor(itemID1);
     int length = itemID2s.length;
+    int[] preferring2 = new int[length];
+    int[] preferring1and2 = new int[length];
+    int preferring1 = countUsersWithPreferenceFor(itemID1, itemID2s, preferring2, preferring1and2);
     double[] result = new double[length];
     for (int i = 0; i < length; i++) {
-      result[i] = doItemSimilarity(itemID1, itemID2s[i], preferring1);
+      result[i] = doItemSimilarity(preferring1, preferring2[i], preferring1and2[i]);
+    }
+    return result;
+  }
+
+  @Override
+  public double[] itemSimilarities(long itemID1, ItemVectors itemVectors) throws TasteException {
+    int length = itemVectors.size();
+    int[] preferring2 = new int[length];
+    int[] preferring1and2 = new int[length];
+    int preferring1 = countUsersWithPreferenceFor(itemID1, itemVectors, preferring2, preferring1and2);
+    double[] result = new double[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = doItemSimilarity(preferring1, preferring2[i], preferring1and2[i]);
     }
     return result;
   }
@@ -103,6 +118,10 @@ public final class TanimotoCoefficientSimilarity extends AbstractItemSimilarity
     DataModel dataModel = getDataModel();
     int preferring1and2 = dataModel.getNumUsersWithPreferenceFor(itemID1, itemID2);
     int preferring2 = dataModel.getNumUsersWithPreferenceFor(itemID2);
+    return doItemSimilarity(preferring1, preferring2, preferring1and2);
+  }
+
+  private static double doItemSimilarity(int preferring1, int preferring2, int preferring1and2) {
     return (double) preferring1and2 / (double) (preferring1 + preferring2 - preferring1and2);
   }
   
@@ -111,6 +130,11 @@ public final class TanimotoCoefficientSimilarity extends AbstractItemSimilarity
     alreadyRefreshed = RefreshHelper.buildRefreshed(alreadyRefreshed);
     RefreshHelper.maybeRefresh(alreadyRefreshed, getDataModel());
   }
+
+  @Override
+  public boolean dependsOnlyOnPair() {
+    return true;
+  }
   
   @Override
   public String toString() {
@@ -0,0 +1,311 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.recommender.TopIDHeap;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
+import org.apache.mahout.cf.taste.recommender.MostSimilarItemsCandidateItemsStrategy;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+
+/**
+ * <p>
+ * An immutable, compact alternative to {@link GenericItemSimilarity} for precomputed similarities. For each
+ * item it keeps only the given number of most similar items, as a sorted <code>long[]</code> of neighbour IDs and
+ * a parallel <code>float[]</code> of similarities, all packed into a few large arrays. Looking up a similarity is
+ * two binary searches, with no boxing and no hash lookups.
+ * </p>
+ *
+ * <p>
+ * It can be built from any {@link Iterable} of {@link GenericItemSimilarity.ItemItemSimilarity}s, such as a
+ * {@link org.apache.mahout.cf.taste.impl.similarity.file.FileItemItemSimilarityIterable} over the output of
+ * {@link org.apache.mahout.cf.taste.hadoop.similarity.item.ItemSimilarityJob}.
+ * {@link org.apache.mahout.cf.taste.impl.similarity.file.FileItemSimilarity} can also use it when given a maximum
+ * number of similar items per item.
+ * </p>
+ *
+ * <p>
+ * It is also a {@link CandidateItemsStrategy} and {@link MostSimilarItemsCandidateItemsStrategy}, which
+ * returns the neighbours of the given items, like
+ * {@link org.apache.mahout.cf.taste.impl.recommender.AllSimilarItemsCandidateItemsStrategy} but without
+ * copying each neighbour list first.
+ * </p>
+ */
+public final class TopKItemSimilarityIndex
+    implements ItemSimilarity, CandidateItemsStrategy, MostSimilarItemsCandidateItemsStrategy {
+
+  private static final long[] NO_IDS = new long[0];
+  private static final int MIN_BUFFER_SIZE = 16;
+
+  private final int maxNeighboursPerItem;
+  /** sorted IDs of all items having at least one neighbour */
+  private final long[] itemIDs;
+  /** neighbours of the item at index i are at indices offsets[i] (inclusive) to offsets[i+1] (exclusive) */
+  private final int[] offsets;
+  /** neighbour IDs, sorted within each item */
+  private final long[] neighbourIDs;
+  private final float[] similarities;
+
+  /**
+   * <p>
+   * As with {@link GenericItemSimilarity}, similarity is assumed to be symmetric, so each
+   * {@link GenericItemSimilarity.ItemItemSimilarity} is a neighbour of both of its items, and the similarity of
+   * an item to itself is always 1.0. If the same pair of items is given twice, the later value wins.
+   * </p>
+   *
+   * @param similarities similarities on which to base this instance; these are read once, and need not fit in
+   *  memory all at once
+   * @param maxNeighboursPerItem maximum number of most similar items to keep per item
+   */
+  public TopKItemSimilarityIndex(Iterable<GenericItemSimilarity.ItemItemSimilarity> similarities,
+                                 int maxNeighboursPerItem) {
+    Preconditions.checkArgument(similarities != null, "similarities is null");
+    Preconditions.checkArgument(maxNeighboursPerItem >= 1, "maxNeighboursPerItem must be at least 1");
+    this.maxNeighboursPerItem = maxNeighboursPerItem;
+
+    FastByIDMap<NeighbourBuffer> buffers = new FastByIDMap<NeighbourBuffer>();
+    Iterator<GenericItemSimilarity.ItemItemSimilarity> it = similarities.iterator();
+    while (it.hasNext()) {
+      GenericItemSimilarity.ItemItemSimilarity similarity = it.next();
+      long itemID1 = similarity.getItemID1();
+      long itemID2 = similarity.getItemID2();
+      if (itemID1 != itemID2) {
+        float value = (float) similarity.getValue();
+        buffer(buffers, itemID1).add(itemID2, value, maxNeighboursPerItem);
+        buffer(buffers, itemID2).add(itemID1, value, maxNeighboursPerItem);
+      }
+      // else similarity between item and itself already assumed to be 1.0
+    }
+
+    int numItems = buffers.size();
+    itemIDs = new long[numItems];
+    LongPrimitiveIterator keys = buffers.keySetIterator();
+    for (int i = 0; i < numItems; i++) {
+      itemIDs[i] = keys.nextLong();
+    }
+    Arrays.sort(itemIDs);
+
+    offsets = new int[numItems + 1];
+    long numNeighbours = 0L;
+    for (int i = 0; i < numItems; i++) {
+      NeighbourBuffer buffer = buffers.get(itemIDs[i]);
+      buffer.compact(maxNeighboursPerItem);
+      numNeighbours += buffer.size;
+      Preconditions.checkState(numNeighbours <= Integer.MAX_VALUE, "Too many neighbours: %s", numNeighbours);
+      offsets[i + 1] = (int) numNeighbours;
+    }
+
+    neighbourIDs = new long[(int) numNeighbours];
+    this.similarities = new float[(int) numNeighbours];
+    for (int i = 0; i < numItems; i++) {
+      NeighbourBuffer buffer = buffers.get(itemIDs[i]);
+      // Free each buffer as soon as it has been copied
+      buffers.remove(itemIDs[i]);
+      buffer.copySortedByID(neighbourIDs, this.similarities, offsets[i]);
+    }
+  }
+
+  private static NeighbourBuffer buffer(FastByIDMap<NeighbourBuffer> buffers, long itemID) {
+    NeighbourBuffer buffer = buffers.get(itemID);
+    if (buffer == null) {
+      buffer = new NeighbourBuffer();
+      buffers.put(itemID, buffer);
+    }
+    return buffer;
+  }
+
+  public int getMaxNeighboursPerItem() {
+    return maxNeighboursPerItem;
+  }
+
+  /**
+   * @return number of items with at least one neighbour
+   */
+  public int getNumItems() {
+    return itemIDs.length;
+  }
+
+  /**
+   * @return total number of neighbours kept, over all items
+   */
+  public int getNumNeighbours() {
+    return neighbourIDs.length;
+  }
+
+  /**
+   * @return the similarity between the two items, if either one is among the kept neighbours of the other, or
+   *  {@link Double#NaN} otherwise
+   */
+  @Override
+  public double itemSimilarity(long itemID1, long itemID2) {
+    if (itemID1 == itemID2) {
+      return 1.0;
+    }
+    double similarity = lookup(Arrays.binarySearch(itemIDs, itemID1), itemID2);
+    return Double.isNaN(similarity) ? lookup(Arrays.binarySearch(itemIDs, itemID2), itemID1) : similarity;
+  }
+
+  @Override
+  public double[] itemSimilarities(long itemID1, long[] itemID2s) {
+    int index1 = Arrays.binarySearch(itemIDs, itemID1);
+    int length = itemID2s.length;
+    double[] result = new double[length];
+    for (int i = 0; i < length; i++) {
+      long itemID2 = itemID2s[i];
+      if (itemID1 == itemID2) {
+        result[i] = 1.0;
+      } else {
+        double similarity = lookup(index1, itemID2);
+        result[i] = Double.isNaN(similarity) ? lookup(Arrays.binarySearch(itemIDs, itemID2), itemID1) : similarity;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return IDs of the kept neighbours of the item, ordered by ID
+   */
+  @Override
+  public long[] allSimilarItemIDs(long itemID) {
+    int index = Arrays.binarySearch(itemIDs, itemID);
+    if (index < 0) {
+      return NO_IDS;
+    }
+    int from = offsets[index];
+    int to = offsets[index + 1];
+    long[] result = new long[to - from];
+    System.arraycopy(neighbourIDs, from, result, 0, to - from);
+    return result;
+  }
+
+  @Override
+  public FastIDSet getCandidateItems(long userID, PreferenceArray preferencesFromUser, DataModel dataModel) {
+    return getCandidateItems(preferencesFromUser.getIDs(), dataModel);
+  }
+
+  @Override
+  public FastIDSet getCandidateItems(long[] preferredItemIDs, DataModel dataModel) {
+    FastIDSet candidateItemIDs = new FastIDSet();
+    for (long itemID : preferredItemIDs) {
+      int index = Arrays.binarySearch(itemIDs, itemID);
+      if (index >= 0) {
+        for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+          candidateItemIDs.add(neighbourIDs[i]);
+        }
+      }
+    }
+    candidateItemIDs.removeAll(preferredItemIDs);
+    return candidateItemIDs;
+  }
+
+  /**
+   * @param index index of the first item in {@link #itemIDs}, or negative if it has no neighbours
+   */
+  private double lookup(int index, long neighbourID) {
+    if (index < 0) {
+      return Double.NaN;
+    }
+    int found = Arrays.binarySearch(neighbourIDs, offsets[index], offsets[index + 1], neighbourID);
+    return found < 0 ? Double.NaN : similarities[found];
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    // Do nothing
+  }
+
+  @Override
+  public String toString() {
+    return "TopKItemSimilarityIndex[items:" + itemIDs.length + ", neighbours:" + neighbourIDs.length
+        + ", maxNeighboursPerItem:" + maxNeighboursPerItem + ']';
+  }
+
+  /**
+   * Collects one item's neighbours while building, in the order given. Whenever it holds twice the number of
+   * neighbours to keep, it is cut down to the best ones, so memory stays proportional to what is finally kept.
+   */
+  private static final class NeighbourBuffer {
+
+    private long[] ids = new long[4];
+    private float[] values = new float[4];
+    private int size;
+
+    void add(long id, float value, int maxNeighbours) {
+      if (size == ids.length) {
+        int compactSize = maxNeighbours > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : 2 * maxNeighbours;
+        if (size >= Math.max(MIN_BUFFER_SIZE, compactSize)) {
+          compact(maxNeighbours);
+        }
+        if (size == ids.length) {
+          int newLength = (int) Math.min(Integer.MAX_VALUE - 8L, 2L * size);
+          ids = Arrays.copyOf(ids, newLength);
+          values = Arrays.copyOf(values, newLength);
+        }
+      }
+      ids[size] = id;
+      values[size] = value;
+      size++;
+    }
+
+    /**
+     * Drops all but the last value given for each neighbour, then all but the best neighbours. Those kept are
+     * left ordered by descending similarity.
+     */
+    void compact(int maxNeighbours) {
+      FastIDSet seen = new FastIDSet(size);
+      TopIDHeap top = new TopIDHeap(Math.max(1, Math.min(size, maxNeighbours)));
+      for (int i = size - 1; i >= 0; i--) {
+        if (seen.add(ids[i])) {
+          top.offer(ids[i], values[i]);
+        }
+      }
+      int newSize = top.size();
+      double[] topValues = new double[newSize];
+      top.sortDescending(ids, topValues);
+      for (int i = 0; i < newSize; i++) {
+        values[i] = (float) topValues[i];
+      }
+      size = newSize;
+    }
+
+    /**
+     * Copies the (compacted, so distinct) neighbours into the given arrays ordered by ID.
+     */
+    void copySortedByID(long[] toIDs, float[] toValues, int offset) {
+      long[] sortedIDs = Arrays.copyOf(ids, size);
+      Arrays.sort(sortedIDs);
+      System.arraycopy(sortedIDs, 0, toIDs, offset, size);
+      for (int i = 0; i < size; i++) {
+        int index = Arrays.binarySearch(sortedIDs, ids[i]);
+        toValues[offset + index] = values[i];
+      }
+    }
+
+  }
+
+}
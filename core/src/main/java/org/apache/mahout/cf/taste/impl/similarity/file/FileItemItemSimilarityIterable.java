@@ -17,29 +17,61 @@
 
 package org.apache.mahout.cf.taste.impl.similarity.file;
 
+import com.google.common.collect.Iterators;
 import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 /**
- * {@link Iterable} to be able to read a file linewise into a {@link GenericItemSimilarity}
+ * {@link Iterable} to be able to read a file linewise into a {@link GenericItemSimilarity}. Given a directory,
+ * such as the output of {@link org.apache.mahout.cf.taste.hadoop.similarity.item.ItemSimilarityJob}, it reads
+ * all files in it in name order, skipping those whose names start with "_" or ".".
  */
-final class FileItemItemSimilarityIterable implements Iterable<GenericItemSimilarity.ItemItemSimilarity> {
+public final class FileItemItemSimilarityIterable implements Iterable<GenericItemSimilarity.ItemItemSimilarity> {
+
+  private static final FileFilter PART_FILES = new FileFilter() {
+    @Override
+    public boolean accept(File file) {
+      String name = file.getName();
+      return file.isFile() && !name.startsWith("_") && !name.startsWith(".");
+    }
+  };
 
   private final File similaritiesFile;
 
-  FileItemItemSimilarityIterable(File similaritiesFile) {
+  public FileItemItemSimilarityIterable(File similaritiesFile) {
     this.similaritiesFile = similaritiesFile;
   }
 
   @Override
   public Iterator<GenericItemSimilarity.ItemItemSimilarity> iterator() {
+    if (!similaritiesFile.isDirectory()) {
+      return iterator(similaritiesFile);
+    }
+    File[] partFiles = similaritiesFile.listFiles(PART_FILES);
+    if (partFiles == null) {
+      throw new IllegalStateException("Can't list " + similaritiesFile);
+    }
+    Arrays.sort(partFiles);
+    List<Iterator<GenericItemSimilarity.ItemItemSimilarity>> iterators =
+        new ArrayList<Iterator<GenericItemSimilarity.ItemItemSimilarity>>(partFiles.length);
+    for (File partFile : partFiles) {
+      iterators.add(iterator(partFile));
+    }
+    return Iterators.concat(iterators.iterator());
+  }
+
+  private static Iterator<GenericItemSimilarity.ItemItemSimilarity> iterator(File file) {
     try {
-      return new FileItemItemSimilarityIterator(similaritiesFile);
+      return new FileItemItemSimilarityIterator(file);
     } catch (IOException ioe) {
-      throw new IllegalStateException("Can't read " + similaritiesFile, ioe);
+      throw new IllegalStateException("Can't read " + file, ioe);
     }
   }
 
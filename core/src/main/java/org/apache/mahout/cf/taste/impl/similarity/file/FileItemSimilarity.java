@@ -24,6 +24,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.TopKItemSimilarityIndex;
 import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +35,8 @@ import com.google.common.base.Preconditions;
  * <p>
  * An {@link ItemSimilarity} backed by a comma-delimited file. This class typically expects a file where each line
  * contains an item ID, followed by another item ID, followed by a similarity value, separated by commas. You may also
- * use tabs.
+ * use tabs. This is the format written by {@link org.apache.mahout.cf.taste.hadoop.similarity.item.ItemSimilarityJob},
+ * whose output directory may also be given in place of a file.
  * </p>
  *
  * <p>
@@ -50,7 +52,8 @@ import com.google.common.base.Preconditions;
  *
  * <p>
  * This class is not intended for use with very large amounts of data. For that, a JDBC-backed {@link ItemSimilarity}
- * and a database are more appropriate.
+ * and a database are more appropriate. Alternatively, given a maximum number of similar items to keep per item, this
+ * class loads the file into a compact {@link TopKItemSimilarityIndex} instead of a {@link GenericItemSimilarity}.
  * </p>
  */
 public class FileItemSimilarity implements ItemSimilarity {
@@ -62,6 +65,7 @@ public class FileItemSimilarity implements ItemSimilarity {
   private final File dataFile;
   private long lastModified;
   private final long minReloadIntervalMS;
+  private final int maxSimilarItemsPerItem;
 
   private static final Logger log = LoggerFactory.getLogger(FileItemSimilarity.class);
 
@@ -80,15 +84,26 @@ public class FileItemSimilarity implements ItemSimilarity {
    * @see #FileItemSimilarity(File)
    */
   public FileItemSimilarity(File dataFile, long minReloadIntervalMS) {
+    this(dataFile, minReloadIntervalMS, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param maxSimilarItemsPerItem
+   *          if less than {@link Integer#MAX_VALUE}, only this many most similar items are kept for each item, in a
+   *          {@link TopKItemSimilarityIndex}
+   * @see #FileItemSimilarity(File, long)
+   */
+  public FileItemSimilarity(File dataFile, long minReloadIntervalMS, int maxSimilarItemsPerItem) {
     Preconditions.checkArgument(dataFile != null, "dataFile is null");
-    Preconditions.checkArgument(dataFile.exists() && !dataFile.isDirectory(),
-      "dataFile is missing or a directory: %s", dataFile);
+    Preconditions.checkArgument(dataFile.exists(), "dataFile is missing: %s", dataFile);
+    Preconditions.checkArgument(maxSimilarItemsPerItem >= 1, "maxSimilarItemsPerItem must be at least 1");
 
     log.info("Creating FileItemSimilarity for file {}", dataFile);
 
     this.dataFile = dataFile.getAbsoluteFile();
     this.lastModified = dataFile.lastModified();
     this.minReloadIntervalMS = minReloadIntervalMS;
+    this.maxSimilarItemsPerItem = maxSimilarItemsPerItem;
     this.reloadLock = new ReentrantLock();
 
     reload();
@@ -121,7 +136,12 @@ public class FileItemSimilarity implements ItemSimilarity {
     if (reloadLock.tryLock()) {
       try {
         long newLastModified = dataFile.lastModified();
-        delegate = new GenericItemSimilarity(new FileItemItemSimilarityIterable(dataFile));
+        Iterable<GenericItemSimilarity.ItemItemSimilarity> similarities = new FileItemItemSimilarityIterable(dataFile);
+        if (maxSimilarItemsPerItem == Integer.MAX_VALUE) {
+          delegate = new GenericItemSimilarity(similarities);
+        } else {
+          delegate = new TopKItemSimilarityIndex(similarities, maxSimilarItemsPerItem);
+        }
         lastModified = newLastModified;
       } finally {
         reloadLock.unlock();
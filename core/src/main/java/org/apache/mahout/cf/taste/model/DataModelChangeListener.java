@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.model;
+
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+
+/**
+ * <p>
+ * Implementations are told which users and items changed when a {@link DataModel} that supports it, such as
+ * {@link org.apache.mahout.cf.taste.impl.model.file.FileDataModel}, applies an update. Components which
+ * cache data derived from the model can use this to invalidate only the affected entries, rather than
+ * everything, when the model is refreshed.
+ * </p>
+ */
+public interface DataModelChangeListener {
+
+  /**
+   * Called after the new data has been made visible through the {@link DataModel}.
+   *
+   * @param dataModel model which changed
+   * @param changedUserIDs users whose preferences were added, removed or changed, or <code>null</code> if the
+   *  model was reloaded entirely and any user may have changed
+   * @param changedItemIDs items whose preferences were added, removed or changed, or <code>null</code> if the
+   *  model was reloaded entirely and any item may have changed
+   */
+  void dataModelChanged(DataModel dataModel, FastIDSet changedUserIDs, FastIDSet changedItemIDs);
+
+}
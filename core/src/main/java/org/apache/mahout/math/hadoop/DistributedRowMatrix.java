@@ -30,6 +30,7 @@ import org.apache.hadoop.mapred.JobConf;
 import org.apache.mahout.common.Pair;
 import org.apache.mahout.common.iterator.sequencefile.PathType;
 import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterator;
+import org.apache.mahout.math.BlockVectorIterable;
 import org.apache.mahout.math.CardinalityException;
 import org.apache.mahout.math.MatrixSlice;
 import org.apache.mahout.math.Vector;
@@ -59,9 +60,12 @@ import java.util.Iterator;
  *   // now the following operation will be done via a M/R pass via Hadoop.
  *   Vector w = m.timesSquared(v);
  * </pre>
+ * <p>
+ * The {@link BlockVectorIterable} methods multiply by several vectors in a single M/R pass, which is what block
+ * Lanczos uses to cut down the number of passes over the corpus.
  *
  */
-public class DistributedRowMatrix implements VectorIterable, Configurable {
+public class DistributedRowMatrix implements BlockVectorIterable, Configurable {
   public static final String KEEP_TEMP_FILES = "DistributedMatrix.keep.temp.files";
   
   private static final Logger log = LoggerFactory.getLogger(DistributedRowMatrix.class);
@@ -241,6 +245,53 @@ public class DistributedRowMatrix implements VectorIterable, Configurable {
     }
   }
 
+  @Override
+  public Vector[] times(Vector[] vectors) {
+    try {
+      Configuration initialConf = getConf() == null ? new Configuration() : getConf();
+      Path outputVectorTmpPath = new Path(outputTmpBasePath,
+                                          new Path(Long.toString(System.nanoTime())));
+      Configuration conf =
+          TimesSquaredJob.createTimesJobConf(initialConf,
+                                             vectors,
+                                             numRows,
+                                             rowPath,
+                                             outputVectorTmpPath);
+      JobClient.runJob(new JobConf(conf));
+      Vector[] result = TimesSquaredJob.retrieveTimesSquaredOutputVectors(conf);
+      if (!keepTempFiles) {
+        FileSystem fs = outputVectorTmpPath.getFileSystem(conf);
+        fs.delete(outputVectorTmpPath, true);
+      }
+      return result;
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  @Override
+  public Vector[] timesSquared(Vector[] vectors) {
+    try {
+      Configuration initialConf = getConf() == null ? new Configuration() : getConf();
+      Path outputVectorTmpPath = new Path(outputTmpBasePath,
+               new Path(Long.toString(System.nanoTime())));
+      Configuration conf =
+          TimesSquaredJob.createTimesSquaredJobConf(initialConf,
+                                                    vectors,
+                                                    rowPath,
+                                                    outputVectorTmpPath);
+      JobClient.runJob(new JobConf(conf));
+      Vector[] result = TimesSquaredJob.retrieveTimesSquaredOutputVectors(conf);
+      if (!keepTempFiles) {
+        FileSystem fs = outputVectorTmpPath.getFileSystem(conf);
+        fs.delete(outputVectorTmpPath, true);
+      }
+      return result;
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
   @Override
   public Iterator<MatrixSlice> iterator() {
     return iterateAll();
@@ -0,0 +1,448 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.hadoop;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.iterator.sequencefile.PathFilters;
+import org.apache.mahout.common.iterator.sequencefile.PathType;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterable;
+import org.apache.mahout.math.CardinalityException;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.MatrixSlice;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorIterable;
+import org.apache.mahout.math.VectorWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link VectorIterable} which reads the rows of a SequenceFile&lt;IntWritable,VectorWritable&gt; matrix into
+ * memory once, so that {@link #times(Vector)} and {@link #timesSquared(Vector)} run on this machine instead of as
+ * one M/R pass each, as they do with {@link DistributedRowMatrix}. This pays off for iterative algorithms like
+ * Lanczos whenever the matrix fits into the memory of a single node.</p>
+ *
+ * <p>The non-zero entries are kept in compressed sparse row form, split into blocks of consecutive rows. Each block
+ * can live on the heap or in a direct buffer outside of it, which keeps large matrices away from the garbage
+ * collector. Multiplications are spread over a pool of threads which pick up blocks until none are left.</p>
+ *
+ * <p>Call {@link #close()} when done, to release the threads.</p>
+ */
+public final class InMemoryRowMatrix implements VectorIterable, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(InMemoryRowMatrix.class);
+
+  /** Upper bound for the number of non-zero entries in a block, keeps each direct buffer well below 2 GB */
+  private static final int MAX_ENTRIES_PER_BLOCK = 1 << 22;
+  /** How many blocks to aim for per thread, so that threads which finish early can help out with the rest */
+  private static final int BLOCKS_PER_THREAD = 4;
+  private static final int MIN_ROWS_PER_BLOCK = 16;
+
+  private final int numRows;
+  private final int numCols;
+  private final int numThreads;
+  private final List<RowBlock> blocks;
+  private final ExecutorService executor;
+
+  public InMemoryRowMatrix(Path inputPath, Configuration conf, int numRows, int numCols) throws IOException {
+    this(inputPath, conf, numRows, numCols, Runtime.getRuntime().availableProcessors(), false);
+  }
+
+  /**
+   * @param inputPath directory holding the rows as SequenceFile&lt;IntWritable,VectorWritable&gt;, each row at most
+   *  once
+   * @param numThreads number of threads to use for multiplications
+   * @param offHeap whether to keep the entries in direct buffers instead of on the heap
+   */
+  public InMemoryRowMatrix(Path inputPath,
+                           Configuration conf,
+                           int numRows,
+                           int numCols,
+                           int numThreads,
+                           boolean offHeap) throws IOException {
+    Preconditions.checkArgument(numRows > 0, "numRows must be positive");
+    Preconditions.checkArgument(numCols > 0, "numCols must be positive");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+    this.numRows = numRows;
+    this.numCols = numCols;
+    this.numThreads = numThreads;
+
+    int rowsPerBlock = Math.max(MIN_ROWS_PER_BLOCK, numRows / (numThreads * BLOCKS_PER_THREAD) + 1);
+    blocks = new ArrayList<RowBlock>();
+    RowBlockBuilder builder = new RowBlockBuilder();
+    BitSet loadedRows = new BitSet(numRows);
+    long numEntries = 0;
+    for (Pair<IntWritable,VectorWritable> record : new SequenceFileDirIterable<IntWritable,VectorWritable>(
+        inputPath, PathType.LIST, PathFilters.logsCRCFilter(), null, true, conf)) {
+      int row = record.getFirst().get();
+      Vector vector = record.getSecond().get();
+      if (row < 0 || row >= numRows) {
+        throw new IllegalStateException("Row " + row + " is out of range, matrix has " + numRows + " rows");
+      }
+      if (vector.size() != numCols) {
+        throw new CardinalityException(numCols, vector.size());
+      }
+      // Every row is written by exactly one block in times(), which is what makes that lock-free
+      if (loadedRows.get(row)) {
+        throw new IllegalStateException("Row " + row + " appears more than once");
+      }
+      loadedRows.set(row);
+      if (builder.numRows() >= rowsPerBlock
+          || builder.numEntries() + vector.getNumNondefaultElements() > MAX_ENTRIES_PER_BLOCK) {
+        if (builder.numRows() > 0) {
+          blocks.add(builder.build(offHeap));
+          builder = new RowBlockBuilder();
+        }
+      }
+      builder.addRow(row, vector.isSequentialAccess() ? vector : new SequentialAccessSparseVector(vector));
+      numEntries += vector.getNumNondefaultElements();
+    }
+    if (builder.numRows() > 0) {
+      blocks.add(builder.build(offHeap));
+    }
+    log.info("Loaded {} non-zero entries into {} blocks", numEntries, blocks.size());
+
+    executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger();
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "InMemoryRowMatrix-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  @Override
+  public int numSlices() {
+    return numRows();
+  }
+
+  @Override
+  public int numRows() {
+    return numRows;
+  }
+
+  @Override
+  public int numCols() {
+    return numCols;
+  }
+
+  @Override
+  public Vector times(Vector v) {
+    if (v.size() != numCols) {
+      throw new CardinalityException(numCols, v.size());
+    }
+    final double[] x = toArray(v);
+    final double[] result = new double[numRows];
+    forEachBlock(new BlockTask() {
+      @Override
+      public void process(RowBlock block, int worker) {
+        for (int i = 0; i < block.numRows(); i++) {
+          result[block.rowIndices[i]] += block.dot(i, x);
+        }
+      }
+    });
+    return new DenseVector(result, true);
+  }
+
+  @Override
+  public Vector timesSquared(Vector v) {
+    if (v.size() != numCols) {
+      throw new CardinalityException(numCols, v.size());
+    }
+    final double[] x = toArray(v);
+    final double[][] partialResults = new double[numWorkers()][];
+    forEachBlock(new BlockTask() {
+      @Override
+      public void process(RowBlock block, int worker) {
+        double[] partialResult = partialResults[worker];
+        if (partialResult == null) {
+          partialResult = new double[numCols];
+          partialResults[worker] = partialResult;
+        }
+        for (int i = 0; i < block.numRows(); i++) {
+          double d = block.dot(i, x);
+          if (d != 0.0) {
+            block.addTo(i, d, partialResult);
+          }
+        }
+      }
+    });
+
+    double[] result = null;
+    for (double[] partialResult : partialResults) {
+      if (result == null) {
+        result = partialResult;
+      } else if (partialResult != null) {
+        for (int col = 0; col < numCols; col++) {
+          result[col] += partialResult[col];
+        }
+      }
+    }
+    return result == null ? new DenseVector(numCols) : new DenseVector(result, true);
+  }
+
+  @Override
+  public Iterator<MatrixSlice> iterateAll() {
+    return new AbstractIterator<MatrixSlice>() {
+      private final Iterator<RowBlock> blockIterator = blocks.iterator();
+      private RowBlock block;
+      private int rowInBlock;
+      @Override
+      protected MatrixSlice computeNext() {
+        while (block == null || rowInBlock == block.numRows()) {
+          if (!blockIterator.hasNext()) {
+            return endOfData();
+          }
+          block = blockIterator.next();
+          rowInBlock = 0;
+        }
+        MatrixSlice slice = new MatrixSlice(block.toVector(rowInBlock, numCols), block.rowIndices[rowInBlock]);
+        rowInBlock++;
+        return slice;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<MatrixSlice> iterator() {
+    return iterateAll();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private static double[] toArray(Vector v) {
+    double[] values = new double[v.size()];
+    Iterator<Vector.Element> elements = v.iterateNonZero();
+    while (elements.hasNext()) {
+      Vector.Element element = elements.next();
+      values[element.index()] = element.get();
+    }
+    return values;
+  }
+
+  private int numWorkers() {
+    return Math.max(1, Math.min(numThreads, blocks.size()));
+  }
+
+  /**
+   * Hands out all blocks to {@link #numWorkers()} workers, which take the next unprocessed block whenever they are
+   * done with one. A single worker runs in the calling thread.
+   */
+  private void forEachBlock(final BlockTask task) {
+    int numWorkers = numWorkers();
+    if (numWorkers == 1) {
+      for (RowBlock block : blocks) {
+        task.process(block, 0);
+      }
+      return;
+    }
+
+    final AtomicInteger nextBlock = new AtomicInteger();
+    List<Future<?>> futures = new ArrayList<Future<?>>(numWorkers);
+    for (int n = 0; n < numWorkers; n++) {
+      final int worker = n;
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          int index;
+          while ((index = nextBlock.getAndIncrement()) < blocks.size()) {
+            task.process(blocks.get(index), worker);
+          }
+          return null;
+        }
+      }));
+    }
+
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException ie) {
+      cancelAll(futures);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ie);
+    } catch (ExecutionException ee) {
+      cancelAll(futures);
+      Throwable cause = ee.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private static void cancelAll(Iterable<Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Work to do for each block. Calls with the same worker index never happen concurrently.
+   */
+  private interface BlockTask {
+    void process(RowBlock block, int worker);
+  }
+
+  /**
+   * Consecutive rows in compressed sparse row form: the entries of the i-th row are at the positions
+   * offsets[i] (inclusive) to offsets[i + 1] (exclusive) of columns and values.
+   */
+  private static final class RowBlock {
+
+    private final int[] rowIndices;
+    private final int[] offsets;
+    private final IntBuffer columns;
+    private final DoubleBuffer values;
+
+    private RowBlock(int[] rowIndices, int[] offsets, IntBuffer columns, DoubleBuffer values) {
+      this.rowIndices = rowIndices;
+      this.offsets = offsets;
+      this.columns = columns;
+      this.values = values;
+    }
+
+    int numRows() {
+      return rowIndices.length;
+    }
+
+    double dot(int rowInBlock, double[] x) {
+      double sum = 0.0;
+      for (int n = offsets[rowInBlock]; n < offsets[rowInBlock + 1]; n++) {
+        sum += values.get(n) * x[columns.get(n)];
+      }
+      return sum;
+    }
+
+    void addTo(int rowInBlock, double factor, double[] y) {
+      for (int n = offsets[rowInBlock]; n < offsets[rowInBlock + 1]; n++) {
+        y[columns.get(n)] += factor * values.get(n);
+      }
+    }
+
+    Vector toVector(int rowInBlock, int numCols) {
+      int from = offsets[rowInBlock];
+      int to = offsets[rowInBlock + 1];
+      Vector vector = new SequentialAccessSparseVector(numCols, to - from);
+      for (int n = from; n < to; n++) {
+        vector.setQuick(columns.get(n), values.get(n));
+      }
+      return vector;
+    }
+  }
+
+  private static final class RowBlockBuilder {
+
+    private int[] rowIndices = new int[MIN_ROWS_PER_BLOCK];
+    private int[] offsets = new int[MIN_ROWS_PER_BLOCK + 1];
+    private int[] columns = new int[1024];
+    private double[] values = new double[1024];
+    private int numRows;
+    private int numEntries;
+
+    int numRows() {
+      return numRows;
+    }
+
+    int numEntries() {
+      return numEntries;
+    }
+
+    void addRow(int row, Vector vector) {
+      if (numRows == rowIndices.length) {
+        rowIndices = grow(rowIndices, numRows * 2);
+        offsets = grow(offsets, numRows * 2 + 1);
+      }
+      Iterator<Vector.Element> elements = vector.iterateNonZero();
+      while (elements.hasNext()) {
+        Vector.Element element = elements.next();
+        double value = element.get();
+        if (value != 0.0) {
+          if (numEntries == columns.length) {
+            columns = grow(columns, numEntries * 2);
+            double[] newValues = new double[numEntries * 2];
+            System.arraycopy(values, 0, newValues, 0, numEntries);
+            values = newValues;
+          }
+          columns[numEntries] = element.index();
+          values[numEntries] = value;
+          numEntries++;
+        }
+      }
+      rowIndices[numRows] = row;
+      numRows++;
+      offsets[numRows] = numEntries;
+    }
+
+    RowBlock build(boolean offHeap) {
+      int[] finalRowIndices = new int[numRows];
+      System.arraycopy(rowIndices, 0, finalRowIndices, 0, numRows);
+      int[] finalOffsets = new int[numRows + 1];
+      System.arraycopy(offsets, 0, finalOffsets, 0, numRows + 1);
+      IntBuffer finalColumns;
+      DoubleBuffer finalValues;
+      if (offHeap) {
+        finalColumns = ByteBuffer.allocateDirect(numEntries * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        finalValues = ByteBuffer.allocateDirect(numEntries * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+      } else {
+        finalColumns = IntBuffer.allocate(numEntries);
+        finalValues = DoubleBuffer.allocate(numEntries);
+      }
+      finalColumns.put(columns, 0, numEntries);
+      finalValues.put(values, 0, numEntries);
+      return new RowBlock(finalRowIndices, finalOffsets, finalColumns, finalValues);
+    }
+
+    private static int[] grow(int[] array, int newLength) {
+      int[] newArray = new int[newLength];
+      System.arraycopy(array, 0, newArray, 0, array.length);
+      return newArray;
+    }
+  }
+
+}
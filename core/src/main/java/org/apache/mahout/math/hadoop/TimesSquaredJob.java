@@ -36,6 +36,8 @@ import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileIterable;
 import org.apache.mahout.common.iterator.sequencefile.SequenceFileValueIterator;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.RandomAccessSparseVector;
@@ -48,7 +50,9 @@ import com.google.common.base.Preconditions;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 public final class TimesSquaredJob {
 
@@ -181,6 +185,119 @@ public final class TimesSquaredJob {
     return conf;
   }
 
+  /**
+   * Configures a job computing this.transpose().times(this.times(v)) for all of the given vectors in a single pass
+   * over the matrix. Use {@link #retrieveTimesSquaredOutputVectors(Configuration)} to read the results.
+   */
+  public static Configuration createTimesSquaredJobConf(Configuration initialConf,
+                                                        Vector[] vectors,
+                                                        Path matrixInputPath,
+                                                        Path outputVectorPathBase) throws IOException {
+    return createBlockJobConf(initialConf,
+                              vectors,
+                              vectors[0].size(),
+                              false,
+                              matrixInputPath,
+                              outputVectorPathBase,
+                              BlockTimesSquaredMapper.class);
+  }
+
+  /**
+   * Configures a job computing this.times(v) for all of the given vectors in a single pass over the matrix. Use
+   * {@link #retrieveTimesSquaredOutputVectors(Configuration)} to read the results.
+   */
+  public static Configuration createTimesJobConf(Configuration initialConf,
+                                                 Vector[] vectors,
+                                                 int outDim,
+                                                 Path matrixInputPath,
+                                                 Path outputVectorPath) throws IOException {
+    return createBlockJobConf(initialConf,
+                              vectors,
+                              outDim,
+                              true,
+                              matrixInputPath,
+                              outputVectorPath,
+                              BlockTimesMapper.class);
+  }
+
+  private static Configuration createBlockJobConf(Configuration initialConf,
+                                                  Vector[] vectors,
+                                                  int outputVectorDim,
+                                                  boolean sparseOutput,
+                                                  Path matrixInputPath,
+                                                  Path outputVectorPathBase,
+                                                  Class<? extends BlockTimesSquaredMapper> mapClass)
+    throws IOException {
+    Preconditions.checkArgument(vectors.length > 0, "no input vectors");
+    checkBlockSize(vectors[0].size(), vectors.length);
+    if (!sparseOutput) {
+      checkBlockSize(outputVectorDim, vectors.length);
+    }
+    JobConf conf = new JobConf(initialConf, TimesSquaredJob.class);
+    conf.setJobName("TimesSquaredJob (" + vectors.length + " vectors): " + matrixInputPath);
+    FileSystem fs = FileSystem.get(conf);
+    matrixInputPath = fs.makeQualified(matrixInputPath);
+    outputVectorPathBase = fs.makeQualified(outputVectorPathBase);
+
+    long now = System.nanoTime();
+    Path inputVectorPath = new Path(outputVectorPathBase, INPUT_VECTOR + '/' + now);
+    SequenceFile.Writer inputVectorPathWriter = new SequenceFile.Writer(fs,
+            conf, inputVectorPath, IntWritable.class, VectorWritable.class);
+    try {
+      for (int i = 0; i < vectors.length; i++) {
+        inputVectorPathWriter.append(new IntWritable(i), new VectorWritable(vectors[i]));
+      }
+    } finally {
+      inputVectorPathWriter.close();
+    }
+    URI ivpURI = inputVectorPath.toUri();
+    DistributedCache.setCacheFiles(new URI[] {ivpURI}, conf);
+
+    conf.set(INPUT_VECTOR, ivpURI.toString());
+    conf.setInt(OUTPUT_VECTOR_DIMENSION, outputVectorDim);
+    conf.setBoolean(IS_SPARSE_OUTPUT, sparseOutput);
+    FileInputFormat.addInputPath(conf, matrixInputPath);
+    conf.setInputFormat(SequenceFileInputFormat.class);
+    FileOutputFormat.setOutputPath(conf, new Path(outputVectorPathBase, OUTPUT_VECTOR_FILENAME));
+    conf.setMapperClass(mapClass);
+    conf.setMapOutputKeyClass(IntWritable.class);
+    conf.setMapOutputValueClass(VectorWritable.class);
+    conf.setReducerClass(IndexedVectorSummingReducer.class);
+    conf.setCombinerClass(IndexedVectorSummingReducer.class);
+    conf.setNumReduceTasks(1);
+    conf.setOutputFormat(SequenceFileOutputFormat.class);
+    conf.setOutputKeyClass(IntWritable.class);
+    conf.setOutputValueClass(VectorWritable.class);
+    return conf;
+  }
+
+  /**
+   * The block mappers interleave the entries of all vectors in one array, which must be addressable with an int.
+   */
+  private static void checkBlockSize(int dimension, int numVectors) {
+    Preconditions.checkArgument((long) dimension * numVectors <= Integer.MAX_VALUE,
+                                "%s vectors of dimension %s are too many to multiply by at once",
+                                numVectors, dimension);
+  }
+
+  /**
+   * @return the output vectors of a job configured for several input vectors, in the order of the input vectors
+   */
+  public static Vector[] retrieveTimesSquaredOutputVectors(Configuration conf) throws IOException {
+    Path outputPath = FileOutputFormat.getOutputPath(new JobConf(conf));
+    Path outputFile = new Path(outputPath, "part-00000");
+    List<Vector> vectors = new ArrayList<Vector>();
+    for (Pair<IntWritable,VectorWritable> record :
+         new SequenceFileIterable<IntWritable,VectorWritable>(outputFile, true, conf)) {
+      int index = record.getFirst().get();
+      while (vectors.size() <= index) {
+        vectors.add(null);
+      }
+      vectors.set(index, record.getSecond().get());
+    }
+    return vectors.toArray(new Vector[vectors.size()]);
+  }
+
   public static Vector retrieveTimesSquaredOutputVector(Configuration conf) throws IOException {
     Path outputPath = FileOutputFormat.getOutputPath(new JobConf(conf));
     Path outputFile = new Path(outputPath, "part-00000");
@@ -259,6 +376,189 @@ public final class TimesSquaredJob {
     }
   }
 
+  /**
+   * Multiplies by several vectors at once. The input vectors and partial results are interleaved, so that the entries
+   * for one column of the matrix are adjacent in memory.
+   */
+  public static class BlockTimesSquaredMapper<T extends WritableComparable> extends MapReduceBase
+      implements Mapper<T,VectorWritable,IntWritable,VectorWritable> {
+
+    int numVectors;
+    double[] dots;
+    OutputCollector<IntWritable,VectorWritable> out;
+    private double[] inputs;
+    private int outDim;
+    private double[] outputs;
+
+    @Override
+    public void configure(JobConf conf) {
+      URI[] localFiles;
+      try {
+        localFiles = DistributedCache.getCacheFiles(conf);
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+      Preconditions.checkArgument(localFiles != null && localFiles.length >= 1,
+                                  "missing paths from the DistributedCache");
+      Path inputVectorPath = new Path(localFiles[0].getPath());
+
+      List<Vector> inputVectors = new ArrayList<Vector>();
+      for (Pair<IntWritable,VectorWritable> record :
+           new SequenceFileIterable<IntWritable,VectorWritable>(inputVectorPath, true, conf)) {
+        inputVectors.add(record.getSecond().get());
+      }
+      numVectors = inputVectors.size();
+      int inDim = inputVectors.get(0).size();
+      checkBlockSize(inDim, numVectors);
+      inputs = new double[inDim * numVectors];
+      for (int i = 0; i < numVectors; i++) {
+        Iterator<Vector.Element> elements = inputVectors.get(i).iterateNonZero();
+        while (elements.hasNext()) {
+          Vector.Element element = elements.next();
+          inputs[element.index() * numVectors + i] = element.get();
+        }
+      }
+      dots = new double[numVectors];
+      outDim = conf.getInt(OUTPUT_VECTOR_DIMENSION, Integer.MAX_VALUE);
+      createOutputs(outDim);
+    }
+
+    /**
+     * Allocates the partial results, here one dense array since every row adds to all of them.
+     */
+    void createOutputs(int outputDimension) {
+      checkBlockSize(outputDimension, numVectors);
+      outputs = new double[outputDimension * numVectors];
+    }
+
+    @Override
+    public void map(T rowNum,
+                    VectorWritable v,
+                    OutputCollector<IntWritable,VectorWritable> out,
+                    Reporter rep) throws IOException {
+      this.out = out;
+      Vector row = v.get();
+      computeDots(row);
+      Iterator<Vector.Element> elements = row.iterateNonZero();
+      while (elements.hasNext()) {
+        Vector.Element element = elements.next();
+        double value = element.get();
+        int offset = element.index() * numVectors;
+        for (int i = 0; i < numVectors; i++) {
+          outputs[offset + i] += value * dots[i];
+        }
+      }
+    }
+
+    /**
+     * Computes the dot products of the row with all input vectors into {@link #dots}
+     */
+    void computeDots(Vector row) {
+      for (int i = 0; i < numVectors; i++) {
+        dots[i] = 0.0;
+      }
+      Iterator<Vector.Element> elements = row.iterateNonZero();
+      while (elements.hasNext()) {
+        Vector.Element element = elements.next();
+        double value = element.get();
+        int offset = element.index() * numVectors;
+        for (int i = 0; i < numVectors; i++) {
+          dots[i] += value * inputs[offset + i];
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (out == null) {
+        return;
+      }
+      IntWritable index = new IntWritable();
+      for (int i = 0; i < numVectors; i++) {
+        Vector outputVector = new DenseVector(outDim);
+        for (int j = 0; j < outDim; j++) {
+          outputVector.setQuick(j, outputs[j * numVectors + i]);
+        }
+        index.set(i);
+        out.collect(index, new VectorWritable(outputVector));
+      }
+    }
+  }
+
+  /**
+   * Like {@link TimesMapper}, only sets the entries for the rows of its own split, so the partial results are
+   * kept, and emitted, as sparse vectors.
+   */
+  public static class BlockTimesMapper extends BlockTimesSquaredMapper<IntWritable> {
+
+    private Vector[] outputVectors;
+
+    @Override
+    void createOutputs(int outputDimension) {
+      outputVectors = new Vector[numVectors];
+      for (int i = 0; i < numVectors; i++) {
+        outputVectors[i] = new RandomAccessSparseVector(outputDimension, 10);
+      }
+    }
+
+    @Override
+    public void map(IntWritable rowNum,
+                    VectorWritable v,
+                    OutputCollector<IntWritable,VectorWritable> out,
+                    Reporter rep) {
+      this.out = out;
+      computeDots(v.get());
+      for (int i = 0; i < numVectors; i++) {
+        if (dots[i] != 0.0) {
+          outputVectors[i].setQuick(rowNum.get(), dots[i]);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (out == null) {
+        return;
+      }
+      IntWritable index = new IntWritable();
+      for (int i = 0; i < numVectors; i++) {
+        index.set(i);
+        out.collect(index, new VectorWritable(outputVectors[i]));
+      }
+    }
+  }
+
+  public static class IndexedVectorSummingReducer extends MapReduceBase
+      implements Reducer<IntWritable,VectorWritable,IntWritable,VectorWritable> {
+
+    private int outputDimension;
+    private boolean sparseOutput;
+
+    @Override
+    public void configure(JobConf conf) {
+      outputDimension = conf.getInt(OUTPUT_VECTOR_DIMENSION, Integer.MAX_VALUE);
+      sparseOutput = conf.getBoolean(IS_SPARSE_OUTPUT, false);
+    }
+
+    @Override
+    public void reduce(IntWritable index,
+                       Iterator<VectorWritable> vectors,
+                       OutputCollector<IntWritable,VectorWritable> out,
+                       Reporter reporter) throws IOException {
+      // Also the combiner, so sparse partial results must stay sparse
+      Vector outputVector = sparseOutput
+                          ? new RandomAccessSparseVector(outputDimension, 10)
+                          : new DenseVector(outputDimension);
+      while (vectors.hasNext()) {
+        VectorWritable v = vectors.next();
+        if (v != null) {
+          v.get().addTo(outputVector);
+        }
+      }
+      out.collect(index, new VectorWritable(outputVector));
+    }
+  }
+
   public static class VectorSummingReducer extends MapReduceBase
       implements Reducer<NullWritable,VectorWritable,NullWritable,VectorWritable> {
 
@@ -34,9 +34,11 @@ import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.math.decomposer.lanczos.LanczosSolver;
 import org.apache.mahout.math.decomposer.lanczos.LanczosState;
 import org.apache.mahout.math.hadoop.DistributedRowMatrix;
+import org.apache.mahout.math.hadoop.InMemoryRowMatrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
 
@@ -50,6 +52,34 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
 
   private Map<String, String> parsedArgs;
 
+  private boolean inMemoryCorpus;
+  private int numThreads = Runtime.getRuntime().availableProcessors();
+  private boolean offHeap;
+  private int blockSize = 1;
+
+  /**
+   * Makes the run methods which take an input path load the corpus into an {@link InMemoryRowMatrix} and multiply
+   * on this machine, instead of running an M/R pass over a {@link DistributedRowMatrix} for every Lanczos iteration.
+   *
+   * @param numThreads number of threads to use for the multiplications
+   * @param offHeap whether to keep the matrix entries outside of the Java heap
+   */
+  public void setInMemoryCorpus(int numThreads, boolean offHeap) {
+    this.inMemoryCorpus = true;
+    this.numThreads = numThreads;
+    this.offHeap = offHeap;
+  }
+
+  /**
+   * Makes every solve multiply the corpus by blockSize vectors at once, so that a rank k decomposition takes
+   * k / blockSize passes over the corpus instead of k. The rank is rounded down to a multiple of the block size.
+   *
+   * @see LanczosSolver#solve(LanczosState, int, boolean, int)
+   */
+  public void setBlockSize(int blockSize) {
+    this.blockSize = blockSize;
+  }
+
   /**
    * For the distributed case, the best guess at a useful initialization state for Lanczos we'll chose to be
    * uniform over all input dimensions, L_2 normalized.
@@ -65,9 +95,11 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
                              int desiredRank,
                              boolean isSymmetric,
                              String outputEigenVectorPathString) throws IOException {
-    ((DistributedRowMatrix)state.getCorpus()).setConf(new Configuration(originalConfig));
+    if (state.getCorpus() instanceof DistributedRowMatrix) {
+      ((DistributedRowMatrix) state.getCorpus()).setConf(new Configuration(originalConfig));
+    }
     setConf(originalConfig);
-    solve(state, desiredRank, isSymmetric);
+    solve(state, desiredRank, isSymmetric, blockSize);
     serializeOutput(state, new Path(outputEigenVectorPathString));
     return state;
   }
@@ -83,10 +115,13 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
                              boolean isSymmetric,
                              int desiredRank,
                              String outputEigenVectorPathString) throws IOException {
-    DistributedRowMatrix matrix = new DistributedRowMatrix(inputPath, outputTmpPath, numRows, numCols);
-    matrix.setConf(new Configuration(originalConfig));
-    LanczosState state = new LanczosState(matrix, numCols, desiredRank, getInitialVector(matrix));
-    return runJob(originalConfig, state, desiredRank, isSymmetric, outputEigenVectorPathString);
+    VectorIterable matrix = createCorpus(inputPath, outputTmpPath, numRows, numCols, originalConfig);
+    try {
+      LanczosState state = new LanczosState(matrix, numCols, desiredRank, getInitialVector(matrix));
+      return runJob(originalConfig, state, desiredRank, isSymmetric, outputEigenVectorPathString);
+    } finally {
+      closeCorpus(matrix);
+    }
   }
 
   public void runJob(Configuration originalConfig,
@@ -96,7 +131,7 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
                      boolean isSymmetric,
                      String outputEigenVectorPathString) throws IOException {
     setConf(originalConfig);
-    solve(state, desiredRank, isSymmetric);
+    solve(state, desiredRank, isSymmetric, blockSize);
     serializeOutput(state, new Path(outputEigenVectorPathString));
   }
 
@@ -111,6 +146,12 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
     int numCols = Integer.parseInt(parsedArgs.get("--numCols"));
     boolean isSymmetric = Boolean.parseBoolean(parsedArgs.get("--symmetric"));
     int desiredRank = Integer.parseInt(parsedArgs.get("--rank"));
+    if (Boolean.parseBoolean(parsedArgs.get("--inMemoryCorpus"))) {
+      int threads = parsedArgs.get("--numThreads") != null
+                  ? Integer.parseInt(parsedArgs.get("--numThreads")) : Runtime.getRuntime().availableProcessors();
+      setInMemoryCorpus(threads, Boolean.parseBoolean(parsedArgs.get("--offHeap")));
+    }
+    setBlockSize(Integer.parseInt(parsedArgs.get("--blockSize")));
 
     boolean cleansvd = Boolean.parseBoolean(parsedArgs.get("--cleansvd"));
     if (cleansvd) {
@@ -194,26 +235,49 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
                  int numCols,
                  boolean isSymmetric,
                  int desiredRank) throws Exception {
-    DistributedRowMatrix matrix = new DistributedRowMatrix(inputPath, outputTmpPath, numRows, numCols);
-    matrix.setConf(new Configuration(getConf() != null ? getConf() : new Configuration()));
+    Configuration matrixConf = new Configuration(getConf() != null ? getConf() : new Configuration());
+    VectorIterable matrix = createCorpus(inputPath, outputTmpPath, numRows, numCols, matrixConf);
 
     LanczosState state;
-    if(workingDirPath == null) {
-      state = new LanczosState(matrix, numCols, desiredRank, getInitialVector(matrix));
-    } else {
-      HdfsBackedLanczosState hState =
-          new HdfsBackedLanczosState(matrix, numCols, desiredRank, getInitialVector(matrix),
-              workingDirPath);
-      hState.setConf(matrix.getConf());
-      state = hState;
+    try {
+      if(workingDirPath == null) {
+        state = new LanczosState(matrix, numCols, desiredRank, getInitialVector(matrix));
+      } else {
+        HdfsBackedLanczosState hState =
+            new HdfsBackedLanczosState(matrix, numCols, desiredRank, getInitialVector(matrix),
+                workingDirPath);
+        hState.setConf(matrixConf);
+        state = hState;
+      }
+      solve(state, desiredRank, isSymmetric, blockSize);
+    } finally {
+      closeCorpus(matrix);
     }
-    solve(state, desiredRank, isSymmetric);
 
     Path outputEigenVectorPath = new Path(outputPath, RAW_EIGENVECTORS);
     serializeOutput(state, outputEigenVectorPath);
     return 0;
   }
 
+  private VectorIterable createCorpus(Path inputPath,
+                                      Path outputTmpPath,
+                                      int numRows,
+                                      int numCols,
+                                      Configuration matrixConf) throws IOException {
+    if (inMemoryCorpus) {
+      return new InMemoryRowMatrix(inputPath, matrixConf, numRows, numCols, numThreads, offHeap);
+    }
+    DistributedRowMatrix matrix = new DistributedRowMatrix(inputPath, outputTmpPath, numRows, numCols);
+    matrix.setConf(matrixConf);
+    return matrix;
+  }
+
+  private static void closeCorpus(VectorIterable corpus) throws IOException {
+    if (corpus instanceof Closeable) {
+      ((Closeable) corpus).close();
+    }
+  }
+
   /**
    * @param state The final LanczosState to be serialized
    * @param outputPath The path (relative to the current Configuration's FileSystem) to save the output to.
@@ -282,6 +346,13 @@ public class DistributedLanczosSolver extends LanczosSolver implements Tool {
       addOption("maxError", "err", "Maximum acceptable error", "0.05");
       addOption("minEigenvalue", "mev", "Minimum eigenvalue to keep the vector for", "0.0");
       addOption("inMemory", "mem", "Buffer eigen matrix into memory (if you have enough!)", "false");
+      // options to multiply on this machine instead of with one M/R pass per iteration
+      addOption("inMemoryCorpus", "imc", "Load the input matrix into memory and multiply with it locally "
+                                         + "(if you have enough!)", "false");
+      addOption("numThreads", "nt", "Number of threads to use for in memory multiplication "
+                                    + "(default: number of processors)", false);
+      addOption("offHeap", "oh", "Keep the in memory matrix outside of the Java heap", "false");
+      addOption("blockSize", "bs", "Number of vectors to multiply the input matrix with in each pass", "1");
 
       DistributedLanczosSolver.this.parsedArgs = parseArguments(args);
       if (DistributedLanczosSolver.this.parsedArgs == null) {
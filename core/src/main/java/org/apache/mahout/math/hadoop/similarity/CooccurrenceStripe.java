@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.hadoop.similarity;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.mahout.math.Varint;
+import org.apache.mahout.math.list.IntArrayList;
+import org.apache.mahout.math.map.OpenIntDoubleHashMap;
+import org.apache.mahout.math.map.OpenIntObjectHashMap;
+
+/**
+ * the {@link CooccurrenceSums} of a row with all rows it cooccurs with that have an equal or higher index, used by
+ * the stripes mode of {@link RowSimilarityJob}. X in the sums refers to the values of the row itself, Y to the values
+ * of the other row.
+ */
+class CooccurrenceStripe implements Writable {
+
+  private double weight;
+  private OpenIntObjectHashMap<CooccurrenceSums> sums = new OpenIntObjectHashMap<CooccurrenceSums>();
+  private OpenIntDoubleHashMap otherWeights = new OpenIntDoubleHashMap();
+
+  CooccurrenceStripe() {
+  }
+
+  CooccurrenceStripe(double weight) {
+    this.weight = weight;
+  }
+
+  /** weight of the row this stripe belongs to */
+  double getWeight() {
+    return weight;
+  }
+
+  /**
+   * adds the values of this row and the other row in a single column
+   */
+  void add(int otherRow, double otherWeight, double value, double otherValue) {
+    sumsFor(otherRow, otherWeight).add(value, otherValue);
+  }
+
+  /**
+   * adds the partial sums of another stripe of the same row
+   */
+  void addAll(CooccurrenceStripe other) {
+    weight = other.weight;
+    IntArrayList otherRows = other.sums.keys();
+    for (int n = 0; n < otherRows.size(); n++) {
+      int otherRow = otherRows.getQuick(n);
+      sumsFor(otherRow, other.otherWeights.get(otherRow)).add(other.sums.get(otherRow));
+    }
+  }
+
+  private CooccurrenceSums sumsFor(int otherRow, double otherWeight) {
+    CooccurrenceSums sumsOfOtherRow = sums.get(otherRow);
+    if (sumsOfOtherRow == null) {
+      sumsOfOtherRow = new CooccurrenceSums();
+      sums.put(otherRow, sumsOfOtherRow);
+      otherWeights.put(otherRow, otherWeight);
+    }
+    return sumsOfOtherRow;
+  }
+
+  /** number of rows this row cooccurs with */
+  int size() {
+    return sums.size();
+  }
+
+  IntArrayList otherRows() {
+    return sums.keys();
+  }
+
+  CooccurrenceSums getSums(int otherRow) {
+    return sums.get(otherRow);
+  }
+
+  double getOtherWeight(int otherRow) {
+    return otherWeights.get(otherRow);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    weight = in.readDouble();
+    int size = Varint.readUnsignedVarInt(in);
+    /* fresh maps instead of clear(), as the keys of a cleared OpenIntObjectHashMap cannot be listed */
+    sums = new OpenIntObjectHashMap<CooccurrenceSums>(size);
+    otherWeights = new OpenIntDoubleHashMap(size);
+    for (int n = 0; n < size; n++) {
+      int otherRow = Varint.readSignedVarInt(in);
+      double otherWeight = in.readDouble();
+      CooccurrenceSums sumsOfOtherRow = new CooccurrenceSums();
+      sumsOfOtherRow.readFields(in);
+      sums.put(otherRow, sumsOfOtherRow);
+      otherWeights.put(otherRow, otherWeight);
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeDouble(weight);
+    IntArrayList otherRows = sums.keys();
+    Varint.writeUnsignedVarInt(otherRows.size(), out);
+    for (int n = 0; n < otherRows.size(); n++) {
+      int otherRow = otherRows.getQuick(n);
+      Varint.writeSignedVarInt(otherRow, out);
+      out.writeDouble(otherWeights.get(otherRow));
+      sums.get(otherRow).write(out);
+    }
+  }
+}
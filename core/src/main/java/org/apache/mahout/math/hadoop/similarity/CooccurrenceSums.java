@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.hadoop.similarity;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.mahout.math.Varint;
+
+/**
+ * sums over the {@link Cooccurrence}s of two rows, from which all built-in
+ * {@link org.apache.mahout.math.hadoop.similarity.vector.SummingVectorSimilarity}s can be computed. Partial sums
+ * over disjoint sets of columns can be combined with {@link #add(CooccurrenceSums)}.
+ */
+public class CooccurrenceSums implements Writable {
+
+  private int count;
+  private double sumX;
+  private double sumY;
+  private double sumXY;
+  private double sumX2;
+  private double sumY2;
+  private double sumXYDiff2;
+
+  public static CooccurrenceSums of(Iterable<Cooccurrence> cooccurrences) {
+    CooccurrenceSums sums = new CooccurrenceSums();
+    for (Cooccurrence cooccurrence : cooccurrences) {
+      sums.add(cooccurrence.getValueA(), cooccurrence.getValueB());
+    }
+    return sums;
+  }
+
+  /**
+   * adds the values of rowA and rowB in a single column
+   */
+  public void add(double valueA, double valueB) {
+    count++;
+    sumX += valueA;
+    sumY += valueB;
+    sumXY += valueA * valueB;
+    sumX2 += valueA * valueA;
+    sumY2 += valueB * valueB;
+    double diff = valueA - valueB;
+    sumXYDiff2 += diff * diff;
+  }
+
+  public void add(CooccurrenceSums other) {
+    count += other.count;
+    sumX += other.sumX;
+    sumY += other.sumY;
+    sumXY += other.sumXY;
+    sumX2 += other.sumX2;
+    sumY2 += other.sumY2;
+    sumXYDiff2 += other.sumXYDiff2;
+  }
+
+  /** number of columns in which both rows have an entry */
+  public int getCount() {
+    return count;
+  }
+  public double getSumX() {
+    return sumX;
+  }
+  public double getSumY() {
+    return sumY;
+  }
+  public double getSumXY() {
+    return sumXY;
+  }
+  public double getSumX2() {
+    return sumX2;
+  }
+  public double getSumY2() {
+    return sumY2;
+  }
+  /** sum of the squared differences of the values of rowA and rowB */
+  public double getSumXYDiff2() {
+    return sumXYDiff2;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    count = Varint.readUnsignedVarInt(in);
+    sumX = in.readDouble();
+    sumY = in.readDouble();
+    sumXY = in.readDouble();
+    sumX2 = in.readDouble();
+    sumY2 = in.readDouble();
+    sumXYDiff2 = in.readDouble();
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Varint.writeUnsignedVarInt(count, out);
+    out.writeDouble(sumX);
+    out.writeDouble(sumY);
+    out.writeDouble(sumXY);
+    out.writeDouble(sumX2);
+    out.writeDouble(sumY2);
+    out.writeDouble(sumXYDiff2);
+  }
+}
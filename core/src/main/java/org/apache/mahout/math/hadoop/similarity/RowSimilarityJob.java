@@ -19,9 +19,11 @@ package org.apache.mahout.math.hadoop.similarity;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
@@ -30,11 +32,13 @@ import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.mahout.common.AbstractJob;
+import org.apache.mahout.common.RandomUtils;
 import org.apache.mahout.math.RandomAccessSparseVector;
 import org.apache.mahout.math.SequentialAccessSparseVector;
 import org.apache.mahout.math.VarIntWritable;
@@ -42,6 +46,11 @@ import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.math.hadoop.DistributedRowMatrix;
 import org.apache.mahout.math.hadoop.similarity.vector.DistributedVectorSimilarity;
+import org.apache.mahout.math.hadoop.similarity.vector.SummingVectorSimilarity;
+import org.apache.mahout.math.list.IntArrayList;
+import org.apache.mahout.math.map.OpenIntObjectHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * <p>Runs a completely distributed computation of the pairwise similarity of the row vectors of a
@@ -63,8 +72,19 @@ import org.apache.mahout.math.hadoop.similarity.vector.DistributedVectorSimilari
  * <li>--similarityClassname (classname): an implementation of {@link DistributedVectorSimilarity} used to compute the
  * similarity</li>
  * <li>--maxSimilaritiesPerRow (integer): cap the number of similar rows per row to this number (100)</li>
+ * <li>--stripes (flag): compute the cooccurrences as stripes, see below</li>
+ * <li>--maxOccurrencesPerColumn (integer): randomly down-sample columns with more entries to this number, which
+ * approximates the similarities of the rows in very dense columns (optional)</li>
+ * <li>--threshold (double): discard similarities below this value (optional)</li>
  * </ol>
  *
+ * <p>By default, the cooccurrences are computed as pairs: for each column, a record is emitted for every pair of rows
+ * with an entry in that column, so the amount of data shuffled grows quadratically with the density of the columns.
+ * With --stripes, each mapper instead sums up the cooccurrences of a row with all higher-indexed rows in memory, and
+ * emits one stripe of {@link CooccurrenceSums} per row when its buffer is full or its input is exhausted. This
+ * requires the similarity to implement {@link SummingVectorSimilarity}, as all built-in similarities do; the job falls
+ * back to pairs otherwise.</p>
+ *
  *
  * <p>General command line options are documented in {@link AbstractJob}.</p>
  * <p>Please consider supplying a --tempDir parameter for this job, as is needs to write some intermediate files</p>
@@ -78,8 +98,16 @@ public class RowSimilarityJob extends AbstractJob {
       RowSimilarityJob.class.getName() + ".distributedSimilarityClassname";
   public static final String NUMBER_OF_COLUMNS = RowSimilarityJob.class.getName() + ".numberOfColumns";
   public static final String MAX_SIMILARITIES_PER_ROW = RowSimilarityJob.class.getName() + ".maxSimilaritiesPerRow";
+  public static final String MAX_OCCURRENCES_PER_COLUMN =
+      RowSimilarityJob.class.getName() + ".maxOccurrencesPerColumn";
+  public static final String THRESHOLD = RowSimilarityJob.class.getName() + ".threshold";
+  public static final String MAX_BUFFERED_STRIPE_ENTRIES =
+      RowSimilarityJob.class.getName() + ".maxBufferedStripeEntries";
 
   private static final int DEFAULT_MAX_SIMILARITIES_PER_ROW = 100;
+  private static final int DEFAULT_MAX_BUFFERED_STRIPE_ENTRIES = 100000;
+
+  private static final Logger log = LoggerFactory.getLogger(RowSimilarityJob.class);
 
   public enum Counter {
     COOCCURRENCES, SIMILAR_ROWS
@@ -99,6 +127,10 @@ public class RowSimilarityJob extends AbstractJob {
         + "one of the predefined similarities (" + SimilarityType.listEnumNames() + ')');
     addOption("maxSimilaritiesPerRow", "m", "Number of maximum similarities per row (default: "
               + DEFAULT_MAX_SIMILARITIES_PER_ROW + ')', String.valueOf(DEFAULT_MAX_SIMILARITIES_PER_ROW));
+    addFlag("stripes", "st", "compute the cooccurrences as stripes of partial sums per row instead of as pairs");
+    addOption("maxOccurrencesPerColumn", "mo", "down-sample columns with more entries to this number (optional)",
+        null);
+    addOption("threshold", "tr", "discard similarities below this value (optional)", null);
 
     Map<String,String> parsedArgs = parseArguments(args);
     if (parsedArgs == null) {
@@ -116,6 +148,14 @@ public class RowSimilarityJob extends AbstractJob {
     }
 
     int maxSimilaritiesPerRow = Integer.parseInt(parsedArgs.get("--maxSimilaritiesPerRow"));
+    String maxOccurrencesPerColumn = parsedArgs.get("--maxOccurrencesPerColumn");
+    String threshold = parsedArgs.get("--threshold");
+    boolean stripes = parsedArgs.containsKey("--stripes");
+    if (stripes && !(instantiateSimilarity(distributedSimilarityClassname) instanceof SummingVectorSimilarity)) {
+      log.info("{} cannot be computed from stripes, computing the cooccurrences as pairs",
+          distributedSimilarityClassname);
+      stripes = false;
+    }
 
     Path inputPath = getInputPath();
     Path outputPath = getOutputPath();
@@ -143,7 +183,21 @@ public class RowSimilarityJob extends AbstractJob {
     }
 
     if (shouldRunNextPhase(parsedArgs, currentPhase)) {
-      Job pairwiseSimilarity = prepareJob(weightsPath,
+      Job pairwiseSimilarity;
+      if (stripes) {
+        pairwiseSimilarity = prepareJob(weightsPath,
+                               pairwiseSimilarityPath,
+                               SequenceFileInputFormat.class,
+                               CooccurrenceStripesMapper.class,
+                               VarIntWritable.class,
+                               CooccurrenceStripe.class,
+                               StripesSimilarityReducer.class,
+                               SimilarityMatrixEntryKey.class,
+                               DistributedRowMatrix.MatrixEntryWritable.class,
+                               SequenceFileOutputFormat.class);
+        pairwiseSimilarity.setCombinerClass(StripesCombiner.class);
+      } else {
+        pairwiseSimilarity = prepareJob(weightsPath,
                                pairwiseSimilarityPath,
                                SequenceFileInputFormat.class,
                                CooccurrencesMapper.class,
@@ -153,10 +207,17 @@ public class RowSimilarityJob extends AbstractJob {
                                SimilarityMatrixEntryKey.class,
                                DistributedRowMatrix.MatrixEntryWritable.class,
                                SequenceFileOutputFormat.class);
+      }
 
       Configuration pairwiseConf = pairwiseSimilarity.getConfiguration();
       pairwiseConf.set(DISTRIBUTED_SIMILARITY_CLASSNAME, distributedSimilarityClassname);
       pairwiseConf.setInt(NUMBER_OF_COLUMNS, numberOfColumns);
+      if (maxOccurrencesPerColumn != null) {
+        pairwiseConf.setInt(MAX_OCCURRENCES_PER_COLUMN, Integer.parseInt(maxOccurrencesPerColumn));
+      }
+      if (threshold != null) {
+        pairwiseConf.set(THRESHOLD, threshold);
+      }
       pairwiseSimilarity.waitForCompletion(true);
     }
 
@@ -192,6 +253,58 @@ public class RowSimilarityJob extends AbstractJob {
     }
   }
 
+  /**
+   * @return the entries of a column, randomly down-sampled to maxOccurrencesPerColumn entries if there are more;
+   * the sample only depends on the column, so that all tasks see the same one
+   */
+  static WeightedOccurrence[] sampleColumn(int column, WeightedOccurrence[] weightedOccurrences,
+      int maxOccurrencesPerColumn) {
+    if (maxOccurrencesPerColumn < 1 || weightedOccurrences.length <= maxOccurrencesPerColumn) {
+      return weightedOccurrences;
+    }
+    WeightedOccurrence[] sample = weightedOccurrences.clone();
+    Random random = RandomUtils.getRandom(column);
+    for (int n = 0; n < maxOccurrencesPerColumn; n++) {
+      int swapWith = n + random.nextInt(sample.length - n);
+      WeightedOccurrence swapped = sample[n];
+      sample[n] = sample[swapWith];
+      sample[swapWith] = swapped;
+    }
+    return Arrays.copyOf(sample, maxOccurrencesPerColumn);
+  }
+
+  static double readThreshold(Configuration conf) {
+    String threshold = conf.get(THRESHOLD);
+    return threshold == null ? Double.NEGATIVE_INFINITY : Double.parseDouble(threshold);
+  }
+
+  /**
+   * writes a similarity to both rows it belongs to, unless it is NaN or below the threshold
+   */
+  static void writeSimilarity(int rowA, int rowB, double similarityValue, double threshold,
+      TaskInputOutputContext<?,?,SimilarityMatrixEntryKey,DistributedRowMatrix.MatrixEntryWritable> ctx)
+    throws IOException, InterruptedException {
+
+    if (!Double.isNaN(similarityValue) && similarityValue >= threshold) {
+      ctx.getCounter(Counter.SIMILAR_ROWS).increment(1);
+      SimilarityMatrixEntryKey key = new SimilarityMatrixEntryKey();
+      DistributedRowMatrix.MatrixEntryWritable entry = new DistributedRowMatrix.MatrixEntryWritable();
+      entry.setVal(similarityValue);
+
+      entry.setRow(rowA);
+      entry.setCol(rowB);
+      key.set(rowA, similarityValue);
+      ctx.write(key, entry);
+
+      if (rowA != rowB) {
+        entry.setRow(rowB);
+        entry.setCol(rowA);
+        key.set(rowB, similarityValue);
+        ctx.write(key, entry);
+      }
+    }
+  }
+
   /**
    * applies {@link DistributedVectorSimilarity#weight(Vector)} to each row of the input matrix
    */
@@ -248,11 +361,20 @@ public class RowSimilarityJob extends AbstractJob {
   public static class CooccurrencesMapper
       extends Mapper<VarIntWritable,WeightedOccurrenceArray,WeightedRowPair,Cooccurrence> {
 
+    private int maxOccurrencesPerColumn;
+
+    @Override
+    protected void setup(Context ctx) throws IOException, InterruptedException {
+      super.setup(ctx);
+      maxOccurrencesPerColumn = ctx.getConfiguration().getInt(MAX_OCCURRENCES_PER_COLUMN, -1);
+    }
+
     @Override
     protected void map(VarIntWritable column, WeightedOccurrenceArray weightedOccurrenceArray, Context ctx)
       throws IOException, InterruptedException {
 
-      WeightedOccurrence[] weightedOccurrences = weightedOccurrenceArray.getWeightedOccurrences();
+      WeightedOccurrence[] weightedOccurrences = sampleColumn(column.get(),
+          weightedOccurrenceArray.getWeightedOccurrences(), maxOccurrencesPerColumn);
 
       WeightedRowPair rowPair = new WeightedRowPair();
       Cooccurrence coocurrence = new Cooccurrence();
@@ -288,6 +410,7 @@ public class RowSimilarityJob extends AbstractJob {
 
     private DistributedVectorSimilarity similarity;
     private int numberOfColumns;
+    private double threshold;
 
     @Override
     protected void setup(Context ctx) throws IOException, InterruptedException {
@@ -297,6 +420,7 @@ public class RowSimilarityJob extends AbstractJob {
       if (numberOfColumns < 1) {
         throw new IllegalStateException("Number of columns was not correctly set!");
       }
+      threshold = readThreshold(ctx.getConfiguration());
     }
 
     @Override
@@ -308,24 +432,144 @@ public class RowSimilarityJob extends AbstractJob {
       double similarityValue = similarity.similarity(rowA, rowB, cooccurrences, rowPair.getWeightA(),
           rowPair.getWeightB(), numberOfColumns);
 
-      if (!Double.isNaN(similarityValue)) {
-        ctx.getCounter(Counter.SIMILAR_ROWS).increment(1);
-        SimilarityMatrixEntryKey key = new SimilarityMatrixEntryKey();
-        DistributedRowMatrix.MatrixEntryWritable entry = new DistributedRowMatrix.MatrixEntryWritable();
-        entry.setVal(similarityValue);
+      writeSimilarity(rowA, rowB, similarityValue, threshold, ctx);
+    }
+  }
 
-        entry.setRow(rowA);
-        entry.setCol(rowB);
-        key.set(rowA, similarityValue);
-        ctx.write(key, entry);
+  /**
+   * sums up the cooccurrences of each row with all rows of an equal or higher index, over all columns seen by this
+   * mapper, and emits them as one {@link CooccurrenceStripe} per row whenever the buffer is full
+   */
+  public static class CooccurrenceStripesMapper
+      extends Mapper<VarIntWritable,WeightedOccurrenceArray,VarIntWritable,CooccurrenceStripe> {
+
+    private int maxOccurrencesPerColumn;
+    private int maxBufferedEntries;
+    private OpenIntObjectHashMap<CooccurrenceStripe> stripes = new OpenIntObjectHashMap<CooccurrenceStripe>();
+    private int numBufferedEntries;
+
+    @Override
+    protected void setup(Context ctx) throws IOException, InterruptedException {
+      super.setup(ctx);
+      maxOccurrencesPerColumn = ctx.getConfiguration().getInt(MAX_OCCURRENCES_PER_COLUMN, -1);
+      maxBufferedEntries = ctx.getConfiguration().getInt(MAX_BUFFERED_STRIPE_ENTRIES,
+          DEFAULT_MAX_BUFFERED_STRIPE_ENTRIES);
+    }
+
+    @Override
+    protected void map(VarIntWritable column, WeightedOccurrenceArray weightedOccurrenceArray, Context ctx)
+      throws IOException, InterruptedException {
+
+      WeightedOccurrence[] weightedOccurrences = sampleColumn(column.get(),
+          weightedOccurrenceArray.getWeightedOccurrences(), maxOccurrencesPerColumn);
 
-        if (rowA != rowB) {
-          entry.setRow(rowB);
-          entry.setCol(rowA);
-          key.set(rowB, similarityValue);
-          ctx.write(key, entry);
+      for (int n = 0; n < weightedOccurrences.length; n++) {
+        WeightedOccurrence occurrenceA = weightedOccurrences[n];
+        for (int m = n; m < weightedOccurrences.length; m++) {
+          WeightedOccurrence occurrenceB = weightedOccurrences[m];
+          if (occurrenceA.getRow() <= occurrenceB.getRow()) {
+            add(occurrenceA, occurrenceB);
+          } else {
+            add(occurrenceB, occurrenceA);
+          }
+          /* checked per pair, as a single dense column alone may hold more than fit */
+          if (numBufferedEntries >= maxBufferedEntries) {
+            flush(ctx);
+          }
         }
       }
+      ctx.getCounter(Counter.COOCCURRENCES).increment(
+          (long) weightedOccurrences.length * (weightedOccurrences.length + 1) / 2);
+    }
+
+    private void add(WeightedOccurrence occurrence, WeightedOccurrence otherOccurrence) {
+      CooccurrenceStripe stripe = stripes.get(occurrence.getRow());
+      if (stripe == null) {
+        stripe = new CooccurrenceStripe(occurrence.getWeight());
+        stripes.put(occurrence.getRow(), stripe);
+      }
+      int sizeBefore = stripe.size();
+      stripe.add(otherOccurrence.getRow(), otherOccurrence.getWeight(), occurrence.getValue(),
+          otherOccurrence.getValue());
+      numBufferedEntries += stripe.size() - sizeBefore;
+    }
+
+    private void flush(Context ctx) throws IOException, InterruptedException {
+      IntArrayList rows = stripes.keys();
+      VarIntWritable rowWritable = new VarIntWritable();
+      for (int n = 0; n < rows.size(); n++) {
+        int row = rows.getQuick(n);
+        rowWritable.set(row);
+        ctx.write(rowWritable, stripes.get(row));
+      }
+      /* a fresh map instead of clear(), as the keys of a cleared OpenIntObjectHashMap cannot be listed */
+      stripes = new OpenIntObjectHashMap<CooccurrenceStripe>();
+      numBufferedEntries = 0;
+    }
+
+    @Override
+    protected void cleanup(Context ctx) throws IOException, InterruptedException {
+      flush(ctx);
+      super.cleanup(ctx);
+    }
+  }
+
+  /**
+   * merges the partial stripes of a row
+   */
+  public static class StripesCombiner
+      extends Reducer<VarIntWritable,CooccurrenceStripe,VarIntWritable,CooccurrenceStripe> {
+
+    @Override
+    protected void reduce(VarIntWritable row, Iterable<CooccurrenceStripe> stripes, Context ctx)
+      throws IOException, InterruptedException {
+      CooccurrenceStripe merged = new CooccurrenceStripe();
+      for (CooccurrenceStripe stripe : stripes) {
+        merged.addAll(stripe);
+      }
+      ctx.write(row, merged);
+    }
+  }
+
+  /**
+   * merges the partial stripes of a row and computes its similarities to all rows in the stripe
+   */
+  public static class StripesSimilarityReducer
+      extends Reducer<VarIntWritable,CooccurrenceStripe,SimilarityMatrixEntryKey,
+      DistributedRowMatrix.MatrixEntryWritable> {
+
+    private SummingVectorSimilarity similarity;
+    private int numberOfColumns;
+    private double threshold;
+
+    @Override
+    protected void setup(Context ctx) throws IOException, InterruptedException {
+      super.setup(ctx);
+      similarity = (SummingVectorSimilarity)
+          instantiateSimilarity(ctx.getConfiguration().get(DISTRIBUTED_SIMILARITY_CLASSNAME));
+      numberOfColumns = ctx.getConfiguration().getInt(NUMBER_OF_COLUMNS, -1);
+      if (numberOfColumns < 1) {
+        throw new IllegalStateException("Number of columns was not correctly set!");
+      }
+      threshold = readThreshold(ctx.getConfiguration());
+    }
+
+    @Override
+    protected void reduce(VarIntWritable row, Iterable<CooccurrenceStripe> stripes, Context ctx)
+      throws IOException, InterruptedException {
+      CooccurrenceStripe merged = new CooccurrenceStripe();
+      for (CooccurrenceStripe stripe : stripes) {
+        merged.addAll(stripe);
+      }
+
+      int rowA = row.get();
+      IntArrayList otherRows = merged.otherRows();
+      for (int n = 0; n < otherRows.size(); n++) {
+        int rowB = otherRows.getQuick(n);
+        double similarityValue = similarity.similarity(rowA, rowB, merged.getSums(rowB), merged.getWeight(),
+            merged.getOtherWeight(rowB), numberOfColumns);
+        writeSimilarity(rowA, rowB, similarityValue, threshold, ctx);
+      }
     }
   }
 
@@ -21,6 +21,7 @@ import java.util.Iterator;
 
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.hadoop.similarity.Cooccurrence;
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
 
 /**
  * abstract base implementation of {@link DistributedVectorSimilarity}
@@ -34,12 +35,27 @@ public abstract class AbstractDistributedVectorSimilarity implements Distributed
   public final double similarity(int rowA, int rowB, Iterable<Cooccurrence> cooccurrences, double weightOfVectorA,
       double weightOfVectorB, int numberOfColumns) {
 
-    double result = doComputeResult(rowA, rowB, cooccurrences, weightOfVectorA, weightOfVectorB, numberOfColumns);
+    return clamp(doComputeResult(rowA, rowB, cooccurrences, weightOfVectorA, weightOfVectorB, numberOfColumns));
+  }
 
+  /**
+   * ensures that the computed similarity is in [-1,1], only supported by subclasses which implement
+   * {@link SummingVectorSimilarity}
+   */
+  public final double similarity(int rowA, int rowB, CooccurrenceSums sums, double weightOfVectorA,
+      double weightOfVectorB, int numberOfColumns) {
+    return clamp(doComputeResult(rowA, rowB, sums, weightOfVectorA, weightOfVectorB, numberOfColumns));
+  }
+
+  /**
+   * ensures that the given similarity is in [-1,1]
+   */
+  protected static double clamp(double result) {
     if (result < -1.0) {
-      result = -1.0;
-    } else if (result > 1.0) {
-      result = 1.0;
+      return -1.0;
+    }
+    if (result > 1.0) {
+      return 1.0;
     }
     return result;
   }
@@ -75,6 +91,15 @@ public abstract class AbstractDistributedVectorSimilarity implements Distributed
                                             double weightOfVectorB,
                                             int numberOfColumns);
 
+  /**
+   * computes the similarity from the sums over the cooccurrences, subclasses which implement
+   * {@link SummingVectorSimilarity} must override this
+   */
+  protected double doComputeResult(int rowA, int rowB, CooccurrenceSums sums, double weightOfVectorA,
+      double weightOfVectorB, int numberOfColumns) {
+    throw new UnsupportedOperationException(getClass().getName() + " cannot be computed from sums");
+  }
+
   /**
    * vectors have no weight (NaN) by default, subclasses may override this
    */
@@ -18,21 +18,26 @@ package org.apache.mahout.math.hadoop.similarity.vector;
 
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.hadoop.similarity.Cooccurrence;
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
 
 /**
  * Implementation of City Block distance (also known as Manhattan distance) - the absolute value of the difference of
  * each direction is summed.  The resulting unbounded distance is then mapped between 1 and -1.
  */
-public final class DistributedCityBlockVectorSimilarity extends AbstractDistributedVectorSimilarity {
+public final class DistributedCityBlockVectorSimilarity extends AbstractDistributedVectorSimilarity
+    implements SummingVectorSimilarity {
 
   @Override
-  protected double doComputeResult(int rowA,
-                                   int rowB,
-                                   Iterable<Cooccurrence> cooccurrences,
-                                   double weightOfVectorA,
-                                   double weightOfVectorB,
-                                   int numberOfColumns) {
-    int cooccurrenceCount = countElements(cooccurrences);
+  protected double doComputeResult(int rowA, int rowB, Iterable<Cooccurrence> cooccurrences, double weightOfVectorA,
+      double weightOfVectorB, int numberOfColumns) {
+    return doComputeResult(rowA, rowB, CooccurrenceSums.of(cooccurrences), weightOfVectorA, weightOfVectorB,
+        numberOfColumns);
+  }
+
+  @Override
+  protected double doComputeResult(int rowA, int rowB, CooccurrenceSums sums, double weightOfVectorA,
+      double weightOfVectorB, int numberOfColumns) {
+    int cooccurrenceCount = sums.getCount();
     if (cooccurrenceCount == 0) {
       return Double.NaN;
     }
@@ -19,11 +19,12 @@ package org.apache.mahout.math.hadoop.similarity.vector;
 
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.hadoop.similarity.Cooccurrence;
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
 
 /**
  * uses the co-occcurence count as vector similarity
  */
-public class DistributedCooccurrenceVectorSimilarity implements DistributedVectorSimilarity {
+public class DistributedCooccurrenceVectorSimilarity implements SummingVectorSimilarity {
 
   @Override
   public double weight(Vector v) {
@@ -39,4 +40,14 @@ public class DistributedCooccurrenceVectorSimilarity implements DistributedVecto
                            int numberOfColumns) {
     return AbstractDistributedVectorSimilarity.countElements(cooccurrences);
   }
+
+  @Override
+  public double similarity(int rowA,
+                           int rowB,
+                           CooccurrenceSums sums,
+                           double weightOfVectorA,
+                           double weightOfVectorB,
+                           int numberOfColumns) {
+    return sums.getCount();
+  }
 }
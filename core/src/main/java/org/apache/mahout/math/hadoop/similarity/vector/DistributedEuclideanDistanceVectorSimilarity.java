@@ -18,26 +18,25 @@
 package org.apache.mahout.math.hadoop.similarity.vector;
 
 import org.apache.mahout.math.hadoop.similarity.Cooccurrence;
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
 
 /**
  * distributed implementation of euclidean distance as vector similarity measure
  */
-public class DistributedEuclideanDistanceVectorSimilarity extends AbstractDistributedVectorSimilarity {
+public class DistributedEuclideanDistanceVectorSimilarity extends AbstractDistributedVectorSimilarity
+    implements SummingVectorSimilarity {
 
   @Override
   protected double doComputeResult(int rowA, int rowB, Iterable<Cooccurrence> cooccurrences, double weightOfVectorA,
       double weightOfVectorB, int numberOfColumns) {
+    return doComputeResult(rowA, rowB, CooccurrenceSums.of(cooccurrences), weightOfVectorA, weightOfVectorB,
+        numberOfColumns);
+  }
 
-    double n = 0.0;
-    double sumXYdiff2 = 0.0;
-
-    for (Cooccurrence cooccurrence : cooccurrences) {
-      double diff = cooccurrence.getValueA() - cooccurrence.getValueB();
-      sumXYdiff2 += diff * diff;
-      n++;
-    }
-
-    return n / (1.0 + Math.sqrt(sumXYdiff2));
+  @Override
+  protected double doComputeResult(int rowA, int rowB, CooccurrenceSums sums, double weightOfVectorA,
+      double weightOfVectorB, int numberOfColumns) {
+    return sums.getCount() / (1.0 + Math.sqrt(sums.getSumXYDiff2()));
   }
 
 }
@@ -19,19 +19,27 @@ package org.apache.mahout.math.hadoop.similarity.vector;
 
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.hadoop.similarity.Cooccurrence;
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
 import org.apache.mahout.math.stats.LogLikelihood;
 
 /**
  * distributed implementation of loglikelihood as vector similarity measure
  */
 public class DistributedLoglikelihoodVectorSimilarity extends
-    AbstractDistributedVectorSimilarity {
+    AbstractDistributedVectorSimilarity
+    implements SummingVectorSimilarity {
 
   @Override
   protected double doComputeResult(int rowA, int rowB, Iterable<Cooccurrence> cooccurrences, double weightOfVectorA,
       double weightOfVectorB, int numberOfColumns) {
+    return doComputeResult(rowA, rowB, CooccurrenceSums.of(cooccurrences), weightOfVectorA, weightOfVectorB,
+        numberOfColumns);
+  }
 
-    int cooccurrenceCount = countElements(cooccurrences);
+  @Override
+  protected double doComputeResult(int rowA, int rowB, CooccurrenceSums sums, double weightOfVectorA,
+      double weightOfVectorB, int numberOfColumns) {
+    int cooccurrenceCount = sums.getCount();
     if (cooccurrenceCount == 0) {
       return Double.NaN;
     }
@@ -19,16 +19,25 @@ package org.apache.mahout.math.hadoop.similarity.vector;
 
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.hadoop.similarity.Cooccurrence;
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
 
 /**
  * distributed implementation of the tanimoto coefficient
  */
-public class DistributedTanimotoCoefficientVectorSimilarity extends AbstractDistributedVectorSimilarity {
+public class DistributedTanimotoCoefficientVectorSimilarity extends AbstractDistributedVectorSimilarity
+    implements SummingVectorSimilarity {
 
   @Override
   protected double doComputeResult(int rowA, int rowB, Iterable<Cooccurrence> cooccurrences, double weightOfVectorA,
       double weightOfVectorB, int numberOfColumns) {
-    double cooccurrenceCount = countElements(cooccurrences);
+    return doComputeResult(rowA, rowB, CooccurrenceSums.of(cooccurrences), weightOfVectorA, weightOfVectorB,
+        numberOfColumns);
+  }
+
+  @Override
+  protected double doComputeResult(int rowA, int rowB, CooccurrenceSums sums, double weightOfVectorA,
+      double weightOfVectorB, int numberOfColumns) {
+    double cooccurrenceCount = sums.getCount();
     if (cooccurrenceCount == 0) {
       return Double.NaN;
     }
@@ -18,41 +18,34 @@
 package org.apache.mahout.math.hadoop.similarity.vector;
 
 import org.apache.mahout.math.hadoop.similarity.Cooccurrence;
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
 
 /**
  * distributed implementation of cosine similarity that does not center its data
  */
-public class DistributedUncenteredCosineVectorSimilarity extends AbstractDistributedVectorSimilarity {
+public class DistributedUncenteredCosineVectorSimilarity extends AbstractDistributedVectorSimilarity
+    implements SummingVectorSimilarity {
 
   @Override
   protected double doComputeResult(int rowA, int rowB, Iterable<Cooccurrence> cooccurrences, double weightOfVectorA,
       double weightOfVectorB, int numberOfColumns) {
+    return doComputeResult(rowA, rowB, CooccurrenceSums.of(cooccurrences), weightOfVectorA, weightOfVectorB,
+        numberOfColumns);
+  }
 
-    int n = 0;
-    double sumXY = 0.0;
-    double sumX2 = 0.0;
-    double sumY2 = 0.0;
-
-    for (Cooccurrence cooccurrence : cooccurrences) {
-      double x = cooccurrence.getValueA();
-      double y = cooccurrence.getValueB();
-
-      sumXY += x * y;
-      sumX2 += x * x;
-      sumY2 += y * y;
-      n++;
-    }
-
-    if (n == 0) {
+  @Override
+  protected double doComputeResult(int rowA, int rowB, CooccurrenceSums sums, double weightOfVectorA,
+      double weightOfVectorB, int numberOfColumns) {
+    if (sums.getCount() == 0) {
       return Double.NaN;
     }
-    double denominator = Math.sqrt(sumX2) * Math.sqrt(sumY2);
+    double denominator = Math.sqrt(sums.getSumX2()) * Math.sqrt(sums.getSumY2());
     if (denominator == 0.0) {
       // One or both vectors has -all- the same values;
       // can't really say much similarity under this measure
       return Double.NaN;
     }
-    return sumXY / denominator;
+    return sums.getSumXY() / denominator;
   }
 
 }
@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.hadoop.similarity.vector;
+
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
+
+/**
+ * a {@link DistributedVectorSimilarity} that only depends on sums over the cooccurrences of two rows, so that it can
+ * be computed from partial sums combined in advance, as done by the stripes mode of
+ * {@link org.apache.mahout.math.hadoop.similarity.RowSimilarityJob}
+ */
+public interface SummingVectorSimilarity extends DistributedVectorSimilarity {
+
+  /**
+   * computes the similarity of two rows from the sums over their cooccurrences, must return the same value as
+   * {@link #similarity(int, int, Iterable, double, double, int)} given these cooccurrences
+   */
+  double similarity(int rowA,
+                    int rowB,
+                    CooccurrenceSums sums,
+                    double weightOfVectorA,
+                    double weightOfVectorB,
+                    int numberOfColumns);
+}
@@ -0,0 +1,637 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.hadoop.stochasticsvd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Iterators;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Writable;
+import org.apache.mahout.common.IOUtils;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.iterator.CopyConstructorIterator;
+import org.apache.mahout.common.iterator.sequencefile.PathFilters;
+import org.apache.mahout.common.iterator.sequencefile.PathType;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterable;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.ssvd.EigenSolverWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stochastic SVD solver which runs all steps of {@link SSVDSolver} within this process, for matrices of moderate
+ * height where the latency of five M/R jobs dominates.
+ * <P>
+ *
+ * The input is streamed from its SequenceFiles once per pass, in batches of rows which are processed by a pool of
+ * threads. Y = A &Omega; is computed with {@link Omega#computeYRow(Vector, double[])}, and Q is obtained from Y by
+ * running a {@link GivensThinSolver} per block of rows in parallel and merging the blocks as the Bt job does. Y, Q and
+ * B<sup>t</sup> (k+p columns each) as well as the row labels are kept in memory, A is not.
+ * <P>
+ *
+ * Optionally, q power iterations replace Y by (A A<sup>t</sup>)<sup>q</sup> A &Omega;, re-orthonormalizing after
+ * every multiplication. Each one costs two more passes over A, and improves precision considerably when the
+ * singular values of A decay slowly.
+ * <P>
+ *
+ * The output follows the layout of {@link SSVDSolver}: singular values in Sigma, U (keyed by the labels of A) and V
+ * in the U and V directories.
+ */
+public class LocalSSVDSolver {
+
+  private static final Logger log = LoggerFactory.getLogger(LocalSSVDSolver.class);
+
+  /** number of rows of A read ahead and handed to the threads at once */
+  private static final int BATCH_SIZE = 1024;
+
+  private double[] svalues;
+  private boolean computeU = true;
+  private boolean computeV = true;
+  private String uPath;
+  private String vPath;
+
+  // configured stuff
+  private final Configuration conf;
+  private final Path[] inputPath;
+  private final Path outputPath;
+  private final int ablockRows;
+  private final int k;
+  private final int p;
+  private int q;
+  private int numThreads = Runtime.getRuntime().availableProcessors();
+  private boolean cUHalfSigma;
+  private boolean cVHalfSigma;
+  private boolean overwrite;
+
+  private ExecutorService executor;
+
+  /**
+   * @param conf
+   *          hadoop configuration
+   * @param inputPath
+   *          Input path (should be compatible with DistributedRowMatrix as of
+   *          the time of this writing).
+   * @param outputPath
+   *          Output path containing U, V and singular values vector files.
+   * @param ablockRows
+   *          The height of a block of Y which is orthonormalized in one piece
+   *          (must be at least k+p)
+   * @param k
+   *          desired rank
+   * @param p
+   *          SSVD oversampling parameter
+   */
+  public LocalSSVDSolver(Configuration conf, Path[] inputPath, Path outputPath, int ablockRows, int k, int p) {
+    if (ablockRows < k + p) {
+      throw new IllegalArgumentException("Block height must be at least k+p");
+    }
+    this.conf = conf;
+    this.inputPath = inputPath;
+    this.outputPath = outputPath;
+    this.ablockRows = ablockRows;
+    this.k = k;
+    this.p = p;
+  }
+
+  public void setcUHalfSigma(boolean cUHat) {
+    this.cUHalfSigma = cUHat;
+  }
+
+  public void setcVHalfSigma(boolean cVHat) {
+    this.cVHalfSigma = cVHat;
+  }
+
+  public void setComputeU(boolean val) {
+    computeU = val;
+  }
+
+  public void setComputeV(boolean val) {
+    computeV = val;
+  }
+
+  /**
+   * @param q
+   *          number of power iterations, 0 (the default) for none
+   */
+  public void setQ(int q) {
+    if (q < 0) {
+      throw new IllegalArgumentException("Number of power iterations must not be negative");
+    }
+    this.q = q;
+  }
+
+  /**
+   * @param numThreads
+   *          number of threads to use, defaults to the number of processors
+   */
+  public void setNumThreads(int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * if true, clean output folder first if exists.
+   */
+  public void setOverwrite(boolean overwrite) {
+    this.overwrite = overwrite;
+  }
+
+  /**
+   * @return k+p singular values (largest to smallest)
+   */
+  public double[] getSingularValues() {
+    return svalues;
+  }
+
+  public String getUPath() {
+    return uPath;
+  }
+
+  public String getVPath() {
+    return vPath;
+  }
+
+  public void run() throws IOException {
+    int kp = k + p;
+    executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger();
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "LocalSSVDSolver-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      FileSystem fs = FileSystem.get(conf);
+      if (overwrite) {
+        fs.delete(outputPath, true);
+      }
+
+      // Y = A * Omega, collecting the row labels on the way
+      List<Writable> labels = new ArrayList<Writable>();
+      List<double[]> y = new ArrayList<double[]>();
+      int n = computeY(new Omega(RandomUtils.getRandom().nextLong(), k, p), labels, y);
+      if (y.size() < kp) {
+        throw new IOException("Matrix has " + y.size() + " rows, need at least k+p = " + kp);
+      }
+      double[][] qRows = orthonormalize(y);
+      y = null;
+
+      double[][] bt = new double[n][kp];
+      for (int i = 0; i < q; i++) {
+        log.info("Power iteration {} of {}", i + 1, q);
+        computeBt(qRows, bt);
+        qRows = orthonormalize(computeAB(bt));
+      }
+      computeBt(qRows, bt);
+
+      double[][] bbt = computeBBt(bt, kp);
+      EigenSolverWrapper eigenWrapper = new EigenSolverWrapper(bbt);
+      double[] eigenva2 = eigenWrapper.getEigenValues();
+      svalues = new double[kp];
+      for (int i = 0; i < kp; i++) {
+        svalues[i] = Math.sqrt(Math.max(eigenva2[i], 0));
+      }
+      double[][] uHat = eigenWrapper.getUHat();
+
+      Path svPath = new Path(outputPath, "Sigma");
+      fs.mkdirs(svPath);
+      SequenceFile.Writer svWriter = SequenceFile.createWriter(fs, conf, new Path(svPath, "svalues.seq"),
+          IntWritable.class, VectorWritable.class, CompressionType.BLOCK);
+      try {
+        svWriter.append(new IntWritable(), new VectorWritable(new DenseVector(svalues, true)));
+      } finally {
+        svWriter.close();
+      }
+
+      if (computeU) {
+        // U = Q * UHat, optionally times Sigma^0.5
+        Path uDir = new Path(outputPath, "U");
+        double[] scale = new double[k];
+        for (int i = 0; i < k; i++) {
+          scale[i] = cUHalfSigma ? Math.sqrt(svalues[i]) : 1.0;
+        }
+        writeProjection(fs, new Path(uDir, "u-m-00000"), labels, qRows, uHat, scale);
+        this.uPath = uDir.toString();
+      }
+      if (computeV) {
+        // V = Bt * UHat * Sigma^-1, or Sigma^-0.5 for V * Sigma^0.5
+        Path vDir = new Path(outputPath, "V");
+        double[] scale = new double[k];
+        for (int i = 0; i < k; i++) {
+          scale[i] = 1.0 / (cVHalfSigma ? Math.sqrt(svalues[i]) : svalues[i]);
+        }
+        List<Writable> vLabels = new ArrayList<Writable>(n);
+        for (int i = 0; i < n; i++) {
+          vLabels.add(new IntWritable(i));
+        }
+        writeProjection(fs, new Path(vDir, "v-m-00000"), vLabels, bt, uHat, scale);
+        this.vPath = vDir.toString();
+      }
+    } finally {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * First pass over A: computes the rows of Y = A * Omega in batches.
+   *
+   * @return the number of columns of A
+   */
+  private int computeY(final Omega omega, List<Writable> labels, List<double[]> y) throws IOException {
+    final int kp = k + p;
+    int n = -1;
+    final double[][] yBatch = new double[BATCH_SIZE][];
+    Iterator<List<Pair<Writable,Vector>>> batches = batches();
+    while (batches.hasNext()) {
+      final List<Pair<Writable,Vector>> batch = batches.next();
+      for (Pair<Writable,Vector> row : batch) {
+        labels.add(row.getFirst());
+        if (n < 0) {
+          n = row.getSecond().size();
+        }
+      }
+      runInParallel(batch.size(), new RangeTask() {
+        @Override
+        public void process(int from, int to) {
+          for (int i = from; i < to; i++) {
+            double[] yRow = new double[kp];
+            omega.computeYRow(batch.get(i).getSecond(), yRow);
+            yBatch[i] = yRow;
+          }
+        }
+      });
+      for (int i = 0; i < batch.size(); i++) {
+        y.add(yBatch[i]);
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Pass over A computing B<sup>t</sup> = A<sup>t</sup> Q. Each thread owns a range of rows of B<sup>t</sup>, i.e.
+   * of columns of A, so no partial results need to be merged. The non-zeros of the sparse rows of each batch are
+   * first bucketed by column, so that each thread visits only the entries in its own columns.
+   */
+  private void computeBt(final double[][] qRows, final double[][] bt) throws IOException {
+    for (double[] btRow : bt) {
+      Arrays.fill(btRow, 0);
+    }
+    final int kp = k + p;
+    final int n = bt.length;
+    // entries of column col of a batch's sparse rows are at columnStarts[col] until columnStarts[col + 1]
+    final int[] columnStarts = new int[n + 1];
+    int[] nextEntry = new int[n];
+    int[] entryRows = new int[0];
+    double[] entryValues = new double[0];
+    int rowIndex = 0;
+    Iterator<List<Pair<Writable,Vector>>> batches = batches();
+    while (batches.hasNext()) {
+      final List<Pair<Writable,Vector>> batch = batches.next();
+      final int firstRow = rowIndex;
+
+      Arrays.fill(columnStarts, 0);
+      for (Pair<Writable,Vector> row : batch) {
+        Vector aRow = row.getSecond();
+        if (!aRow.isDense()) {
+          Iterator<Vector.Element> elements = aRow.iterateNonZero();
+          while (elements.hasNext()) {
+            columnStarts[elements.next().index() + 1]++;
+          }
+        }
+      }
+      for (int col = 0; col < n; col++) {
+        columnStarts[col + 1] += columnStarts[col];
+      }
+      int numEntries = columnStarts[n];
+      if (entryRows.length < numEntries) {
+        entryRows = new int[numEntries];
+        entryValues = new double[numEntries];
+      }
+      System.arraycopy(columnStarts, 0, nextEntry, 0, n);
+      for (int i = 0; i < batch.size(); i++) {
+        Vector aRow = batch.get(i).getSecond();
+        if (!aRow.isDense()) {
+          Iterator<Vector.Element> elements = aRow.iterateNonZero();
+          while (elements.hasNext()) {
+            Vector.Element element = elements.next();
+            int entry = nextEntry[element.index()]++;
+            entryRows[entry] = i;
+            entryValues[entry] = element.get();
+          }
+        }
+      }
+
+      final int[] rows = entryRows;
+      final double[] values = entryValues;
+      runInParallel(n, new RangeTask() {
+        @Override
+        public void process(int from, int to) {
+          for (int i = 0; i < batch.size(); i++) {
+            Vector aRow = batch.get(i).getSecond();
+            if (aRow.isDense()) {
+              double[] qRow = qRows[firstRow + i];
+              for (int col = from; col < to; col++) {
+                addScaled(bt[col], qRow, aRow.getQuick(col), kp);
+              }
+            }
+          }
+          for (int col = from; col < to; col++) {
+            double[] btRow = bt[col];
+            for (int entry = columnStarts[col]; entry < columnStarts[col + 1]; entry++) {
+              addScaled(btRow, qRows[firstRow + rows[entry]], values[entry], kp);
+            }
+          }
+        }
+      });
+      rowIndex += batch.size();
+    }
+  }
+
+  /**
+   * Pass over A computing the rows of A B<sup>t</sup>, the next Y of a power iteration.
+   */
+  private List<double[]> computeAB(final double[][] bt) throws IOException {
+    final int kp = k + p;
+    List<double[]> y = new ArrayList<double[]>();
+    final double[][] yBatch = new double[BATCH_SIZE][];
+    Iterator<List<Pair<Writable,Vector>>> batches = batches();
+    while (batches.hasNext()) {
+      final List<Pair<Writable,Vector>> batch = batches.next();
+      runInParallel(batch.size(), new RangeTask() {
+        @Override
+        public void process(int from, int to) {
+          for (int i = from; i < to; i++) {
+            double[] yRow = new double[kp];
+            Iterator<Vector.Element> elements = batch.get(i).getSecond().iterateNonZero();
+            while (elements.hasNext()) {
+              Vector.Element element = elements.next();
+              addScaled(yRow, bt[element.index()], element.get(), kp);
+            }
+            yBatch[i] = yRow;
+          }
+        }
+      });
+      for (int i = 0; i < batch.size(); i++) {
+        y.add(yBatch[i]);
+      }
+    }
+    return y;
+  }
+
+  /**
+   * Computes Q of the thin QR decomposition of Y. Every block of rows is decomposed by its own
+   * {@link GivensThinSolver}, then the Q blocks are corrected for the R of all other blocks, both in parallel.
+   *
+   * @return the rows of Q
+   */
+  private double[][] orthonormalize(final List<double[]> y) throws IOException {
+    final int kp = k + p;
+    int m = y.size();
+    // the last block takes the remainder, so that no block gets less than k+p rows
+    final int numBlocks = Math.max(1, m / ablockRows);
+    final int[] blockStarts = new int[numBlocks + 1];
+    for (int b = 0; b < numBlocks; b++) {
+      blockStarts[b] = b * ablockRows;
+    }
+    blockStarts[numBlocks] = m;
+
+    final List<UpperTriangular> rBlocks = new ArrayList<UpperTriangular>(numBlocks);
+    final List<double[][]> qtBlocks = new ArrayList<double[][]>(numBlocks);
+    for (int b = 0; b < numBlocks; b++) {
+      rBlocks.add(null);
+      qtBlocks.add(null);
+    }
+    runInParallel(numBlocks, new RangeTask() {
+      @Override
+      public void process(int from, int to) {
+        for (int b = from; b < to; b++) {
+          GivensThinSolver qSolver = new GivensThinSolver(blockStarts[b + 1] - blockStarts[b], kp);
+          for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+            qSolver.appendRow(y.get(i));
+          }
+          rBlocks.set(b, qSolver.getRTilde());
+          qtBlocks.set(b, qSolver.getThinQtTilde());
+        }
+      }
+    });
+
+    final double[][] qRows = new double[m][];
+    runInParallel(numBlocks, new RangeTask() {
+      @Override
+      public void process(int from, int to) {
+        for (int b = from; b < to; b++) {
+          double[][] qtHat = GivensThinSolver.computeQtHat(qtBlocks.get(b), b,
+              new CopyConstructorIterator<UpperTriangular>(rBlocks.iterator()));
+          // rows come out of the solver in reverse order
+          int blockHeight = blockStarts[b + 1] - blockStarts[b];
+          for (int i = 0; i < blockHeight; i++) {
+            double[] qRow = new double[kp];
+            for (int j = 0; j < kp; j++) {
+              qRow[j] = qtHat[j][blockHeight - i - 1];
+            }
+            qRows[blockStarts[b] + i] = qRow;
+          }
+        }
+      }
+    });
+    return qRows;
+  }
+
+  /**
+   * @return B B<sup>t</sup>, summed up over ranges of rows of B<sup>t</sup> in parallel
+   */
+  private double[][] computeBBt(final double[][] bt, final int kp) throws IOException {
+    final List<double[][]> partials = new ArrayList<double[][]>();
+    runInParallel(bt.length, new RangeTask() {
+      @Override
+      public void process(int from, int to) {
+        double[][] partial = new double[kp][kp];
+        for (int row = from; row < to; row++) {
+          double[] btRow = bt[row];
+          for (int i = 0; i < kp; i++) {
+            addScaled(partial[i], btRow, btRow[i], kp);
+          }
+        }
+        synchronized (partials) {
+          partials.add(partial);
+        }
+      }
+    });
+    double[][] bbt = new double[kp][kp];
+    for (double[][] partial : partials) {
+      for (int i = 0; i < kp; i++) {
+        addScaled(bbt[i], partial[i], 1.0, kp);
+      }
+    }
+    return bbt;
+  }
+
+  private void writeProjection(FileSystem fs,
+                               Path path,
+                               List<Writable> labels,
+                               double[][] rows,
+                               double[][] uHat,
+                               double[] scale) throws IOException {
+    int kp = k + p;
+    Deque<Closeable> closeables = new LinkedList<Closeable>();
+    try {
+      SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, path, labels.get(0).getClass(),
+          VectorWritable.class, CompressionType.BLOCK);
+      closeables.addFirst(writer);
+      Vector out = new DenseVector(k);
+      VectorWritable outWritable = new VectorWritable(out);
+      for (int r = 0; r < rows.length; r++) {
+        double[] row = rows[r];
+        for (int i = 0; i < k; i++) {
+          double dot = 0.0;
+          for (int j = 0; j < kp; j++) {
+            dot += row[j] * uHat[j][i];
+          }
+          out.setQuick(i, dot * scale[i]);
+        }
+        writer.append(labels.get(r), outWritable);
+      }
+    } finally {
+      IOUtils.close(closeables);
+    }
+  }
+
+  private static void addScaled(double[] target, double[] source, double factor, int length) {
+    if (factor != 0.0) {
+      for (int i = 0; i < length; i++) {
+        target[i] += factor * source[i];
+      }
+    }
+  }
+
+  /**
+   * @return the rows of A, in batches of up to {@link #BATCH_SIZE}, in the same order on every call
+   */
+  private Iterator<List<Pair<Writable,Vector>>> batches() {
+    final Iterator<Pair<Writable,VectorWritable>> records = rows();
+    return new Iterator<List<Pair<Writable,Vector>>>() {
+      @Override
+      public boolean hasNext() {
+        return records.hasNext();
+      }
+      @Override
+      public List<Pair<Writable,Vector>> next() {
+        List<Pair<Writable,Vector>> batch = new ArrayList<Pair<Writable,Vector>>(BATCH_SIZE);
+        while (records.hasNext() && batch.size() < BATCH_SIZE) {
+          Pair<Writable,VectorWritable> record = records.next();
+          batch.add(new Pair<Writable,Vector>(record.getFirst(), record.getSecond().get()));
+        }
+        return batch;
+      }
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private Iterator<Pair<Writable,VectorWritable>> rows() {
+    List<Iterator<Pair<Writable,VectorWritable>>> iterators =
+        new ArrayList<Iterator<Pair<Writable,VectorWritable>>>(inputPath.length);
+    for (Path path : inputPath) {
+      iterators.add(new SequenceFileDirIterable<Writable,VectorWritable>(
+          path, PathType.GLOB, PathFilters.logsCRCFilter(), null, false, conf).iterator());
+    }
+    return Iterators.concat(iterators.iterator());
+  }
+
+  /**
+   * Splits [0, size) into one contiguous range per thread and processes them concurrently.
+   */
+  private void runInParallel(int size, final RangeTask task) throws IOException {
+    int numTasks = Math.min(numThreads, size);
+    if (numTasks <= 1) {
+      task.process(0, size);
+      return;
+    }
+    int rangeSize = (size + numTasks - 1) / numTasks;
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(numTasks);
+    for (int start = 0; start < size; start += rangeSize) {
+      final int from = start;
+      final int to = Math.min(start + rangeSize, size);
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          task.process(from, to);
+          return null;
+        }
+      }));
+    }
+    try {
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException exc) {
+      cancelAll(futures);
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted", exc);
+    } catch (ExecutionException exc) {
+      cancelAll(futures);
+      Throwable cause = exc.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private static void cancelAll(Iterable<Future<Void>> futures) {
+    for (Future<Void> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  private interface RangeTask {
+    void process(int from, int to);
+  }
+
+}
@@ -54,6 +54,9 @@ public class SSVDCli extends AbstractJob {
         "false");
     addOption("reduceTasks", "t", "number of reduce tasks (where applicable)",
         "1");
+    addOption("local", "l", "run all steps within this process instead of as M/R jobs (true/false)", "false");
+    addOption("powerIter", "q", "number of power iterations (local mode only)", "0");
+    addOption("numThreads", "nt", "number of threads to use in local mode (default: number of processors)", false);
     addOption(DefaultOptionCreator.overwriteOption().create());
 
     Map<String, String> pargs = parseArguments(args);
@@ -74,21 +77,50 @@ public class SSVDCli extends AbstractJob {
     boolean cVHalfSigma = Boolean.parseBoolean(pargs.get("--vHalfSigma"));
     int reduceTasks = Integer.parseInt(pargs.get("--reduceTasks"));
     boolean overwrite = pargs.containsKey(keyFor(DefaultOptionCreator.OVERWRITE_OPTION));
+    boolean local = Boolean.parseBoolean(pargs.get("--local"));
+    int q = Integer.parseInt(pargs.get("--powerIter"));
+    if (q > 0 && !local) {
+      throw new IllegalArgumentException("Power iterations are only supported in local mode");
+    }
 
     Configuration conf = getConf();
     if (conf == null) {
       throw new IOException("No Hadoop configuration present");
     }
 
-    SSVDSolver solver = new SSVDSolver(conf, new Path[] {new Path(input)}, new Path(tempDir), r, k, p, reduceTasks);
-    solver.setMinSplitSize(minSplitSize);
-    solver.setComputeU(computeU);
-    solver.setComputeV(computeV);
-    solver.setcUHalfSigma(cUHalfSigma);
-    solver.setcVHalfSigma(cVHalfSigma);
-    solver.setOverwrite(overwrite);
-
-    solver.run();
+    double[] singularValues;
+    String uPath;
+    String vPath;
+    if (local) {
+      LocalSSVDSolver solver = new LocalSSVDSolver(conf, new Path[] {new Path(input)}, new Path(tempDir), r, k, p);
+      solver.setQ(q);
+      if (pargs.get("--numThreads") != null) {
+        solver.setNumThreads(Integer.parseInt(pargs.get("--numThreads")));
+      }
+      solver.setComputeU(computeU);
+      solver.setComputeV(computeV);
+      solver.setcUHalfSigma(cUHalfSigma);
+      solver.setcVHalfSigma(cVHalfSigma);
+      solver.setOverwrite(overwrite);
+
+      solver.run();
+      singularValues = solver.getSingularValues();
+      uPath = solver.getUPath();
+      vPath = solver.getVPath();
+    } else {
+      SSVDSolver solver = new SSVDSolver(conf, new Path[] {new Path(input)}, new Path(tempDir), r, k, p, reduceTasks);
+      solver.setMinSplitSize(minSplitSize);
+      solver.setComputeU(computeU);
+      solver.setComputeV(computeV);
+      solver.setcUHalfSigma(cUHalfSigma);
+      solver.setcVHalfSigma(cVHalfSigma);
+      solver.setOverwrite(overwrite);
+
+      solver.run();
+      singularValues = solver.getSingularValues();
+      uPath = solver.getUPath();
+      vPath = solver.getVPath();
+    }
 
     // housekeeping
     FileSystem fs = FileSystem.get(conf);
@@ -100,7 +132,7 @@ public class SSVDCli extends AbstractJob {
         SequenceFile.createWriter(fs, conf, new Path(outPath, "sigma"), NullWritable.class, VectorWritable.class);
     try {
       Writable sValues = new VectorWritable(new DenseVector(
-          Arrays.copyOf(solver.getSingularValues(), k), true));
+          Arrays.copyOf(singularValues, k), true));
       sigmaW.append(NullWritable.get(), sValues);
 
     } finally {
@@ -108,7 +140,7 @@ public class SSVDCli extends AbstractJob {
     }
 
     if (computeU) {
-      FileStatus[] uFiles = fs.globStatus(new Path(solver.getUPath()));
+      FileStatus[] uFiles = fs.globStatus(new Path(uPath));
       if (uFiles != null) {
         for (FileStatus uf : uFiles) {
           fs.rename(uf.getPath(), outPath);
@@ -116,7 +148,7 @@ public class SSVDCli extends AbstractJob {
       }
     }
     if (computeV) {
-      FileStatus[] vFiles = fs.globStatus(new Path(solver.getVPath()));
+      FileStatus[] vFiles = fs.globStatus(new Path(vPath));
       if (vFiles != null) {
         for (FileStatus vf : vFiles) {
           fs.rename(vf.getPath(), outPath);
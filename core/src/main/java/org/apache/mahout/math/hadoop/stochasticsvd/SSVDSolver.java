@@ -76,6 +76,10 @@ import org.apache.mahout.math.ssvd.EigenSolverWrapper;
  * would require pass over input A and these jobs are parallel map-only jobs.
  * <P><P>
  * 
+ * For inputs small enough to be handled by a single machine, {@link LocalSSVDSolver}
+ * runs the same steps within one process and additionally supports power iterations.
+ * <P><P>
+ * 
  * This class is central public API for SSVD solver. The use pattern is as
  * follows:
  * 
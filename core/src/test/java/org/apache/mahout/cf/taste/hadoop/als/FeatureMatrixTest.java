@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.hadoop.als;
+
+import java.util.Arrays;
+
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.als.AlternateLeastSquaresSolver;
+import org.junit.Test;
+
+public class FeatureMatrixTest extends MahoutTestCase {
+
+  @Test
+  public void setAndGet() {
+    FeatureMatrix matrix = new FeatureMatrix(2);
+    for (int n = 0; n < 100; n++) {
+      matrix.set(n * 7, new DenseVector(new double[] { n, -n }));
+    }
+    matrix.set(14, new DenseVector(new double[] { 0.5, 1.5 }));
+    assertEquals(100, matrix.numRows());
+    assertEquals(new DenseVector(new double[] { 0.5, 1.5 }), matrix.get(14));
+    assertEquals(new DenseVector(new double[] { 99, -99 }), matrix.get(693));
+    assertNull(matrix.get(1));
+  }
+
+  @Test
+  public void solveMatchesAlternateLeastSquaresSolver() {
+    Vector col1 = new DenseVector(new double[] { 1, 2, 0.5 });
+    Vector col2 = new DenseVector(new double[] { 3, 4, -1 });
+    Vector col3 = new DenseVector(new double[] { -2, 0.1, 2 });
+    double lambda = 0.065;
+
+    FeatureMatrix matrix = new FeatureMatrix(3);
+    matrix.set(456, col1);
+    matrix.set(789, col2);
+    matrix.set(123, col3);
+    matrix.set(999, new DenseVector(new double[] { 7, 7, 7 }));
+
+    Vector ratings = new SequentialAccessSparseVector(Integer.MAX_VALUE, 3);
+    ratings.setQuick(123, 1.0);
+    ratings.setQuick(456, 2.0);
+    ratings.setQuick(789, 5.0);
+
+    Vector expected = new AlternateLeastSquaresSolver().solve(Arrays.asList(col3, col1, col2), ratings, lambda, 3);
+    Vector actual = matrix.solve(ratings, lambda);
+    for (int n = 0; n < 3; n++) {
+      assertEquals(expected.get(n), actual.get(n), EPSILON);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void solveMissingRow() {
+    FeatureMatrix matrix = new FeatureMatrix(1);
+    matrix.set(1, new DenseVector(new double[] { 1 }));
+    Vector ratings = new SequentialAccessSparseVector(Integer.MAX_VALUE, 3);
+    ratings.setQuick(2, 1.0);
+    matrix.solve(ratings, 0.1);
+  }
+
+}
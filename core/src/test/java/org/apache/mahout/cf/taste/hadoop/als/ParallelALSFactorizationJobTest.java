@@ -31,10 +31,12 @@ import org.apache.mahout.cf.taste.impl.common.RunningAverage;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.MatrixSlice;
+import org.apache.mahout.math.SequentialAccessSparseVector;
 import org.apache.mahout.math.SparseRowMatrix;
 import org.apache.mahout.math.VarIntWritable;
 import org.apache.mahout.math.VarLongWritable;
 import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.math.als.AlternateLeastSquaresSolver;
 import org.apache.mahout.math.hadoop.MathHelper;
 import org.easymock.IArgumentMatcher;
@@ -44,8 +46,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 public class ParallelALSFactorizationJobTest extends TasteTestCase {
 
@@ -172,6 +176,34 @@ public class ParallelALSFactorizationJobTest extends TasteTestCase {
     EasyMock.verify(ctx);
   }
 
+  @Test
+  public void ratingsToVectorReducer() throws Exception {
+    Reducer<VarIntWritable,FeatureVectorWithRatingWritable,VarIntWritable,VectorWritable>.Context ctx =
+        EasyMock.createMock(Reducer.Context.class);
+    Vector expected = new SequentialAccessSparseVector(Integer.MAX_VALUE, 3);
+    expected.setQuick(456, 2.5);
+    expected.setQuick(789, 4.0);
+    ctx.write(EasyMock.eq(new VarIntWritable(123)), matchVector(expected));
+    EasyMock.replay(ctx);
+
+    new ParallelALSFactorizationJob.RatingsToVectorReducer().reduce(new VarIntWritable(123), Arrays.asList(
+        new FeatureVectorWithRatingWritable(789, 4.0f), new FeatureVectorWithRatingWritable(456, 2.5f)), ctx);
+    EasyMock.verify(ctx);
+  }
+
+  static VectorWritable matchVector(final Vector expected) {
+    EasyMock.reportMatcher(new IArgumentMatcher() {
+      @Override
+      public boolean matches(Object argument) {
+        return argument instanceof VectorWritable && expected.equals(((VectorWritable) argument).get());
+      }
+
+      @Override
+      public void appendTo(StringBuffer buffer) {}
+    });
+    return null;
+  }
+
   static FeatureVectorWithRatingWritable matchFeatureVector(final Vector.Element... elements) {
     EasyMock.reportMatcher(new IArgumentMatcher() {
       @Override
@@ -207,6 +239,15 @@ public class ParallelALSFactorizationJobTest extends TasteTestCase {
    */
   @Test
   public void completeJobToyExample() throws Exception {
+    runToyExample(false);
+  }
+
+  @Test
+  public void completeJobToyExampleBroadcastFeatures() throws Exception {
+    runToyExample(true);
+  }
+
+  private void runToyExample(boolean broadcastFeatures) throws Exception {
 
     File inputFile = getTestTempFile("prefs.txt");
     File outputDir = getTestTempDir("output");
@@ -248,8 +289,13 @@ public class ParallelALSFactorizationJobTest extends TasteTestCase {
     int numFeatures = 3;
     int numIterations = 5;
     double lambda = 0.065;
-    alsFactorization.run(new String[] { "--tempDir", tmpDir.getAbsolutePath(), "--lambda", String.valueOf(lambda),
-        "--numFeatures", String.valueOf(numFeatures), "--numIterations", String.valueOf(numIterations) });
+    List<String> args = new ArrayList<String>(Arrays.asList("--tempDir", tmpDir.getAbsolutePath(),
+        "--lambda", String.valueOf(lambda), "--numFeatures", String.valueOf(numFeatures),
+        "--numIterations", String.valueOf(numIterations)));
+    if (broadcastFeatures) {
+      args.add("--broadcastFeatures");
+    }
+    alsFactorization.run(args.toArray(new String[args.size()]));
 
     Matrix u = MathHelper.readEntries(conf, new Path(outputDir.getAbsolutePath(), "U/part-r-00000"),
         preferences.numRows(), numFeatures);
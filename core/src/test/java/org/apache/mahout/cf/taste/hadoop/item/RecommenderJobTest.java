@@ -19,6 +19,7 @@ package org.apache.mahout.cf.taste.hadoop.item;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -693,6 +694,51 @@ public class RecommenderJobTest extends TasteTestCase {
    */
   @Test
   public void testCompleteJob() throws Exception {
+    completeJob("part-r-00000");
+  }
+
+  /**
+   * the same example, with the recommendations computed map-side against the broadcast similarity matrix
+   */
+  @Test
+  public void testCompleteJobBroadcastSimilarities() throws Exception {
+    completeJob("part-m-00000", "--broadcastSimilarities");
+  }
+
+  /**
+   * the same example, falling back to the reduce-side join as the similarity matrix is too large to broadcast
+   */
+  @Test
+  public void testCompleteJobBroadcastSimilaritiesFallback() throws Exception {
+    completeJob("part-r-00000", "--broadcastSimilarities", "--maxSimilarityMatrixMB", "0");
+  }
+
+  /**
+   * stopping before the similarity matrix is computed must not try to decide whether to broadcast it
+   */
+  @Test
+  public void testBroadcastSimilaritiesEndPhaseBeforeSimilarities() throws Exception {
+    File inputFile = getTestTempFile("prefs.txt");
+    File outputDir = getTestTempDir("output");
+    outputDir.delete();
+    File tmpDir = getTestTempDir("tmp");
+    writeLines(inputFile, "1,1,5", "1,2,5", "2,1,2", "2,3,3");
+
+    RecommenderJob recommenderJob = new RecommenderJob();
+    Configuration conf = new Configuration();
+    conf.set("mapred.input.dir", inputFile.getAbsolutePath());
+    conf.set("mapred.output.dir", outputDir.getAbsolutePath());
+    recommenderJob.setConf(conf);
+
+    recommenderJob.run(new String[] { "--tempDir", tmpDir.getAbsolutePath(),
+        "--similarityClassname", DistributedTanimotoCoefficientVectorSimilarity.class.getName(),
+        "--broadcastSimilarities", "--endPhase", "3" });
+
+    assertFalse(new File(tmpDir, "similarityMatrix").exists());
+    assertFalse(outputDir.exists());
+  }
+
+  private void completeJob(String outputPart, String... extraArgs) throws Exception {
 
     File inputFile = getTestTempFile("prefs.txt");
     File outputDir = getTestTempDir("output");
@@ -720,10 +766,13 @@ public class RecommenderJobTest extends TasteTestCase {
 
     recommenderJob.setConf(conf);
 
-    recommenderJob.run(new String[] { "--tempDir", tmpDir.getAbsolutePath(), "--similarityClassname",
-       DistributedTanimotoCoefficientVectorSimilarity.class.getName(), "--numRecommendations", "4" });
+    List<String> args = new ArrayList<String>(Arrays.asList("--tempDir", tmpDir.getAbsolutePath(),
+        "--similarityClassname", DistributedTanimotoCoefficientVectorSimilarity.class.getName(),
+        "--numRecommendations", "4"));
+    args.addAll(Arrays.asList(extraArgs));
+    recommenderJob.run(args.toArray(new String[args.size()]));
 
-    Map<Long,List<RecommendedItem>> recommendations = readRecommendations(new File(outputDir, "part-r-00000"));
+    Map<Long,List<RecommendedItem>> recommendations = readRecommendations(new File(outputDir, outputPart));
 
     assertEquals(4, recommendations.size());
 
@@ -767,6 +816,15 @@ public class RecommenderJobTest extends TasteTestCase {
    */
   @Test
   public void testCompleteJobBoolean() throws Exception {
+    completeJobBoolean(false);
+  }
+
+  @Test
+  public void testCompleteJobBooleanBroadcastSimilarities() throws Exception {
+    completeJobBoolean(true);
+  }
+
+  private void completeJobBoolean(boolean broadcastSimilarities) throws Exception {
 
     File inputFile = getTestTempFile("prefs.txt");
     File outputDir = getTestTempDir("output");
@@ -796,11 +854,16 @@ public class RecommenderJobTest extends TasteTestCase {
 
     recommenderJob.setConf(conf);
 
-    recommenderJob.run(new String[] { "--tempDir", tmpDir.getAbsolutePath(), "--similarityClassname",
-        DistributedCooccurrenceVectorSimilarity.class.getName(), "--booleanData", "true",
-        "--usersFile", usersFile.getAbsolutePath() });
+    List<String> args = new ArrayList<String>(Arrays.asList("--tempDir", tmpDir.getAbsolutePath(),
+        "--similarityClassname", DistributedCooccurrenceVectorSimilarity.class.getName(), "--booleanData", "true",
+        "--usersFile", usersFile.getAbsolutePath()));
+    if (broadcastSimilarities) {
+      args.add("--broadcastSimilarities");
+    }
+    recommenderJob.run(args.toArray(new String[args.size()]));
 
-    Map<Long,List<RecommendedItem>> recommendations = readRecommendations(new File(outputDir, "part-r-00000"));
+    Map<Long,List<RecommendedItem>> recommendations = readRecommendations(
+        new File(outputDir, broadcastSimilarities ? "part-m-00000" : "part-r-00000"));
 
     List<RecommendedItem> recommendedToCow = recommendations.get(3L);
     assertEquals(2, recommendedToCow.size());
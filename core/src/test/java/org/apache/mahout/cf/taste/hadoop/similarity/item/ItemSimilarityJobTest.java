@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -338,4 +339,62 @@ public final class ItemSimilarityJobTest extends TasteTestCase {
     assertEquals(2, linesWritten);
   }
 
+  /**
+   * integration test for --threshold, with the data of {@link #testCompleteJob()}: only the similarity of i2 and i3
+   * (0.89) is above 0.5
+   */
+  @Test
+  public void testThreshold() throws Exception {
+    List<String> lines = runOnCompleteJobData("threshold", "--threshold", "0.5");
+    assertEquals(1, lines.size());
+    String[] tokens = lines.get(0).split("\t");
+    assertEquals(2L, Long.parseLong(tokens[0]));
+    assertEquals(3L, Long.parseLong(tokens[1]));
+    assertEquals(0.89, Double.parseDouble(tokens[2]), 0.01);
+  }
+
+  /**
+   * integration test for --maxOccurrencesPerColumn, with the data of {@link #testCompleteJob()}: when each user is
+   * down-sampled to a single preference, no two items are ever seen together
+   */
+  @Test
+  public void testMaxOccurrencesPerColumn() throws Exception {
+    assertTrue(runOnCompleteJobData("maxOccurrences", "--maxOccurrencesPerColumn", "1").isEmpty());
+  }
+
+  private List<String> runOnCompleteJobData(String name, String... extraArgs) throws Exception {
+    File inputFile = getTestTempFile(name + ".txt");
+    File outputDir = getTestTempDir(name + "-output");
+    outputDir.delete();
+    File tmpDir = getTestTempDir(name + "-tmp");
+
+    writeLines(inputFile,
+        "2,1,1",
+        "1,2,1",
+        "3,4,1",
+        "1,3,2",
+        "2,3,1");
+
+    Configuration conf = new Configuration();
+    conf.set("mapred.input.dir", inputFile.getAbsolutePath());
+    conf.set("mapred.output.dir", outputDir.getAbsolutePath());
+    conf.setBoolean("mapred.output.compress", false);
+
+    ItemSimilarityJob similarityJob = new ItemSimilarityJob();
+    similarityJob.setConf(conf);
+
+    List<String> args = Lists.newArrayList("--tempDir", tmpDir.getAbsolutePath(), "--similarityClassname",
+        DistributedUncenteredZeroAssumingCosineVectorSimilarity.class.getName());
+    args.addAll(Arrays.asList(extraArgs));
+    similarityJob.run(args.toArray(new String[args.size()]));
+
+    File outPart = outputDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("part-");
+      }
+    })[0];
+    return Files.readLines(outPart, Charsets.UTF_8);
+  }
+
 }
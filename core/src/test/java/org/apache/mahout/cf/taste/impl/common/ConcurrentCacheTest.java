@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class ConcurrentCacheTest extends TasteTestCase {
+
+  @Test
+  public void testLotsOfGets() throws TasteException {
+    for (ConcurrentCache.EvictionPolicy policy : ConcurrentCache.EvictionPolicy.values()) {
+      ConcurrentCache<Object,Object> cache =
+          new ConcurrentCache<Object,Object>(new IdentityRetriever(), 1000, policy);
+      for (int i = 0; i < 100000; i++) {
+        assertEquals(i, cache.get(i));
+      }
+      assertTrue(cache.size() <= 1000 + ConcurrentCache.DEFAULT_CONCURRENCY_LEVEL);
+      assertTrue(cache.getEvictionCount() > 0L);
+    }
+  }
+
+  @Test
+  public void testMixedUsage() throws TasteException {
+    Random random = RandomUtils.getRandom();
+    ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new IdentityRetriever(), 1000);
+    for (int i = 0; i < 100000; i++) {
+      double r = random.nextDouble();
+      if (r < 0.01) {
+        cache.clear();
+      } else if (r < 0.1) {
+        cache.remove(r - 100);
+      } else {
+        assertEquals(i, cache.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testCounters() throws TasteException {
+    ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new IdentityRetriever(), 10);
+    cache.get(1);
+    cache.get(1);
+    cache.get(2);
+    assertEquals(1L, cache.getHitCount());
+    assertEquals(2L, cache.getMissCount());
+    assertEquals(1.0 / 3.0, cache.getHitRatio(), EPSILON);
+    assertEquals(0L, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testNullValue() throws TasteException {
+    ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new Retriever<Object,Object>() {
+      @Override
+      public Object get(Object key) {
+        return null;
+      }
+    });
+    assertNull(cache.get(1));
+    assertNull(cache.get(1));
+    assertEquals(1L, cache.getHitCount());
+  }
+
+  @Test
+  public void testLRUEvictsLeastRecentlyUsed() throws TasteException {
+    ConcurrentCache<Object,Object> cache =
+        new ConcurrentCache<Object,Object>(new IdentityRetriever(), 2, ConcurrentCache.EvictionPolicy.LRU, 1);
+    cache.get(1);
+    cache.get(2);
+    cache.get(1);
+    cache.get(3);
+    long misses = cache.getMissCount();
+    cache.get(1);
+    assertEquals(misses, cache.getMissCount());
+    cache.get(2);
+    assertEquals(misses + 1, cache.getMissCount());
+  }
+
+  @Test
+  public void testLFUEvictsLeastFrequentlyUsed() throws TasteException {
+    ConcurrentCache<Object,Object> cache =
+        new ConcurrentCache<Object,Object>(new IdentityRetriever(), 2, ConcurrentCache.EvictionPolicy.LFU, 1);
+    cache.get(1);
+    cache.get(1);
+    cache.get(1);
+    cache.get(2);
+    cache.get(3);
+    long misses = cache.getMissCount();
+    cache.get(1);
+    assertEquals(misses, cache.getMissCount());
+  }
+
+  @Test
+  public void testClockGivesSecondChance() throws TasteException {
+    ConcurrentCache<Object,Object> cache =
+        new ConcurrentCache<Object,Object>(new IdentityRetriever(), 2, ConcurrentCache.EvictionPolicy.CLOCK, 1);
+    cache.get(1);
+    cache.get(2);
+    cache.get(1);
+    cache.get(3);
+    long misses = cache.getMissCount();
+    cache.get(1);
+    assertEquals(misses, cache.getMissCount());
+  }
+
+  @Test
+  public void testSingleFlightLoading() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new Retriever<Object,Object>() {
+      @Override
+      public Object get(Object key) throws TasteException {
+        loads.incrementAndGet();
+        try {
+          release.await();
+        } catch (InterruptedException ie) {
+          throw new TasteException(ie);
+        }
+        return key;
+      }
+    });
+    int numThreads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      Collection<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws TasteException {
+            return cache.get("key");
+          }
+        }));
+      }
+      while (cache.getMissCount() < numThreads) {
+        Thread.sleep(10L);
+      }
+      release.countDown();
+      for (Future<Object> future : futures) {
+        assertEquals("key", future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testFailedLoadIsNotCached() throws TasteException {
+    final AtomicInteger loads = new AtomicInteger();
+    ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new Retriever<Object,Object>() {
+      @Override
+      public Object get(Object key) throws TasteException {
+        if (loads.incrementAndGet() == 1) {
+          throw new TasteException("first load fails");
+        }
+        return key;
+      }
+    });
+    try {
+      cache.get(1);
+      fail();
+    } catch (TasteException te) {
+      // good
+    }
+    assertEquals(1, cache.get(1));
+    assertEquals(2, loads.get());
+  }
+
+  private static class IdentityRetriever implements Retriever<Object,Object> {
+    @Override
+    public Object get(Object key) throws TasteException {
+      return key;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.junit.Test;
+
+/** Tests {@link Deadline} */
+public final class DeadlineTest extends TasteTestCase {
+
+  @Test
+  public void testNone() {
+    assertFalse(Deadline.NONE.isBounded());
+    assertFalse(Deadline.NONE.isExpired());
+    assertEquals(Long.MAX_VALUE, Deadline.NONE.remainingNanos());
+    assertSame(Deadline.NONE, Deadline.NONE.portion(0.5));
+  }
+
+  @Test
+  public void testExpired() {
+    Deadline deadline = Deadline.after(0L, TimeUnit.MILLISECONDS);
+    assertTrue(deadline.isBounded());
+    assertTrue(deadline.isExpired());
+    assertEquals(0L, deadline.remainingNanos());
+    assertTrue(deadline.portion(0.5).isExpired());
+  }
+
+  @Test
+  public void testNotExpired() {
+    Deadline deadline = Deadline.after(1L, TimeUnit.HOURS);
+    assertFalse(deadline.isExpired());
+    long remaining = deadline.remainingNanos();
+    assertTrue(remaining > TimeUnit.MINUTES.toNanos(59L) && remaining <= TimeUnit.HOURS.toNanos(1L));
+    long portionRemaining = deadline.portion(0.5).remainingNanos();
+    assertTrue(portionRemaining > TimeUnit.MINUTES.toNanos(29L) && portionRemaining <= TimeUnit.MINUTES.toNanos(30L));
+  }
+
+  @Test
+  public void testExceededPortion() {
+    Deadline deadline = Deadline.after(1L, TimeUnit.HOURS);
+    Deadline portion = deadline.portion(0.0);
+    assertFalse(deadline.wasExceeded());
+    assertTrue(portion.isExpired());
+    // The whole budget has not passed, but a stage of it was cut short
+    assertFalse(deadline.isExpired());
+    assertTrue(deadline.wasExceeded());
+    assertFalse(Deadline.NONE.isExpired());
+    assertFalse(Deadline.NONE.wasExceeded());
+  }
+
+  @Test
+  public void testMin() {
+    Deadline soon = Deadline.after(1L, TimeUnit.MINUTES);
+    Deadline later = Deadline.after(1L, TimeUnit.HOURS);
+    assertSame(soon, soon.min(later));
+    assertSame(soon, later.min(soon));
+    assertSame(soon, soon.min(Deadline.NONE));
+    assertSame(soon, Deadline.NONE.min(soon));
+    assertSame(Deadline.NONE, Deadline.NONE.min(Deadline.NONE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegative() {
+    Deadline.after(-1L, TimeUnit.MILLISECONDS);
+  }
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import java.util.Collections;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.recommender.slopeone.SlopeOneRecommender;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.easymock.classextension.EasyMock;
+import org.junit.Test;
+
+public final class ApproximateRecommenderEvaluatorTest extends TasteTestCase {
+
+  @Test
+  public void testSameRecommender() throws Exception {
+    DataModel model = getDataModel();
+    Recommender recommender = new SlopeOneRecommender(model);
+    ApproximateRecommenderEvaluator.Result result =
+        ApproximateRecommenderEvaluator.evaluate(recommender, recommender, 2, 1.0);
+    assertEquals(1.0, result.getRecall(), EPSILON);
+    assertEquals(model.getNumUsers(), result.getNumUsers());
+    assertTrue(result.getExactMillis() >= 0.0);
+    assertTrue(result.getApproximateMillis() >= 0.0);
+  }
+
+  @Test
+  public void testNoRecommendations() throws Exception {
+    DataModel model = getDataModel();
+    Recommender approximate = EasyMock.createMock(Recommender.class);
+    EasyMock.expect(approximate.recommend(EasyMock.anyLong(), EasyMock.eq(2)))
+        .andReturn(Collections.<RecommendedItem>emptyList()).anyTimes();
+    EasyMock.replay(approximate);
+    ApproximateRecommenderEvaluator.Result result =
+        ApproximateRecommenderEvaluator.evaluate(new SlopeOneRecommender(model), approximate, 2, 1.0);
+    assertEquals(0.0, result.getRecall(), EPSILON);
+  }
+
+}
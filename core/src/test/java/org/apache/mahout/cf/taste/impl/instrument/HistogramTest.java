@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link Histogram}.</p> */
+public final class HistogramTest extends TasteTestCase {
+
+  @Test
+  public void testEmpty() {
+    Histogram histogram = new Histogram();
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0L, histogram.getMax());
+    assertTrue(Double.isNaN(histogram.getMean()));
+    assertEquals(0L, histogram.getPercentile(0.5));
+  }
+
+  @Test
+  public void testBuckets() {
+    long previousUpperBound = -1L;
+    for (int index = 0; index < Histogram.bucketIndex(Long.MAX_VALUE); index++) {
+      long upperBound = Histogram.bucketUpperBound(index);
+      assertTrue(upperBound > previousUpperBound);
+      assertEquals(index, Histogram.bucketIndex(previousUpperBound + 1L));
+      assertEquals(index, Histogram.bucketIndex(upperBound));
+      previousUpperBound = upperBound;
+    }
+    assertEquals(Long.MAX_VALUE, Histogram.bucketUpperBound(Histogram.bucketIndex(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testSmallValuesExact() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 4; i++) {
+      histogram.record(i);
+    }
+    histogram.record(-3L);
+    assertEquals(5L, histogram.getCount());
+    assertEquals(2.0, histogram.getMean(), EPSILON);
+    assertEquals(0L, histogram.getPercentile(0.2));
+    assertEquals(2L, histogram.getPercentile(0.5));
+    assertEquals(4L, histogram.getPercentile(1.0));
+    assertEquals(4L, histogram.getMax());
+  }
+
+  @Test
+  public void testPercentiles() {
+    Random random = RandomUtils.getRandom();
+    Histogram histogram = new Histogram();
+    int n = 100000;
+    for (int i = 0; i < n; i++) {
+      histogram.record(1L + random.nextInt(1000000));
+    }
+    assertEquals(n, histogram.getCount());
+    assertEquals(500000.0, histogram.getMean(), 5000.0);
+    for (double fraction : new double[] {0.5, 0.9, 0.99, 0.999}) {
+      double expected = fraction * 1000000.0;
+      long actual = histogram.getPercentile(fraction);
+      assertTrue(fraction + " -> " + actual, actual >= expected * 0.99);
+      assertTrue(fraction + " -> " + actual, actual <= expected * 1.13);
+    }
+    assertTrue(histogram.getPercentile(1.0) <= histogram.getMax());
+  }
+
+  @Test
+  public void testReset() {
+    Histogram histogram = new Histogram();
+    histogram.record(1000L);
+    histogram.reset();
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0L, histogram.getMax());
+    assertEquals(0L, histogram.getPercentile(0.99));
+  }
+
+}
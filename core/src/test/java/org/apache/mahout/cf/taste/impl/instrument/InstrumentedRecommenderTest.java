@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.instrument;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.recommender.CachingRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.GenericItemBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.CachingItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.junit.Test;
+
+/** <p>Tests {@link InstrumentedRecommender} and the other wrappers, and {@link MetricRegistry}.</p> */
+public final class InstrumentedRecommenderTest extends TasteTestCase {
+
+  @Test
+  public void testRecordsCalls() throws Exception {
+    MetricRegistry registry = new MetricRegistry();
+    DataModel dataModel = new InstrumentedDataModel(getDataModel(), registry, "model");
+    ItemSimilarity similarity = new InstrumentedItemSimilarity(
+        new CachingItemSimilarity(new PearsonCorrelationSimilarity(dataModel), dataModel), registry, "similarity");
+    Recommender recommender = new InstrumentedRecommender(
+        new CachingRecommender(new GenericItemBasedRecommender(dataModel, similarity)), registry, "recommender");
+
+    List<RecommendedItem> recommended = recommender.recommend(1, 1);
+    recommender.recommend(1, 1);
+    recommender.estimatePreference(1, 2);
+
+    Histogram recommendTimes = registry.getHistograms().get("recommender.recommend");
+    assertEquals(2L, recommendTimes.getCount());
+    assertTrue(recommendTimes.getMax() > 0L);
+    Histogram recommendSizes = registry.getHistograms().get("recommender.recommend.size");
+    assertEquals(recommended.size(), recommendSizes.getMax());
+    assertEquals(1L, registry.getHistograms().get("recommender.estimatePreference").getCount());
+    assertTrue(registry.getHistograms().get("model.getPreferencesFromUser").getCount() > 0L);
+    assertTrue(registry.getHistograms().get("similarity.itemSimilarities").getCount() > 0L);
+    // Second recommend() was served from the cache
+    assertTrue(registry.getGauges().get("recommender.recommendationCache.hitRatio").getValue() > 0.0);
+
+    registry.reset();
+    assertEquals(0L, recommendTimes.getCount());
+  }
+
+  @Test
+  public void testReporter() throws Exception {
+    MetricRegistry registry = new MetricRegistry();
+    registry.histogram("b").record(1L);
+    registry.histogram("a").record(2L);
+    registry.register("c", new Gauge() {
+      @Override
+      public double getValue() {
+        return 3.0;
+      }
+    });
+    final StringBuilder reported = new StringBuilder();
+    registry.report(new MetricsReporter() {
+      @Override
+      public void reportHistogram(String name, Histogram histogram) {
+        reported.append(name).append('=').append(histogram.getMax()).append(' ');
+      }
+      @Override
+      public void reportGauge(String name, Gauge gauge) {
+        reported.append(name).append('=').append(gauge.getValue()).append(' ');
+      }
+    });
+    assertEquals("a=2 b=1 c=3.0 ", reported.toString());
+  }
+
+  @Test
+  public void testMBean() throws Exception {
+    MetricRegistry registry = new MetricRegistry();
+    Histogram histogram = registry.histogram("recommender.recommend");
+    histogram.record(5L);
+    registry.register("hitRatio", new Gauge() {
+      @Override
+      public double getValue() {
+        return 0.25;
+      }
+    });
+    ObjectName objectName = registry.registerMBean("test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      assertEquals(1L, server.getAttribute(objectName, "recommender.recommend.count"));
+      assertEquals(5L, server.getAttribute(objectName, "recommender.recommend.p999"));
+      assertEquals(0.25, server.getAttribute(objectName, "hitRatio"));
+      server.invoke(objectName, "reset", null, null);
+      assertEquals(0L, histogram.getCount());
+    } finally {
+      server.unregisterMBean(objectName);
+    }
+  }
+
+}
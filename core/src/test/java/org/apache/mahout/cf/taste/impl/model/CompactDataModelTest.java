@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model;
+
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link CompactDataModel}.</p> */
+public final class CompactDataModelTest extends TasteTestCase {
+
+  @Test
+  public void testSameAsGenericDataModel() throws Exception {
+    DataModel expected = getRandomDataModel(true);
+    CompactDataModel model = new CompactDataModel(expected);
+    // Whole star ratings fit exactly in a byte
+    assertEquals(CompactDataModel.ValueEncoding.BYTE, model.getValueEncoding());
+    assertSameModel(expected, model, 0.0);
+  }
+
+  @Test
+  public void testFractionalValues() throws Exception {
+    DataModel expected = getRandomDataModel(false);
+    CompactDataModel model = new CompactDataModel(expected);
+    assertEquals(CompactDataModel.ValueEncoding.FLOAT, model.getValueEncoding());
+    assertSameModel(expected, model, 0.0);
+  }
+
+  @Test
+  public void testQuantizedValues() throws Exception {
+    DataModel expected = getRandomDataModel(false);
+    CompactDataModel model = new CompactDataModel(expected, CompactDataModel.ValueEncoding.BYTE);
+    assertEquals(CompactDataModel.ValueEncoding.BYTE, model.getValueEncoding());
+    double range = expected.getMaxPreference() - expected.getMinPreference();
+    assertSameModel(expected, model, range / 255.0 / 2.0 + EPSILON);
+  }
+
+  @Test
+  public void testBooleanPrefs() throws Exception {
+    DataModel expected =
+        new GenericBooleanPrefDataModel(GenericBooleanPrefDataModel.toDataMap(getRandomDataModel(true)));
+    CompactDataModel model = new CompactDataModel(expected);
+    assertEquals(CompactDataModel.ValueEncoding.NONE, model.getValueEncoding());
+    assertFalse(model.hasPreferenceValues());
+    assertSameModel(expected, model, 0.0);
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    CompactDataModel model = new CompactDataModel(getRandomDataModel(true));
+    // Gaps take a byte or two and values one byte, in each direction
+    assertTrue(model.getSizeInBytes() < 6L * model.getNumPreferences() + 1000L);
+  }
+
+  @Test
+  public void testReadOnlyViews() throws Exception {
+    DataModel model = new CompactDataModel(getDataModel());
+    PreferenceArray prefs = model.getPreferencesFromUser(3);
+    assertTrue(prefs.hasPrefWithItemID(2));
+    assertFalse(prefs.hasPrefWithItemID(3));
+    PreferenceArray copy = prefs.clone();
+    copy.sortByValueReversed();
+    assertEquals(0.5f, copy.getValue(0), EPSILON);
+    try {
+      prefs.setValue(0, 1.0f);
+      fail();
+    } catch (UnsupportedOperationException uoe) {
+      // good
+    }
+  }
+
+  @Test
+  public void testSortIsNoOp() throws Exception {
+    DataModel model = new CompactDataModel(getDataModel());
+    PreferenceArray fromUser = model.getPreferencesFromUser(3);
+    fromUser.sortByUser();
+    fromUser.sortByItem();
+    PreferenceArray forItem = model.getPreferencesForItem(2);
+    forItem.sortByUser();
+    forItem.sortByItem();
+    assertTrue(fromUser.getItemID(0) < fromUser.getItemID(1));
+    assertTrue(forItem.getUserID(0) < forItem.getUserID(1));
+  }
+
+  @Test(expected = NoSuchUserException.class)
+  public void testNoSuchUser() throws Exception {
+    new CompactDataModel(getDataModel()).getPreferencesFromUser(5);
+  }
+
+  @Test(expected = NoSuchItemException.class)
+  public void testNoSuchItem() throws Exception {
+    new CompactDataModel(getDataModel()).getPreferencesForItem(5);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testReadOnly() throws Exception {
+    new CompactDataModel(getDataModel()).setPreference(1, 1, 1.0f);
+  }
+
+  /**
+   * @param wholeRatings if true, values are whole numbers from 1 to 5, otherwise arbitrary between 0 and 1
+   */
+  private static DataModel getRandomDataModel(boolean wholeRatings) {
+    Random random = RandomUtils.getRandom();
+    int numUsers = 200;
+    int numItems = 500;
+    // Sparse, large IDs, as after hashing
+    long[] itemIDs = new long[numItems];
+    for (int i = 0; i < numItems; i++) {
+      itemIDs[i] = (random.nextLong() >>> 2) * (random.nextBoolean() ? 1 : -1);
+    }
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    for (int u = 0; u < numUsers; u++) {
+      long userID = random.nextInt(1000000);
+      FastIDSet userItemIDs = new FastIDSet();
+      int numPrefs = 1 + random.nextInt(random.nextBoolean() ? 10 : 300);
+      while (userItemIDs.size() < numPrefs) {
+        userItemIDs.add(itemIDs[random.nextInt(numItems)]);
+      }
+      PreferenceArray prefs = new GenericUserPreferenceArray(numPrefs);
+      int i = 0;
+      LongPrimitiveIterator it = userItemIDs.iterator();
+      while (it.hasNext()) {
+        prefs.setUserID(i, userID);
+        prefs.setItemID(i, it.nextLong());
+        prefs.setValue(i, wholeRatings ? 1 + random.nextInt(5) : random.nextFloat());
+        i++;
+      }
+      userData.put(userID, prefs);
+    }
+    return new GenericDataModel(userData);
+  }
+
+  private static void assertSameModel(DataModel expected, DataModel model, double tolerance) throws Exception {
+    assertEquals(expected.getNumUsers(), model.getNumUsers());
+    assertEquals(expected.getNumItems(), model.getNumItems());
+    assertEquals(expected.getMinPreference(), model.getMinPreference(), 0.0);
+    assertEquals(expected.getMaxPreference(), model.getMaxPreference(), 0.0);
+
+    long[] itemIDs = new long[expected.getNumItems()];
+    LongPrimitiveIterator it = model.getItemIDs();
+    for (int i = 0; i < itemIDs.length; i++) {
+      itemIDs[i] = it.nextLong();
+      if (i > 0) {
+        assertTrue(itemIDs[i] > itemIDs[i - 1]);
+      }
+      PreferenceArray expectedPrefs = expected.getPreferencesForItem(itemIDs[i]).clone();
+      expectedPrefs.sortByUser();
+      assertSamePrefs(expectedPrefs, model.getPreferencesForItem(itemIDs[i]), tolerance);
+    }
+    assertFalse(it.hasNext());
+
+    LongPrimitiveIterator userIDs = model.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      PreferenceArray expectedPrefs = expected.getPreferencesFromUser(userID).clone();
+      expectedPrefs.sortByItem();
+      assertSamePrefs(expectedPrefs, model.getPreferencesFromUser(userID), tolerance);
+      assertEquals(expected.getItemIDsFromUser(userID), model.getItemIDsFromUser(userID));
+      for (int i = 0; i < 20; i++) {
+        long itemID = itemIDs[i];
+        Float expectedValue = expected.getPreferenceValue(userID, itemID);
+        Float value = model.getPreferenceValue(userID, itemID);
+        if (expectedValue == null) {
+          assertNull(value);
+        } else {
+          assertEquals(expectedValue, value, tolerance);
+        }
+      }
+    }
+
+    for (int i = 0; i < 20; i++) {
+      for (int j = 0; j < 20; j++) {
+        assertEquals(expected.getNumUsersWithPreferenceFor(itemIDs[i], itemIDs[j]),
+                     model.getNumUsersWithPreferenceFor(itemIDs[i], itemIDs[j]));
+      }
+      assertEquals(expected.getNumUsersWithPreferenceFor(itemIDs[i]),
+                   model.getNumUsersWithPreferenceFor(itemIDs[i]));
+    }
+    assertEquals(0, model.getNumUsersWithPreferenceFor(itemIDs[0], 0L));
+  }
+
+  private static void assertSamePrefs(PreferenceArray expected, PreferenceArray actual, double tolerance) {
+    assertEquals(expected.length(), actual.length());
+    for (int i = 0; i < expected.length(); i++) {
+      assertEquals(expected.getUserID(i), actual.getUserID(i));
+      assertEquals(expected.getItemID(i), actual.getItemID(i));
+      assertEquals(expected.getValue(i), actual.getValue(i), tolerance);
+    }
+  }
+
+}
@@ -20,11 +20,13 @@ package org.apache.mahout.cf.taste.impl.model.file;
 import org.apache.commons.lang.mutable.MutableBoolean;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
 import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
 import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.DataModelChangeListener;
 import org.apache.mahout.cf.taste.model.Preference;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
@@ -34,6 +36,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 /** <p>Tests {@link FileDataModel}.</p> */
@@ -181,6 +184,95 @@ public final class FileDataModelTest extends TasteTestCase {
     assertEquals(5.0f, dataModel.getPreferenceValue(123L, 456L), EPSILON);
   }
 
+  @Test
+  public void testIncrementalUpdate() throws Exception {
+    File file = getTestTempFile("delta.txt");
+    writeLines(file, DATA);
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    ChangeRecorder recorder = new ChangeRecorder();
+    dataModel.addDataModelChangeListener(recorder);
+    PreferenceArray unchangedUserPrefs = dataModel.getPreferencesFromUser(234L);
+    PreferenceArray changedUserPrefs = dataModel.getPreferencesFromUser(123L);
+
+    writeLines(getTestTempFile("delta.1.txt"), "123,456,0.9", "123,789,", "567,123,0.3", "456,456,");
+    dataModel.refresh(null);
+
+    assertEquals(0.9f, dataModel.getPreferenceValue(123L, 456L), EPSILON);
+    assertNull(dataModel.getPreferenceValue(123L, 789L));
+    assertEquals(0.3f, dataModel.getPreferenceValue(567L, 123L), EPSILON);
+    assertNull(dataModel.getPreferenceValue(456L, 456L));
+    assertEquals(5, dataModel.getNumUsers());
+    assertEquals(6, dataModel.getNumItems());
+    assertEquals(2, dataModel.getNumUsersWithPreferenceFor(789L));
+    assertEquals(3, dataModel.getNumUsersWithPreferenceFor(123L));
+    assertFalse(dataModel.getPreferencesForItem(456L).hasPrefWithUserID(456L));
+    assertEquals(0.9f, dataModel.getPreferencesForItem(456L).getValue(0), EPSILON);
+    assertSame(unchangedUserPrefs, dataModel.getPreferencesFromUser(234L));
+    // The previous model's data must not have been modified
+    assertEquals(0.1f, changedUserPrefs.getValue(0), EPSILON);
+    assertEquals(3, changedUserPrefs.length());
+
+    assertIDs(new long[] {123L, 456L, 567L}, recorder.changedUserIDs);
+    assertIDs(new long[] {123L, 456L, 789L}, recorder.changedItemIDs);
+
+    // Nothing new to apply
+    recorder.changedUserIDs = null;
+    dataModel.refresh(null);
+    assertNull(recorder.changedUserIDs);
+  }
+
+  @Test
+  public void testIncrementalUpdateWidensPreferenceBounds() throws Exception {
+    File file = getTestTempFile("bounds.txt");
+    writeLines(file, DATA);
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    assertEquals(0.0f, dataModel.getMinPreference(), EPSILON);
+    assertEquals(1.0f, dataModel.getMaxPreference(), EPSILON);
+
+    writeLines(getTestTempFile("bounds.1.txt"), "567,123,2.0", "234,999,-1.0");
+    dataModel.refresh(null);
+
+    assertEquals(-1.0f, dataModel.getMinPreference(), EPSILON);
+    assertEquals(2.0f, dataModel.getMaxPreference(), EPSILON);
+  }
+
+  @Test
+  public void testIncrementalUpdateWithoutPreferenceValues() throws Exception {
+    File file = getTestTempFile("booleandelta.txt");
+    writeLines(file, "123,456", "123,789", "234,456");
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    ChangeRecorder recorder = new ChangeRecorder();
+    dataModel.addDataModelChangeListener(recorder);
+
+    writeLines(getTestTempFile("booleandelta.1.txt"), "234,789,1", "123,456,");
+    dataModel.refresh(null);
+
+    assertIDs(new long[] {789L}, dataModel.getItemIDsFromUser(123L));
+    assertIDs(new long[] {456L, 789L}, dataModel.getItemIDsFromUser(234L));
+    assertEquals(1, dataModel.getNumUsersWithPreferenceFor(456L));
+    assertEquals(2, dataModel.getNumUsersWithPreferenceFor(789L));
+    assertIDs(new long[] {123L, 234L}, recorder.changedUserIDs);
+    assertIDs(new long[] {456L, 789L}, recorder.changedItemIDs);
+  }
+
+  @Test
+  public void testIncrementalUpdateReportsOnlyUsersWhoChanged() throws Exception {
+    File file = getTestTempFile("unchanged.txt");
+    writeLines(file, "123,456", "123,789", "234,456");
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    ChangeRecorder recorder = new ChangeRecorder();
+    dataModel.addDataModelChangeListener(recorder);
+
+    // 123 already prefers 789 and 234 has no preference for 123, so only the new user 999 changes
+    writeLines(getTestTempFile("unchanged.1.txt"), "123,789,1", "234,123,", "999,456,1");
+    dataModel.refresh(null);
+
+    assertEquals(3, dataModel.getNumUsers());
+    assertEquals(3, dataModel.getNumUsersWithPreferenceFor(456L));
+    assertIDs(new long[] {999L}, recorder.changedUserIDs);
+    assertIDs(new long[] {456L}, recorder.changedItemIDs);
+  }
+
   @Test
   public void testToString() {
     assertTrue(model.toString().length() > 0);
@@ -197,4 +289,23 @@ public final class FileDataModelTest extends TasteTestCase {
       // good
     }
   }
+
+  private static void assertIDs(long[] expected, FastIDSet actual) {
+    long[] actualArray = actual.toArray();
+    Arrays.sort(actualArray);
+    assertArrayEquals(expected, actualArray);
+  }
+
+  private static final class ChangeRecorder implements DataModelChangeListener {
+
+    private FastIDSet changedUserIDs;
+    private FastIDSet changedItemIDs;
+
+    @Override
+    public void dataModelChanged(DataModel dataModel, FastIDSet changedUserIDs, FastIDSet changedItemIDs) {
+      this.changedUserIDs = changedUserIDs;
+      this.changedItemIDs = changedItemIDs;
+    }
+  }
+
 }
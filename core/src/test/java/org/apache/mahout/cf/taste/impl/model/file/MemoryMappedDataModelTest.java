@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericPreference;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.junit.Before;
+import org.junit.Test;
+
+/** <p>Tests {@link MemoryMappedDataModel}.</p> */
+public final class MemoryMappedDataModelTest extends TasteTestCase {
+
+  private static final String[] DATA = {
+      "123,456,0.1",
+      "123,789,0.6",
+      "123,654,0.7",
+      "234,123,0.5",
+      "234,234,1.0",
+      "234,999,0.9",
+      "345,789,0.6",
+      "345,654,0.7",
+      "345,123,1.0",
+      "345,234,0.5",
+      "345,999,0.5",
+      "456,456,0.1",
+      "456,789,0.5",
+      "456,654,0.0",
+      "456,999,0.2",};
+
+  private DataModel fileModel;
+  private DataModel model;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    File testFile = getTestTempFile("test.txt");
+    writeLines(testFile, DATA);
+    fileModel = new FileDataModel(testFile);
+    File mappedFile = getTestTempFile("test.bin");
+    MemoryMappedDataModelConverter.convert(testFile, mappedFile);
+    model = new MemoryMappedDataModel(mappedFile);
+  }
+
+  @Test
+  public void testSameAsFileDataModel() throws Exception {
+    assertEquals(fileModel.getNumUsers(), model.getNumUsers());
+    assertEquals(fileModel.getNumItems(), model.getNumItems());
+    assertEquals(fileModel.getMinPreference(), model.getMinPreference(), EPSILON);
+    assertEquals(fileModel.getMaxPreference(), model.getMaxPreference(), EPSILON);
+    assertTrue(model.hasPreferenceValues());
+
+    LongPrimitiveIterator expectedUserIDs = fileModel.getUserIDs();
+    LongPrimitiveIterator userIDs = model.getUserIDs();
+    while (expectedUserIDs.hasNext()) {
+      long userID = expectedUserIDs.nextLong();
+      assertEquals(userID, userIDs.nextLong());
+      assertSamePrefs(fileModel.getPreferencesFromUser(userID), model.getPreferencesFromUser(userID));
+      assertEquals(fileModel.getItemIDsFromUser(userID), model.getItemIDsFromUser(userID));
+    }
+    assertFalse(userIDs.hasNext());
+
+    LongPrimitiveIterator expectedItemIDs = fileModel.getItemIDs();
+    LongPrimitiveIterator itemIDs = model.getItemIDs();
+    while (expectedItemIDs.hasNext()) {
+      long itemID = expectedItemIDs.nextLong();
+      assertEquals(itemID, itemIDs.nextLong());
+      assertSamePrefs(fileModel.getPreferencesForItem(itemID), model.getPreferencesForItem(itemID));
+    }
+    assertFalse(itemIDs.hasNext());
+  }
+
+  @Test
+  public void testPreferenceValue() throws Exception {
+    assertEquals(0.7f, model.getPreferenceValue(345, 654), EPSILON);
+    assertNull(model.getPreferenceValue(345, 456));
+    assertNull(model.getPreferenceTime(345, 654));
+  }
+
+  @Test
+  public void testNumUsersWithPreferenceFor() throws Exception {
+    assertEquals(3, model.getNumUsersWithPreferenceFor(789));
+    assertEquals(2, model.getNumUsersWithPreferenceFor(123, 234));
+    assertEquals(3, model.getNumUsersWithPreferenceFor(789, 654));
+    assertEquals(0, model.getNumUsersWithPreferenceFor(1000));
+  }
+
+  @Test
+  public void testClone() throws Exception {
+    PreferenceArray prefs = model.getPreferencesFromUser(345).clone();
+    prefs.sortByValue();
+    assertEquals(0.5f, prefs.getValue(0), EPSILON);
+    assertEquals(1.0f, prefs.getValue(4), EPSILON);
+    assertTrue(prefs.hasPrefWithItemID(999));
+    assertTrue(model.getPreferencesFromUser(345).hasPrefWithItemID(999));
+    assertFalse(model.getPreferencesFromUser(345).hasPrefWithItemID(456));
+  }
+
+  @Test
+  public void testSortIsNoOp() throws Exception {
+    PreferenceArray fromUser = model.getPreferencesFromUser(345);
+    fromUser.sortByUser();
+    fromUser.sortByItem();
+    assertSamePrefs(fileModel.getPreferencesFromUser(345), fromUser);
+    PreferenceArray forItem = model.getPreferencesForItem(789);
+    forItem.sortByUser();
+    forItem.sortByItem();
+    assertSamePrefs(fileModel.getPreferencesForItem(789), forItem);
+  }
+
+  @Test
+  public void testRecommend() throws Exception {
+    UserSimilarity userSimilarity = new PearsonCorrelationSimilarity(model);
+    UserNeighborhood neighborhood = new NearestNUserNeighborhood(3, userSimilarity, model);
+    Recommender recommender = new GenericUserBasedRecommender(model, neighborhood, userSimilarity);
+    assertEquals(1, recommender.recommend(123, 3).size());
+    assertEquals(0, recommender.recommend(234, 3).size());
+    assertEquals(1, recommender.recommend(345, 3).size());
+  }
+
+  @Test(expected = NoSuchUserException.class)
+  public void testNoSuchUser() throws Exception {
+    model.getPreferencesFromUser(999);
+  }
+
+  @Test(expected = NoSuchItemException.class)
+  public void testNoSuchItem() throws Exception {
+    model.getPreferencesForItem(345);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testReadOnly() throws Exception {
+    model.setPreference(123, 456, 1.0f);
+  }
+
+  @Test
+  public void testConvertUnsortedModel() throws Exception {
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    userData.put(2L, new GenericUserPreferenceArray(Arrays.asList(
+        new GenericPreference(2L, 30L, 3.0f), new GenericPreference(2L, 10L, 1.0f))));
+    userData.put(1L, new GenericUserPreferenceArray(Arrays.asList(
+        new GenericPreference(1L, 20L, 2.0f), new GenericPreference(1L, 10L, 4.0f))));
+    FastByIDMap<PreferenceArray> itemData = new FastByIDMap<PreferenceArray>();
+    itemData.put(30L, new GenericItemPreferenceArray(Arrays.asList(new GenericPreference(2L, 30L, 3.0f))));
+    itemData.put(10L, new GenericItemPreferenceArray(Arrays.asList(
+        new GenericPreference(2L, 10L, 1.0f), new GenericPreference(1L, 10L, 4.0f))));
+    itemData.put(20L, new GenericItemPreferenceArray(Arrays.asList(new GenericPreference(1L, 20L, 2.0f))));
+    DataModel unsorted = new GenericDataModel(userData, itemData, null, 1.0f, 4.0f);
+
+    File mappedFile = getTestTempFile("unsorted.bin");
+    MemoryMappedDataModelConverter.writeDataModel(unsorted, mappedFile);
+    DataModel converted = new MemoryMappedDataModel(mappedFile);
+
+    assertEquals(4.0f, converted.getPreferenceValue(1L, 10L), EPSILON);
+    assertEquals(2.0f, converted.getPreferenceValue(1L, 20L), EPSILON);
+    assertEquals(1.0f, converted.getPreferenceValue(2L, 10L), EPSILON);
+    assertEquals(3.0f, converted.getPreferenceValue(2L, 30L), EPSILON);
+    assertNull(converted.getPreferenceValue(1L, 30L));
+    PreferenceArray forItem = converted.getPreferencesForItem(10L);
+    assertEquals(1L, forItem.getUserID(0));
+    assertEquals(2L, forItem.getUserID(1));
+    // The source model was not modified
+    assertEquals(20L, unsorted.getPreferencesFromUser(1L).getItemID(0));
+  }
+
+  private static void assertSamePrefs(PreferenceArray expected, PreferenceArray actual) {
+    assertEquals(expected.length(), actual.length());
+    for (int i = 0; i < expected.length(); i++) {
+      assertEquals(expected.getUserID(i), actual.getUserID(i));
+      assertEquals(expected.getItemID(i), actual.getItemID(i));
+      assertEquals(expected.getValue(i), actual.getValue(i), EPSILON);
+    }
+  }
+
+}
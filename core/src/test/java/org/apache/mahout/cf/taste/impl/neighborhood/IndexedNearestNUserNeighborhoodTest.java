@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.neighborhood;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.similarity.PreferenceInferrer;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link IndexedNearestNUserNeighborhood}.</p> */
+public final class IndexedNearestNUserNeighborhoodTest extends TasteTestCase {
+
+  @Test
+  public void testNeighborhood() throws Exception {
+    DataModel dataModel = getDataModel();
+
+    long[] neighborhood =
+        new IndexedNearestNUserNeighborhood(1, new DummySimilarity(dataModel), dataModel).getUserNeighborhood(1);
+    assertEquals(1, neighborhood.length);
+    assertTrue(arrayContains(neighborhood, 2));
+
+    long[] neighborhood2 =
+        new IndexedNearestNUserNeighborhood(2, new DummySimilarity(dataModel), dataModel).getUserNeighborhood(2);
+    assertEquals(2, neighborhood2.length);
+    assertTrue(arrayContains(neighborhood2, 1));
+    assertTrue(arrayContains(neighborhood2, 3));
+  }
+
+  @Test
+  public void testMatchesNearestNUserNeighborhood() throws Exception {
+    DataModel dataModel = randomDataModel(2000, 500, 10);
+    UserSimilarity similarity = new PearsonCorrelationSimilarity(dataModel);
+    NearestNUserNeighborhood expected = new NearestNUserNeighborhood(10, similarity, dataModel);
+    IndexedNearestNUserNeighborhood actual = new IndexedNearestNUserNeighborhood(10, similarity, dataModel);
+    for (long userID = 0; userID < 20; userID++) {
+      long[] expectedIDs = expected.getUserNeighborhood(userID);
+      long[] actualIDs = actual.getUserNeighborhood(userID);
+      assertEquals(expectedIDs.length, actualIDs.length);
+      for (int i = 0; i < expectedIDs.length; i++) {
+        // Ties may be broken differently, so compare similarities
+        assertEquals(similarity.userSimilarity(userID, expectedIDs[i]),
+                     similarity.userSimilarity(userID, actualIDs[i]), EPSILON);
+      }
+    }
+    assertEquals(20, actual.getNumRequests());
+    assertEquals(0, actual.getNumTimedOut());
+  }
+
+  @Test
+  public void testMaxCandidates() throws Exception {
+    DataModel dataModel = randomDataModel(500, 50, 5);
+    UserSimilarity similarity = new PearsonCorrelationSimilarity(dataModel);
+    CountingSimilarity counting = new CountingSimilarity(similarity, 0L);
+    new IndexedNearestNUserNeighborhood(5, Double.NEGATIVE_INFINITY, counting, dataModel, 1.0, 20, 0L,
+        TimeUnit.MILLISECONDS).getUserNeighborhood(0);
+    assertTrue(counting.getCount() <= 20);
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    DataModel dataModel = randomDataModel(2000, 20, 5);
+    CountingSimilarity slow = new CountingSimilarity(new PearsonCorrelationSimilarity(dataModel), 1L);
+    IndexedNearestNUserNeighborhood neighborhood =
+        new IndexedNearestNUserNeighborhood(5, slow, dataModel, 50L, TimeUnit.MILLISECONDS);
+    long start = System.currentTimeMillis();
+    long[] neighbors = neighborhood.getUserNeighborhood(0);
+    long elapsed = System.currentTimeMillis() - start;
+    assertTrue(elapsed < 1000L);
+    assertTrue(neighbors.length <= 5);
+    assertTrue(slow.getCount() < dataModel.getNumUsers() - 1);
+    assertEquals(1, neighborhood.getNumTimedOut());
+    long[] sorted = neighbors.clone();
+    Arrays.sort(sorted);
+    assertTrue(Arrays.binarySearch(sorted, 0L) < 0);
+  }
+
+  @Test
+  public void testCallerDeadline() throws Exception {
+    DataModel dataModel = randomDataModel(2000, 20, 5);
+    CountingSimilarity slow = new CountingSimilarity(new PearsonCorrelationSimilarity(dataModel), 1L);
+    IndexedNearestNUserNeighborhood neighborhood = new IndexedNearestNUserNeighborhood(5, slow, dataModel);
+
+    // Already passed: no candidates are even looked up
+    assertEquals(0, neighborhood.getUserNeighborhood(0, Deadline.after(0L, TimeUnit.MILLISECONDS)).length);
+    assertEquals(0, slow.getCount());
+
+    long start = System.currentTimeMillis();
+    long[] neighbors = neighborhood.getUserNeighborhood(0, Deadline.after(50L, TimeUnit.MILLISECONDS));
+    assertTrue(System.currentTimeMillis() - start < 1000L);
+    assertTrue(neighbors.length <= 5);
+    assertTrue(slow.getCount() < dataModel.getNumUsers() - 1);
+    assertEquals(2, neighborhood.getNumTimedOut());
+  }
+
+  private static DataModel randomDataModel(int numUsers, int numItems, int prefsPerUser) {
+    Random random = RandomUtils.getRandom();
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    for (long userID = 0; userID < numUsers; userID++) {
+      PreferenceArray prefs = new GenericUserPreferenceArray(prefsPerUser);
+      int offset = random.nextInt(numItems);
+      for (int i = 0; i < prefsPerUser; i++) {
+        prefs.setUserID(i, userID);
+        prefs.setItemID(i, (offset + i) % numItems);
+        prefs.setValue(i, 1 + random.nextInt(5));
+      }
+      userData.put(userID, prefs);
+    }
+    return new GenericDataModel(userData);
+  }
+
+  private static final class CountingSimilarity implements UserSimilarity {
+
+    private final UserSimilarity delegate;
+    private final long sleepMillis;
+    private int count;
+
+    private CountingSimilarity(UserSimilarity delegate, long sleepMillis) {
+      this.delegate = delegate;
+      this.sleepMillis = sleepMillis;
+    }
+
+    synchronized int getCount() {
+      return count;
+    }
+
+    @Override
+    public double userSimilarity(long userID1, long userID2) throws TasteException {
+      synchronized (this) {
+        count++;
+      }
+      if (sleepMillis > 0L) {
+        try {
+          Thread.sleep(sleepMillis);
+        } catch (InterruptedException ie) {
+          throw new TasteException(ie);
+        }
+      }
+      return delegate.userSimilarity(userID1, userID2);
+    }
+
+    @Override
+    public void setPreferenceInferrer(PreferenceInferrer inferrer) {
+      delegate.setPreferenceInferrer(inferrer);
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+      delegate.refresh(alreadyRefreshed);
+    }
+  }
+
+}
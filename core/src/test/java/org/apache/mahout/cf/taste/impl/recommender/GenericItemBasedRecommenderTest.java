@@ -22,6 +22,7 @@ import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.model.GenericPreference;
 import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
 import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
@@ -37,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /** <p>Tests {@link GenericItemBasedRecommender}.</p> */
 public final class GenericItemBasedRecommenderTest extends TasteTestCase {
@@ -129,6 +131,49 @@ public final class GenericItemBasedRecommenderTest extends TasteTestCase {
     assertEquals(0.1f, recommender.estimatePreference(1, 2), EPSILON);
   }
 
+  @Test
+  public void testRecommendSameAsEstimatePref() throws Exception {
+    DataModel dataModel = getDataModel(
+            new long[] {1, 2, 3, 4},
+            new Double[][] {
+                    {0.1, 0.3, null, null, 0.9},
+                    {0.2, 0.3, 0.3, 0.8, null},
+                    {0.4, 0.3, 0.5, 0.1, 0.2},
+                    {0.7, 0.3, 0.8, 0.5, 0.6},
+            });
+    // Recommending reads the user's item vectors once, estimating reads them for each item
+    Recommender recommender = new GenericItemBasedRecommender(dataModel, new PearsonCorrelationSimilarity(dataModel));
+    List<RecommendedItem> recommended = recommender.recommend(1, 2);
+    assertFalse(recommended.isEmpty());
+    for (RecommendedItem item : recommended) {
+      assertEquals(recommender.estimatePreference(1, item.getItemID()), item.getValue(), EPSILON);
+    }
+  }
+
+  @Test
+  public void testRecommendUsesOverriddenEstimate() throws Exception {
+    DataModel dataModel = getDataModel(
+            new long[] {1, 2, 3, 4},
+            new Double[][] {
+                    {0.1, 0.3, null, null, 0.9},
+                    {0.2, 0.3, 0.3, 0.8, null},
+                    {0.4, 0.3, 0.5, 0.1, 0.2},
+                    {0.7, 0.3, 0.8, 0.5, 0.6},
+            });
+    Recommender recommender =
+        new GenericItemBasedRecommender(dataModel, new PearsonCorrelationSimilarity(dataModel)) {
+          @Override
+          protected float doEstimatePreference(long userID, PreferenceArray preferencesFromUser, long itemID) {
+            return itemID;
+          }
+        };
+    List<RecommendedItem> recommended = recommender.recommend(1, 2);
+    assertEquals(2, recommended.size());
+    assertEquals(3L, recommended.get(0).getItemID());
+    assertEquals(3.0f, recommended.get(0).getValue(), EPSILON);
+    assertEquals(2L, recommended.get(1).getItemID());
+  }
+
   /**
    * Contributed test case that verifies fix for bug
    * <a href="http://sourceforge.net/tracker/index.php?func=detail&amp;aid=1396128&amp;group_id=138771&amp;atid=741665">
@@ -217,6 +262,27 @@ public final class GenericItemBasedRecommenderTest extends TasteTestCase {
     assertEquals(0.2f, third.getValue(), EPSILON);
   }
 
+  @Test
+  public void testRecommendWithinBudget() throws Exception {
+    GenericItemBasedRecommender recommender = (GenericItemBasedRecommender) buildRecommender2();
+    List<RecommendedItem> expected = recommender.recommend(2, 2);
+    List<RecommendedItem> recommended = recommender.recommend(2, 2, null, 1L, TimeUnit.MINUTES);
+    assertEquals(expected, recommended);
+    assertEquals(1, recommender.getNumBudgeted());
+    assertEquals(0, recommender.getNumDegraded());
+  }
+
+  @Test
+  public void testRecommendOverBudget() throws Exception {
+    GenericItemBasedRecommender recommender = (GenericItemBasedRecommender) buildRecommender2();
+    assertFalse(recommender.recommend(2, 2).isEmpty());
+    // No time to find any candidates, so none are recommended
+    List<RecommendedItem> recommended = recommender.recommend(2, 2, null, 0L, TimeUnit.MILLISECONDS);
+    assertTrue(recommended.isEmpty());
+    assertEquals(1, recommender.getNumBudgeted());
+    assertEquals(1, recommender.getNumDegraded());
+  }
+
   private static ItemBasedRecommender buildRecommender() {
     DataModel dataModel = getDataModel();
     Collection<GenericItemSimilarity.ItemItemSimilarity> similarities =
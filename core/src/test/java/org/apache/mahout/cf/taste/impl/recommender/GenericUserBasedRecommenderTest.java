@@ -17,19 +17,28 @@
 
 package org.apache.mahout.cf.taste.impl.recommender;
 
+import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.neighborhood.IndexedNearestNUserNeighborhood;
 import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
 import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
 import org.apache.mahout.cf.taste.recommender.Recommender;
 import org.apache.mahout.cf.taste.recommender.UserBasedRecommender;
+import org.apache.mahout.cf.taste.similarity.PreferenceInferrer;
 import org.apache.mahout.cf.taste.similarity.UserSimilarity;
 import org.junit.Test;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /** <p>Tests {@link GenericUserBasedRecommender}.</p> */
 public final class GenericUserBasedRecommenderTest extends TasteTestCase {
@@ -142,6 +151,49 @@ public final class GenericUserBasedRecommenderTest extends TasteTestCase {
     assertEquals(0, mostSimilar.length);
   }
 
+  @Test
+  public void testBudgetBoundsNeighborhood() throws Exception {
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    for (long userID = 0; userID < 5000; userID++) {
+      PreferenceArray prefs = new GenericUserPreferenceArray(3);
+      for (int i = 0; i < 3; i++) {
+        prefs.setUserID(i, userID);
+        prefs.setItemID(i, (userID + i) % 10);
+        prefs.setValue(i, (userID * 7 + i) % 5 + 1);
+      }
+      userData.put(userID, prefs);
+    }
+    DataModel dataModel = new GenericDataModel(userData);
+    final UserSimilarity delegate = new PearsonCorrelationSimilarity(dataModel);
+    UserSimilarity slow = new UserSimilarity() {
+      @Override
+      public double userSimilarity(long userID1, long userID2) throws TasteException {
+        try {
+          Thread.sleep(2L);
+        } catch (InterruptedException ie) {
+          throw new TasteException(ie);
+        }
+        return delegate.userSimilarity(userID1, userID2);
+      }
+      @Override
+      public void setPreferenceInferrer(PreferenceInferrer inferrer) {
+        delegate.setPreferenceInferrer(inferrer);
+      }
+      @Override
+      public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        delegate.refresh(alreadyRefreshed);
+      }
+    };
+    UserNeighborhood neighborhood = new IndexedNearestNUserNeighborhood(5, slow, dataModel);
+    GenericUserBasedRecommender recommender = new GenericUserBasedRecommender(dataModel, neighborhood, slow);
+
+    long start = System.currentTimeMillis();
+    recommender.recommend(0, 3, null, 200L, TimeUnit.MILLISECONDS);
+    assertTrue(System.currentTimeMillis() - start < 1000L);
+    assertEquals(1, recommender.getNumBudgeted());
+    assertEquals(1, recommender.getNumDegraded());
+  }
+
   private static UserBasedRecommender buildRecommender() throws TasteException {
     DataModel dataModel = getDataModel();
     UserSimilarity similarity = new PearsonCorrelationSimilarity(dataModel);
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveArrayIterator;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.junit.Test;
+
+public final class ParallelTopItemsTest extends TasteTestCase {
+
+  private static final TopItems.IDEstimator ESTIMATOR = new TopItems.IDEstimator() {
+    @Override
+    public double estimate(long id) {
+      return (id * 2654435761L) % 10007L;
+    }
+  };
+
+  @Test
+  public void testSameAsSequential() throws TasteException {
+    long[] ids = new long[10000];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
+    }
+    IDRescorer rescorer = new IDRescorer() {
+      @Override
+      public double rescore(long id, double originalScore) {
+        return originalScore;
+      }
+      @Override
+      public boolean isFiltered(long id) {
+        return id % 3 == 0;
+      }
+    };
+    List<RecommendedItem> expected = TopItems.getTopItems(20, new LongPrimitiveArrayIterator(ids), rescorer,
+        ESTIMATOR);
+    List<RecommendedItem> actual = ParallelTopItems.getTopItems(20, ids, rescorer, ESTIMATOR);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), EPSILON);
+      assertTrue(actual.get(i).getItemID() % 3 != 0);
+    }
+  }
+
+  @Test
+  public void testFewCandidates() throws TasteException {
+    List<RecommendedItem> actual = ParallelTopItems.getTopItems(2, new long[] {1L, 2L, 3L}, null, ESTIMATOR);
+    assertEquals(2, actual.size());
+  }
+
+  @Test
+  public void testDeadlineSkipsQueuedPartitions() throws Exception {
+    final long[] ids = new long[128 * ParallelTopItems.getParallelism()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
+    }
+    final CountDownLatch release = new CountDownLatch(1);
+    // Keeps every pooled thread busy, so that the next caller's partitions wait in the queue
+    Thread busy = new Thread() {
+      @Override
+      public void run() {
+        try {
+          ParallelTopItems.getTopItems(10, ids, null, new TopItems.IDEstimator() {
+            @Override
+            public double estimate(long id) throws TasteException {
+              try {
+                // Bounded, so that waiting for queued partitions fails the test rather than hanging it
+                release.await(2L, TimeUnit.SECONDS);
+              } catch (InterruptedException ie) {
+                throw new TasteException(ie);
+              }
+              return id;
+            }
+          });
+        } catch (TasteException te) {
+          // ignore
+        }
+      }
+    };
+    busy.start();
+    try {
+      Thread.sleep(200L);
+      long start = System.currentTimeMillis();
+      List<RecommendedItem> actual =
+          ParallelTopItems.getTopItems(10, ids, null, ESTIMATOR, Deadline.after(50L, TimeUnit.MILLISECONDS));
+      assertTrue(System.currentTimeMillis() - start < 1000L);
+      // The calling thread still scores its own partition
+      assertEquals(10, actual.size());
+    } finally {
+      release.countDown();
+      busy.join();
+    }
+  }
+
+  @Test
+  public void testOtherPartitionsCancelledWhenCallerFails() throws Exception {
+    long[] ids = new long[128 * ParallelTopItems.getParallelism()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
+    }
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    try {
+      ParallelTopItems.getTopItems(10, ids, null, new TopItems.IDEstimator() {
+        @Override
+        public double estimate(long id) throws TasteException {
+          if (id == 0L) {
+            // This thread's own partition fails once another partition is running
+            try {
+              started.await(2L, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+              throw new TasteException(ie);
+            }
+            throw new IllegalStateException("fail");
+          }
+          started.countDown();
+          try {
+            Thread.sleep(10000L);
+          } catch (InterruptedException ie) {
+            interrupted.countDown();
+            throw new TasteException(ie);
+          }
+          return id;
+        }
+      });
+      fail();
+    } catch (IllegalStateException ise) {
+      // expected
+    }
+    assertTrue(interrupted.await(2L, TimeUnit.SECONDS));
+  }
+
+  @Test(expected = TasteException.class)
+  public void testExceptionPropagates() throws TasteException {
+    long[] ids = new long[1000];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
+    }
+    ParallelTopItems.getTopItems(10, ids, null, new TopItems.IDEstimator() {
+      @Override
+      public double estimate(long id) throws TasteException {
+        if (id == 999L) {
+          throw new TasteException("fail");
+        }
+        return id;
+      }
+    });
+  }
+
+}
@@ -20,8 +20,11 @@ package org.apache.mahout.cf.taste.impl.recommender;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.Deadline;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
 import org.apache.mahout.cf.taste.impl.model.GenericPreference;
@@ -70,5 +73,30 @@ public final class PreferredItemsNeighborhoodCandidateItemsStrategyTest extends
 
     EasyMock.verify(dataModel);
   }
-  
+
+  @Test
+  public void testExpiredDeadline() throws TasteException {
+    List<Preference> prefs = new ArrayList<Preference>();
+    prefs.add(new GenericPreference(123L, 1L, 1.0f));
+    prefs.add(new GenericPreference(456L, 1L, 1.0f));
+    PreferenceArray preferencesForItem1 = new GenericItemPreferenceArray(prefs);
+
+    DataModel dataModel = EasyMock.createMock(DataModel.class);
+    EasyMock.expect(dataModel.getPreferencesForItem(1L)).andReturn(preferencesForItem1);
+
+    PreferenceArray prefArrayOfUser123 =
+        new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(123L, 1L, 1.0f)));
+
+    AbstractCandidateItemsStrategy strategy = new PreferredItemsNeighborhoodCandidateItemsStrategy();
+
+    EasyMock.replay(dataModel);
+
+    // No other user's items are fetched once the deadline has passed
+    FastIDSet candidateItems = strategy.getCandidateItems(123L, prefArrayOfUser123, dataModel,
+        Deadline.after(0L, TimeUnit.MILLISECONDS));
+    assertTrue(candidateItems.isEmpty());
+
+    EasyMock.verify(dataModel);
+  }
+
 }
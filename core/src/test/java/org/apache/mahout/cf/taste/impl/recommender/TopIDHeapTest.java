@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class TopIDHeapTest extends TasteTestCase {
+
+  @Test
+  public void testKeepsHighestValues() {
+    Random random = RandomUtils.getRandom();
+    int numValues = 1000;
+    double[] allValues = new double[numValues];
+    TopIDHeap heap = new TopIDHeap(10);
+    for (int i = 0; i < numValues; i++) {
+      allValues[i] = random.nextDouble();
+      heap.offer(i, allValues[i]);
+    }
+    assertTrue(heap.isFull());
+    double[] sorted = allValues.clone();
+    Arrays.sort(sorted);
+    long[] ids = heap.getIDsDescending();
+    assertEquals(10, ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(sorted[numValues - 1 - i], allValues[(int) ids[i]], EPSILON);
+    }
+    assertEquals(sorted[numValues - 10], heap.lowestTopValue(), EPSILON);
+  }
+
+  @Test
+  public void testNotFull() {
+    TopIDHeap heap = new TopIDHeap(5);
+    assertTrue(heap.isEmpty());
+    assertEquals(Double.NEGATIVE_INFINITY, heap.lowestTopValue(), EPSILON);
+    heap.offer(1L, 0.5);
+    heap.offer(2L, Double.NaN);
+    heap.offer(3L, 0.9);
+    assertEquals(2, heap.size());
+    List<RecommendedItem> items = heap.toRecommendedItems();
+    assertEquals(2, items.size());
+    assertEquals(3L, items.get(0).getItemID());
+    assertEquals(1L, items.get(1).getItemID());
+    assertEquals(0.9f, items.get(0).getValue(), EPSILON);
+  }
+
+  @Test
+  public void testMerge() {
+    TopIDHeap first = new TopIDHeap(3);
+    TopIDHeap second = new TopIDHeap(3);
+    for (int i = 0; i < 6; i++) {
+      (i % 2 == 0 ? first : second).offer(i, i);
+    }
+    first.addAll(second);
+    long[] ids = first.getIDsDescending();
+    assertEquals(3, ids.length);
+    assertEquals(5L, ids[0]);
+    assertEquals(4L, ids[1]);
+    assertEquals(3L, ids[2]);
+  }
+
+}
@@ -0,0 +1,300 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.slopeone;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.common.Weighting;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.common.RunningAverageAndStdDev;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.cf.taste.recommender.slopeone.DiffStorage;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** Tests {@link ConcurrentMemoryDiffStorage}. */
+public final class ConcurrentMemoryDiffStorageTest extends TasteTestCase {
+
+  private static final int NUM_USERS = 200;
+  private static final int NUM_ITEMS = 40;
+
+  @Test
+  public void testGetDiff() throws Exception {
+    DataModel model = getDataModel();
+    ConcurrentMemoryDiffStorage storage =
+        new ConcurrentMemoryDiffStorage(model, Weighting.UNWEIGHTED, Long.MAX_VALUE, 2);
+    RunningAverage average = storage.getDiff(1, 2);
+    assertEquals(0.23333333333333334, average.getAverage(), EPSILON);
+    assertEquals(3, average.getCount());
+    RunningAverage inverse = storage.getDiff(2, 1);
+    assertEquals(-0.23333333333333334, inverse.getAverage(), EPSILON);
+    assertEquals(3, inverse.getCount());
+  }
+
+  @Test
+  public void testAdd() throws Exception {
+    DataModel model = getDataModel();
+    ConcurrentMemoryDiffStorage storage =
+        new ConcurrentMemoryDiffStorage(model, Weighting.UNWEIGHTED, Long.MAX_VALUE, 2);
+
+    RunningAverage average1 = storage.getDiff(0, 2);
+    assertEquals(0.1, average1.getAverage(), EPSILON);
+    assertEquals(3, average1.getCount());
+
+    RunningAverage average2 = storage.getDiff(1, 2);
+    assertEquals(0.23333332935969034, average2.getAverage(), EPSILON);
+    assertEquals(3, average2.getCount());
+
+    storage.addItemPref(1, 2, 0.8f);
+
+    average1 = storage.getDiff(0, 2);
+    assertEquals(0.25, average1.getAverage(), EPSILON);
+    assertEquals(4, average1.getCount());
+
+    average2 = storage.getDiff(1, 2);
+    assertEquals(0.3, average2.getAverage(), EPSILON);
+    assertEquals(4, average2.getCount());
+  }
+
+  @Test
+  public void testPrunedEntriesFreeRoom() throws Exception {
+    DataModel model = getDataModel(new long[] {1, 2, 3, 4},
+                                   new Double[][] {
+                                       {1.0, 2.0},
+                                       {null, null, 3.0, 4.0},
+                                       {null, null, 2.0, 5.0},
+                                       {null, null, null, null, 1.0},
+                                   });
+    // Two pairs are built, and the one with a single datum is then pruned
+    ConcurrentMemoryDiffStorage storage =
+        new ConcurrentMemoryDiffStorage(model, Weighting.UNWEIGHTED, 2L, 1);
+    assertEquals(1, storage.getNumDiffs());
+    assertNull(storage.getDiff(0, 1));
+    assertNotNull(storage.getDiff(2, 3));
+
+    storage.addItemPref(4, 5, 3.0f);
+    RunningAverage average = storage.getDiff(4, 5);
+    assertNotNull(average);
+    assertEquals(1, average.getCount());
+    assertEquals(2, storage.getNumDiffs());
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    DataModel model = getDataModel();
+    ConcurrentMemoryDiffStorage storage =
+        new ConcurrentMemoryDiffStorage(model, Weighting.UNWEIGHTED, Long.MAX_VALUE, 2);
+
+    RunningAverage average = storage.getDiff(1, 2);
+    assertEquals(0.23333332935969034, average.getAverage(), EPSILON);
+    assertEquals(3, average.getCount());
+    double itemAverage = storage.getAverageItemPref(1).getAverage();
+
+    storage.updateItemPref(1, 0.5f);
+
+    average = storage.getDiff(1, 2);
+    assertEquals(0.06666666666666668, average.getAverage(), EPSILON);
+    assertEquals(3, average.getCount());
+    RunningAverage updatedItemAverage = storage.getAverageItemPref(1);
+    assertEquals(itemAverage + 0.5 / updatedItemAverage.getCount(), updatedItemAverage.getAverage(), EPSILON);
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    DataModel model = getDataModel();
+    ConcurrentMemoryDiffStorage storage =
+        new ConcurrentMemoryDiffStorage(model, Weighting.UNWEIGHTED, Long.MAX_VALUE, 2);
+
+    RunningAverage average1 = storage.getDiff(0, 2);
+    assertEquals(0.1, average1.getAverage(), EPSILON);
+    assertEquals(3, average1.getCount());
+
+    RunningAverage average2 = storage.getDiff(1, 2);
+    assertEquals(0.23333332935969034, average2.getAverage(), EPSILON);
+    assertEquals(3, average2.getCount());
+
+    storage.removeItemPref(4, 2, 0.8f);
+
+    average1 = storage.getDiff(0, 2);
+    assertEquals(0.1, average1.getAverage(), EPSILON);
+    assertEquals(2, average1.getCount());
+
+    average2 = storage.getDiff(1, 2);
+    assertEquals(0.1, average2.getAverage(), EPSILON);
+    assertEquals(2, average2.getCount());
+  }
+
+  @Test
+  public void testMatchesMemoryDiffStorage() throws Exception {
+    DataModel model = randomDataModel();
+    for (Weighting weighting : Weighting.values()) {
+      MemoryDiffStorage expected = new MemoryDiffStorage(model, weighting, Long.MAX_VALUE);
+      ConcurrentMemoryDiffStorage actual = new ConcurrentMemoryDiffStorage(model, weighting, Long.MAX_VALUE, 4);
+      for (long itemID1 = 0; itemID1 < NUM_ITEMS; itemID1++) {
+        assertEquals(averageItemPref(model, itemID1), actual.getAverageItemPref(itemID1).getAverage(), 0.0001);
+        for (long itemID2 = 0; itemID2 < NUM_ITEMS; itemID2++) {
+          if (itemID1 != itemID2) {
+            assertSameAverage(expected.getDiff(itemID1, itemID2), actual.getDiff(itemID1, itemID2));
+          }
+        }
+      }
+      assertEquals(expected.getRecommendableItemIDs(3), actual.getRecommendableItemIDs(3));
+    }
+  }
+
+  @Test
+  public void testSameEstimates() throws Exception {
+    DataModel model = randomDataModel();
+    DiffStorage expectedStorage = new MemoryDiffStorage(model, Weighting.WEIGHTED, Long.MAX_VALUE);
+    Recommender expected = new SlopeOneRecommender(model, Weighting.WEIGHTED, Weighting.WEIGHTED, expectedStorage);
+    Recommender actual = new SlopeOneRecommender(model, Weighting.WEIGHTED, Weighting.WEIGHTED,
+        new ConcurrentMemoryDiffStorage(model, Weighting.WEIGHTED, Long.MAX_VALUE, 4));
+    for (long userID = 0; userID < 10; userID++) {
+      PreferenceArray prefs = model.getPreferencesFromUser(userID);
+      for (long itemID = 0; itemID < NUM_ITEMS; itemID++) {
+        if (!hasDiffs(expectedStorage.getDiffs(userID, itemID, prefs))) {
+          // MemoryDiffStorage falls back to item averages which leave out the last preference of each user
+          continue;
+        }
+        float expectedEstimate = expected.estimatePreference(userID, itemID);
+        float actualEstimate = actual.estimatePreference(userID, itemID);
+        if (Float.isNaN(expectedEstimate)) {
+          assertTrue(Float.isNaN(actualEstimate));
+        } else {
+          assertEquals(expectedEstimate, actualEstimate, 0.0001);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentReadsAndWrites() throws Exception {
+    DataModel model = randomDataModel();
+    final ConcurrentMemoryDiffStorage storage =
+        new ConcurrentMemoryDiffStorage(model, Weighting.UNWEIGHTED, Long.MAX_VALUE, 4);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] readers = new Thread[4];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int n = 0; n < 2000; n++) {
+              for (long itemID = 1; itemID < NUM_ITEMS; itemID++) {
+                RunningAverage average = storage.getDiff(0, itemID);
+                if (average != null && Math.abs(average.getAverage() - 1.0) > EPSILON) {
+                  throw new AssertionError("Read inconsistent diff " + average);
+                }
+              }
+            }
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          }
+        }
+      };
+      readers[i].start();
+    }
+    for (int n = 0; n < 100; n++) {
+      for (long itemID = 1; itemID < NUM_ITEMS; itemID++) {
+        storage.addItemPref(0, itemID, 3.0f);
+      }
+    }
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+  }
+
+  private static boolean hasDiffs(RunningAverage[] diffs) {
+    for (RunningAverage diff : diffs) {
+      if (diff != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static double averageItemPref(DataModel model, long itemID) throws TasteException {
+    RunningAverage average = new FullRunningAverage();
+    PreferenceArray prefs = model.getPreferencesForItem(itemID);
+    for (int i = 0; i < prefs.length(); i++) {
+      average.addDatum(prefs.getValue(i));
+    }
+    return average.getAverage();
+  }
+
+  private static void assertSameAverage(RunningAverage expected, RunningAverage actual) {
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    assertNotNull(actual);
+    assertEquals(expected.getCount(), actual.getCount());
+    assertEquals(expected.getAverage(), actual.getAverage(), 0.0001);
+    if (expected instanceof RunningAverageAndStdDev) {
+      double expectedStdDev = ((RunningAverageAndStdDev) expected).getStandardDeviation();
+      double actualStdDev = ((RunningAverageAndStdDev) actual).getStandardDeviation();
+      if (Double.isNaN(expectedStdDev)) {
+        assertTrue(Double.isNaN(actualStdDev));
+      } else {
+        assertEquals(expectedStdDev, actualStdDev, 0.001);
+      }
+    }
+  }
+
+  /**
+   * @return model in which only user 0 rates item 0, as 2.0, and rates nothing else, so that adding ratings
+   *  of 3.0 from user 0 for other items adds diffs of exactly 1.0 to pairs with item 0
+   */
+  private static DataModel randomDataModel() {
+    Random random = RandomUtils.getRandom();
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    for (long userID = 0; userID < NUM_USERS; userID++) {
+      if (userID == 0) {
+        PreferenceArray prefs = new GenericUserPreferenceArray(1);
+        prefs.setUserID(0, userID);
+        prefs.setItemID(0, 0);
+        prefs.setValue(0, 2.0f);
+        userData.put(userID, prefs);
+        continue;
+      }
+      int numPrefs = 2 + random.nextInt(NUM_ITEMS / 2);
+      PreferenceArray prefs = new GenericUserPreferenceArray(numPrefs);
+      int offset = random.nextInt(NUM_ITEMS);
+      for (int i = 0; i < numPrefs; i++) {
+        prefs.setUserID(i, userID);
+        prefs.setItemID(i, 1 + (offset + i) % (NUM_ITEMS - 1));
+        prefs.setValue(i, 1 + random.nextInt(5));
+      }
+      userData.put(userID, prefs);
+    }
+    return new GenericDataModel(userData);
+  }
+
+}
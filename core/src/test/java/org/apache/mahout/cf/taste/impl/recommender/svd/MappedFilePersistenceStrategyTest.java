@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+
+public class MappedFilePersistenceStrategyTest extends TasteTestCase {
+
+  @Test
+  public void persistAndLoad() throws Exception {
+    Factorization original = createFactorization(1.0);
+    File storage = getTestTempFile("storage.bin");
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(storage);
+
+    assertNull(persistenceStrategy.load());
+
+    persistenceStrategy.maybePersist(original);
+    Factorization mapped = persistenceStrategy.load();
+
+    assertTrue(mapped instanceof MappedFactorization);
+    assertEquals(3, mapped.numFeatures());
+    assertEquals(2, mapped.numUsers());
+    assertEquals(2, mapped.numItems());
+    assertFeaturesEqual(original.getUserFeatures(123L), mapped.getUserFeatures(123L));
+    assertFeaturesEqual(original.getUserFeatures(456L), mapped.getUserFeatures(456L));
+    assertFeaturesEqual(original.getItemFeatures(12L), mapped.getItemFeatures(12L));
+    assertFeaturesEqual(original.getItemFeatures(34L), mapped.getItemFeatures(34L));
+
+    Iterator<Map.Entry<Long,Integer>> userIDMappings = mapped.getUserIDMappings().iterator();
+    Map.Entry<Long,Integer> first = userIDMappings.next();
+    assertEquals(123L, first.getKey().longValue());
+    assertEquals(0, first.getValue().intValue());
+    assertEquals(456L, userIDMappings.next().getKey().longValue());
+    assertFalse(userIDMappings.hasNext());
+
+    // Storing what was just loaded must not touch the file
+    long lastModified = storage.lastModified();
+    persistenceStrategy.maybePersist(mapped);
+    assertEquals(lastModified, storage.lastModified());
+  }
+
+  @Test
+  public void replaceWhileMapped() throws Exception {
+    File storage = getTestTempFile("replaced.bin");
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(storage);
+    persistenceStrategy.maybePersist(createFactorization(1.0));
+    Factorization first = persistenceStrategy.load();
+
+    persistenceStrategy.maybePersist(createFactorization(2.0));
+    Factorization second = persistenceStrategy.load();
+
+    assertEquals(0.1, first.getUserFeatures(123L)[0], EPSILON);
+    assertEquals(0.2, second.getUserFeatures(123L)[0], EPSILON);
+  }
+
+  @Test
+  public void dotItemFeatures() throws Exception {
+    Factorization original = createFactorization(1.0);
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(getTestTempFile("dot.bin"));
+    persistenceStrategy.maybePersist(original);
+    Factorization mapped = persistenceStrategy.load();
+
+    double[] userFeatures = original.getUserFeatures(123L);
+    assertEquals(0.1 * 0.7 + 0.2 * 0.8 + 0.3 * 0.9, original.dotItemFeatures(userFeatures, 12L), EPSILON);
+    assertEquals(original.dotItemFeatures(userFeatures, 12L), mapped.dotItemFeatures(userFeatures, 12L), EPSILON);
+    assertEquals(original.dotItemFeatures(userFeatures, 34L), mapped.dotItemFeatures(userFeatures, 34L), EPSILON);
+  }
+
+  @Test
+  public void itemFeatureBlockReadsMappedFeatures() throws Exception {
+    Factorization original = createFactorization(1.0);
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(getTestTempFile("block.bin"));
+    persistenceStrategy.maybePersist(original);
+    Factorization mapped = persistenceStrategy.load();
+
+    double[] userFeatures = original.getUserFeatures(456L);
+    double[] originalScores = new double[2];
+    new ItemFeatureBlock(original).dot(userFeatures, 0, 2, originalScores);
+    double[] mappedScores = new double[2];
+    new ItemFeatureBlock(mapped).dot(userFeatures, 0, 2, mappedScores);
+    assertEquals(original.dotItemFeatures(userFeatures, 12L), mappedScores[0], EPSILON);
+    assertEquals(original.dotItemFeatures(userFeatures, 34L), mappedScores[1], EPSILON);
+    assertEquals(originalScores[0], mappedScores[0], EPSILON);
+    assertEquals(originalScores[1], mappedScores[1], EPSILON);
+  }
+
+  @Test(expected = NoSuchItemException.class)
+  public void dotNoSuchItem() throws Exception {
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(getTestTempFile("dotnoitem.bin"));
+    persistenceStrategy.maybePersist(createFactorization(1.0));
+    persistenceStrategy.load().dotItemFeatures(new double[3], 56L);
+  }
+
+  @Test(expected = NoSuchUserException.class)
+  public void noSuchUser() throws Exception {
+    File storage = getTestTempFile("nosuchuser.bin");
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(storage);
+    persistenceStrategy.maybePersist(createFactorization(1.0));
+    persistenceStrategy.load().getUserFeatures(789L);
+  }
+
+  private static Factorization createFactorization(double scale) {
+    FastByIDMap<Integer> userIDMapping = new FastByIDMap<Integer>();
+    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>();
+
+    // Indices deliberately not in ID order
+    userIDMapping.put(456, 0);
+    userIDMapping.put(123, 1);
+
+    itemIDMapping.put(12, 0);
+    itemIDMapping.put(34, 1);
+
+    double[][] userFeatures = { { 0.4, 0.5, 0.6 }, { 0.1, 0.2, 0.3 } };
+    double[][] itemFeatures = { { 0.7, 0.8, 0.9 }, { 1.0, 1.1, 1.2 } };
+    for (double[] row : userFeatures) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] *= scale;
+      }
+    }
+
+    return new Factorization(userIDMapping, itemIDMapping, userFeatures, itemFeatures);
+  }
+
+  private static void assertFeaturesEqual(double[] expected, double[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i], EPSILON);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericPreference;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class ParallelALSFactorizerTest extends TasteTestCase {
+
+  private DataModel dataModel;
+
+  /**
+   *  rating-matrix
+   *
+   *          burger  hotdog  berries  icecream
+   *  dog       5       5        2        -
+   *  rabbit    2       -        3        5
+   *  cow       -       5        -        3
+   *  donkey    3       -        -        5
+   */
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+
+    userData.put(1L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(1L, 1L, 5.0f),
+                                                                  new GenericPreference(1L, 2L, 5.0f),
+                                                                  new GenericPreference(1L, 3L, 2.0f))));
+
+    userData.put(2L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(2L, 1L, 2.0f),
+                                                                  new GenericPreference(2L, 3L, 3.0f),
+                                                                  new GenericPreference(2L, 4L, 5.0f))));
+
+    userData.put(3L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(3L, 2L, 5.0f),
+                                                                  new GenericPreference(3L, 4L, 3.0f))));
+
+    userData.put(4L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(4L, 1L, 3.0f),
+                                                                  new GenericPreference(4L, 4L, 5.0f))));
+
+    dataModel = new GenericDataModel(userData);
+  }
+
+  @Test
+  public void choleskySolve() {
+    /* a = [4 2; 2 3], b = [2 1] => x = [0.5 0] */
+    double[] a = { 4.0, 0.0, 2.0, 3.0 };
+    double[] b = { 2.0, 1.0 };
+    ParallelALSFactorizer.choleskySolve(a, b, 2);
+    assertEquals(0.5, b[0], EPSILON);
+    assertEquals(0.0, b[1], EPSILON);
+  }
+
+  @Test
+  public void toyExample() throws Exception {
+    ParallelALSFactorizer factorizer = new ParallelALSFactorizer(dataModel, 3, 0.065, 10);
+    SVDRecommender svdRecommender = new SVDRecommender(dataModel, factorizer);
+
+    RunningAverage avg = new FullRunningAverage();
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      for (Preference pref : dataModel.getPreferencesFromUser(userID)) {
+        double err = pref.getValue() - svdRecommender.estimatePreference(userID, pref.getItemID());
+        avg.addDatum(err * err);
+      }
+    }
+
+    double rmse = Math.sqrt(avg.getAverage());
+    assertTrue(rmse < 0.2);
+    assertEquals(10, factorizer.getIterationTimes().length);
+  }
+
+  @Test
+  public void poolIsShutDownAfterFactorize() throws Exception {
+    new ParallelALSFactorizer(dataModel, 3, 0.065, 2, false, 0.0, 2).factorize();
+    assertTrue(poolThreadsStopped());
+  }
+
+  @Test
+  public void sameFactorizationAsALSWRFactorizer() throws Exception {
+    Factorization expected = new ALSWRFactorizer(dataModel, 3, 0.065, 5).factorize();
+    RandomUtils.useTestSeed();
+    Factorization actual = new ParallelALSFactorizer(dataModel, 3, 0.065, 5, false, 0.0, 2).factorize();
+
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      assertArrayEquals(expected.getUserFeatures(userID), actual.getUserFeatures(userID), 1.0e-6);
+    }
+    LongPrimitiveIterator itemIDs = dataModel.getItemIDs();
+    while (itemIDs.hasNext()) {
+      long itemID = itemIDs.nextLong();
+      assertArrayEquals(expected.getItemFeatures(itemID), actual.getItemFeatures(itemID), 1.0e-6);
+    }
+  }
+
+  @Test
+  public void implicitFeedback() throws Exception {
+    ParallelALSFactorizer factorizer = new ParallelALSFactorizer(dataModel, 3, 0.1, 10, true, 40.0, 2);
+    Factorization factorization = factorizer.factorize();
+
+    RunningAverage observed = new FullRunningAverage();
+    RunningAverage unobserved = new FullRunningAverage();
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      LongPrimitiveIterator itemIDs = dataModel.getItemIDs();
+      while (itemIDs.hasNext()) {
+        long itemID = itemIDs.nextLong();
+        double estimate = dot(factorization.getUserFeatures(userID), factorization.getItemFeatures(itemID));
+        if (dataModel.getPreferenceValue(userID, itemID) != null) {
+          observed.addDatum(estimate);
+        } else {
+          unobserved.addDatum(estimate);
+        }
+      }
+    }
+
+    /* observed entries are estimated close to preference 1, missing ones are pulled towards 0 */
+    assertEquals(1.0, observed.getAverage(), 0.1);
+    assertTrue(unobserved.getAverage() < observed.getAverage());
+  }
+
+  private static double dot(double[] a, double[] b) {
+    double sum = 0.0;
+    for (int n = 0; n < a.length; n++) {
+      sum += a[n] * b[n];
+    }
+    return sum;
+  }
+
+  private static boolean poolThreadsStopped() throws InterruptedException {
+    for (int attempt = 0; attempt < 50; attempt++) {
+      boolean alive = false;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().startsWith("ParallelALSFactorizer-")) {
+          alive = true;
+        }
+      }
+      if (!alive) {
+        return true;
+      }
+      Thread.sleep(100L);
+    }
+    return false;
+  }
+
+}
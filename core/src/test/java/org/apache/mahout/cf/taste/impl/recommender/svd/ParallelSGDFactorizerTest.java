@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericPreference;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class ParallelSGDFactorizerTest extends TasteTestCase {
+
+  /**
+   *  rating-matrix
+   *
+   *          burger  hotdog  berries  icecream
+   *  dog       5       5        2        -
+   *  rabbit    2       -        3        5
+   *  cow       -       5        -        3
+   *  donkey    3       -        -        5
+   */
+  private static DataModel toyDataModel() {
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+
+    userData.put(1L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(1L, 1L, 5.0f),
+                                                                  new GenericPreference(1L, 2L, 5.0f),
+                                                                  new GenericPreference(1L, 3L, 2.0f))));
+
+    userData.put(2L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(2L, 1L, 2.0f),
+                                                                  new GenericPreference(2L, 3L, 3.0f),
+                                                                  new GenericPreference(2L, 4L, 5.0f))));
+
+    userData.put(3L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(3L, 2L, 5.0f),
+                                                                  new GenericPreference(3L, 4L, 3.0f))));
+
+    userData.put(4L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(4L, 1L, 3.0f),
+                                                                  new GenericPreference(4L, 4L, 5.0f))));
+
+    return new GenericDataModel(userData);
+  }
+
+  /**
+   * ratings of a random rank 2 matrix, about half of the entries are observed
+   */
+  private static DataModel lowRankDataModel(int numUsers, int numItems, double noise) {
+    Random random = RandomUtils.getRandom();
+    double[][] users = new double[numUsers][2];
+    double[][] items = new double[numItems][2];
+    for (double[] user : users) {
+      user[0] = random.nextDouble();
+      user[1] = random.nextDouble();
+    }
+    for (double[] item : items) {
+      item[0] = random.nextDouble() * 2.0;
+      item[1] = random.nextDouble() * 2.0;
+    }
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    for (int user = 0; user < numUsers; user++) {
+      List<Preference> prefs = new ArrayList<Preference>();
+      for (int item = 0; item < numItems; item++) {
+        if (random.nextBoolean()) {
+          float value = (float) (1.0 + users[user][0] * items[item][0] + users[user][1] * items[item][1]
+              + random.nextGaussian() * noise);
+          prefs.add(new GenericPreference(user, item, value));
+        }
+      }
+      userData.put(user, new GenericUserPreferenceArray(prefs));
+    }
+    return new GenericDataModel(userData);
+  }
+
+  @Test
+  public void toyExample() throws Exception {
+    DataModel dataModel = toyDataModel();
+    ParallelSGDFactorizer factorizer =
+        new ParallelSGDFactorizer(dataModel, 3, 0.05, 1.0, 0.001, 0.1, 2000, 0.0, 2);
+    assertTrue(rmse(dataModel, new SVDRecommender(dataModel, factorizer)) < 0.2);
+  }
+
+  @Test
+  public void poolIsShutDownAfterFactorize() throws Exception {
+    new ParallelSGDFactorizer(toyDataModel(), 2, 0.01, 0.9, 0.02, 0.01, 3, 0.0, 2).factorize();
+    assertTrue(poolThreadsStopped());
+  }
+
+  @Test
+  public void biasesAreFoldedIntoFeatures() throws Exception {
+    DataModel dataModel = toyDataModel();
+    Factorization factorization = new ParallelSGDFactorizer(dataModel, 2, 0.01, 0.9, 0.02, 0.01, 3, 0.0, 1)
+        .factorize();
+
+    double[] userFeatures = factorization.getUserFeatures(1L);
+    double[] itemFeatures = factorization.getItemFeatures(1L);
+    assertEquals(5, userFeatures.length);
+    assertEquals(5, itemFeatures.length);
+    assertEquals(38.0 / 10.0, userFeatures[0], EPSILON);
+    assertEquals(1.0, userFeatures[2], EPSILON);
+    assertEquals(1.0, itemFeatures[0], EPSILON);
+    assertEquals(1.0, itemFeatures[1], EPSILON);
+  }
+
+  @Test
+  public void lowRankWithHoldout() throws Exception {
+    DataModel dataModel = lowRankDataModel(60, 40, 0.0);
+    ParallelSGDFactorizer factorizer =
+        new ParallelSGDFactorizer(dataModel, 2, 0.02, 0.99, 0.01, 0.1, 200, 0.1, 4);
+    assertTrue(rmse(dataModel, new SVDRecommender(dataModel, factorizer)) < 0.3);
+  }
+
+  @Test
+  public void earlyStoppingOnHoldout() throws Exception {
+    DataModel dataModel = lowRankDataModel(60, 40, 0.5);
+    /* many unregularized features overfit the noise, so the holdout RMSE eventually gets worse */
+    ParallelSGDFactorizer factorizer =
+        new ParallelSGDFactorizer(dataModel, 20, 0.05, 1.0, 0.0, 0.1, 1000, 0.2, 4);
+    factorizer.factorize();
+    int numEpochsRun = factorizer.getEpochTimes().length;
+    assertTrue(numEpochsRun > 1);
+    assertTrue(numEpochsRun < 1000);
+  }
+
+  @Test(expected = TasteException.class)
+  public void divergenceInFirstEpochIsReported() throws Exception {
+    DataModel dataModel = lowRankDataModel(60, 40, 0.0);
+    /* a huge learning rate makes the vectors overflow right away, so there are no best vectors to return */
+    new ParallelSGDFactorizer(dataModel, 2, 1.0e10, 1.0, 0.0, 0.1, 10, 0.2, 2).factorize();
+  }
+
+  private static double rmse(DataModel dataModel, SVDRecommender svdRecommender) throws Exception {
+    RunningAverage avg = new FullRunningAverage();
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      for (Preference pref : dataModel.getPreferencesFromUser(userID)) {
+        double err = pref.getValue() - svdRecommender.estimatePreference(userID, pref.getItemID());
+        avg.addDatum(err * err);
+      }
+    }
+    return Math.sqrt(avg.getAverage());
+  }
+
+  private static boolean poolThreadsStopped() throws InterruptedException {
+    for (int attempt = 0; attempt < 50; attempt++) {
+      boolean alive = false;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().startsWith("ParallelSGDFactorizer-")) {
+          alive = true;
+        }
+      }
+      if (!alive) {
+        return true;
+      }
+      Thread.sleep(100L);
+    }
+    return false;
+  }
+
+}
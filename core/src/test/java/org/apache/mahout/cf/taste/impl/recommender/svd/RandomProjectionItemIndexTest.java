@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.recommender.TopIDHeap;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RandomProjectionItemIndexTest extends TasteTestCase {
+
+  private static final int NUM_USERS = 20;
+  private static final int NUM_ITEMS = 2000;
+  private static final int NUM_FEATURES = 8;
+
+  @Test
+  public void findsMostTopItems() throws Exception {
+    Factorization factorization = randomFactorization();
+    RandomProjectionItemIndex index = new RandomProjectionItemIndex(factorization, 16, 8, RandomUtils.getRandom());
+
+    int found = 0;
+    int candidates = 0;
+    for (long userID = 0; userID < NUM_USERS; userID++) {
+      double[] userFeatures = factorization.getUserFeatures(userID);
+      FastIDSet candidateItemIDs = index.getCandidateItems(userFeatures, 4);
+      candidates += candidateItemIDs.size();
+      for (long itemID : exactTopItems(factorization, userFeatures, 10)) {
+        if (candidateItemIDs.contains(itemID)) {
+          found++;
+        }
+      }
+    }
+    assertTrue("recall too low: " + found, found >= NUM_USERS * 10 * 8 / 10);
+    assertTrue("too many candidates: " + candidates, candidates < NUM_USERS * NUM_ITEMS / 2);
+  }
+
+  @Test
+  public void moreProbesFindMore() throws Exception {
+    Factorization factorization = randomFactorization();
+    RandomProjectionItemIndex index = new RandomProjectionItemIndex(factorization, 4, 12, RandomUtils.getRandom());
+    double[] userFeatures = factorization.getUserFeatures(0L);
+    FastIDSet fewer = index.getCandidateItems(userFeatures, 1);
+    FastIDSet more = index.getCandidateItems(userFeatures, 4);
+    assertTrue(more.size() > fewer.size());
+    FastIDSet union = more.clone();
+    union.addAll(fewer);
+    assertEquals(more.size(), union.size());
+  }
+
+  @Test
+  public void strategyExcludesKnownItems() throws Exception {
+    Factorization factorization = randomFactorization();
+    RandomProjectionItemIndex index = new RandomProjectionItemIndex(factorization, 8, 4, RandomUtils.getRandom());
+    RandomProjectionCandidateItemsStrategy strategy = new RandomProjectionCandidateItemsStrategy(index);
+
+    FastIDSet all = index.getCandidateItems(factorization.getUserFeatures(3L), 1);
+    long knownItemID = all.iterator().nextLong();
+    PreferenceArray prefs = new GenericUserPreferenceArray(1);
+    prefs.setUserID(0, 3L);
+    prefs.setItemID(0, knownItemID);
+    FastIDSet candidates = strategy.getCandidateItems(3L, prefs, null);
+    assertEquals(all.size() - 1, candidates.size());
+    assertFalse(candidates.contains(knownItemID));
+
+    assertFalse(strategy.getCandidateItems(new long[] {knownItemID}, null).contains(knownItemID));
+  }
+
+  private static Factorization randomFactorization() {
+    Random random = RandomUtils.getRandom();
+    FastByIDMap<Integer> userIDMapping = new FastByIDMap<Integer>();
+    double[][] userFeatures = new double[NUM_USERS][NUM_FEATURES];
+    for (int user = 0; user < NUM_USERS; user++) {
+      userIDMapping.put(user, user);
+      for (int feature = 0; feature < NUM_FEATURES; feature++) {
+        userFeatures[user][feature] = random.nextGaussian();
+      }
+    }
+    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>();
+    double[][] itemFeatures = new double[NUM_ITEMS][NUM_FEATURES];
+    for (int item = 0; item < NUM_ITEMS; item++) {
+      itemIDMapping.put(item, item);
+      // Vary lengths, as inner product search must cope with that
+      double scale = 0.5 + random.nextDouble();
+      for (int feature = 0; feature < NUM_FEATURES; feature++) {
+        itemFeatures[item][feature] = scale * random.nextGaussian();
+      }
+    }
+    return new Factorization(userIDMapping, itemIDMapping, userFeatures, itemFeatures);
+  }
+
+  private static long[] exactTopItems(Factorization factorization, double[] userFeatures, int howMany)
+    throws Exception {
+    TopIDHeap heap = new TopIDHeap(howMany);
+    for (long itemID = 0; itemID < NUM_ITEMS; itemID++) {
+      double[] itemFeatures = factorization.getItemFeatures(itemID);
+      double score = 0.0;
+      for (int feature = 0; feature < NUM_FEATURES; feature++) {
+        score += userFeatures[feature] * itemFeatures[feature];
+      }
+      heap.offer(itemID, score);
+    }
+    return heap.getIDsDescending();
+  }
+
+}
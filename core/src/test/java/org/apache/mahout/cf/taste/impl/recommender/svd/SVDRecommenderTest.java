@@ -18,15 +18,21 @@
 package org.apache.mahout.cf.taste.impl.recommender.svd;
 
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.recommender.AllUnknownItemsCandidateItemsStrategy;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.common.RandomUtils;
 import org.easymock.classextension.EasyMock;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.Random;
 
 public class SVDRecommenderTest extends TasteTestCase {
 
@@ -34,19 +40,22 @@ public class SVDRecommenderTest extends TasteTestCase {
   public void estimatePreference() throws Exception {
     DataModel dataModel = EasyMock.createMock(DataModel.class);
     Factorizer factorizer = EasyMock.createMock(Factorizer.class);
-    Factorization factorization = EasyMock.createMock(Factorization.class);
+    FastByIDMap<Integer> userIDMapping = new FastByIDMap<Integer>();
+    userIDMapping.put(1L, 0);
+    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>();
+    itemIDMapping.put(5L, 0);
+    Factorization factorization = new Factorization(userIDMapping, itemIDMapping,
+        new double[][] { { 0.4, 2 } }, new double[][] { { 1, 0.3 } });
 
     EasyMock.expect(factorizer.factorize()).andReturn(factorization);
-    EasyMock.expect(factorization.getUserFeatures(1L)).andReturn(new double[] { 0.4, 2 });
-    EasyMock.expect(factorization.getItemFeatures(5L)).andReturn(new double[] { 1, 0.3 });
-    EasyMock.replay(dataModel, factorizer, factorization);
+    EasyMock.replay(dataModel, factorizer);
 
     SVDRecommender svdRecommender = new SVDRecommender(dataModel, factorizer);
 
     float estimate = svdRecommender.estimatePreference(1L, 5L);
     assertEquals(1, estimate, EPSILON);
 
-    EasyMock.verify(dataModel, factorizer, factorization);
+    EasyMock.verify(dataModel, factorizer);
   }
 
   @Test
@@ -65,10 +74,11 @@ public class SVDRecommenderTest extends TasteTestCase {
     EasyMock.expect(dataModel.getPreferencesFromUser(1L)).andReturn(preferencesFromUser);
     EasyMock.expect(candidateItemsStrategy.getCandidateItems(1L, preferencesFromUser, dataModel))
         .andReturn(candidateItems);
-    EasyMock.expect(factorization.getUserFeatures(1L)).andReturn(new double[] { 0.4, 2 });
-    EasyMock.expect(factorization.getItemFeatures(5L)).andReturn(new double[] { 1, 0.3 });
-    EasyMock.expect(factorization.getUserFeatures(1L)).andReturn(new double[] { 0.4, 2 });
-    EasyMock.expect(factorization.getItemFeatures(3L)).andReturn(new double[] { 2, 0.6 });
+    // The user's features are looked up once, not once per candidate item
+    double[] userFeatures = { 0.4, 2 };
+    EasyMock.expect(factorization.getUserFeatures(1L)).andReturn(userFeatures);
+    EasyMock.expect(factorization.dotItemFeatures(EasyMock.aryEq(userFeatures), EasyMock.eq(5L))).andReturn(1.0);
+    EasyMock.expect(factorization.dotItemFeatures(EasyMock.aryEq(userFeatures), EasyMock.eq(3L))).andReturn(2.0);
 
     EasyMock.replay(dataModel, candidateItemsStrategy, factorizer, factorization);
 
@@ -83,4 +93,68 @@ public class SVDRecommenderTest extends TasteTestCase {
 
     EasyMock.verify(dataModel, candidateItemsStrategy, factorizer, factorization);
   }
+
+  @Test
+  public void batchScoring() throws Exception {
+    int numItems = 600;
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    userData.put(1L, createPrefs(1L, 1, 10));
+    userData.put(2L, createPrefs(2L, 1, numItems));
+    userData.put(3L, createPrefs(3L, 300, 310));
+    DataModel dataModel = new GenericDataModel(userData);
+
+    Random random = RandomUtils.getRandom();
+    int numFeatures = 5;
+    FastByIDMap<Integer> userIDMapping = new FastByIDMap<Integer>();
+    double[][] userFeatures = new double[3][numFeatures];
+    for (int user = 0; user < 3; user++) {
+      userIDMapping.put(user + 1, user);
+      for (int feature = 0; feature < numFeatures; feature++) {
+        userFeatures[user][feature] = random.nextGaussian();
+      }
+    }
+    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>();
+    double[][] itemFeatures = new double[numItems][numFeatures];
+    for (int item = 0; item < numItems; item++) {
+      itemIDMapping.put(item + 1, item);
+      for (int feature = 0; feature < numFeatures; feature++) {
+        itemFeatures[item][feature] = random.nextGaussian();
+      }
+    }
+    Factorization factorization = new Factorization(userIDMapping, itemIDMapping, userFeatures, itemFeatures);
+    Factorizer factorizer = EasyMock.createMock(Factorizer.class);
+    EasyMock.expect(factorizer.factorize()).andReturn(factorization).times(2);
+    EasyMock.replay(factorizer);
+
+    SVDRecommender oneByOne =
+        new SVDRecommender(dataModel, factorizer, new AllUnknownItemsCandidateItemsStrategy());
+    SVDRecommender batch = new SVDRecommender(dataModel, factorizer, new AllUnknownItemsCandidateItemsStrategy());
+    batch.setBatchScoringThreshold(1);
+
+    List<List<RecommendedItem>> recommendations = batch.recommend(new long[] {1L, 3L}, 20, null);
+    assertEquals(2, recommendations.size());
+    assertSameRecommendations(oneByOne.recommend(1L, 20), batch.recommend(1L, 20));
+    assertSameRecommendations(oneByOne.recommend(1L, 20), recommendations.get(0));
+    assertSameRecommendations(oneByOne.recommend(3L, 20), batch.recommend(3L, 20));
+    assertSameRecommendations(oneByOne.recommend(3L, 20), recommendations.get(1));
+    assertTrue(batch.recommend(2L, 20).isEmpty());
+  }
+
+  private static PreferenceArray createPrefs(long userID, int fromItemID, int toItemID) {
+    PreferenceArray prefs = new GenericUserPreferenceArray(toItemID - fromItemID + 1);
+    prefs.setUserID(0, userID);
+    for (int itemID = fromItemID; itemID <= toItemID; itemID++) {
+      prefs.setItemID(itemID - fromItemID, itemID);
+      prefs.setValue(itemID - fromItemID, 1.0f);
+    }
+    return prefs;
+  }
+
+  private static void assertSameRecommendations(List<RecommendedItem> expected, List<RecommendedItem> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getItemID(), actual.get(i).getItemID());
+      assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), EPSILON);
+    }
+  }
 }
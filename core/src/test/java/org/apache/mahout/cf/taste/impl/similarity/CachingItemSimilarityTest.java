@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.common.Weighting;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.cf.taste.similarity.PreferenceInferrer;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.junit.Test;
+
+/** <p>Tests {@link CachingItemSimilarity} and {@link CachingUserSimilarity}.</p> */
+public final class CachingItemSimilarityTest extends TasteTestCase {
+
+  private static final String[] DATA = {
+      "1,101,1.0", "1,102,2.0", "1,103,3.0",
+      "2,101,2.0", "2,102,3.0", "2,103,5.0",
+      "3,101,5.0", "3,102,1.0", "3,103,4.0",};
+
+  @Test
+  public void testItemCacheInvalidatedOnlyForChangedItems() throws Exception {
+    File file = getTestTempFile("cachingitem.txt");
+    writeLines(file, DATA);
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    CountingSimilarity counting = new CountingSimilarity(dataModel, new PearsonCorrelationSimilarity(dataModel));
+    ItemSimilarity similarity = new CachingItemSimilarity(counting, dataModel);
+
+    double before = similarity.itemSimilarity(101L, 103L);
+    similarity.itemSimilarity(101L, 102L);
+    assertEquals(2, counting.count);
+
+    writeLines(getTestTempFile("cachingitem.1.txt"), "3,103,1.0");
+    similarity.refresh(null);
+
+    similarity.itemSimilarity(101L, 102L);
+    assertEquals(2, counting.count);
+    assertFalse(before == similarity.itemSimilarity(101L, 103L));
+    assertEquals(3, counting.count);
+
+    // Nothing changed, so nothing is dropped
+    similarity.refresh(null);
+    similarity.itemSimilarity(101L, 103L);
+    assertEquals(3, counting.count);
+  }
+
+  @Test
+  public void testUserCacheInvalidatedOnlyForChangedUsers() throws Exception {
+    File file = getTestTempFile("cachinguser.txt");
+    writeLines(file, DATA);
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    CountingSimilarity counting = new CountingSimilarity(dataModel, new PearsonCorrelationSimilarity(dataModel));
+    UserSimilarity similarity = new CachingUserSimilarity(counting, dataModel);
+
+    similarity.userSimilarity(1L, 2L);
+    similarity.userSimilarity(1L, 3L);
+    assertEquals(2, counting.count);
+
+    writeLines(getTestTempFile("cachinguser.1.txt"), "3,103,1.0");
+    similarity.refresh(null);
+
+    similarity.userSimilarity(1L, 2L);
+    assertEquals(2, counting.count);
+    similarity.userSimilarity(1L, 3L);
+    assertEquals(3, counting.count);
+  }
+
+  @Test
+  public void testCacheClearedWhenSimilarityDependsOnAllData() throws Exception {
+    File file = getTestTempFile("cachingweighted.txt");
+    writeLines(file, DATA);
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    CountingSimilarity counting =
+        new CountingSimilarity(dataModel, new PearsonCorrelationSimilarity(dataModel, Weighting.WEIGHTED));
+    ItemSimilarity similarity = new CachingItemSimilarity(counting, dataModel);
+
+    similarity.itemSimilarity(101L, 102L);
+    assertEquals(1, counting.count);
+
+    // A new user changes the weighting of every pair, not just those of the items it rated
+    writeLines(getTestTempFile("cachingweighted.1.txt"), "4,103,1.0");
+    similarity.refresh(null);
+
+    similarity.itemSimilarity(101L, 102L);
+    assertEquals(2, counting.count);
+  }
+
+  @Test
+  public void testStopListeningForChanges() throws Exception {
+    File file = getTestTempFile("cachingstop.txt");
+    writeLines(file, DATA);
+    FileDataModel dataModel = new FileDataModel(file, false, 0L);
+    CountingSimilarity counting = new CountingSimilarity(dataModel, new PearsonCorrelationSimilarity(dataModel));
+    CachingItemSimilarity similarity = new CachingItemSimilarity(counting, dataModel);
+    similarity.stopListeningForChanges();
+
+    similarity.itemSimilarity(101L, 102L);
+    assertEquals(1, counting.count);
+
+    writeLines(getTestTempFile("cachingstop.1.txt"), "3,103,1.0");
+    similarity.refresh(null);
+
+    similarity.itemSimilarity(101L, 102L);
+    assertEquals(2, counting.count);
+  }
+
+  private static final class CountingSimilarity extends AbstractItemSimilarity implements UserSimilarity {
+
+    private final PearsonCorrelationSimilarity delegate;
+    private int count;
+
+    private CountingSimilarity(DataModel dataModel, PearsonCorrelationSimilarity delegate) {
+      super(dataModel);
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean dependsOnlyOnPair() {
+      return delegate.dependsOnlyOnPair();
+    }
+
+    @Override
+    public double itemSimilarity(long itemID1, long itemID2) throws TasteException {
+      count++;
+      return delegate.itemSimilarity(itemID1, itemID2);
+    }
+
+    @Override
+    public double[] itemSimilarities(long itemID1, long[] itemID2s) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long[] allSimilarItemIDs(long itemID) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public double userSimilarity(long userID1, long userID2) throws TasteException {
+      count++;
+      return delegate.userSimilarity(userID1, userID2);
+    }
+
+    @Override
+    public void setPreferenceInferrer(PreferenceInferrer inferrer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+      delegate.refresh(alreadyRefreshed);
+    }
+  }
+
+}
@@ -18,6 +18,7 @@
 package org.apache.mahout.cf.taste.impl.similarity;
 
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.math.stats.LogLikelihood;
 import org.junit.Test;
 
 /** <p>Tests {@link LogLikelihoodSimilarity}.</p> */
@@ -48,6 +49,10 @@ public final class LogLikelihoodSimilarityTest extends SimilarityTestCase {
 
     assertCorrelationEquals(0.8706358464330881, similarity.itemSimilarity(3, 4));
     assertCorrelationEquals(0.8706358464330881, similarity.itemSimilarity(4, 3));
+
+    double[] similarities = similarity.itemSimilarities(1, new long[] {0, 2, 1});
+    assertCorrelationEquals(0.12160727029227925, similarities[0]);
+    assertCorrelationEquals(0.5423213660693732, similarities[1]);
   }
 
   @Test
@@ -77,4 +82,22 @@ public final class LogLikelihoodSimilarityTest extends SimilarityTestCase {
     new LogLikelihoodSimilarity(getDataModel()).refresh(null);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testItemSimilarities() throws Exception {
+    DataModel dataModel = getRandomDataModel(false);
+    assertItemSimilaritiesMatch(new LogLikelihoodSimilarity(dataModel), dataModel, new CooccurrenceReference() {
+      @Override
+      public double similarity(int preferring1, int preferring2, int preferring1and2, int numUsers) {
+        if (preferring1and2 == 0) {
+          return Double.NaN;
+        }
+        double logLikelihood = LogLikelihood.logLikelihoodRatio(preferring1and2,
+                                                                preferring2 - preferring1and2,
+                                                                preferring1 - preferring1and2,
+                                                                numUsers - preferring1 - preferring2 + preferring1and2);
+        return 1.0 - 1.0 / (1.0 + logLikelihood);
+      }
+    });
+  }
+
+}
@@ -262,4 +262,34 @@ public final class PearsonCorrelationSimilarityTest extends SimilarityTestCase {
     assertEquals(-0.435285750066007, similarity.userSimilarity(1L, 2L), EPSILON);
   }
 
+  @Test
+  public void testItemSimilarities() throws Exception {
+    DataModel dataModel = getRandomDataModel(true);
+    PearsonCorrelationSimilarity similarity = new PearsonCorrelationSimilarity(dataModel);
+
+    // Item similarities are user similarities over the transposed data, which are computed separately
+    int numUsers = dataModel.getNumUsers();
+    int numItems = dataModel.getNumItems();
+    long[] itemIDs = new long[numItems];
+    Double[][] transposed = new Double[numItems][numUsers];
+    for (int j = 0; j < numItems; j++) {
+      itemIDs[j] = j;
+      for (int i = 0; i < numUsers; i++) {
+        Float value = dataModel.getPreferenceValue(i, j);
+        transposed[j][i] = value == null ? null : value.doubleValue();
+      }
+    }
+    UserSimilarity transposedSimilarity = new PearsonCorrelationSimilarity(getDataModel(itemIDs, transposed));
+    AbstractItemSimilarity.ItemVectors itemVectors = similarity.itemVectors(itemIDs);
+    for (long itemID1 : itemIDs) {
+      double[] similarities = similarity.itemSimilarities(itemID1, itemIDs);
+      double[] vectorSimilarities = similarity.itemSimilarities(itemID1, itemVectors);
+      for (int j = 0; j < numItems; j++) {
+        double expected = transposedSimilarity.userSimilarity(itemID1, itemIDs[j]);
+        assertCorrelationEquals(expected, similarities[j]);
+        assertCorrelationEquals(expected, vectorSimilarities[j]);
+      }
+    }
+  }
+
 }
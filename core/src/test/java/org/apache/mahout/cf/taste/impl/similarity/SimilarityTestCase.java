@@ -17,7 +17,13 @@
 
 package org.apache.mahout.cf.taste.impl.similarity;
 
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.common.RandomUtils;
 
 abstract class SimilarityTestCase extends TasteTestCase {
 
@@ -32,4 +38,77 @@ abstract class SimilarityTestCase extends TasteTestCase {
     }
   }
 
+  /**
+   * @return a sparse random model, with preference values if <code>withValues</code>, or else all 1.0
+   */
+  static DataModel getRandomDataModel(boolean withValues) {
+    Random random = RandomUtils.getRandom();
+    int numUsers = 40;
+    int numItems = 20;
+    long[] userIDs = new long[numUsers];
+    Double[][] prefValues = new Double[numUsers][numItems];
+    for (int i = 0; i < numUsers; i++) {
+      userIDs[i] = i;
+      for (int j = 0; j < numItems; j++) {
+        if (random.nextDouble() < 0.3) {
+          prefValues[i][j] = withValues ? 1.0 + random.nextInt(5) : 1.0;
+        }
+      }
+    }
+    return getDataModel(userIDs, prefValues);
+  }
+
+  /**
+   * Computes an item similarity from how many users prefer each item and both, as a reference.
+   */
+  interface CooccurrenceReference {
+    double similarity(int preferring1, int preferring2, int preferring1and2, int numUsers);
+  }
+
+  /**
+   * Checks {@link ItemSimilarity#itemSimilarities(long, long[])} and
+   * {@link AbstractItemSimilarity#itemSimilarities(long, AbstractItemSimilarity.ItemVectors)} for all pairs of
+   * items against the given reference, fed with counts taken one preference at a time from the model rather
+   * than from the item preference sets the similarities use.
+   */
+  static void assertItemSimilaritiesMatch(AbstractItemSimilarity similarity,
+                                          DataModel dataModel,
+                                          CooccurrenceReference reference) throws TasteException {
+    int numUsers = dataModel.getNumUsers();
+    int numItems = dataModel.getNumItems();
+    boolean[][] prefers = new boolean[numItems][numUsers];
+    int[] preferring = new int[numItems];
+    long[] itemIDs = new long[numItems];
+    for (int j = 0; j < numItems; j++) {
+      itemIDs[j] = j;
+      for (int i = 0; i < numUsers; i++) {
+        prefers[j][i] = dataModel.getPreferenceValue(i, j) != null;
+        if (prefers[j][i]) {
+          preferring[j]++;
+        }
+      }
+    }
+    AbstractItemSimilarity.ItemVectors itemVectors = similarity.itemVectors(itemIDs);
+    for (int j1 = 0; j1 < numItems; j1++) {
+      double[] similarities = similarity.itemSimilarities(itemIDs[j1], itemIDs);
+      double[] vectorSimilarities = similarity.itemSimilarities(itemIDs[j1], itemVectors);
+      for (int j2 = 0; j2 < numItems; j2++) {
+        int preferringBoth = 0;
+        for (int i = 0; i < numUsers; i++) {
+          if (prefers[j1][i] && prefers[j2][i]) {
+            preferringBoth++;
+          }
+        }
+        double expected = reference.similarity(preferring[j1], preferring[j2], preferringBoth, numUsers);
+        if (Double.isNaN(expected)) {
+          assertTrue(Double.isNaN(similarities[j2]));
+          assertTrue(Double.isNaN(vectorSimilarities[j2]));
+        } else {
+          assertEquals(expected, similarities[j2], EPSILON);
+          assertEquals(expected, vectorSimilarities[j2], EPSILON);
+        }
+      }
+    }
+  }
+
 }
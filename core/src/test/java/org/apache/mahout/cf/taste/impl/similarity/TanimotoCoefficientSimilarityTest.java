@@ -89,4 +89,15 @@ public final class TanimotoCoefficientSimilarityTest extends SimilarityTestCase
     new TanimotoCoefficientSimilarity(getDataModel()).refresh(null);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testItemSimilarities() throws Exception {
+    DataModel dataModel = getRandomDataModel(false);
+    assertItemSimilaritiesMatch(new TanimotoCoefficientSimilarity(dataModel), dataModel, new CooccurrenceReference() {
+      @Override
+      public double similarity(int preferring1, int preferring2, int preferring1and2, int numUsers) {
+        return (double) preferring1and2 / (preferring1 + preferring2 - preferring1and2);
+      }
+    });
+  }
+
+}
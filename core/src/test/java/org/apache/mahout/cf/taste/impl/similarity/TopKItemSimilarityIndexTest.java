@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity.ItemItemSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link TopKItemSimilarityIndex}.</p> */
+public final class TopKItemSimilarityIndexTest extends TasteTestCase {
+
+  @Test
+  public void testSimple() {
+    List<ItemItemSimilarity> similarities = new ArrayList<ItemItemSimilarity>();
+    similarities.add(new ItemItemSimilarity(1, 2, 0.5));
+    similarities.add(new ItemItemSimilarity(2, 1, 0.6));
+    similarities.add(new ItemItemSimilarity(1, 1, 0.5));
+    similarities.add(new ItemItemSimilarity(1, 3, 0.3));
+    TopKItemSimilarityIndex index = new TopKItemSimilarityIndex(similarities, 10);
+    assertEquals(1.0, index.itemSimilarity(1, 1), EPSILON);
+    assertEquals(0.6, index.itemSimilarity(1, 2), EPSILON);
+    assertEquals(0.6, index.itemSimilarity(2, 1), EPSILON);
+    assertEquals(0.3, index.itemSimilarity(3, 1), EPSILON);
+    assertTrue(Double.isNaN(index.itemSimilarity(3, 4)));
+    assertTrue(Double.isNaN(index.itemSimilarity(2, 3)));
+
+    double[] values = index.itemSimilarities(1, new long[] {3, 1, 4, 2});
+    assertEquals(0.3, values[0], EPSILON);
+    assertEquals(1.0, values[1], EPSILON);
+    assertTrue(Double.isNaN(values[2]));
+    assertEquals(0.6, values[3], EPSILON);
+
+    assertTrue(Arrays.equals(new long[] {2, 3}, index.allSimilarItemIDs(1)));
+    assertTrue(Arrays.equals(new long[] {1}, index.allSimilarItemIDs(3)));
+    assertEquals(0, index.allSimilarItemIDs(4).length);
+    assertEquals(3, index.getNumItems());
+    assertEquals(4, index.getNumNeighbours());
+  }
+
+  @Test
+  public void testKeepsTopNeighbours() {
+    List<ItemItemSimilarity> similarities = new ArrayList<ItemItemSimilarity>();
+    for (int i = 2; i <= 50; i++) {
+      similarities.add(new ItemItemSimilarity(1, i, i / 100.0));
+    }
+    // A later value for the same pair replaces the earlier one, even after that was dropped
+    similarities.add(new ItemItemSimilarity(2, 1, 0.99));
+    similarities.add(new ItemItemSimilarity(50, 1, 0.01));
+    TopKItemSimilarityIndex index = new TopKItemSimilarityIndex(similarities, 3);
+
+    assertTrue(Arrays.equals(new long[] {2, 48, 49}, index.allSimilarItemIDs(1)));
+    assertEquals(0.99, index.itemSimilarity(1, 2), EPSILON);
+    assertEquals(0.49, index.itemSimilarity(1, 49), EPSILON);
+    // Item 10 keeps its only neighbour, so the pair is still found from either side
+    assertEquals(0.1, index.itemSimilarity(1, 10), EPSILON);
+    assertEquals(0.1, index.itemSimilarity(10, 1), EPSILON);
+    assertEquals(0.01, index.itemSimilarity(50, 1), EPSILON);
+  }
+
+  @Test
+  public void testSameAsGenericItemSimilarity() {
+    Random random = RandomUtils.getRandom();
+    List<ItemItemSimilarity> similarities = new ArrayList<ItemItemSimilarity>();
+    for (int i = 0; i < 2000; i++) {
+      similarities.add(new ItemItemSimilarity(random.nextInt(100), random.nextInt(100), random.nextDouble()));
+    }
+    GenericItemSimilarity expected = new GenericItemSimilarity(similarities);
+    TopKItemSimilarityIndex index = new TopKItemSimilarityIndex(similarities, Integer.MAX_VALUE);
+    for (long itemID1 = 0; itemID1 < 100; itemID1++) {
+      long[] expectedIDs = expected.allSimilarItemIDs(itemID1);
+      Arrays.sort(expectedIDs);
+      assertTrue(Arrays.equals(expectedIDs, index.allSimilarItemIDs(itemID1)));
+      for (long itemID2 = 0; itemID2 < 100; itemID2++) {
+        assertEquals(expected.itemSimilarity(itemID1, itemID2), index.itemSimilarity(itemID1, itemID2), EPSILON);
+      }
+    }
+  }
+
+  @Test
+  public void testCandidateItems() throws Exception {
+    List<ItemItemSimilarity> similarities = new ArrayList<ItemItemSimilarity>();
+    similarities.add(new ItemItemSimilarity(1, 2, 0.5));
+    similarities.add(new ItemItemSimilarity(1, 3, 0.4));
+    similarities.add(new ItemItemSimilarity(2, 4, 0.3));
+    similarities.add(new ItemItemSimilarity(5, 6, 0.2));
+    TopKItemSimilarityIndex index = new TopKItemSimilarityIndex(similarities, 10);
+
+    FastIDSet candidates = index.getCandidateItems(new long[] {1, 2}, null);
+    long[] candidateIDs = candidates.toArray();
+    Arrays.sort(candidateIDs);
+    assertTrue(Arrays.equals(new long[] {3, 4}, candidateIDs));
+    assertTrue(index.getCandidateItems(new long[] {7}, null).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadMaxNeighbours() {
+    new TopKItemSimilarityIndex(new ArrayList<ItemItemSimilarity>(), 0);
+  }
+
+}
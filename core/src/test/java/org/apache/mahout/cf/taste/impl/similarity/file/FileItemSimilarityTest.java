@@ -109,6 +109,22 @@ public final class FileItemSimilarityTest extends TasteTestCase {
     assertEquals(0.112, similarity.itemSimilarity(8L, 7L), EPSILON);
   }
 
+  @Test
+  public void testLoadTopSimilaritiesFromDirectory() throws Exception {
+    File directory = new File(getTestTempDirPath("similarities").toUri().getPath());
+    writeLines(new File(directory, "part-r-00000"), "1\t5\t0.125", "1\t7\t0.5");
+    writeLines(new File(directory, "part-r-00001"), "7\t8\t0.112");
+    writeLines(new File(directory, "_SUCCESS"));
+    ItemSimilarity similarity = new FileItemSimilarity(directory, 0L, 1);
+
+    assertEquals(0.5, similarity.itemSimilarity(1L, 7L), EPSILON);
+    assertEquals(0.112, similarity.itemSimilarity(8L, 7L), EPSILON);
+    // 1 keeps only 7 as its neighbour, but 5 keeps 1
+    assertEquals(0.125, similarity.itemSimilarity(1L, 5L), EPSILON);
+    assertEquals(1, similarity.allSimilarItemIDs(1L).length);
+    assertEquals(7L, similarity.allSimilarItemIDs(1L)[0]);
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testFileNotFoundExceptionForNonExistingFile() throws Exception {
     new FileItemSimilarity(new File("xKsdfksdfsdf"));
@@ -21,13 +21,19 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.mahout.clustering.ClusteringTestUtils;
 import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.MatrixSlice;
 import org.apache.mahout.math.RandomAccessSparseVector;
@@ -98,6 +104,91 @@ public final class TestDistributedRowMatrix extends MahoutTestCase {
     assertEquals(0.0, expected.getDistanceSquared(actual), 1.0e-9);
   }
 
+  @Test
+  public void testMatrixTimesVectorBlock() throws Exception {
+    Matrix m = SolverTest.randomSequentialAccessSparseMatrix(100, 90, 50, 20, 1.0);
+    DistributedRowMatrix dm = randomDistributedMatrix(100, 90, 50, 20, 1.0, false);
+    Vector[] vectors = randomVectors(3, 50);
+
+    Vector[] actual = dm.times(vectors);
+    assertEquals(vectors.length, actual.length);
+    for (int i = 0; i < vectors.length; i++) {
+      assertEquals(0.0, m.times(vectors[i]).getDistanceSquared(actual[i]), 1.0e-9);
+    }
+  }
+
+  @Test
+  public void testMatrixTimesSquaredVectorBlock() throws Exception {
+    Matrix m = SolverTest.randomSequentialAccessSparseMatrix(100, 90, 50, 20, 1.0);
+    DistributedRowMatrix dm = randomDistributedMatrix(100, 90, 50, 20, 1.0, false);
+    Vector[] vectors = randomVectors(3, 50);
+
+    Vector[] actual = dm.timesSquared(vectors);
+    assertEquals(vectors.length, actual.length);
+    for (int i = 0; i < vectors.length; i++) {
+      assertEquals(0.0, m.timesSquared(vectors[i]).getDistanceSquared(actual[i]), 1.0e-9);
+    }
+  }
+
+  @Test
+  public void testBlockTimesMapperEmitsOnlyItsRows() throws Exception {
+    Path baseTmpDirPath = getTestTempDirPath("blocktimes");
+    Vector[] vectors = randomVectors(2, 5);
+    JobConf conf = new JobConf(TimesSquaredJob.createTimesJobConf(new Configuration(),
+                                                                  vectors,
+                                                                  1000,
+                                                                  new Path(baseTmpDirPath, "input"),
+                                                                  new Path(baseTmpDirPath, "output")));
+    TimesSquaredJob.BlockTimesMapper mapper = new TimesSquaredJob.BlockTimesMapper();
+    mapper.configure(conf);
+    final Map<Integer,Vector> emitted = new HashMap<Integer,Vector>();
+    OutputCollector<IntWritable,VectorWritable> out = new OutputCollector<IntWritable,VectorWritable>() {
+      @Override
+      public void collect(IntWritable key, VectorWritable value) {
+        emitted.put(key.get(), value.get());
+      }
+    };
+    Vector row = new DenseVector(5);
+    row.assign(1.0);
+    mapper.map(new IntWritable(7), new VectorWritable(row), out, null);
+    mapper.map(new IntWritable(42), new VectorWritable(row), out, null);
+    mapper.close();
+
+    assertEquals(2, emitted.size());
+    for (int i = 0; i < vectors.length; i++) {
+      Vector partial = emitted.get(i);
+      assertEquals(1000, partial.size());
+      assertFalse(partial.isDense());
+      assertEquals(2, partial.getNumNondefaultElements());
+      assertEquals(vectors[i].zSum(), partial.get(42), EPSILON);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBlockTooLarge() throws Exception {
+    Path baseTmpDirPath = getTestTempDirPath("blocktoolarge");
+    Vector[] vectors = new Vector[3];
+    for (int i = 0; i < vectors.length; i++) {
+      vectors[i] = new RandomAccessSparseVector(1 << 30);
+    }
+    TimesSquaredJob.createTimesSquaredJobConf(new Configuration(),
+                                              vectors,
+                                              new Path(baseTmpDirPath, "input"),
+                                              new Path(baseTmpDirPath, "output"));
+  }
+
+  private static Vector[] randomVectors(int numVectors, int size) {
+    Random random = RandomUtils.getRandom();
+    Vector[] vectors = new Vector[numVectors];
+    for (int i = 0; i < numVectors; i++) {
+      vectors[i] = new DenseVector(size);
+      for (int j = 0; j < size; j++) {
+        vectors[i].setQuick(j, random.nextGaussian());
+      }
+    }
+    return vectors;
+  }
+
   @Test
   public void testMatrixTimesMatrix() throws Exception {
     Matrix inputA = SolverTest.randomSequentialAccessSparseMatrix(20, 19, 15, 5, 10.0);
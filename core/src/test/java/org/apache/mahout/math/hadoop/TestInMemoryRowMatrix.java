@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.hadoop;
+
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.mahout.common.IOUtils;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.MatrixSlice;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Test;
+
+public final class TestInMemoryRowMatrix extends MahoutTestCase {
+
+  @Test
+  public void testMatrixTimesVector() throws Exception {
+    DistributedRowMatrix dm = new TestDistributedRowMatrix().randomDistributedMatrix(100, 90, 50, 20, 1.0, false);
+    Matrix m = toMatrix(dm);
+    Vector v = randomVector(50);
+
+    for (boolean offHeap : new boolean[] { false, true }) {
+      InMemoryRowMatrix im = load(dm, 3, offHeap);
+      try {
+        assertEquals(0.0, m.times(v).getDistanceSquared(im.times(v)), EPSILON);
+      } finally {
+        im.close();
+      }
+    }
+  }
+
+  @Test
+  public void testMatrixTimesSquaredVector() throws Exception {
+    DistributedRowMatrix dm = new TestDistributedRowMatrix().randomDistributedMatrix(100, 90, 50, 20, 1.0, false);
+    Matrix m = toMatrix(dm);
+    Vector v = randomVector(50);
+
+    for (boolean offHeap : new boolean[] { false, true }) {
+      InMemoryRowMatrix im = load(dm, 3, offHeap);
+      try {
+        assertEquals(0.0, m.timesSquared(v).getDistanceSquared(im.timesSquared(v)), 1.0e-9);
+      } finally {
+        im.close();
+      }
+    }
+  }
+
+  @Test
+  public void testSingleThreadAgreesWithMultipleThreads() throws Exception {
+    DistributedRowMatrix dm = new TestDistributedRowMatrix().randomDistributedMatrix(500, 450, 300, 10, 1.0, false);
+    Vector v = randomVector(300);
+
+    InMemoryRowMatrix singleThreaded = load(dm, 1, false);
+    InMemoryRowMatrix multiThreaded = load(dm, 4, true);
+    try {
+      assertEquals(0.0, singleThreaded.times(v).getDistanceSquared(multiThreaded.times(v)), EPSILON);
+      assertEquals(0.0, singleThreaded.timesSquared(v).getDistanceSquared(multiThreaded.timesSquared(v)), 1.0e-9);
+    } finally {
+      singleThreaded.close();
+      multiThreaded.close();
+    }
+  }
+
+  @Test
+  public void testIterateAll() throws Exception {
+    DistributedRowMatrix dm = new TestDistributedRowMatrix().randomDistributedMatrix(100, 90, 50, 20, 1.0, false);
+    InMemoryRowMatrix im = load(dm, 2, true);
+    try {
+      assertEquals(100, im.numRows());
+      assertEquals(50, im.numCols());
+      Iterator<MatrixSlice> expected = dm.iterateAll();
+      Iterator<MatrixSlice> actual = im.iterateAll();
+      while (expected.hasNext()) {
+        assertTrue(actual.hasNext());
+        MatrixSlice expectedSlice = expected.next();
+        MatrixSlice actualSlice = actual.next();
+        assertEquals(expectedSlice.index(), actualSlice.index());
+        assertEquals(0.0, expectedSlice.vector().getDistanceSquared(actualSlice.vector()), EPSILON);
+      }
+      assertFalse(actual.hasNext());
+    } finally {
+      im.close();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDuplicateRowsRejected() throws Exception {
+    Configuration conf = new Configuration();
+    Path rowPath = getTestTempDirPath("duplicates");
+    SequenceFile.Writer writer = new SequenceFile.Writer(FileSystem.get(conf), conf, new Path(rowPath, "part-00000"),
+        IntWritable.class, VectorWritable.class);
+    try {
+      for (int row : new int[] { 0, 1, 0 }) {
+        writer.append(new IntWritable(row), new VectorWritable(new DenseVector(new double[] { 1.0, 2.0 })));
+      }
+    } finally {
+      IOUtils.quietClose(writer);
+    }
+    new InMemoryRowMatrix(rowPath, conf, 2, 2, 2, false).close();
+  }
+
+  private static InMemoryRowMatrix load(DistributedRowMatrix dm, int numThreads, boolean offHeap) throws Exception {
+    return new InMemoryRowMatrix(dm.getRowPath(), new Configuration(), dm.numRows(), dm.numCols(), numThreads,
+        offHeap);
+  }
+
+  private static Matrix toMatrix(DistributedRowMatrix dm) {
+    Matrix m = new DenseMatrix(dm.numRows(), dm.numCols());
+    for (MatrixSlice slice : dm) {
+      m.assignRow(slice.index(), slice.vector());
+    }
+    return m;
+  }
+
+  private static Vector randomVector(int size) {
+    Vector v = new RandomAccessSparseVector(size);
+    for (int i = 0; i < size; i += 3) {
+      v.setQuick(i, 1.0 + i % 7);
+    }
+    return new DenseVector(v);
+  }
+
+}
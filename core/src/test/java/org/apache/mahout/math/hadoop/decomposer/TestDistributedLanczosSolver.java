@@ -139,4 +139,19 @@ public final class TestDistributedLanczosSolver extends SolverTest {
     doTestResumeIteration(false);
   }
 
+  @Test
+  public void testBlockDistributedLanczosSolver() throws Exception {
+    DistributedRowMatrix corpus = getCorpus(false);
+    corpus.setConf(new Configuration());
+    DistributedLanczosSolver solver = new DistributedLanczosSolver();
+    int desiredRank = 30;
+    LanczosState state = new LanczosState(corpus, corpus.numCols(), desiredRank, solver.getInitialVector(corpus));
+    solver.solve(state, desiredRank, false, 3);
+    assertEquals(desiredRank, state.getIterationNumber());
+    assertOrthonormal(state);
+    for (int i = 0; i < desiredRank / 3; i++) {
+      assertEigen(i, state.getRightSingularVector(i), corpus, 0.1, false);
+    }
+  }
+
 }
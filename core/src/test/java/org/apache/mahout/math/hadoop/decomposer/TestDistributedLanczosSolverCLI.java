@@ -87,6 +87,57 @@ public final class TestDistributedLanczosSolverCLI extends MahoutTestCase {
     assertEquals("number of eigenvectors", 10, i);
   }
 
+  @Test
+  public void testInMemoryCorpusCLI() throws Exception {
+    Path testData = getTestTempDirPath("testdata");
+    DistributedRowMatrix corpus =
+        new TestDistributedRowMatrix().randomDistributedMatrix(500, 450, 500, 10, 10.0, true, testData.toString());
+    corpus.setConf(new Configuration());
+    Path output = getTestTempDirPath("output");
+    Path tmp = getTestTempDirPath("tmp");
+    String[] args = {
+        "-i", new Path(testData, "distMatrix").toString(),
+        "-o", output.toString(),
+        "--tempDir", tmp.toString(),
+        "--numRows", "500",
+        "--numCols", "500",
+        "--rank", "10",
+        "--symmetric", "true",
+        "--inMemoryCorpus", "true",
+        "--numThreads", "2",
+        "--offHeap", "true"
+    };
+    new DistributedLanczosSolver().new DistributedLanczosSolverJob().run(args);
+
+    output = getTestTempDirPath("output2");
+    tmp = getTestTempDirPath("tmp2");
+    args = new String[] {
+        "-i", new Path(testData, "distMatrix").toString(),
+        "-o", output.toString(),
+        "--tempDir", tmp.toString(),
+        "--numRows", "500",
+        "--numCols", "500",
+        "--rank", "10",
+        "--symmetric", "true"
+    };
+    new DistributedLanczosSolver().new DistributedLanczosSolverJob().run(args);
+
+    Configuration conf = new Configuration();
+    List<Vector> distributedEigenVectors = new ArrayList<Vector>();
+    for (VectorWritable value : new SequenceFileValueIterable<VectorWritable>(
+        new Path(output, DistributedLanczosSolver.RAW_EIGENVECTORS), conf)) {
+      distributedEigenVectors.add(value.get());
+    }
+    int i = 0;
+    for (VectorWritable value : new SequenceFileValueIterable<VectorWritable>(
+        new Path(getTestTempDirPath("output"), DistributedLanczosSolver.RAW_EIGENVECTORS), conf)) {
+      Vector v = value.get();
+      assertEquals(0.0, v.getDistanceSquared(distributedEigenVectors.get(i)), 1.0e-6);
+      i++;
+    }
+    assertEquals("number of eigenvectors", 10, i);
+  }
+
   @Test
   public void testDistributedLanczosSolverEVJCLI() throws Exception {
     Path testData = getTestTempDirPath("testdata");
@@ -18,8 +18,10 @@
 package org.apache.mahout.math.hadoop.similarity;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
@@ -174,6 +176,39 @@ public final class TestRowSimilarityJob extends MahoutTestCase {
   }
 
 
+  /**
+   * Tests that {@link RowSimilarityJob.CooccurrenceStripesMapper} flushes its stripes as soon as they hold
+   * {@link RowSimilarityJob#MAX_BUFFERED_STRIPE_ENTRIES} entries, even in the middle of a column
+   */
+  @Test
+  public void testCooccurrenceStripesMapperFlushesWithinColumn() throws Exception {
+    Mapper<VarIntWritable,WeightedOccurrenceArray,VarIntWritable,CooccurrenceStripe>.Context context =
+      EasyMock.createMock(Mapper.Context.class);
+    Counter counter = EasyMock.createMock(Counter.class);
+
+    Configuration conf = new Configuration();
+    conf.setInt(RowSimilarityJob.MAX_BUFFERED_STRIPE_ENTRIES, 2);
+    EasyMock.expect(context.getConfiguration()).andReturn(conf).anyTimes();
+    /* the six pairs of three rows fill two entries at a time: after (1,1) and (1,2) the stripe of row 1 is
+     * flushed, after (1,3) and (2,2) those of rows 1 and 2, and after (2,3) and (3,3) those of rows 2 and 3 */
+    context.write(EasyMock.isA(VarIntWritable.class), EasyMock.isA(CooccurrenceStripe.class));
+    EasyMock.expectLastCall().times(5);
+    EasyMock.expect(context.getCounter(RowSimilarityJob.Counter.COOCCURRENCES)).andReturn(counter);
+    counter.increment(6);
+
+    EasyMock.replay(context, counter);
+
+    WeightedOccurrenceArray weightedOccurrences = new WeightedOccurrenceArray(new WeightedOccurrence[] {
+        new WeightedOccurrence(1, 1.0, 1.0), new WeightedOccurrence(2, 1.0, 1.0),
+        new WeightedOccurrence(3, 1.0, 1.0) });
+
+    RowSimilarityJob.CooccurrenceStripesMapper mapper = new RowSimilarityJob.CooccurrenceStripesMapper();
+    mapper.setup(context);
+    mapper.map(new VarIntWritable(12), weightedOccurrences, context);
+
+    EasyMock.verify(context, counter);
+  }
+
   /**
    * Tests {@link SimilarityReducer}
    */
@@ -269,6 +304,18 @@ public final class TestRowSimilarityJob extends MahoutTestCase {
    */
   @Test
   public void testSmallSampleMatrix() throws Exception {
+    smallSampleMatrix();
+  }
+
+  /**
+   * the same example, computing the cooccurrences as stripes
+   */
+  @Test
+  public void testSmallSampleMatrixStripes() throws Exception {
+    smallSampleMatrix("--stripes");
+  }
+
+  private void smallSampleMatrix(String... extraArgs) throws Exception {
 
     File inputFile = getTestTempFile("rows");
     File outputDir = getTestTempDir("output");
@@ -292,8 +339,10 @@ public final class TestRowSimilarityJob extends MahoutTestCase {
     RowSimilarityJob rowSimilarityJob = new RowSimilarityJob();
     rowSimilarityJob.setConf(conf);
 
-    rowSimilarityJob.run(new String[] { "--numberOfColumns", "3", "--similarityClassname",
-        DistributedTanimotoCoefficientVectorSimilarity.class.getName(), "--tempDir", tmpDir.getAbsolutePath() });
+    List<String> args = new ArrayList<String>(Arrays.asList("--numberOfColumns", "3", "--similarityClassname",
+        DistributedTanimotoCoefficientVectorSimilarity.class.getName(), "--tempDir", tmpDir.getAbsolutePath()));
+    args.addAll(Arrays.asList(extraArgs));
+    rowSimilarityJob.run(args.toArray(new String[args.size()]));
 
     Matrix similarityMatrix =
       MathHelper.readEntries(conf, new Path(outputDir.getAbsolutePath(), "part-r-00000"), 3, 3);
@@ -406,4 +455,72 @@ public final class TestRowSimilarityJob extends MahoutTestCase {
     assertEquals(0.0, similarityMatrix.get(2, 2), EPSILON);
   }
 
+  /**
+   * integration test for the similarity threshold in stripes mode, using the matrix of
+   * {@link #testLimitEntriesInSimilarityMatrix()}: only tanimoto(r1,r2) = 0.5 and the self similarities are kept
+   */
+  @Test
+  public void testThresholdStripes() throws Exception {
+
+    File inputFile = getTestTempFile("rows");
+    File outputDir = getTestTempDir("output");
+    outputDir.delete();
+    File tmpDir = getTestTempDir("tmp");
+
+    Configuration conf = new Configuration();
+    Path inputPath = new Path(inputFile.getAbsolutePath());
+    FileSystem fs = FileSystem.get(inputPath.toUri(), conf);
+
+    MathHelper.writeEntries(new double[][] {
+        new double[] { 1, 0, 1, 1, 0, 1 },
+        new double[] { 0, 1, 1, 1, 1, 1 },
+        new double[] { 1, 1, 0, 1, 0, 0 }},
+        fs, conf, inputPath);
+
+    conf.set("mapred.input.dir", inputFile.getAbsolutePath());
+    conf.set("mapred.output.dir", outputDir.getAbsolutePath());
+    conf.setBoolean("mapred.output.compress", false);
+
+    RowSimilarityJob rowSimilarityJob = new RowSimilarityJob();
+    rowSimilarityJob.setConf(conf);
+
+    rowSimilarityJob.run(new String[] { "--numberOfColumns", "6", "--stripes", "--threshold", "0.45",
+        "--similarityClassname", DistributedTanimotoCoefficientVectorSimilarity.class.getName(),
+        "--tempDir", tmpDir.getAbsolutePath() });
+
+    Matrix similarityMatrix =
+        MathHelper.readEntries(conf, new Path(outputDir.getAbsolutePath(), "part-r-00000"), 3, 3);
+
+    assertEquals(1.0, similarityMatrix.get(0, 0), EPSILON);
+    assertEquals(0.5, similarityMatrix.get(0, 1), EPSILON);
+    assertEquals(0.0, similarityMatrix.get(0, 2), EPSILON);
+
+    assertEquals(0.5, similarityMatrix.get(1, 0), EPSILON);
+    assertEquals(1.0, similarityMatrix.get(1, 1), EPSILON);
+    assertEquals(0.0, similarityMatrix.get(1, 2), EPSILON);
+
+    assertEquals(0.0, similarityMatrix.get(2, 0), EPSILON);
+    assertEquals(0.0, similarityMatrix.get(2, 1), EPSILON);
+    assertEquals(1.0, similarityMatrix.get(2, 2), EPSILON);
+  }
+
+  /**
+   * tests {@link RowSimilarityJob#sampleColumn(int, WeightedOccurrence[], int)}
+   */
+  @Test
+  public void testSampleColumn() {
+    WeightedOccurrence[] column = new WeightedOccurrence[10];
+    for (int n = 0; n < column.length; n++) {
+      column[n] = new WeightedOccurrence(n, 1.0, 1.0);
+    }
+
+    assertSame(column, RowSimilarityJob.sampleColumn(3, column, -1));
+    assertSame(column, RowSimilarityJob.sampleColumn(3, column, 10));
+
+    WeightedOccurrence[] sample = RowSimilarityJob.sampleColumn(3, column, 4);
+    assertEquals(4, sample.length);
+    assertEquals(4, new HashSet<WeightedOccurrence>(Arrays.asList(sample)).size());
+    assertTrue(Arrays.equals(sample, RowSimilarityJob.sampleColumn(3, column, 4)));
+  }
+
 }
@@ -24,6 +24,7 @@ import org.apache.mahout.common.MahoutTestCase;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.hadoop.similarity.Cooccurrence;
+import org.apache.mahout.math.hadoop.similarity.CooccurrenceSums;
 import org.apache.mahout.math.hadoop.similarity.RowSimilarityJob;
 
 /**
@@ -66,6 +67,17 @@ public abstract class DistributedVectorSimilarityTestCase extends MahoutTestCase
     }
 
     double result = similarity.similarity(rowA, rowB, cooccurrences, weightA, weightB, numberOfColumns);
+    assertSimilarity(expectedSimilarity, result);
+
+    /* emulates the stripes mode */
+    if (similarity instanceof SummingVectorSimilarity) {
+      double resultFromSums = ((SummingVectorSimilarity) similarity).similarity(rowA, rowB,
+          CooccurrenceSums.of(cooccurrences), weightA, weightB, numberOfColumns);
+      assertSimilarity(expectedSimilarity, resultFromSums);
+    }
+  }
+
+  private static void assertSimilarity(double expectedSimilarity, double result) {
     if (Double.isNaN(expectedSimilarity)) {
       assertTrue(Double.isNaN(result));
     } else {
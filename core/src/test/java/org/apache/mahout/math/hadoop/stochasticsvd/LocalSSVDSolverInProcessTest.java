@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.hadoop.stochasticsvd;
+
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileIterable;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SingularValueDecomposition;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Test;
+
+/**
+ * Tests {@link LocalSSVDSolver} against Colt's SVD, with full rank SSVD as in {@link LocalSSVDSolverDenseTest} and
+ * with a low rank approximation which power iterations should improve.
+ */
+public final class LocalSSVDSolverInProcessTest extends MahoutTestCase {
+
+  private static final double s_epsilon = 1.0E-10d;
+
+  @Test
+  public void testFullRank() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path aPath = new Path(getTestTempDirPath("svd-proc"), "A/A.seq");
+    int m = 1000;
+    int n = 100;
+    writeMatrix(fs, conf, aPath, m, n, 0.0);
+
+    int k = 40;
+    int p = 60;
+    Path svdOutPath = getTestTempDirPath("SSVD-out");
+    LocalSSVDSolver ssvd = new LocalSSVDSolver(conf, new Path[] { aPath }, svdOutPath, 251, k, p);
+    ssvd.setNumThreads(3);
+    ssvd.setOverwrite(true);
+    ssvd.run();
+
+    double[] stochasticSValues = ssvd.getSingularValues();
+    double[] svalues = new SingularValueDecomposition(
+        new DenseMatrix(SSVDSolver.loadDistributedRowMatrix(fs, aPath, conf))).getSingularValues();
+    for (int i = 0; i < k + p; i++) {
+      assertEquals(svalues[i], stochasticSValues[i], s_epsilon);
+    }
+
+    int i = 0;
+    for (Pair<Text,VectorWritable> record : new SequenceFileIterable<Text,VectorWritable>(
+        new Path(ssvd.getUPath(), "u-m-00000"), conf)) {
+      assertEquals("row" + i, record.getFirst().toString());
+      assertEquals(k, record.getSecond().get().size());
+      i++;
+    }
+    assertEquals(m, i);
+
+    double[][] u = SSVDSolver.loadDistributedRowMatrix(fs, new Path(ssvd.getUPath(), "[^_]*"), conf);
+    SSVDPrototypeTest.assertOrthonormality(new DenseMatrix(u), false, s_epsilon);
+    double[][] v = SSVDSolver.loadDistributedRowMatrix(fs, new Path(ssvd.getVPath(), "[^_]*"), conf);
+    assertEquals(n, v.length);
+    SSVDPrototypeTest.assertOrthonormality(new DenseMatrix(v), false, s_epsilon);
+  }
+
+  @Test
+  public void testSparseAndDenseRows() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path aPath = new Path(getTestTempDirPath("svd-sparse"), "A/A.seq");
+    int m = 300;
+    int n = 40;
+    Random rnd = RandomUtils.getRandom();
+    SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, aPath, Text.class, VectorWritable.class);
+    try {
+      Text label = new Text();
+      for (int i = 0; i < m; i++) {
+        // mostly sparse rows, in no particular order of index, with every fifth row dense
+        Vector row = i % 5 == 0 ? new DenseVector(n) : new RandomAccessSparseVector(n);
+        for (int j = 0; j < n; j++) {
+          if (row.isDense() || rnd.nextDouble() < 0.2) {
+            row.setQuick(j, rnd.nextDouble() - 0.5);
+          }
+        }
+        label.set("row" + i);
+        w.append(label, new VectorWritable(row));
+      }
+    } finally {
+      w.close();
+    }
+
+    int k = 10;
+    int p = 30;
+    LocalSSVDSolver ssvd = new LocalSSVDSolver(conf, new Path[] { aPath }, getTestTempDirPath("SSVD-sparse-out"),
+        100, k, p);
+    ssvd.setNumThreads(3);
+    ssvd.setComputeU(false);
+    ssvd.setComputeV(false);
+    ssvd.setOverwrite(true);
+    ssvd.run();
+
+    double[] stochasticSValues = ssvd.getSingularValues();
+    double[] svalues = new SingularValueDecomposition(
+        new DenseMatrix(SSVDSolver.loadDistributedRowMatrix(fs, aPath, conf))).getSingularValues();
+    for (int i = 0; i < k + p; i++) {
+      assertEquals(svalues[i], stochasticSValues[i], s_epsilon);
+    }
+  }
+
+  @Test
+  public void testPowerIterations() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path aPath = new Path(getTestTempDirPath("svd-proc"), "A/A.seq");
+    writeMatrix(fs, conf, aPath, 400, 80, 0.5);
+    double[] svalues = new SingularValueDecomposition(
+        new DenseMatrix(SSVDSolver.loadDistributedRowMatrix(fs, aPath, conf))).getSingularValues();
+
+    int k = 5;
+    double errorWithoutPowerIterations = relativeError(svalues, solve(conf, aPath, k, 0), k);
+    double errorWithPowerIterations = relativeError(svalues, solve(conf, aPath, k, 2), k);
+    assertTrue(errorWithPowerIterations < errorWithoutPowerIterations / 4);
+    assertTrue(errorWithPowerIterations < 0.05);
+  }
+
+  private double[] solve(Configuration conf, Path aPath, int k, int q) throws Exception {
+    LocalSSVDSolver ssvd = new LocalSSVDSolver(conf, new Path[] { aPath }, getTestTempDirPath("SSVD-out-" + q),
+        100, k, 5);
+    ssvd.setQ(q);
+    ssvd.setNumThreads(2);
+    ssvd.setComputeU(false);
+    ssvd.setComputeV(false);
+    ssvd.setOverwrite(true);
+    ssvd.run();
+    return ssvd.getSingularValues();
+  }
+
+  private static double relativeError(double[] expected, double[] actual, int k) {
+    double error = 0.0;
+    for (int i = 0; i < k; i++) {
+      error = Math.max(error, Math.abs(expected[i] - actual[i]) / expected[i]);
+    }
+    return error;
+  }
+
+  /**
+   * Writes a random m x n matrix whose column j is scaled down by (1 + j)^decay, so that its singular values decay
+   * accordingly. Rows are labeled with Text keys to check that U inherits them.
+   */
+  private static void writeMatrix(FileSystem fs, Configuration conf, Path path, int m, int n, double decay)
+    throws Exception {
+    Random rnd = RandomUtils.getRandom();
+    SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, path, Text.class, VectorWritable.class);
+    try {
+      double[] row = new double[n];
+      Vector dv = new DenseVector(row, true);
+      Writable vw = new VectorWritable(dv);
+      Text label = new Text();
+      for (int i = 0; i < m; i++) {
+        for (int j = 0; j < n; j++) {
+          row[j] = 50.0 * (rnd.nextDouble() - 0.5) / Math.pow(1 + j, decay);
+        }
+        label.set("row" + i);
+        w.append(label, vw);
+      }
+    } finally {
+      w.close();
+    }
+  }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math;
+
+/**
+ * A {@link VectorIterable} which can multiply by several vectors at once, at about the cost of multiplying by one.
+ * This pays off when every multiplication needs a pass over data which is expensive to read, as with distributed
+ * matrices.
+ */
+public interface BlockVectorIterable extends VectorIterable {
+
+  /**
+   * Same as calling {@link #times(Vector)} for each of the given vectors
+   *
+   * @param vectors vectors with cardinality equal to getNumCols() of the recipient
+   * @return new vectors, the i-th being the product of the recipient and the i-th argument
+   */
+  Vector[] times(Vector[] vectors);
+
+  /**
+   * Same as calling {@link #timesSquared(Vector)} for each of the given vectors
+   *
+   * @param vectors vectors with cardinality equal to getNumCols() of the recipient
+   * @return new vectors, the i-th being this.transpose().times(this.times(vectors[i]))
+   */
+  Vector[] timesSquared(Vector[] vectors);
+
+}
@@ -18,6 +18,11 @@
 package org.apache.mahout.math.decomposer.lanczos;
 
 
+import com.google.common.base.Preconditions;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.BlockVectorIterable;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorIterable;
@@ -31,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * <p>Simple implementation of the <a href="http://en.wikipedia.org/wiki/Lanczos_algorithm">Lanczos algorithm</a> for
@@ -56,6 +62,10 @@ import java.util.Map;
  * This can be made smarter if (when!) this proves to be a major bottleneck.  Of course, this step can be parallelized
  * as well.
  * </p>
+ * <p>{@link #solve(LanczosState, int, boolean, int)} runs block Lanczos instead, which multiplies by several basis
+ * vectors at a time.  With a corpus implementing {@link BlockVectorIterable}, each block costs a single pass through
+ * the corpus, so the number of passes drops by the block size.
+ * </p>
  */
 public class LanczosSolver {
 
@@ -136,6 +146,180 @@ public class LanczosSolver {
       }
       state.setIterationNumber(++i);
     }
+    computeRitzVectors(state, triDiag, i, isSymmetric);
+  }
+
+  /**
+   * Block Lanczos: starts from the initial vector of the state plus blockSize - 1 random vectors, and multiplies the
+   * corpus by blockSize orthonormal basis vectors at a time.  The projection of the corpus onto the basis is then
+   * block tri-diagonal instead of tri-diagonal.  Finds desiredRank rounded down to a multiple of blockSize basis
+   * vectors, with desiredRank / blockSize multiplications.
+   *
+   * @param blockSize number of basis vectors to multiply by at once, 1 for plain Lanczos
+   */
+  public void solve(LanczosState state,
+                    int desiredRank,
+                    boolean isSymmetric,
+                    int blockSize) {
+    Preconditions.checkArgument(blockSize > 0, "blockSize must be positive");
+    if (blockSize == 1) {
+      solve(state, desiredRank, isSymmetric);
+      return;
+    }
+    Preconditions.checkArgument(desiredRank >= blockSize, "desiredRank must not be less than blockSize");
+    Preconditions.checkArgument(state.getIterationNumber() <= 1, "block Lanczos cannot resume an earlier run");
+    VectorIterable corpus = state.getCorpus();
+    int numBlocks = desiredRank / blockSize;
+    log.info("Finding {} singular vectors of matrix with {} rows, via block Lanczos with {} blocks of {}",
+        new Object[] {numBlocks * blockSize, corpus.numRows(), numBlocks, blockSize});
+
+    Vector[] currentBlock = initialBlock(state.getBasisVector(0), blockSize);
+    if (currentBlock == null) {
+      throw new IllegalStateException("Could not extend the initial vector to an orthonormal block");
+    }
+    Vector[] previousBlock = null;
+    double[][] beta = null;
+    Matrix blockTriDiag = new DenseMatrix(numBlocks * blockSize, numBlocks * blockSize);
+    int numBasisVectors = 0;
+    for (int block = 0; block < numBlocks; block++) {
+      int offset = block * blockSize;
+      for (int c = 0; c < blockSize; c++) {
+        state.setBasisVector(offset + c, currentBlock[c]);
+      }
+      numBasisVectors = offset + blockSize;
+      state.setIterationNumber(numBasisVectors);
+
+      startTime(TimingSection.ITERATE);
+      Vector[] nextBlock = isSymmetric ? times(corpus, currentBlock) : timesSquared(corpus, currentBlock);
+      log.info("{} passes through the corpus so far...", block + 1);
+      if (state.getScaleFactor() <= 0) {
+        state.setScaleFactor(calculateScaleFactor(nextBlock[0]));
+      }
+      for (Vector nextVector : nextBlock) {
+        nextVector.assign(new Scale(1.0 / state.getScaleFactor()));
+      }
+      if (previousBlock != null) {
+        // subtract previousBlock * beta'
+        for (int c = 0; c < blockSize; c++) {
+          for (int d = c; d < blockSize; d++) {
+            nextBlock[c].assign(previousBlock[d], new PlusMult(-beta[c][d]));
+          }
+        }
+      }
+      double[][] alpha = new double[blockSize][blockSize];
+      for (int c = 0; c < blockSize; c++) {
+        for (int d = 0; d < blockSize; d++) {
+          alpha[c][d] = currentBlock[c].dot(nextBlock[d]);
+        }
+      }
+      for (int d = 0; d < blockSize; d++) {
+        for (int c = 0; c < blockSize; c++) {
+          nextBlock[d].assign(currentBlock[c], new PlusMult(-alpha[c][d]));
+        }
+      }
+      endTime(TimingSection.ITERATE);
+      startTime(TimingSection.ORTHOGANLIZE);
+      for (Vector nextVector : nextBlock) {
+        orthoganalizeAgainstAllButLast(nextVector, state);
+      }
+      endTime(TimingSection.ORTHOGANLIZE);
+      for (int c = 0; c < blockSize; c++) {
+        for (int d = 0; d < blockSize; d++) {
+          blockTriDiag.set(offset + c, offset + d, (alpha[c][d] + alpha[d][c]) / 2);
+        }
+      }
+      if (block == numBlocks - 1) {
+        break;
+      }
+
+      // QR decomposition of nextBlock by modified Gram-Schmidt: nextBlock = Q * beta
+      beta = new double[blockSize][blockSize];
+      boolean breakdown = false;
+      for (int d = 0; d < blockSize && !breakdown; d++) {
+        for (int c = 0; c < d; c++) {
+          beta[c][d] = nextBlock[c].dot(nextBlock[d]);
+          nextBlock[d].assign(nextBlock[c], new PlusMult(-beta[c][d]));
+        }
+        beta[d][d] = nextBlock[d].norm(2);
+        if (outOfRange(beta[d][d]) || beta[d][d] == 0.0) {
+          breakdown = true;
+        } else {
+          nextBlock[d].assign(new Scale(1 / beta[d][d]));
+        }
+      }
+      if (breakdown) {
+        log.warn("Block Lanczos lost rank after {} blocks.  Bailing out early!", block + 1);
+        blockTriDiag = blockTriDiag.viewPart(new int[] {0, 0}, new int[] {numBasisVectors, numBasisVectors});
+        break;
+      }
+      int nextOffset = offset + blockSize;
+      for (int c = 0; c < blockSize; c++) {
+        for (int d = 0; d < blockSize; d++) {
+          blockTriDiag.set(nextOffset + c, offset + d, beta[c][d]);
+          blockTriDiag.set(offset + d, nextOffset + c, beta[c][d]);
+        }
+      }
+      previousBlock = currentBlock;
+      currentBlock = nextBlock;
+    }
+    computeRitzVectors(state, blockTriDiag, numBasisVectors, isSymmetric);
+  }
+
+  /**
+   * @return the normalized initial vector followed by blockSize - 1 random vectors orthonormal to it, or null if that
+   *         failed
+   */
+  private static Vector[] initialBlock(Vector initialVector, int blockSize) {
+    Random random = RandomUtils.getRandom();
+    Vector[] block = new Vector[blockSize];
+    block[0] = initialVector.normalize();
+    for (int c = 1; c < blockSize; c++) {
+      Vector vector = new DenseVector(initialVector.size());
+      for (int j = 0; j < vector.size(); j++) {
+        vector.setQuick(j, random.nextGaussian());
+      }
+      for (int d = 0; d < c; d++) {
+        vector.assign(block[d], new PlusMult(-vector.dot(block[d])));
+      }
+      double norm = vector.norm(2);
+      if (norm == 0.0) {
+        return null;
+      }
+      block[c] = vector.assign(new Scale(1 / norm));
+    }
+    return block;
+  }
+
+  private static Vector[] times(VectorIterable corpus, Vector[] vectors) {
+    if (corpus instanceof BlockVectorIterable) {
+      return ((BlockVectorIterable) corpus).times(vectors);
+    }
+    Vector[] results = new Vector[vectors.length];
+    for (int i = 0; i < vectors.length; i++) {
+      results[i] = corpus.times(vectors[i]);
+    }
+    return results;
+  }
+
+  private static Vector[] timesSquared(VectorIterable corpus, Vector[] vectors) {
+    if (corpus instanceof BlockVectorIterable) {
+      return ((BlockVectorIterable) corpus).timesSquared(vectors);
+    }
+    Vector[] results = new Vector[vectors.length];
+    for (int i = 0; i < vectors.length; i++) {
+      results[i] = corpus.timesSquared(vectors[i]);
+    }
+    return results;
+  }
+
+  /**
+   * Diagonalizes the projection of the corpus onto the basis and turns its eigenvectors into singular vectors of the
+   * corpus
+   *
+   * @param triDiag the (block) tri-diagonal projection, of size i x i
+   * @param i the number of basis vectors
+   */
+  private void computeRitzVectors(LanczosState state, Matrix triDiag, int i, boolean isSymmetric) {
     startTime(TimingSection.TRIDIAG_DECOMP);
 
     log.info("Lanczos iteration complete - now to diagonalize the tri-diagonal auxiliary matrix.");
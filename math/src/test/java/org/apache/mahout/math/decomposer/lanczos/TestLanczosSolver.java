@@ -17,8 +17,10 @@
 
 package org.apache.mahout.math.decomposer.lanczos;
 
+import org.apache.mahout.math.BlockVectorIterable;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.MatrixSlice;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.decomposer.SolverTest;
 import org.apache.mahout.math.matrix.DoubleMatrix1D;
@@ -27,6 +29,8 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Iterator;
+
 public final class TestLanczosSolver extends SolverTest {
   private static final Logger log = LoggerFactory.getLogger(TestLanczosSolver.class);
 
@@ -94,6 +98,47 @@ public final class TestLanczosSolver extends SolverTest {
     //assertEigen(state, rank / 2, ERROR_TOLERANCE, true);
   }
 
+  @Test
+  public void testBlockLanczosSolver() throws Exception {
+    int numRows = 800;
+    int numColumns = 500;
+    Matrix matrix = randomHierarchicalMatrix(numRows, numColumns, false);
+    CountingBlockVectorIterable corpus = new CountingBlockVectorIterable(matrix);
+    int rank = 60;
+    int blockSize = 4;
+    Vector initialVector = new DenseVector(numColumns);
+    initialVector.assign(1d / Math.sqrt(numColumns));
+    LanczosState state = new LanczosState(corpus, numColumns, rank, initialVector);
+    new LanczosSolver().solve(state, rank, false, blockSize);
+
+    assertEquals(rank / blockSize, corpus.passes);
+    assertEquals(rank, state.getIterationNumber());
+    assertOrthonormal(state);
+    for(int i = 0; i < rank/4; i++) {
+      assertEigen(i, state.getRightSingularVector(i), matrix, ERROR_TOLERANCE, false);
+    }
+  }
+
+  @Test
+  public void testBlockLanczosSolverSymmetric() throws Exception {
+    int size = 100;
+    Matrix m = randomHierarchicalSymmetricMatrix(size);
+    int desiredRank = 80;
+    Vector initialVector = new DenseVector(size);
+    initialVector.assign(1d / Math.sqrt(size));
+    LanczosState state = new LanczosState(m, size, desiredRank, initialVector);
+    new LanczosSolver().solve(state, desiredRank, true, 5);
+
+    EigenvalueDecomposition decomposition = new EigenvalueDecomposition(m);
+    DoubleMatrix1D eigenvalues = decomposition.getRealEigenvalues();
+    for(int i = 0; i < desiredRank / 3; i++) {
+      Vector v = state.getRightSingularVector(i);
+      Vector v2 = decomposition.getV().viewColumn(eigenvalues.size() - i - 1).toVector();
+      double error = 1 - Math.abs(v.dot(v2)/(v.norm(2) * v2.norm(2)));
+      assertTrue(i + ": 1 - cosAngle = " + error, error < ERROR_TOLERANCE);
+    }
+  }
+
   public static long timeLanczos(Matrix corpus, LanczosState state, int rank, boolean symmetric) {
     long start = System.currentTimeMillis();
 
@@ -105,4 +150,72 @@ public final class TestLanczosSolver extends SolverTest {
     return end - start;
   }
 
+  /**
+   * Counts how many times the corpus is multiplied by a block of vectors
+   */
+  private static final class CountingBlockVectorIterable implements BlockVectorIterable {
+
+    private final Matrix matrix;
+    private int passes;
+
+    private CountingBlockVectorIterable(Matrix matrix) {
+      this.matrix = matrix;
+    }
+
+    @Override
+    public Vector[] times(Vector[] vectors) {
+      passes++;
+      Vector[] results = new Vector[vectors.length];
+      for (int i = 0; i < vectors.length; i++) {
+        results[i] = matrix.times(vectors[i]);
+      }
+      return results;
+    }
+
+    @Override
+    public Vector[] timesSquared(Vector[] vectors) {
+      passes++;
+      Vector[] results = new Vector[vectors.length];
+      for (int i = 0; i < vectors.length; i++) {
+        results[i] = matrix.timesSquared(vectors[i]);
+      }
+      return results;
+    }
+
+    @Override
+    public Iterator<MatrixSlice> iterateAll() {
+      return matrix.iterateAll();
+    }
+
+    @Override
+    public int numSlices() {
+      return matrix.numSlices();
+    }
+
+    @Override
+    public int numRows() {
+      return matrix.numRows();
+    }
+
+    @Override
+    public int numCols() {
+      return matrix.numCols();
+    }
+
+    @Override
+    public Vector times(Vector v) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Vector timesSquared(Vector v) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<MatrixSlice> iterator() {
+      return matrix.iterator();
+    }
+  }
+
 }
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.web;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.ConcurrentCache;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
+import org.apache.mahout.cf.taste.impl.common.Retriever;
+import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.DataModelChangeListener;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.common.LongPair;
+
+/**
+ * <p>A {@link Recommender} which caches the recommendations served for each user ID and number of
+ * recommendations, for servers which are asked for the same users over and over. Concurrent requests for a
+ * user who is not cached yet wait for one computation of the recommendations, rather than each computing
+ * them.</p>
+ *
+ * <p>Recommendations are only recomputed once they are evicted, or after the cache is invalidated. That
+ * happens when this {@link Recommender} is refreshed, when a preference is set or removed through it, and
+ * when the underlying {@link FileDataModel} reports that its data changed, whichever
+ * {@link Refreshable} chain refreshed it. To be invalidated by other refreshes, this cache must be used in
+ * place of the {@link Recommender} it wraps, as {@link RecommenderSingleton} does.</p>
+ *
+ * <p>Each invalidation starts a new {@link #getGeneration() generation}. Together with the
+ * {@link #getEpoch() epoch} of this instance, which differs after a restart, it tells clients whether what
+ * they have cached is still current.</p>
+ */
+public final class RecommendationCache implements Recommender {
+
+  private final Recommender recommender;
+  private final ConcurrentCache<LongPair,List<RecommendedItem>> cache;
+  private final long epoch;
+  private final AtomicLong generation;
+  private final RefreshHelper refreshHelper;
+
+  /**
+   * @param maxEntries maximum number of (user ID, number of recommendations) pairs to cache
+   */
+  public RecommendationCache(Recommender recommender, int maxEntries) {
+    Preconditions.checkArgument(recommender != null, "recommender is null");
+    this.recommender = recommender;
+    this.cache = new ConcurrentCache<LongPair,List<RecommendedItem>>(new RecommendationRetriever(), maxEntries);
+    this.epoch = System.currentTimeMillis();
+    this.generation = new AtomicLong();
+    this.refreshHelper = new RefreshHelper(new Callable<Object>() {
+      @Override
+      public Object call() {
+        invalidate();
+        return null;
+      }
+    });
+    refreshHelper.addDependency(recommender);
+    DataModel dataModel = recommender.getDataModel();
+    if (dataModel instanceof FileDataModel) {
+      ((FileDataModel) dataModel).addDataModelChangeListener(new DataModelChangeListener() {
+        @Override
+        public void dataModelChanged(DataModel changed, FastIDSet changedUserIDs, FastIDSet changedItemIDs) {
+          // Any change may alter any user's recommendations, not only those of the changed users
+          invalidate();
+        }
+      });
+    }
+  }
+
+  @Override
+  public List<RecommendedItem> recommend(long userID, int howMany) throws TasteException {
+    return cache.get(new LongPair(userID, howMany));
+  }
+
+  /**
+   * Rescored recommendations are not cached.
+   */
+  @Override
+  public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer) throws TasteException {
+    return rescorer == null ? recommend(userID, howMany) : recommender.recommend(userID, howMany, rescorer);
+  }
+
+  @Override
+  public float estimatePreference(long userID, long itemID) throws TasteException {
+    return recommender.estimatePreference(userID, itemID);
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) throws TasteException {
+    recommender.setPreference(userID, itemID, value);
+    invalidate();
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) throws TasteException {
+    recommender.removePreference(userID, itemID);
+    invalidate();
+  }
+
+  @Override
+  public DataModel getDataModel() {
+    return recommender.getDataModel();
+  }
+
+  /**
+   * @return time at which this cache was created, which tells generations of different instances apart
+   */
+  public long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * @return number of times this cache has been invalidated
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  public double getHitRatio() {
+    return cache.getHitRatio();
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    refreshHelper.refresh(alreadyRefreshed);
+  }
+
+  private void invalidate() {
+    cache.clear();
+    generation.incrementAndGet();
+  }
+
+  @Override
+  public String toString() {
+    return "RecommendationCache[recommender:" + recommender + ']';
+  }
+
+  private final class RecommendationRetriever implements Retriever<LongPair,List<RecommendedItem>> {
+    @Override
+    public List<RecommendedItem> get(LongPair key) throws TasteException {
+      return recommender.recommend(key.getFirst(), (int) key.getSecond());
+    }
+  }
+
+}
@@ -17,6 +17,7 @@
 
 package org.apache.mahout.cf.taste.web;
 
+import com.google.common.collect.Lists;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.Preference;
@@ -31,21 +32,31 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
 
 /**
  * <p>A servlet which returns recommendations, as its name implies. The servlet accepts GET and POST
- * HTTP requests, and looks for two parameters:</p>
+ * HTTP requests, and looks for these parameters:</p>
  *
  * <ul>
- * <li><em>userID</em>: the user ID for which to produce recommendations</li>
+ * <li><em>userID</em>: the user ID for which to produce recommendations. To get recommendations for several
+ * users at once, give several comma-separated IDs, or the parameter several times.</li>
  * <li><em>howMany</em>: the number of recommendations to produce</li>
+ * <li><em>format</em>: (optional) one of "text", "xml" or "json". Defaults to "text".</li>
  * <li><em>debug</em>: (optional) output a lot of information that is useful in debugging.
- * Defaults to false, of course.</li>
+ * Defaults to false, of course. Only used with the "text" format and a single user.</li>
  * </ul>
  *
  * <p>The response is text, and contains a list of the IDs of recommended items, in descending
- * order of relevance, one per line.</p>
+ * order of relevance, one per line. For several users, each line starts with the user ID.</p>
  *
  * <p>For example, you can get 10 recommendations for user 123 from the following URL (assuming
  * you are running taste in a web application running locally on port 8080):<br/>
@@ -55,13 +66,28 @@ import java.util.List;
  * a parameter named "recommender-class" which is the name of a class that implements
  * {@link Recommender} and has a no-arg constructor. The servlet will instantiate and use
  * this {@link Recommender} to produce recommendations.</p>
+ *
+ * <p>Two optional <code>init-param</code>s help serve many requests:</p>
+ *
+ * <ul>
+ * <li><em>cache-size</em>: if positive, up to this many users' recommendations are kept in a
+ * {@link RecommendationCache}, so that requests for the same user are answered without recomputing, and
+ * concurrent requests for the same user compute them only once. Single-user responses then carry an
+ * <code>ETag</code> which stays valid until the cache is next invalidated, or the servlet restarted, so
+ * clients can revalidate cheaply.</li>
+ * <li><em>worker-threads</em>: if positive, the users of a multi-user request are recommended for in
+ * parallel, on a pool of this many threads.</li>
+ * </ul>
  */
 public final class RecommenderServlet extends HttpServlet {
 
   private static final int NUM_TOP_PREFERENCES = 20;
   private static final int DEFAULT_HOW_MANY = 20;
+  private static final Pattern COMMA = Pattern.compile(",");
 
   private Recommender recommender;
+  private RecommendationCache cache;
+  private ExecutorService workers;
 
   @Override
   public void init(ServletConfig config) throws ServletException {
@@ -71,22 +97,51 @@ public final class RecommenderServlet extends HttpServlet {
       throw new ServletException("Servlet init-param \"recommender-class\" is not defined");
     }
     try {
-      RecommenderSingleton.initializeIfNeeded(recommenderClassName);
+      RecommenderSingleton.initializeIfNeeded(recommenderClassName, getIntInitParameter(config, "cache-size"));
     } catch (TasteException te) {
       throw new ServletException(te);
     }
     recommender = RecommenderSingleton.getInstance().getRecommender();
+    cache = recommender instanceof RecommendationCache ? (RecommendationCache) recommender : null;
+
+    int workerThreads = getIntInitParameter(config, "worker-threads");
+    if (workerThreads > 0) {
+      workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "RecommenderServlet worker");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+  }
+
+  private static int getIntInitParameter(ServletConfig config, String name) throws ServletException {
+    String value = config.getInitParameter(name);
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException nfe) {
+      throw new ServletException("Servlet init-param \"" + name + "\" is not a number: " + value);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+    super.destroy();
   }
 
   @Override
   public void doGet(HttpServletRequest request,
                     HttpServletResponse response) throws ServletException {
 
-    String userIDString = request.getParameter("userID");
-    if (userIDString == null) {
-      throw new ServletException("userID was not specified");
-    }
-    long userID = Long.parseLong(userIDString);
+    long[] userIDs = parseUserIDs(request.getParameterValues("userID"));
     String howManyString = request.getParameter("howMany");
     int howMany = howManyString == null ? DEFAULT_HOW_MANY : Integer.parseInt(howManyString);
     boolean debug = Boolean.parseBoolean(request.getParameter("debug"));
@@ -94,18 +149,43 @@ public final class RecommenderServlet extends HttpServlet {
     if (format == null) {
       format = "text";
     }
+    if (!"text".equals(format) && !"xml".equals(format) && !"json".equals(format)) {
+      throw new ServletException("Bad format parameter: " + format);
+    }
 
     try {
-      List<RecommendedItem> items = recommender.recommend(userID, howMany);
+      if (userIDs.length == 1) {
+        long userID = userIDs[0];
+        if (debug && "text".equals(format)) {
+          writeDebugRecommendations(response, userID, recommender.recommend(userID, howMany));
+          return;
+        }
+        if (cache != null) {
+          String eTag = "\"" + cache.getEpoch() + '-' + cache.getGeneration() + '-'
+              + userID + '-' + howMany + '-' + format + '"';
+          if (eTag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+          }
+          response.setHeader("ETag", eTag);
+        }
+      }
+      List<List<RecommendedItem>> recommendations = recommend(userIDs, howMany);
+      ResponseBuffer buffer = new ResponseBuffer(1024);
       if ("text".equals(format)) {
-        writePlainText(response, userID, debug, items);
+        response.setContentType("text/plain");
+        writePlainText(buffer, userIDs, recommendations);
       } else if ("xml".equals(format)) {
-        writeXML(response, items);
-      } else if ("json".equals(format)) {
-        writeJSON(response, items);
+        response.setContentType("text/xml");
+        writeXML(buffer, userIDs, recommendations);
       } else {
-        throw new ServletException("Bad format parameter: " + format);
+        response.setContentType("text/plain");
+        writeJSON(buffer, userIDs, recommendations);
       }
+      response.setCharacterEncoding("UTF-8");
+      response.setHeader("Cache-Control", "no-cache");
+      response.setContentLength(buffer.size());
+      buffer.writeTo(response.getOutputStream());
     } catch (TasteException te) {
       throw new ServletException(te);
     } catch (IOException ioe) {
@@ -114,63 +194,165 @@ public final class RecommenderServlet extends HttpServlet {
 
   }
 
-  private static void writeXML(HttpServletResponse response, Iterable<RecommendedItem> items) throws IOException {
-    response.setContentType("text/xml");
-    response.setCharacterEncoding("UTF-8");
-    response.setHeader("Cache-Control", "no-cache");
-    PrintWriter writer = response.getWriter();
-    writer.print("<?xml version=\"1.0\" encoding=\"UTF-8\"?><recommendedItems>");
-    for (RecommendedItem recommendedItem : items) {
-      writer.print("<item><value>");
-      writer.print(recommendedItem.getValue());
-      writer.print("</value><id>");
-      writer.print(recommendedItem.getItemID());
-      writer.print("</id></item>");
+  private static long[] parseUserIDs(String[] userIDStrings) throws ServletException {
+    if (userIDStrings == null) {
+      throw new ServletException("userID was not specified");
+    }
+    List<Long> userIDs = Lists.newArrayList();
+    for (String userIDString : userIDStrings) {
+      for (String userID : COMMA.split(userIDString)) {
+        if (userID.length() > 0) {
+          userIDs.add(Long.parseLong(userID.trim()));
+        }
+      }
     }
-    writer.println("</recommendedItems>");
+    if (userIDs.isEmpty()) {
+      throw new ServletException("userID was not specified");
+    }
+    long[] result = new long[userIDs.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = userIDs.get(i);
+    }
+    return result;
   }
 
-  private static void writeJSON(HttpServletResponse response, Iterable<RecommendedItem> items) throws IOException {
-    response.setContentType("text/plain");
-    response.setCharacterEncoding("UTF-8");
-    response.setHeader("Cache-Control", "no-cache");
-    PrintWriter writer = response.getWriter();
-    writer.print("{\"recommendedItems\":{\"item\":[");
+  /**
+   * Recommends for each user, from the cache if there is one, and on the worker threads if there are
+   * several users and workers.
+   */
+  private List<List<RecommendedItem>> recommend(long[] userIDs, final int howMany)
+    throws TasteException, ServletException {
+    if (userIDs.length == 1) {
+      return Collections.singletonList(recommend(userIDs[0], howMany));
+    }
+    List<List<RecommendedItem>> result = Lists.newArrayListWithCapacity(userIDs.length);
+    if (workers == null) {
+      for (long userID : userIDs) {
+        result.add(recommend(userID, howMany));
+      }
+      return result;
+    }
+    List<Future<List<RecommendedItem>>> futures = Lists.newArrayListWithCapacity(userIDs.length);
+    for (final long userID : userIDs) {
+      futures.add(workers.submit(new Callable<List<RecommendedItem>>() {
+        @Override
+        public List<RecommendedItem> call() throws TasteException {
+          return recommend(userID, howMany);
+        }
+      }));
+    }
+    try {
+      for (Future<List<RecommendedItem>> future : futures) {
+        result.add(future.get());
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new ServletException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof TasteException) {
+        throw (TasteException) cause;
+      }
+      throw new ServletException(cause);
+    } finally {
+      for (Future<List<RecommendedItem>> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return result;
+  }
+
+  private List<RecommendedItem> recommend(long userID, int howMany) throws TasteException {
+    return recommender.recommend(userID, howMany);
+  }
+
+  private static void writeXML(ResponseBuffer buffer,
+                               long[] userIDs,
+                               List<List<RecommendedItem>> recommendations) {
+    buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    if (userIDs.length == 1) {
+      writeXMLItems(buffer, recommendations.get(0));
+    } else {
+      buffer.append("<recommendations>");
+      for (int i = 0; i < userIDs.length; i++) {
+        buffer.append("<user><id>").append(userIDs[i]).append("</id>");
+        writeXMLItems(buffer, recommendations.get(i));
+        buffer.append("</user>");
+      }
+      buffer.append("</recommendations>");
+    }
+    buffer.append('\n');
+  }
+
+  private static void writeXMLItems(ResponseBuffer buffer, Iterable<RecommendedItem> items) {
+    buffer.append("<recommendedItems>");
     for (RecommendedItem recommendedItem : items) {
-      writer.print("{\"value\":\"");
-      writer.print(recommendedItem.getValue());
-      writer.print("\",\"id\":\"");
-      writer.print(recommendedItem.getItemID());
-      writer.print("\"},");
+      buffer.append("<item><value>").append(recommendedItem.getValue());
+      buffer.append("</value><id>").append(recommendedItem.getItemID());
+      buffer.append("</id></item>");
     }
-    writer.println("]}}");
+    buffer.append("</recommendedItems>");
   }
 
-  private void writePlainText(HttpServletResponse response,
-                              long userID,
-                              boolean debug,
-                              Iterable<RecommendedItem> items) throws IOException, TasteException {
-    response.setContentType("text/plain");
-    response.setCharacterEncoding("UTF-8");
-    response.setHeader("Cache-Control", "no-cache");
-    PrintWriter writer = response.getWriter();
-    if (debug) {
-      writeDebugRecommendations(userID, items, writer);
+  private static void writeJSON(ResponseBuffer buffer,
+                                long[] userIDs,
+                                List<List<RecommendedItem>> recommendations) {
+    if (userIDs.length == 1) {
+      buffer.append('{');
+      writeJSONItems(buffer, recommendations.get(0));
+      buffer.append('}');
     } else {
-      writeRecommendations(items, writer);
+      buffer.append("{\"recommendations\":[");
+      for (int i = 0; i < userIDs.length; i++) {
+        if (i > 0) {
+          buffer.append(',');
+        }
+        buffer.append("{\"userID\":\"").append(userIDs[i]).append("\",");
+        writeJSONItems(buffer, recommendations.get(i));
+        buffer.append('}');
+      }
+      buffer.append("]}");
     }
+    buffer.append('\n');
   }
 
-  private static void writeRecommendations(Iterable<RecommendedItem> items, PrintWriter writer) {
+  private static void writeJSONItems(ResponseBuffer buffer, Iterable<RecommendedItem> items) {
+    buffer.append("\"recommendedItems\":{\"item\":[");
+    boolean first = true;
     for (RecommendedItem recommendedItem : items) {
-      writer.print(recommendedItem.getValue());
-      writer.print('\t');
-      writer.println(recommendedItem.getItemID());
+      if (!first) {
+        buffer.append(',');
+      }
+      first = false;
+      buffer.append("{\"value\":\"").append(recommendedItem.getValue());
+      buffer.append("\",\"id\":\"").append(recommendedItem.getItemID());
+      buffer.append("\"}");
     }
+    buffer.append("]}");
   }
 
-  private void writeDebugRecommendations(long userID, Iterable<RecommendedItem> items, PrintWriter writer)
-    throws TasteException {
+  private static void writePlainText(ResponseBuffer buffer,
+                                     long[] userIDs,
+                                     List<List<RecommendedItem>> recommendations) {
+    boolean several = userIDs.length > 1;
+    for (int i = 0; i < userIDs.length; i++) {
+      for (RecommendedItem recommendedItem : recommendations.get(i)) {
+        if (several) {
+          buffer.append(userIDs[i]).append('\t');
+        }
+        buffer.append(recommendedItem.getValue()).append('\t');
+        buffer.append(recommendedItem.getItemID()).append('\n');
+      }
+    }
+  }
+
+  private void writeDebugRecommendations(HttpServletResponse response,
+                                         long userID,
+                                         Iterable<RecommendedItem> items) throws IOException, TasteException {
+    response.setContentType("text/plain");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+    PrintWriter writer = response.getWriter();
     DataModel dataModel = recommender.getDataModel();
     writer.print("User:");
     writer.println(userID);
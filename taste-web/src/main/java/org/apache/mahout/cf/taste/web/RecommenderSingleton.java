@@ -23,6 +23,9 @@ import org.apache.mahout.cf.taste.recommender.Recommender;
 /**
  * <p>A singleton which holds an instance of a {@link Recommender}. This is used to share
  * a {@link Recommender} between {@link RecommenderServlet} and <code>RecommenderService.jws</code>.</p>
+ *
+ * <p>If it is asked to cache recommendations, the shared {@link Recommender} is a {@link RecommendationCache},
+ * so that refreshes and preference changes made through either of them invalidate the cache.</p>
  */
 public final class RecommenderSingleton {
 
@@ -38,17 +41,26 @@ public final class RecommenderSingleton {
   }
 
   public static synchronized void initializeIfNeeded(String recommenderClassName) throws TasteException {
+    initializeIfNeeded(recommenderClassName, 0);
+  }
+
+  /**
+   * @param cacheSize if positive, the number of users' recommendations to keep in a {@link RecommendationCache}
+   */
+  public static synchronized void initializeIfNeeded(String recommenderClassName, int cacheSize)
+    throws TasteException {
     if (instance == null) {
-      instance = new RecommenderSingleton(recommenderClassName);
+      instance = new RecommenderSingleton(recommenderClassName, cacheSize);
     }
   }
 
-  private RecommenderSingleton(String recommenderClassName) throws TasteException {
+  private RecommenderSingleton(String recommenderClassName, int cacheSize) throws TasteException {
     if (recommenderClassName == null) {
       throw new IllegalArgumentException("Recommender class name is null");
     }
     try {
-      recommender = Class.forName(recommenderClassName).asSubclass(Recommender.class).newInstance();
+      Recommender delegate = Class.forName(recommenderClassName).asSubclass(Recommender.class).newInstance();
+      recommender = cacheSize > 0 ? new RecommendationCache(delegate, cacheSize) : delegate;
     } catch (ClassNotFoundException cnfe) {
       throw new TasteException(cnfe);
     } catch (InstantiationException ie) {
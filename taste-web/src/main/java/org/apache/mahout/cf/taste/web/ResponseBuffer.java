@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>A growable buffer of ASCII bytes, into which responses are formatted before being written in one go.
+ * Unlike printing to a {@link java.io.PrintWriter}, IDs are formatted digit by digit without creating a
+ * {@link String}, and no character encoding is needed, since JSON, XML and plain text responses contain
+ * only ASCII characters.</p>
+ */
+final class ResponseBuffer {
+
+  private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes();
+
+  private byte[] bytes;
+  private int size;
+
+  ResponseBuffer(int initialCapacity) {
+    bytes = new byte[initialCapacity];
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @param ascii text containing only ASCII characters
+   */
+  ResponseBuffer append(CharSequence ascii) {
+    int length = ascii.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      bytes[size++] = (byte) ascii.charAt(i);
+    }
+    return this;
+  }
+
+  ResponseBuffer append(char asciiChar) {
+    ensureCapacity(1);
+    bytes[size++] = (byte) asciiChar;
+    return this;
+  }
+
+  ResponseBuffer append(long value) {
+    if (value == Long.MIN_VALUE) {
+      ensureCapacity(LONG_MIN_VALUE.length);
+      System.arraycopy(LONG_MIN_VALUE, 0, bytes, size, LONG_MIN_VALUE.length);
+      size += LONG_MIN_VALUE.length;
+      return this;
+    }
+    // At most 19 digits and a sign
+    ensureCapacity(20);
+    if (value < 0) {
+      bytes[size++] = (byte) '-';
+      value = -value;
+    }
+    int start = size;
+    do {
+      bytes[size++] = (byte) ('0' + (int) (value % 10L));
+      value /= 10L;
+    } while (value != 0L);
+    // Digits were written least significant first
+    for (int i = start, j = size - 1; i < j; i++, j--) {
+      byte digit = bytes[i];
+      bytes[i] = bytes[j];
+      bytes[j] = digit;
+    }
+    return this;
+  }
+
+  ResponseBuffer append(float value) {
+    return append(Float.toString(value));
+  }
+
+  void writeTo(OutputStream out) throws IOException {
+    out.write(bytes, 0, size);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + extra));
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.web;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.math.MahoutTestCase;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public final class RecommendationCacheTest extends MahoutTestCase {
+
+  private static final List<RecommendedItem> RECOMMENDATIONS =
+      Collections.<RecommendedItem>singletonList(new GenericRecommendedItem(2L, 1.0f));
+
+  @Test
+  public void testCachesRecommendations() throws Exception {
+    Recommender recommender = EasyMock.createMock(Recommender.class);
+    EasyMock.expect(recommender.getDataModel()).andReturn(null);
+    EasyMock.expect(recommender.recommend(1L, 10)).andReturn(RECOMMENDATIONS).once();
+    EasyMock.expect(recommender.recommend(1L, 5)).andReturn(RECOMMENDATIONS).once();
+    EasyMock.replay(recommender);
+
+    RecommendationCache cache = new RecommendationCache(recommender, 10);
+    assertSame(RECOMMENDATIONS, cache.recommend(1L, 10));
+    assertSame(RECOMMENDATIONS, cache.recommend(1L, 10));
+    assertSame(RECOMMENDATIONS, cache.recommend(1L, 5));
+    assertEquals(0L, cache.getGeneration());
+    EasyMock.verify(recommender);
+  }
+
+  @Test
+  public void testRefreshInvalidates() throws Exception {
+    Recommender recommender = EasyMock.createMock(Recommender.class);
+    EasyMock.expect(recommender.getDataModel()).andReturn(null);
+    EasyMock.expect(recommender.recommend(1L, 10)).andReturn(RECOMMENDATIONS).times(2);
+    recommender.refresh(EasyMock.<Collection<Refreshable>>anyObject());
+    EasyMock.replay(recommender);
+
+    RecommendationCache cache = new RecommendationCache(recommender, 10);
+    cache.recommend(1L, 10);
+    cache.refresh(null);
+    assertEquals(1L, cache.getGeneration());
+    cache.recommend(1L, 10);
+    EasyMock.verify(recommender);
+  }
+
+  @Test
+  public void testSetPreferenceInvalidates() throws Exception {
+    Recommender recommender = EasyMock.createMock(Recommender.class);
+    EasyMock.expect(recommender.getDataModel()).andReturn(null);
+    EasyMock.expect(recommender.recommend(1L, 10)).andReturn(RECOMMENDATIONS).times(2);
+    recommender.setPreference(3L, 4L, 5.0f);
+    EasyMock.replay(recommender);
+
+    RecommendationCache cache = new RecommendationCache(recommender, 10);
+    cache.recommend(1L, 10);
+    // A preference of another user may change this user's recommendations too
+    cache.setPreference(3L, 4L, 5.0f);
+    assertEquals(1L, cache.getGeneration());
+    cache.recommend(1L, 10);
+    EasyMock.verify(recommender);
+  }
+
+  @Test
+  public void testDataModelChangeInvalidates() throws Exception {
+    File dataFile = new File(getTestTempDir(), "data.txt");
+    writeLines(dataFile, "1,2,1.0", "3,4,1.0");
+    FileDataModel dataModel = new FileDataModel(dataFile, false, 0L);
+    Recommender recommender = EasyMock.createMock(Recommender.class);
+    EasyMock.expect(recommender.getDataModel()).andReturn(dataModel);
+    EasyMock.expect(recommender.recommend(1L, 10)).andReturn(RECOMMENDATIONS).times(2);
+    EasyMock.replay(recommender);
+
+    RecommendationCache cache = new RecommendationCache(recommender, 10);
+    cache.recommend(1L, 10);
+    // Refreshed directly, not through the cache
+    writeLines(new File(getTestTempDir(), "data.1.txt"), "3,2,1.0");
+    dataModel.refresh(null);
+    assertEquals(1L, cache.getGeneration());
+    cache.recommend(1L, 10);
+    EasyMock.verify(recommender);
+  }
+
+  private static void writeLines(File file, String... lines) throws FileNotFoundException {
+    PrintWriter writer = new PrintWriter(file);
+    try {
+      for (String line : lines) {
+        writer.println(line);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.web;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.math.MahoutTestCase;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class RecommenderServletTest extends MahoutTestCase {
+
+  private RecommenderServlet servlet;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    ServletConfig config = EasyMock.createNiceMock(ServletConfig.class);
+    EasyMock.expect(config.getInitParameter("recommender-class")).andReturn(CountingRecommender.class.getName());
+    EasyMock.expect(config.getInitParameter("cache-size")).andReturn("100");
+    EasyMock.replay(config);
+    servlet = new RecommenderServlet();
+    servlet.init(config);
+  }
+
+  @Test
+  public void testMultipleUsersText() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    servlet.doGet(request(new String[] {"1,2", "3"}, "text", null), response(out, null));
+    assertEquals("1\t2.0\t10\n1\t1.0\t11\n2\t2.0\t20\n2\t1.0\t21\n3\t2.0\t30\n3\t1.0\t31\n",
+                 out.toString("UTF-8"));
+  }
+
+  @Test
+  public void testMultipleUsersJSON() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    servlet.doGet(request(new String[] {"1,2"}, "json", null), response(out, null));
+    assertEquals("{\"recommendations\":["
+                 + "{\"userID\":\"1\",\"recommendedItems\":{\"item\":"
+                 + "[{\"value\":\"2.0\",\"id\":\"10\"},{\"value\":\"1.0\",\"id\":\"11\"}]}},"
+                 + "{\"userID\":\"2\",\"recommendedItems\":{\"item\":"
+                 + "[{\"value\":\"2.0\",\"id\":\"20\"},{\"value\":\"1.0\",\"id\":\"21\"}]}}]}\n",
+                 out.toString("UTF-8"));
+  }
+
+  @Test
+  public void testNotModified() throws Exception {
+    Capture<String> eTag = new Capture<String>();
+    servlet.doGet(request(new String[] {"5"}, "xml", null), response(new ByteArrayOutputStream(), eTag));
+    int computed = CountingRecommender.RECOMMENDATIONS.get();
+
+    HttpServletResponse response = EasyMock.createMock(HttpServletResponse.class);
+    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    EasyMock.replay(response);
+    servlet.doGet(request(new String[] {"5"}, "xml", eTag.getValue()), response);
+    EasyMock.verify(response);
+    assertEquals(computed, CountingRecommender.RECOMMENDATIONS.get());
+  }
+
+  @Test
+  public void testRefreshInvalidates() throws Exception {
+    Capture<String> eTag = new Capture<String>();
+    servlet.doGet(request(new String[] {"6"}, "xml", null), response(new ByteArrayOutputStream(), eTag));
+    String oldETag = eTag.getValue();
+    int computed = CountingRecommender.RECOMMENDATIONS.get();
+
+    // As RecommenderService.jws would
+    RecommenderSingleton.getInstance().getRecommender().refresh(null);
+
+    Capture<String> newETag = new Capture<String>();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    servlet.doGet(request(new String[] {"6"}, "xml", oldETag), response(out, newETag));
+    assertFalse(oldETag.equals(newETag.getValue()));
+    assertTrue(out.size() > 0);
+    assertEquals(computed + 1, CountingRecommender.RECOMMENDATIONS.get());
+  }
+
+  private static HttpServletRequest request(String[] userIDs, String format, String ifNoneMatch) {
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.expect(request.getParameterValues("userID")).andReturn(userIDs).anyTimes();
+    EasyMock.expect(request.getParameter("howMany")).andReturn("2").anyTimes();
+    EasyMock.expect(request.getParameter("format")).andReturn(format).anyTimes();
+    EasyMock.expect(request.getHeader("If-None-Match")).andReturn(ifNoneMatch).anyTimes();
+    EasyMock.replay(request);
+    return request;
+  }
+
+  private static HttpServletResponse response(final ByteArrayOutputStream out, Capture<String> eTag)
+    throws Exception {
+    HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+    EasyMock.expect(response.getOutputStream()).andReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        out.write(b);
+      }
+    }).anyTimes();
+    if (eTag != null) {
+      response.setHeader(EasyMock.eq("ETag"), EasyMock.capture(eTag));
+    }
+    EasyMock.replay(response);
+    return response;
+  }
+
+  /**
+   * Recommends items 10 * userID, 10 * userID + 1, ... and counts how often it is asked to.
+   */
+  public static final class CountingRecommender implements Recommender {
+
+    static final AtomicInteger RECOMMENDATIONS = new AtomicInteger();
+
+    @Override
+    public List<RecommendedItem> recommend(long userID, int howMany) {
+      RECOMMENDATIONS.incrementAndGet();
+      List<RecommendedItem> result = Lists.newArrayListWithCapacity(howMany);
+      for (int i = 0; i < howMany; i++) {
+        result.add(new GenericRecommendedItem(10L * userID + i, howMany - i));
+      }
+      return result;
+    }
+
+    @Override
+    public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer) {
+      return recommend(userID, howMany);
+    }
+
+    @Override
+    public float estimatePreference(long userID, long itemID) {
+      return Float.NaN;
+    }
+
+    @Override
+    public void setPreference(long userID, long itemID, float value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removePreference(long userID, long itemID) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public DataModel getDataModel() {
+      return null;
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+      // nothing to refresh
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.web;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.mahout.math.MahoutTestCase;
+import org.junit.Test;
+
+public final class ResponseBufferTest extends MahoutTestCase {
+
+  @Test
+  public void testAppend() throws Exception {
+    ResponseBuffer buffer = new ResponseBuffer(1);
+    buffer.append("id:").append(0L).append(',').append(-42L).append(',').append(Long.MAX_VALUE);
+    buffer.append(',').append(Long.MIN_VALUE).append(',').append(1.5f);
+    String expected = "id:0,-42," + Long.MAX_VALUE + ',' + Long.MIN_VALUE + ",1.5";
+    assertEquals(expected.length(), buffer.size());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    assertEquals(expected, out.toString("US-ASCII"));
+  }
+
+  @Test
+  public void testGrow() throws Exception {
+    ResponseBuffer buffer = new ResponseBuffer(4);
+    StringBuilder expected = new StringBuilder();
+    for (long i = 0; i < 1000; i++) {
+      buffer.append(i * 7919L).append('\n');
+      expected.append(i * 7919L).append('\n');
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    assertEquals(expected.toString(), out.toString("US-ASCII"));
+  }
+
+}